@@ -0,0 +1,39 @@
+package io.github.wangster6.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mindrot.jbcrypt.BCrypt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks verifying a password against a stored BCrypt hash, which is what
+ * every login pays for, at several cost factors.
+ *
+ * @author wangster6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BCryptBenchmark {
+	@Param({ "4", "8", "10", "12" })
+	public int cost;
+
+	private String hashedPassword;
+
+	@Setup
+	public void setUp() {
+		hashedPassword = BCrypt.hashpw("password123", BCrypt.gensalt(cost));
+	}
+
+	@Benchmark
+	public boolean verify() {
+		return BCrypt.checkpw("password123", hashedPassword);
+	}
+}
@@ -0,0 +1,70 @@
+package io.github.wangster6.bench;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import io.github.wangster6.bank.Messages;
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.bank.Renderer;
+
+/**
+ * Benchmarks parsing and formatting balances, from the raw amount up to the
+ * full "current balance" message written to a session.
+ *
+ * @author wangster6
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BalanceFormatBenchmark {
+	@Param({ "0.05", "1234.50", "9999999999999999.99" })
+	public String amount;
+
+	private Money balance;
+	private StringBuilder builder;
+	private Renderer out;
+
+	@Setup
+	public void setUp() {
+		balance = Money.parse(amount);
+		builder = new StringBuilder(32);
+		out = new Renderer(OutputStream.nullOutputStream(), true);
+	}
+
+	@Benchmark
+	public Money parse() {
+		return Money.parse(amount);
+	}
+
+	@Benchmark
+	public String format() {
+		return balance.toString();
+	}
+
+	@Benchmark
+	public StringBuilder appendTo() {
+		builder.setLength(0);
+		return balance.appendTo(builder);
+	}
+
+	@Benchmark
+	public void currentBalanceMessage() {
+		Messages.currentBalance(out, balance);
+		out.flush();
+	}
+
+	@Benchmark
+	public void actionPrompt() {
+		Messages.actionPrompt(out, "Ray");
+		out.flush();
+	}
+}
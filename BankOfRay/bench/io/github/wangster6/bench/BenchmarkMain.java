@@ -0,0 +1,36 @@
+package io.github.wangster6.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark in this package and writes the results as JSON, so runs
+ * can be compared against each other to catch regressions.
+ *
+ * @author wangster6
+ */
+public class BenchmarkMain {
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args an optional regular expression selecting which benchmarks to
+	 *             run, followed by an optional path for the JSON results
+	 *             (default "bench-results.json").
+	 * @throws RunnerException If a benchmark fails.
+	 */
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : BenchmarkMain.class.getPackage().getName() + ".*";
+		String resultFile = args.length > 1 ? args[1] : "bench-results.json";
+		Options options = new OptionsBuilder()
+				.include(include)
+				.forks(1)
+				.shouldFailOnError(true)
+				.resultFormat(ResultFormatType.JSON)
+				.result(resultFile)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,92 @@
+package io.github.wangster6.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.mindrot.jbcrypt.BCrypt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import io.github.wangster6.bank.AccountSession;
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.bank.NewUser;
+import io.github.wangster6.database.DatabaseConnection;
+import io.github.wangster6.database.repo.AccountRepository;
+import io.github.wangster6.database.repo.UserRepository;
+
+/**
+ * Benchmarks the data access of a typical session, a login lookup followed by
+ * a deposit and a withdrawal, against an embedded H2 database running in MySQL
+ * mode. Password verification is left out because BCrypt would dominate the
+ * result; it is measured on its own by {@link BCryptBenchmark}.
+ *
+ * @author wangster6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DataAccessBenchmark {
+	private static final String USERNAME = "benchuser";
+	private static final Money AMOUNT = Money.ofCents(1050);
+
+	private Path configFile;
+	private UserRepository users;
+	private AccountRepository accounts;
+
+	@Setup
+	public void setUp() throws IOException, SQLException {
+		Properties properties = new Properties();
+		properties.setProperty("db.url", "jdbc:h2:mem:bankofray;MODE=MySQL;DB_CLOSE_DELAY=-1");
+		properties.setProperty("db.user", "sa");
+		configFile = Files.createTempFile("bankofray-bench", ".properties");
+		try (OutputStream output = Files.newOutputStream(configFile)) {
+			properties.store(output, null);
+		}
+		// Must be set before the configuration is first loaded
+		System.setProperty("bankofray.config", configFile.toString());
+
+		try (Connection connection = DatabaseConnection.getConnection();
+				Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE accounts (id INT AUTO_INCREMENT PRIMARY KEY, "
+					+ "balance DECIMAL(18, 2) NOT NULL)");
+			statement.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, first_name VARCHAR(50), "
+					+ "last_name VARCHAR(50), username VARCHAR(15) NOT NULL UNIQUE, hashed_password VARCHAR(60), "
+					+ "account_id INT NOT NULL)");
+		}
+
+		users = new UserRepository();
+		accounts = new AccountRepository();
+		users.create(new NewUser("Bench", "User", USERNAME, BCrypt.hashpw("password123", BCrypt.gensalt(4))));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		DatabaseConnection.shutdown();
+		Files.deleteIfExists(configFile);
+	}
+
+	@Benchmark
+	public Money loginDepositWithdraw() throws SQLException, IOException {
+		AccountSession session = users.findCredentials(USERNAME).toSession();
+		accounts.deposit(session.getAccountId(), AMOUNT);
+		return accounts.withdraw(session.getAccountId(), AMOUNT);
+	}
+
+	@Benchmark
+	public AccountSession login() throws SQLException, IOException {
+		return users.findCredentials(USERNAME).toSession();
+	}
+}
@@ -0,0 +1,85 @@
+package io.github.wangster6.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import io.github.wangster6.bank.AccountSession;
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.bank.NewUser;
+import io.github.wangster6.storage.AccountStore;
+import io.github.wangster6.storage.StorageEngine;
+import io.github.wangster6.storage.UserStore;
+import io.github.wangster6.storage.memory.MemoryStorageEngine;
+
+/**
+ * Benchmarks the same data access as {@link DataAccessBenchmark} against the
+ * in-memory storage engine, from every core at once, to show how many
+ * operations per second the rest of the application can be driven at when the
+ * database is taken out of the picture.
+ *
+ * @author wangster6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(Threads.MAX)
+public class MemoryStorageBenchmark {
+	private static final Money AMOUNT = Money.ofCents(1050);
+
+	/** Fewer accounts means more sessions contending for the same one */
+	@Param({ "1", "10000" })
+	public int accountCount;
+
+	private UserStore users;
+	private AccountStore accounts;
+	private String[] usernames;
+	private int[] accountIds;
+
+	@Setup
+	public void setUp() throws Exception {
+		StorageEngine engine = new MemoryStorageEngine();
+		users = engine.users();
+		accounts = engine.accounts();
+		List<NewUser> newUsers = new ArrayList<>(accountCount);
+		for (int i = 0; i < accountCount; i++) {
+			newUsers.add(new NewUser("Bench", "User", "bench" + i, "hash"));
+		}
+		users.createAll(newUsers);
+		usernames = new String[accountCount];
+		accountIds = new int[accountCount];
+		for (int i = 0; i < accountCount; i++) {
+			usernames[i] = "bench" + i;
+			accountIds[i] = users.findCredentials(usernames[i]).toSession().getAccountId();
+			accounts.deposit(accountIds[i], Money.ofCents(1000000));
+		}
+	}
+
+	@Benchmark
+	public Money depositWithdraw() throws Exception {
+		int accountId = accountIds[ThreadLocalRandom.current().nextInt(accountCount)];
+		accounts.deposit(accountId, AMOUNT);
+		return accounts.withdraw(accountId, AMOUNT);
+	}
+
+	@Benchmark
+	public Money findBalance() throws Exception {
+		return accounts.findBalance(accountIds[ThreadLocalRandom.current().nextInt(accountCount)]);
+	}
+
+	@Benchmark
+	public AccountSession login() throws Exception {
+		return users.findCredentials(usernames[ThreadLocalRandom.current().nextInt(accountCount)]).toSession();
+	}
+}
@@ -0,0 +1,41 @@
+package io.github.wangster6.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import io.github.wangster6.bank.PasswordUtils;
+
+/**
+ * Benchmarks the input checks run on every signup.
+ *
+ * @author wangster6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PasswordUtilsBenchmark {
+	/** A valid password, one without a digit, and one that is too long */
+	@Param({ "password123", "passwordonly", "password1234567890" })
+	public String password;
+
+	/** A valid name and one rejected on its last character */
+	@Param({ "Raymond", "Raymond1" })
+	public String name;
+
+	@Benchmark
+	public boolean isValidPassword() {
+		return PasswordUtils.isValidPassword(password);
+	}
+
+	@Benchmark
+	public boolean containsOnlyLetters() {
+		return PasswordUtils.containsOnlyLetters(name);
+	}
+}
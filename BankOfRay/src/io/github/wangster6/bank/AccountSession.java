@@ -0,0 +1,78 @@
+package io.github.wangster6.bank;
+
+/**
+ * The state of a logged-in user for the duration of their session. It is
+ * loaded once at login, and every later operation addresses the account by its
+ * primary key instead of looking the user up by username again.
+ *
+ * @author wangster6
+ */
+public class AccountSession {
+	private final int userId;
+	private final int accountId;
+	private final String username;
+	private final String firstName;
+	private Money balance;
+
+	/**
+	 * Constructs a new session.
+	 *
+	 * @param userId    the ID of the user's row in the "users" table.
+	 * @param accountId the ID of the user's account.
+	 * @param username  the username the user logged in with.
+	 * @param firstName the user's first name.
+	 * @param balance   the balance of the account when the session was loaded.
+	 */
+	public AccountSession(int userId, int accountId, String username, String firstName, Money balance) {
+		this.userId = userId;
+		this.accountId = accountId;
+		this.username = username;
+		this.firstName = firstName;
+		this.balance = balance;
+	}
+
+	/**
+	 * @return the ID of the user's row in the "users" table.
+	 */
+	public int getUserId() {
+		return userId;
+	}
+
+	/**
+	 * @return the ID of the user's account.
+	 */
+	public int getAccountId() {
+		return accountId;
+	}
+
+	/**
+	 * @return the username the user logged in with.
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * @return the user's first name.
+	 */
+	public String getFirstName() {
+		return firstName;
+	}
+
+	/**
+	 * @return the last known balance of the account, or null if it could not be
+	 *         read.
+	 */
+	public Money getBalance() {
+		return balance;
+	}
+
+	/**
+	 * Records the balance of the account after an operation.
+	 *
+	 * @param balance the new balance, or null if it could not be read.
+	 */
+	public void setBalance(Money balance) {
+		this.balance = balance;
+	}
+}
@@ -0,0 +1,47 @@
+package io.github.wangster6.bank;
+
+/**
+ * Interest added to one account by an accrual run, together with the balance
+ * it produced.
+ *
+ * @author wangster6
+ */
+public final class Accrual {
+	private final int accountId;
+	private final Money interest;
+	private final Money balanceAfter;
+
+	/**
+	 * Constructs a new Accrual.
+	 *
+	 * @param accountId    the ID of the account.
+	 * @param interest     the interest added, always positive.
+	 * @param balanceAfter the balance of the account after the interest.
+	 */
+	public Accrual(int accountId, Money interest, Money balanceAfter) {
+		this.accountId = accountId;
+		this.interest = interest;
+		this.balanceAfter = balanceAfter;
+	}
+
+	/**
+	 * @return the ID of the account.
+	 */
+	public int getAccountId() {
+		return accountId;
+	}
+
+	/**
+	 * @return the interest added, always positive.
+	 */
+	public Money getInterest() {
+		return interest;
+	}
+
+	/**
+	 * @return the balance of the account after the interest.
+	 */
+	public Money getBalanceAfter() {
+		return balanceAfter;
+	}
+}
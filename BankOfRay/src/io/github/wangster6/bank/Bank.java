@@ -1,14 +1,25 @@
 package io.github.wangster6.bank;
 
-import org.mindrot.jbcrypt.BCrypt;
-
-import io.github.wangster6.database.DatabaseConnection;
+import io.github.wangster6.config.AppConfig;
+import io.github.wangster6.config.ConfigManager;
+import io.github.wangster6.database.DataAccessException;
+import io.github.wangster6.database.ReadSession;
+import io.github.wangster6.metrics.Metrics;
+import io.github.wangster6.storage.AccountStore;
+import io.github.wangster6.storage.LedgerStore;
+import io.github.wangster6.storage.StorageEngine;
+import io.github.wangster6.storage.StorageEngines;
+import io.github.wangster6.storage.UserStore;
+import io.github.wangster6.validation.ValidationPolicy;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.sql.*;
-import java.text.DecimalFormat;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.Iterator;
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * The Bank class represents an ATM application where users can log in, sign up,
@@ -17,22 +28,111 @@ import java.util.Scanner;
  * @author wangster6
  */
 public class Bank {
-	private static final DecimalFormat df = new DecimalFormat("0.00");
-	private Scanner scanner;
+	/** Number of history entries shown at a time */
+	private static final int HISTORY_PAGE_SIZE = 10;
 
-	private static final int ERROR_NO_MONEY = -1;
-	private static final int RETURN_TO_MENU = -2;
+	private Scanner scanner;
+	private final Renderer out;
+	/** Where the session's input comes from, such as a client address, or null if it is local */
+	private final String source;
+	private final StorageEngine storage = StorageEngines.shared();
+	private final UserStore users = storage.users();
+	private final AccountStore accounts = storage.accounts();
+	private final PasswordHasher hasher;
+	private final LoginService loginService;
+	private final LoginThrottle loginThrottle;
+	private final UsernameIndex usernameIndex = UsernameIndex.shared();
+	private final LedgerStore history = storage.ledger();
 
 	/**
-	 * Constructs a new Bank instance, initializing the scanner for user input.
+	 * Constructs a new Bank instance, initializing the scanner for user input from
+	 * the console. Colours are only printed when the output is a terminal.
 	 */
 	public Bank() {
-		scanner = new Scanner(System.in);
+		this(System.in, System.out, System.console() != null);
+	}
+
+	/**
+	 * Constructs a new Bank instance for a single session that reads user input
+	 * from and writes all prompts, with colours, to the given streams.
+	 *
+	 * @param input  the input stream to read user input from.
+	 * @param output the stream to write prompts and messages to.
+	 */
+	public Bank(InputStream input, OutputStream output) {
+		this(input, output, true);
+	}
+
+	/**
+	 * Constructs a new Bank instance for a single session that reads user input
+	 * from and writes all prompts to the given streams.
+	 *
+	 * @param input  the input stream to read user input from.
+	 * @param output the stream to write prompts and messages to.
+	 * @param ansi   true to print ANSI colours and styles, false for plain text.
+	 */
+	public Bank(InputStream input, OutputStream output, boolean ansi) {
+		this(input, output, ansi, null);
+	}
+
+	/**
+	 * Constructs a new Bank instance for a single session of a remote user that
+	 * reads user input from and writes all prompts to the given streams. Failed
+	 * logins are throttled per source as well as per username.
+	 *
+	 * @param input  the input stream to read user input from.
+	 * @param output the stream to write prompts and messages to.
+	 * @param ansi   true to print ANSI colours and styles, false for plain text.
+	 * @param source where the session's input comes from, such as the client's
+	 *               address, or null if it is local.
+	 */
+	public Bank(InputStream input, OutputStream output, boolean ansi, String source) {
+		this(input, output, ansi, source, LoginThrottle.shared());
+	}
+
+	/**
+	 * Constructs a new Bank instance for a single session whose logins are
+	 * throttled by the given throttle instead of the one shared by every session.
+	 *
+	 * @param input         the input stream to read user input from.
+	 * @param output        the stream to write prompts and messages to.
+	 * @param ansi          true to print ANSI colours and styles, false for plain
+	 *                      text.
+	 * @param source        where the session's input comes from, such as the
+	 *                      client's address, or null if it is local.
+	 * @param loginThrottle the throttle to count login attempts against.
+	 */
+	public Bank(InputStream input, OutputStream output, boolean ansi, String source, LoginThrottle loginThrottle) {
+		this(input, output, ansi, source, loginThrottle, PasswordHasher.shared());
+	}
+
+	/**
+	 * Constructs a new Bank instance for a single session that hashes and checks
+	 * passwords with the given hasher instead of the one shared by every session.
+	 *
+	 * @param input         the input stream to read user input from.
+	 * @param output        the stream to write prompts and messages to.
+	 * @param ansi          true to print ANSI colours and styles, false for plain
+	 *                      text.
+	 * @param source        where the session's input comes from, such as the
+	 *                      client's address, or null if it is local.
+	 * @param loginThrottle the throttle to count login attempts against.
+	 * @param hasher        the hasher to hash and check passwords with.
+	 */
+	Bank(InputStream input, OutputStream output, boolean ansi, String source, LoginThrottle loginThrottle,
+			PasswordHasher hasher) {
+		scanner = new Scanner(input);
+		out = new Renderer(output, ansi);
+		this.source = source;
+		this.loginThrottle = loginThrottle;
+		this.hasher = hasher;
+		this.loginService = new LoginService(users, hasher);
 	}
 
 	/**
 	 * Runs the ATM application based on the given mode and input stream. Can be run
-	 * in testing mode or in regular mode.
+	 * in testing mode or in regular mode. The whole run is one {@link ReadSession},
+	 * so once it has changed anything its reads no longer go to a read replica.
 	 *
 	 * @param testing Indicates whether the application is in testing mode (0) or
 	 *                not.
@@ -42,11 +142,28 @@ public class Bank {
 		if (testing == 0) { // 0 stands for testing mode
 			scanner = new Scanner(input);
 		}
-		System.out.print(Messages.WELCOME_TO_ATM);
-		menuPrompt(input);
+		ReadSession session = ReadSession.begin();
+		try {
+			out.print(Messages.WELCOME_TO_ATM);
+			menuPrompt(input);
+			out.flush();
+		} finally {
+			session.close();
+		}
 		scanner.close();
 	}
 
+	/**
+	 * Flushes any pending output so the user sees the whole prompt, then reads the
+	 * next line of user input.
+	 *
+	 * @return the line entered by the user.
+	 */
+	private String readLine() {
+		out.flush();
+		return scanner.nextLine();
+	}
+
 	/**
 	 * Displays the main menu to the user and prompts for their choice.
 	 *
@@ -55,8 +172,8 @@ public class Bank {
 	private void menuPrompt(InputStream input) {
 		boolean menuLoop = true;
 		while (menuLoop) {
-			System.out.println(Messages.MENU_PROMPT);
-			System.out.print("> ");
+			out.println(Messages.MENU_PROMPT);
+			out.print(Messages.INPUT_PROMPT);
 			int choice = getMenuChoice();
 
 			switch (choice) {
@@ -67,11 +184,11 @@ public class Bank {
 				signup();
 				break;
 			case 3:
-				System.out.println(Messages.EXIT_MESSAGE);
+				out.println(Messages.EXIT_MESSAGE);
 				menuLoop = false;
 				break;
 			default:
-				System.out.println(Messages.MENU_PROMPT_INVALID_CHOICE);
+				out.println(Messages.MENU_PROMPT_INVALID_CHOICE);
 			}
 		}
 	}
@@ -85,7 +202,7 @@ public class Bank {
 		int choice = -1;
 		while (true) {
 			try {
-				choice = Integer.parseInt(scanner.nextLine());
+				choice = Integer.parseInt(readLine());
 				if (choice < 1 || choice > 3) {
 					throw new NumberFormatException();
 				}
@@ -100,48 +217,81 @@ public class Bank {
 	/**
 	 * Displays the action menu to the user and prompts for their choice.
 	 *
-	 * @param username the username of the user that is logged in. used for action
-	 *                 purposes.
-	 * @param input    the input stream to read user input from.
+	 * @param session the session of the user that is logged in. used for action
+	 *                purposes.
+	 * @param input   the input stream to read user input from.
 	 */
-	private void actionPrompt(String username, InputStream input) {
-		double balance = getAccountBalanceByUsername(username);
-
+	private void actionPrompt(AccountSession session, InputStream input) {
 		while (true) {
-			System.out.println(
-					"\n\u001B[1;4mWelcome " + getFirstNameByUsername(username) + "!\u001B[0m" + Messages.ACTION_PROMPT);
-			System.out.print("> ");
+			Messages.actionPrompt(out, session.getFirstName());
 
 			int choice = getActionChoice();
 
 			switch (choice) {
 			case 1:
-				System.out.println(Messages.YOUR_CURRENT_BALANCE);
-				System.out.println("\u001B[32m$" + df.format(balance) + "\u001B[0m");
-				break;
-			case 2:
-				balance = simulateDeposit(balance, input);
-				if (balance == -2) {
-					balance = getAccountBalanceByUsername(username);
-					break;
+				Money balance = refreshBalance(session); // Other sessions may have transferred money in
+				if (balance == null) {
+					Messages.transactionFailure(out); // Balance could not be read
 				} else {
-					setAccountBalanceByUsername(username, balance);
+					Messages.currentBalance(out, balance);
 				}
 				break;
+			case 2:
+				Money deposited = simulateDeposit(session, input);
+				// Refresh the balance if the user returned to menu or the deposit was not applied
+				session.setBalance(deposited != null ? deposited : getAccountBalance(session.getAccountId()));
+				break;
 			case 3:
-				balance = simulateWithdrawal(balance, input);
-				if (balance == -1 || balance == -2) {
-					balance = getAccountBalanceByUsername(username);
-					break;
-				} else {
-					setAccountBalanceByUsername(username, balance);
-				}
+				Money withdrawn = simulateWithdrawal(session, input);
+				// Refresh the balance if the user returned to menu or the withdrawal was not applied
+				session.setBalance(withdrawn != null ? withdrawn : getAccountBalance(session.getAccountId()));
 				break;
 			case 4:
+				Money transferred = simulateTransfer(session, input);
+				// Refresh the balance if the user returned to menu or the transfer was not applied
+				session.setBalance(transferred != null ? transferred : getAccountBalance(session.getAccountId()));
+				break;
+			case 5:
+				showHistory(session);
+				break;
+			case 6:
 				return;
 			default:
-				System.out.println(Messages.ACTION_PROMPT_INVALID_CHOICE);
+				out.println(Messages.ACTION_PROMPT_INVALID_CHOICE);
+			}
+		}
+	}
+
+	/**
+	 * Shows the account's deposits and withdrawals, newest first, one page at a
+	 * time. Older pages are only fetched if the user asks for them.
+	 * 
+	 * @param session the session of the account to show the history of.
+	 */
+	private void showHistory(AccountSession session) {
+		try {
+			Iterator<LedgerEntry> entries = history.iterateHistory(session.getAccountId(), HISTORY_PAGE_SIZE);
+			if (!entries.hasNext()) {
+				out.println(Messages.NO_HISTORY);
+				return;
+			}
+			out.println(Messages.HISTORY_HEADER);
+			while (true) {
+				for (int i = 0; i < HISTORY_PAGE_SIZE && entries.hasNext(); i++) {
+					Messages.historyEntry(out, entries.next());
+				}
+				if (!entries.hasNext()) {
+					return;
+				}
+				out.println(Messages.HISTORY_MORE_PROMPT);
+				out.print(Messages.INPUT_PROMPT);
+				if (!"more".equalsIgnoreCase(readLine().trim())) {
+					return;
+				}
 			}
+		} catch (DataAccessException e) {
+			e.printStackTrace();
+			Messages.transactionFailure(out);
 		}
 	}
 
@@ -154,8 +304,8 @@ public class Bank {
 		int choice = -1;
 		while (true) {
 			try {
-				choice = Integer.parseInt(scanner.nextLine());
-				if (choice < 1 || choice > 4) {
+				choice = Integer.parseInt(readLine());
+				if (choice < 1 || choice > 6) {
 					throw new NumberFormatException();
 				}
 				break;
@@ -167,48 +317,82 @@ public class Bank {
 	}
 
 	/**
-	 * Handles the login process for the ATM application.
+	 * Handles the login process for the ATM application. The user's credentials
+	 * are fetched once when the username is entered, and every password attempt is
+	 * checked against them without querying the database again. Every attempt is
+	 * first cleared with the {@link LoginThrottle}, so throttled attempts cost
+	 * neither a query nor a BCrypt check.
 	 *
 	 * @param input The input stream to read user input from.
 	 */
 	private void login(InputStream input) {
-		boolean loggedIn = false;
-		boolean usernameExists = false;
-		String username = null;
-		String password = null;
-
-		while (!usernameExists) {
-			System.out.println(Messages.ENTER_USERNAME_LOGIN);
-			System.out.print("> ");
-			username = scanner.nextLine();
+		UserCredentials credentials = null;
+		AccountSession session = null;
+
+		while (credentials == null) {
+			out.println(Messages.ENTER_USERNAME_LOGIN);
+			out.print(Messages.INPUT_PROMPT);
+			String username = readLine();
 			if ("0".equals(username)) {
 				return;
 			}
 
-			if (doesUsernameExists(username)) {
-				usernameExists = true;
+			long waitMillis = loginThrottle.acquire(null, source);
+			if (waitMillis > 0) {
+				Messages.loginThrottled(out, waitMillis);
+				continue;
+			}
+			try {
+				credentials = loginService.findCredentials(username);
+			} catch (SQLException | IOException | ArithmeticException e) {
+				e.printStackTrace();
+				loginThrottle.release(null, source);
+				out.println(Messages.SYSTEM_ERROR);
+				continue;
+			}
+			if (credentials == null) {
+				loginThrottle.failed(null, source);
+				out.println(Messages.USERNAME_DNE);
 			} else {
-				System.out.println(Messages.USERNAME_DNE);
+				loginThrottle.release(null, source);
 			}
 		}
 
-		while (!loggedIn) {
-			System.out.println(Messages.ENTER_PASSWORD_LOGIN);
-			System.out.print("> ");
-			password = scanner.nextLine();
+		while (session == null) {
+			out.println(Messages.ENTER_PASSWORD_LOGIN);
+			out.print(Messages.INPUT_PROMPT);
+			String password = readLine();
 			if ("0".equals(password)) {
 				return;
 			}
 
-			if (authenticateUser(username, password)) {
-				loggedIn = true;
-				System.out.println(Messages.LOGIN_SUCCESS);
+			long waitMillis = loginThrottle.acquire(credentials.getUsername(), source);
+			if (waitMillis > 0) {
+				Messages.loginThrottled(out, waitMillis);
+				continue;
+			}
+			try {
+				session = loginService.authenticate(credentials, password);
+			} catch (RejectedExecutionException e) {
+				loginThrottle.release(credentials.getUsername(), source);
+				out.println(Messages.SYSTEM_BUSY);
+				continue;
+			} catch (RuntimeException e) { // Such as a stored hash BCrypt cannot parse
+				e.printStackTrace();
+				loginThrottle.release(credentials.getUsername(), source);
+				out.println(Messages.SYSTEM_ERROR);
+				continue;
+			}
+			if (session != null) {
+				loginThrottle.succeeded(credentials.getUsername(), source);
+				out.println(Messages.LOGIN_SUCCESS);
 			} else {
-				System.out.println(Messages.INVALID_PASSWORD);
+				loginThrottle.failed(credentials.getUsername(), source);
+				out.println(Messages.INVALID_PASSWORD);
 			}
 		}
 
-		actionPrompt(username, input);
+		actionPrompt(session, input);
 	}
 
 	/**
@@ -217,23 +401,22 @@ public class Bank {
 	private void signup() {
 		boolean firstCheck = false;
 		boolean lastCheck = false;
-		boolean usernameCheck = false;
 		boolean passwordCheck = false;
 		boolean confirmPasswordCheck = false;
 
 		String firstName = null, lastName = null, username = null, password = null, confirmPassword = null;
 
-		System.out.println(Messages.RETURN_TO_MENU);
+		out.println(Messages.RETURN_TO_MENU);
 
 		while (!firstCheck) {
-			System.out.println(Messages.ENTER_FIRST_NAME);
-			System.out.print("> ");
-			firstName = scanner.nextLine();
+			out.println(Messages.ENTER_FIRST_NAME);
+			out.print(Messages.INPUT_PROMPT);
+			firstName = readLine();
 
 			if ("0".equals(firstName)) {
 				return;
 			} else if (!PasswordUtils.containsOnlyLetters(firstName)) {
-				System.out.println(Messages.INVALID_FIRST_NAME);
+				out.println(Messages.INVALID_FIRST_NAME);
 			} else {
 				firstCheck = true;
 				firstName = firstName.toUpperCase();
@@ -241,48 +424,37 @@ public class Bank {
 		}
 
 		while (!lastCheck) {
-			System.out.println(Messages.ENTER_LAST_NAME);
-			System.out.print("> ");
-			lastName = scanner.nextLine();
+			out.println(Messages.ENTER_LAST_NAME);
+			out.print(Messages.INPUT_PROMPT);
+			lastName = readLine();
 
 			if ("0".equals(lastName)) {
 				return;
 			} else if (!PasswordUtils.containsOnlyLetters(lastName)) {
-				System.out.println(Messages.INVALID_LAST_NAME);
+				out.println(Messages.INVALID_LAST_NAME);
 			} else {
 				lastCheck = true;
 				lastName = lastName.toUpperCase();
 			}
 		}
 
-		while (!usernameCheck) {
-			System.out.println(Messages.ENTER_USERNAME_SIGNUP);
-			System.out.print("> ");
-			username = scanner.nextLine();
-
-			if ("0".equals(username)) {
-				return;
-			} else if (doesUsernameExists(username)) {
-				System.out.println(Messages.USERNAME_ALREADY_USED);
-			} else if (username.length() < 3 || username.length() > 15) {
-				System.out.println(Messages.INVALID_USERNAME);
-			} else {
-				usernameCheck = true;
-			}
+		username = promptUsername();
+		if (username == null) {
+			return;
 		}
 
 		while (!passwordCheck) {
-			System.out.println(Messages.ENTER_PASSWORD_SIGNUP);
-			System.out.print("> ");
-			password = scanner.nextLine();
+			out.println(Messages.ENTER_PASSWORD_SIGNUP);
+			out.print(Messages.INPUT_PROMPT);
+			password = readLine();
 
 			if ("0".equals(password)) {
 				return;
 			} else if (PasswordUtils.isValidPassword(password)) {
 				while (!confirmPasswordCheck) {
-					System.out.println(Messages.CONFIRM_PASSWORD);
-					System.out.print("> ");
-					confirmPassword = scanner.nextLine();
+					out.println(Messages.CONFIRM_PASSWORD);
+					out.print(Messages.INPUT_PROMPT);
+					confirmPassword = readLine();
 
 					if ("0".equals(confirmPassword)) {
 						return;
@@ -294,43 +466,90 @@ public class Bank {
 						passwordCheck = true;
 						confirmPasswordCheck = true;
 					} else {
-						System.out.println(Messages.PASSWORDS_DONT_MATCH);
+						out.println(Messages.PASSWORDS_DONT_MATCH);
 					}
 				}
 			} else {
-				System.out.println(Messages.INVALID_PASSWORD);
+				out.println(Messages.INVALID_PASSWORD);
 			}
 		}
 
-		// Hash the password using BCrypt
-		String hashedPassword = BCrypt.hashpw(password, BCrypt.gensalt());
+		// Hash the password using BCrypt on the shared hashing threads
+		String hashedPassword;
+		try {
+			hashedPassword = hasher.hash(password).join();
+		} catch (CompletionException e) {
+			out.println(e.getCause() instanceof RejectedExecutionException ? Messages.SYSTEM_BUSY
+					: Messages.SIGNUP_FAILURE);
+			return;
+		}
 
-		// Create a new user in the database
-		boolean signupSuccessful = createUser(firstName, lastName, username, hashedPassword);
-		if (signupSuccessful) {
-			System.out.println(Messages.SIGNUP_SUCCESS);
-		} else {
-			System.out.println(Messages.SIGNUP_FAILURE);
+		// Create the account and user together. A taken username is detected by the
+		// unique constraint, and the user can pick another without starting over.
+		while (true) {
+			try {
+				if (users.create(new NewUser(firstName, lastName, username, hashedPassword))) {
+					usernameIndex.added(username);
+					out.println(Messages.SIGNUP_SUCCESS);
+					return;
+				}
+			} catch (SQLException | IOException e) {
+				e.printStackTrace();
+				out.println(Messages.SIGNUP_FAILURE);
+				return;
+			}
+			out.println(Messages.USERNAME_ALREADY_USED);
+			username = promptUsername();
+			if (username == null) {
+				return;
+			}
 		}
 	}
 
 	/**
-	 * Simulates the entire deposit process. Calculates the new balance after
-	 * depositing the inputted amount by user.
+	 * Prompts for a username during signup until a valid one that does not seem
+	 * to be taken is entered.
 	 * 
-	 * @param startBal the starting balance before the deposit
-	 * @return the end balance after the deposit
+	 * @return the username, or null if the user wants to return to the menu.
 	 */
-	private double simulateDeposit(double startBal, InputStream input) {
-		double endBal;
-		double depositAmt = promptDepositInput(startBal, input); // Prompt user for input
+	private String promptUsername() {
+		while (true) {
+			out.println(Messages.ENTER_USERNAME_SIGNUP);
+			out.print(Messages.INPUT_PROMPT);
+			String username = readLine();
 
-		if (depositAmt == RETURN_TO_MENU) {
-			return RETURN_TO_MENU;// Return a code indicating user wants to go back
+			if ("0".equals(username)) {
+				return null;
+			} else if (!ValidationPolicy.USERNAME.isValid(username)) {
+				out.println(Messages.INVALID_USERNAME);
+			} else if (doesUsernameExist(username)) {
+				out.println(Messages.USERNAME_ALREADY_USED);
+			} else {
+				return username;
+			}
 		}
+	}
+
+	/**
+	 * Simulates the entire deposit process. Applies the amount inputted by the
+	 * user to the account in the database and reports the resulting balance.
+	 * 
+	 * @param session the session of the account to deposit into
+	 * @return the end balance after the deposit, or null if the user returned to
+	 *         the menu or the deposit was not applied
+	 */
+	private Money simulateDeposit(AccountSession session, InputStream input) {
+		Money depositAmt = promptDepositInput(refreshBalance(session), input); // Prompt user for input
 
-		endBal = startBal + depositAmt; // Calculate new balance after deposit
-		Messages.depositSuccess(depositAmt, endBal); // Print success message
+		if (depositAmt == null) {
+			return null; // User wants to go back
+		}
+
+		Money endBal = deposit(session.getAccountId(), depositAmt); // Apply the deposit in the database
+		if (endBal == null) {
+			return null;
+		}
+		Messages.depositSuccess(out, depositAmt, endBal); // Print success message
 
 		return endBal; // Return the new balance after deposit
 	}
@@ -340,53 +559,60 @@ public class Bank {
 	 * validating the inputted values.
 	 *
 	 * @param startBal the starting balance before the deposit
-	 * @return the deposit amount entered by the user, or a code indicating a return
-	 *         to the menu
+	 * @return the deposit amount entered by the user, or null if the user wants to
+	 *         return to the menu
 	 */
-	private double promptDepositInput(double startBal, InputStream input) {
-		double depositAmt = 0;
-		boolean validInput = false;
+	private Money promptDepositInput(Money startBal, InputStream input) {
+		Money depositAmt = null;
 
-		while (!validInput) {
-			Messages.depositAmountPrompt(startBal); // Prompt user for deposit amount
-			String depositString = scanner.nextLine();
+		while (depositAmt == null) {
+			Messages.depositAmountPrompt(out, startBal); // Prompt user for deposit amount
+			String depositString = readLine();
 
 			if ("back".equals(depositString)) {
-				return RETURN_TO_MENU; // Return a code indicating user wants to go back
+				return null; // User wants to go back
 			}
 
-			if (validateInput(depositString)) { // Validate the input
-				depositAmt = Double.parseDouble(depositString);
-				validInput = true; // Input is valid, exit the loop
-			}
+			depositAmt = parseInput(depositString); // Validate the input, exit the loop if valid
 		}
 
 		return depositAmt;
 	}
 
 	/**
-	 * Simulates the entire withdrawal process. Calculates the new balance after
-	 * withdrawing the inputted amount by user.
+	 * Simulates the entire withdrawal process. Withdraws the amount inputted by the
+	 * user from the account in the database, as long as the account still holds
+	 * enough money when the withdrawal is applied, and reports the resulting
+	 * balance.
 	 * 
-	 * @param startBal the starting balance before the withdrawal
-	 * @return the end balance after the withdrawal
+	 * @param session the session of the account to withdraw from
+	 * @return the end balance after the withdrawal, or null if the user returned to
+	 *         the menu or the withdrawal was not applied
 	 */
-	private double simulateWithdrawal(double startBal, InputStream input) {
+	private Money simulateWithdrawal(AccountSession session, InputStream input) {
+		Money startBal = refreshBalance(session);
+		if (startBal == null) {
+			Messages.transactionFailure(out); // Balance could not be read
+			return null;
+		}
+
 		// Check if the starting balance is zero
-		if (startBal == 0) {
-			Messages.withdrawNoMoney(); // Print error message
-			return ERROR_NO_MONEY; // Return a code indicating error
+		if (startBal.isZero()) {
+			Messages.withdrawNoMoney(out); // Print error message
+			return null;
 		}
 
-		double endBal;
-		double withdrawAmt = promptWithdrawalInput(startBal, input); // Prompt user for withdrawal amount
+		Money withdrawAmt = promptWithdrawalInput(startBal, input); // Prompt user for withdrawal amount
 
-		if (withdrawAmt == RETURN_TO_MENU) {
-			return RETURN_TO_MENU;// Return a code indicating user wants to go back
+		if (withdrawAmt == null) {
+			return null; // User wants to go back
 		}
 
-		endBal = startBal - withdrawAmt; // Calculate new balance after withdrawal
-		Messages.withdrawSuccess(withdrawAmt, endBal); // Print success message
+		Money endBal = withdraw(session.getAccountId(), withdrawAmt); // Apply the withdrawal in the database
+		if (endBal == null) {
+			return null;
+		}
+		Messages.withdrawSuccess(out, withdrawAmt, endBal); // Print success message
 
 		return endBal; // Return the new balance
 	}
@@ -396,407 +622,291 @@ public class Bank {
 	 * validating the inputted values.
 	 * 
 	 * @param startBal the starting balance before the withdrawal
-	 * @return the withdrawal amount entered by the user, or a code indicating a
-	 *         return to the menu
+	 * @return the withdrawal amount entered by the user, or null if the user wants
+	 *         to return to the menu
 	 */
-	private double promptWithdrawalInput(double startBal, InputStream input) {
-		double withdrawAmt = 0;
-		boolean validInput = false;
-
-		while (!validInput) {
-			Messages.withdrawAmountPrompt(startBal); // Prompt user for withdrawal amount
-			String withdrawString = scanner.nextLine();
+	private Money promptWithdrawalInput(Money startBal, InputStream input) {
+		while (true) {
+			Messages.withdrawAmountPrompt(out, startBal); // Prompt user for withdrawal amount
+			String withdrawString = readLine();
 
 			if ("back".equals(withdrawString)) {
-				return RETURN_TO_MENU; // Return a code indicating user wants to go back
+				return null; // User wants to go back
 			}
 
-			if (validateInput(withdrawString)) { // Validate the input
-				withdrawAmt = Double.parseDouble(withdrawString);
-				if (withdrawAmt > startBal) {
-					Messages.withdrawMoreThanBalance(); // Print error message indicating user is attempting to withdraw
+			Money withdrawAmt = parseInput(withdrawString); // Validate the input
+			if (withdrawAmt != null) {
+				if (withdrawAmt.compareTo(startBal) > 0) {
+					Messages.withdrawMoreThanBalance(out); // Print error message indicating user is attempting to withdraw
 														// more than their balance
 				} else {
-					validInput = true; // Input is valid, exit the while loop
+					return withdrawAmt; // Input is valid, exit the while loop
 				}
 			}
 		}
-
-		return withdrawAmt;
 	}
 
 	/**
-	 * Validate the inputted String by checking if it is a double value. If so, this
-	 * method delegates to the validateInputPositive method to continue checking if
-	 * the parsed double is greater than zero.
+	 * Simulates the entire transfer process. Asks who to transfer to and how much,
+	 * then moves the money from the user's account to the recipient's in one step,
+	 * as long as the account still holds enough money when the transfer is
+	 * applied, and reports the resulting balance.
 	 * 
-	 * @param inputString the String input to validate.
-	 * @return true if the input is valid, false if invalid.
+	 * @param session the session of the account to transfer from
+	 * @return the end balance after the transfer, or null if the user returned to
+	 *         the menu or the transfer was not applied
 	 */
-	private boolean validateInput(String inputString) {
-		// Check if input is a double. If not, catch NumberFormatException and print
-		// error message
-		try {
-			double inputAmt = Double.parseDouble(inputString);
-			// If input is a double, check if greater than zero
-			return validateInputPositive(inputAmt);
-		} catch (NumberFormatException e) {
-			Messages.inputNotDouble();
-			return false;
+	private Money simulateTransfer(AccountSession session, InputStream input) {
+		Money startBal = refreshBalance(session);
+		if (startBal == null) {
+			Messages.transactionFailure(out); // Balance could not be read
+			return null;
 		}
-	}
 
-	/**
-	 * Check if the input is greater than zero.
-	 * 
-	 * @param inputAmt the double input to validate.
-	 * @return true of greater than zero, false if not.
-	 */
-	private boolean validateInputPositive(double inputAmt) {
-		if (inputAmt <= 0) {
-			Messages.inputAmountNotPositive(); // Print error message if inputted amount is not positive
-			return false;
-		} else {
-			return true;
+		if (startBal.isZero()) {
+			out.println(Messages.TRANSFER_NO_MONEY);
+			return null;
 		}
+
+		Recipient recipient = promptTransferRecipient(session); // Prompt user for who to transfer to
+		if (recipient == null) {
+			return null; // User wants to go back
+		}
+
+		Money transferAmt = promptTransferInput(startBal); // Prompt user for transfer amount
+		if (transferAmt == null) {
+			return null; // User wants to go back
+		}
+
+		Money endBal = transfer(session.getAccountId(), recipient.accountId, transferAmt);
+		if (endBal == null) {
+			return null;
+		}
+		Messages.transferSuccess(out, transferAmt, recipient.username, endBal); // Print success message
+
+		return endBal; // Return the new balance
 	}
 
 	/**
-	 * Helper method to authenticate the user using JDBC
+	 * Helper method to prompt the user for the username of the user to transfer
+	 * money to, until an existing user other than themselves is entered. Only the
+	 * recipient's account is looked up, never their password hash.
 	 * 
-	 * @param username username to authenticate
-	 * @param password password to authenticate
-	 * @return true if user is successfully authenticated, false if not
-	 */
-	private boolean authenticateUser(String username, String password) {
-		// Establish database connection
-		Connection connection = null;
-		PreparedStatement preparedStatement = null;
-		ResultSet resultSet = null;
-		try {
-			connection = DatabaseConnection.getConnection();
-			// Prepare query to retrieve user information by username
-			String selectQuery = "SELECT hashed_password FROM users WHERE username = ?";
-			preparedStatement = connection.prepareStatement(selectQuery);
-			preparedStatement.setString(1, username);
-
-			// Execute query
-			resultSet = preparedStatement.executeQuery();
-			// Check if user exists
-			if (resultSet.next()) {
-				String hashedPassword = resultSet.getString("hashed_password");
-				return BCrypt.checkpw(password, hashedPassword);
+	 * @param session the session of the user transferring the money
+	 * @return the recipient, or null if the user wants to return to the menu
+	 */
+	private Recipient promptTransferRecipient(AccountSession session) {
+		while (true) {
+			out.println(Messages.TRANSFER_RECIPIENT_PROMPT);
+			out.print(Messages.INPUT_PROMPT);
+			String username = readLine();
+
+			if ("back".equals(username)) {
+				return null; // User wants to go back
+			} else if (username.equals(session.getUsername())) {
+				out.println(Messages.TRANSFER_TO_SELF);
+				continue;
 			}
-			return false; // User not found
-		} catch (SQLException | IOException e) {
-			e.printStackTrace();
-			return false; // Return false on error
-		} finally {
-			// Close resources
+
+			Integer accountId;
 			try {
-				if (resultSet != null) {
-					resultSet.close();
-				}
-				if (preparedStatement != null) {
-					preparedStatement.close();
-				}
-				if (connection != null) {
-					DatabaseConnection.closeConnection(connection);
-				}
-			} catch (SQLException e) {
+				accountId = users.findAccountId(username);
+			} catch (SQLException | IOException e) {
 				e.printStackTrace();
+				out.println(Messages.SYSTEM_ERROR);
+				continue;
+			}
+			if (accountId == null) {
+				out.println(Messages.USERNAME_DNE);
+			} else if (accountId == session.getAccountId()) {
+				out.println(Messages.TRANSFER_TO_SELF); // Same user, with the username in another case
+			} else {
+				return new Recipient(username, accountId);
 			}
 		}
 	}
 
 	/**
-	 * Creates a new account with an initial balance of 0 and returns the generated
-	 * account ID.
-	 *
-	 * @return The generated account ID if successful, or -1 if account creation
-	 *         failed.
+	 * Helper method to handle prompting the user for a transfer amount input and
+	 * validating the inputted values.
+	 * 
+	 * @param startBal the starting balance before the transfer
+	 * @return the transfer amount entered by the user, or null if the user wants
+	 *         to return to the menu
 	 */
-	private static int createAccount() {
-		Connection connection = null;
-		PreparedStatement preparedStatement = null;
-		ResultSet generatedKeys = null;
+	private Money promptTransferInput(Money startBal) {
+		while (true) {
+			Messages.transferAmountPrompt(out); // Prompt user for transfer amount
+			String transferString = readLine();
 
-		try {
-			connection = DatabaseConnection.getConnection();
-			// Prepare query to create a new account with initial balance of 0
-			String insertQuery = "INSERT INTO accounts (balance) VALUES (0)";
-			preparedStatement = connection.prepareStatement(insertQuery, Statement.RETURN_GENERATED_KEYS);
-
-			// Execute query
-			int rowsAffected = preparedStatement.executeUpdate();
-
-			if (rowsAffected > 0) {
-				// Get auto-generated account ID
-				generatedKeys = preparedStatement.getGeneratedKeys();
-				if (generatedKeys.next()) {
-					return generatedKeys.getInt(1);
-				}
+			if ("back".equals(transferString)) {
+				return null; // User wants to go back
 			}
 
-			return -1; // Return -1 if the account creation failed
-		} catch (SQLException | IOException e) {
-			e.printStackTrace();
-			return -1; // Return -1 on error
-		} finally {
-			// Close resources
-			try {
-				if (generatedKeys != null) {
-					generatedKeys.close();
-				}
-				if (preparedStatement != null) {
-					preparedStatement.close();
-				}
-				if (connection != null) {
-					DatabaseConnection.closeConnection(connection);
+			Money transferAmt = parseInput(transferString); // Validate the input
+			if (transferAmt != null) {
+				if (transferAmt.compareTo(startBal) > 0) {
+					out.println(Messages.TRANSFER_MORE_THAN_BALANCE);
+				} else {
+					return transferAmt; // Input is valid, exit the while loop
 				}
-			} catch (SQLException e) {
-				e.printStackTrace();
 			}
 		}
 	}
 
 	/**
-	 * Creates a new user with the provided information and associates them with an
-	 * account.
-	 *
-	 * @param firstName      The user's first name.
-	 * @param lastName       The user's last name.
-	 * @param username       The user's username.
-	 * @param hashedPassword The hashed password of the user.
-	 * @return True if the user was successfully created, false otherwise.
-	 */
-	private boolean createUser(String firstName, String lastName, String username, String hashedPassword) {
-		// Establish database connection
-		Connection connection = null;
-		PreparedStatement preparedStatement = null;
+	 * Parse the inputted String as an amount of money with at most two decimal
+	 * places. If it is one, this method delegates to the validateInputPositive
+	 * method to continue checking if the amount is greater than zero.
+	 * 
+	 * @param inputString the String input to parse.
+	 * @return the parsed amount if the input is valid, null if invalid.
+	 */
+	private Money parseInput(String inputString) {
+		// Check if input is an amount. If not, catch NumberFormatException and print
+		// error message
 		try {
-			connection = DatabaseConnection.getConnection();
-			// Create an account for user and get the account ID
-			int accountId = createAccount();
-
-			if (accountId == -1) {
-				// Account creation failed
-				return false;
-			}
+			Money inputAmt = Money.parse(inputString);
+			// If input is an amount, check if greater than zero
+			return validateInputPositive(inputAmt) ? inputAmt : null;
+		} catch (NumberFormatException e) {
+			Messages.inputNotDouble(out);
+			return null;
+		}
+	}
 
-			// Prepare query to insert new user into the "users" table
-			String insertQuery = "INSERT INTO users (first_name, last_name, username, hashed_password, account_id) VALUES (?, ?, ?, ?, ?)";
-			preparedStatement = connection.prepareStatement(insertQuery);
-			preparedStatement.setString(1, firstName);
-			preparedStatement.setString(2, lastName);
-			preparedStatement.setString(3, username);
-			preparedStatement.setString(4, hashedPassword);
-			preparedStatement.setInt(5, accountId);
-
-			// Execute query
-			int rowsAffected = preparedStatement.executeUpdate();
-			return rowsAffected > 0; // Returns true if the user was successfully created
-		} catch (SQLException | IOException e) {
-			e.printStackTrace();
+	/**
+	 * Check if the input is greater than zero.
+	 * 
+	 * @param inputAmt the amount to validate.
+	 * @return true of greater than zero, false if not.
+	 */
+	private boolean validateInputPositive(Money inputAmt) {
+		if (!inputAmt.isPositive()) {
+			Messages.inputAmountNotPositive(out); // Print error message if inputted amount is not positive
 			return false;
-		} finally {
-			// Close resources
-			try {
-				if (preparedStatement != null) {
-					preparedStatement.close();
-				}
-				if (connection != null) {
-					DatabaseConnection.closeConnection(connection);
-				}
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
+		} else {
+			return true;
 		}
 	}
 
 	/**
-	 * Retrieves the first name of a user based on their username.
+	 * Reads the balance of a session's account again and records it in the
+	 * session, since money transferred in by other sessions never passes through
+	 * this one.
 	 *
-	 * @param username The username of the user.
-	 * @return The first name of the user if found, or null if the user is not
-	 *         found.
+	 * @param session the session of the account.
+	 * @return the balance, or null if it could not be read.
 	 */
-	private String getFirstNameByUsername(String username) {
-		Connection connection = null;
-		PreparedStatement preparedStatement = null;
-		ResultSet resultSet = null;
+	private Money refreshBalance(AccountSession session) {
+		Money balance = getAccountBalance(session.getAccountId());
+		session.setBalance(balance);
+		return balance;
+	}
 
+	/**
+	 * Retrieves the balance of an account.
+	 *
+	 * @param accountId The ID of the account.
+	 * @return The account balance if found, or null if the account is not found.
+	 */
+	private Money getAccountBalance(int accountId) {
 		try {
-			connection = DatabaseConnection.getConnection();
-			// Prepare query to retrieve user's first name based on the username
-			String selectQuery = "SELECT first_name FROM users WHERE username = ?";
-			preparedStatement = connection.prepareStatement(selectQuery);
-			preparedStatement.setString(1, username);
-
-			// Execute query
-			resultSet = preparedStatement.executeQuery();
-
-			// Check if user with the provided username exists
-			if (resultSet.next()) {
-				return resultSet.getString("first_name");
-			}
-			return null; // User not found
-		} catch (SQLException | IOException e) {
+			return accounts.findBalance(accountId);
+		} catch (SQLException | IOException | ArithmeticException e) {
 			e.printStackTrace();
 			return null; // Return null on error
-		} finally {
-			// Close resources
-			try {
-				if (resultSet != null) {
-					resultSet.close();
-				}
-				if (preparedStatement != null) {
-					preparedStatement.close();
-				}
-				if (connection != null) {
-					DatabaseConnection.closeConnection(connection);
-				}
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
 		}
 	}
 
 	/**
-	 * Retrieves the account balance of a user based on their username.
-	 *
-	 * @param username The username of the user.
-	 * @return The account balance of the user if found, or -1 if the user or
-	 *         account is not found.
+	 * Helper method to atomically deposit into the account with the given ID.
+	 * Prints an error message if the deposit could not be applied. The store
+	 * records the deposit in the ledger as part of applying it.
+	 * 
+	 * @param accountId the ID of the account to deposit into
+	 * @param amount    the amount to deposit
+	 * @return the new balance, or null if the deposit could not be applied
 	 */
-	private double getAccountBalanceByUsername(String username) {
-		Connection connection = null;
-		PreparedStatement preparedStatement = null;
-		ResultSet resultSet = null;
-
+	private Money deposit(int accountId, Money amount) {
 		try {
-			connection = DatabaseConnection.getConnection();
-			// Prepare query to retrieve account balance based on the username
-			String selectQuery = "SELECT balance FROM accounts "
-					+ "WHERE id = (SELECT account_id FROM users WHERE username = ?)";
-			preparedStatement = connection.prepareStatement(selectQuery);
-			preparedStatement.setString(1, username);
-
-			// Execute query
-			resultSet = preparedStatement.executeQuery();
-
-			// Check if user's account exists
-			if (resultSet.next()) {
-				return resultSet.getDouble("balance");
+			Money newBal = accounts.deposit(accountId, amount);
+			if (newBal == null) {
+				Messages.transactionFailure(out); // Account not found
 			}
-			return -1; // Account not found
-		} catch (SQLException | IOException e) {
+			return newBal;
+		} catch (SQLException | IOException | ArithmeticException e) {
 			e.printStackTrace();
-			return -1; // Return -1 on error
-		} finally {
-			// Close resources
-			try {
-				if (resultSet != null) {
-					resultSet.close();
-				}
-				if (preparedStatement != null) {
-					preparedStatement.close();
-				}
-				if (connection != null) {
-					DatabaseConnection.closeConnection(connection);
-				}
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
+			Messages.transactionFailure(out);
+			return null; // Return null on error
 		}
 	}
 
 	/**
-	 * Helper method to set the account balance based on the username
+	 * Helper method to atomically withdraw from the account with the given ID.
+	 * Prints an error message if the withdrawal could not be applied. The store
+	 * records the withdrawal in the ledger as part of applying it.
 	 * 
-	 * @param username associated with the account to alter
-	 * @param newBal   the new balance to set account balance to
-	 * @return true if the query was successful, false if error
+	 * @param accountId the ID of the account to withdraw from
+	 * @param amount    the amount to withdraw
+	 * @return the new balance, or null if the withdrawal could not be applied
 	 */
-	private boolean setAccountBalanceByUsername(String username, double newBal) {
-		Connection connection = null;
-		PreparedStatement preparedStatement = null;
-
+	private Money withdraw(int accountId, Money amount) {
 		try {
-			connection = DatabaseConnection.getConnection();
-			// Prepare query to update account balance based on the username
-			String updateQuery = "UPDATE accounts " + "SET balance = ? "
-					+ "WHERE id = (SELECT account_id FROM users WHERE username = ?)";
-			preparedStatement = connection.prepareStatement(updateQuery);
-			preparedStatement.setDouble(1, newBal);
-			preparedStatement.setString(2, username);
-
-			// Execute query
-			int rowsAffected = preparedStatement.executeUpdate();
-			return rowsAffected > 0; // Returns true if the update was successful
-		} catch (SQLException | IOException e) {
+			Money newBal = accounts.withdraw(accountId, amount);
+			if (newBal == null) {
+				Messages.withdrawMoreThanBalance(out); // Balance changed in another session since it was read
+			}
+			return newBal;
+		} catch (SQLException | IOException | ArithmeticException e) {
 			e.printStackTrace();
-			return false; // Return false on error
-		} finally {
-			// Close resources
-			try {
-				if (preparedStatement != null) {
-					preparedStatement.close();
-				}
-				if (connection != null) {
-					DatabaseConnection.closeConnection(connection);
-				}
-			} catch (SQLException e) {
-				e.printStackTrace();
+			Messages.transactionFailure(out);
+			return null; // Return null on error
+		}
+	}
+
+	/**
+	 * Helper method to atomically transfer money between the accounts with the
+	 * given IDs. Prints an error message if the transfer could not be applied. The
+	 * store records the transfer in the ledger of both accounts as part of
+	 * applying it.
+	 * 
+	 * @param fromAccountId the ID of the account to transfer from
+	 * @param toAccountId   the ID of the account to transfer to
+	 * @param amount        the amount to transfer
+	 * @return the new balance of the account transferred from, or null if the
+	 *         transfer could not be applied
+	 */
+	private Money transfer(int fromAccountId, int toAccountId, Money amount) {
+		try {
+			TransferResult result = accounts.transfer(fromAccountId, toAccountId, amount);
+			if (result == null) {
+				// Balance changed in another session since it was read, or the recipient was deleted
+				out.println(Messages.TRANSFER_MORE_THAN_BALANCE);
+				return null;
 			}
+			return result.getFromBalance();
+		} catch (SQLException | IOException | ArithmeticException e) {
+			e.printStackTrace();
+			Messages.transactionFailure(out);
+			return null; // Return null on error
 		}
 	}
 
 	/**
-	 * Checks if a given username exists in the "users" table.
+	 * Checks if a given username is already taken, usually without querying the
+	 * database. This is only a hint for the user; the unique constraint decides
+	 * when the user is created.
 	 *
 	 * @param username The username to be checked.
 	 * @return True if the username exists, false otherwise.
 	 */
-	private boolean doesUsernameExists(String username) {
-		Connection connection = null;
-		PreparedStatement preparedStatement = null;
-		ResultSet resultSet = null;
-
+	private boolean doesUsernameExist(String username) {
 		try {
-			connection = DatabaseConnection.getConnection();
-			// Prepare query to check if username exists in the "users" table
-			String selectQuery = "SELECT COUNT(*) as count FROM users WHERE username = ?";
-			preparedStatement = connection.prepareStatement(selectQuery);
-			preparedStatement.setString(1, username);
-
-			// Execute query
-			resultSet = preparedStatement.executeQuery();
-
-			// Check if username exists
-			if (resultSet.next()) {
-				int count = resultSet.getInt("count");
-				return count > 0;
-			}
-			return false; // Return false if username not found
+			return usernameIndex.exists(username);
 		} catch (SQLException | IOException e) {
 			e.printStackTrace();
 			return false; // Return false on error
-		} finally {
-			// Close resources
-			try {
-				if (resultSet != null) {
-					resultSet.close();
-				}
-				if (preparedStatement != null) {
-					preparedStatement.close();
-				}
-				if (connection != null) {
-					DatabaseConnection.closeConnection(connection);
-				}
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
 		}
 	}
 
@@ -807,51 +917,13 @@ public class Bank {
 	 * @return True if the deletion was successful, false otherwise.
 	 */
 	boolean deleteUserByUsername(String username) {
-		Connection connection = null;
-		PreparedStatement deleteUserStatement = null;
-		PreparedStatement deleteAccountStatement = null;
-
 		try {
-			connection = DatabaseConnection.getConnection();
-			connection.setAutoCommit(false);
-
-			// Prepare query to delete account by username
-			String deleteAccountQuery = "DELETE FROM accounts WHERE id = (SELECT account_id FROM users WHERE username = ?)";
-			deleteAccountStatement = connection.prepareStatement(deleteAccountQuery);
-			deleteAccountStatement.setString(1, username);
-
-			// Execute the query
-			deleteAccountStatement.executeUpdate();
-			connection.commit();
-
-			// If account deletion successful, delete the user as well
-			String deleteUserQuery = "DELETE FROM users WHERE username = ?";
-			deleteUserStatement = connection.prepareStatement(deleteUserQuery);
-			deleteUserStatement.setString(1, username);
-
-			// Execute query
-			deleteUserStatement.executeUpdate();
-
-			connection.commit();
+			users.deleteByUsername(username);
+			usernameIndex.removed(username);
 			return true;
 		} catch (SQLException | IOException e) {
 			e.printStackTrace();
 			return false;
-		} finally {
-			try {
-				if (deleteAccountStatement != null) {
-					deleteAccountStatement.close();
-				}
-				if (deleteUserStatement != null) {
-					deleteUserStatement.close();
-				}
-				if (connection != null) {
-					connection.setAutoCommit(true);
-					DatabaseConnection.closeConnection(connection);
-				}
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
 		}
 	}
 
@@ -862,7 +934,29 @@ public class Bank {
 	 * @param args Command-line arguments (not used).
 	 */
 	public static void main(String[] args) {
+		// Load the configuration up front so a missing or invalid file fails immediately
+		AppConfig config;
+		try {
+			config = ConfigManager.load();
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return;
+		}
+		Metrics.startReporter(config.getMetricsDumpIntervalMillis(), System.err);
 		Bank bank = new Bank();
 		bank.run(1, System.in);
 	}
+
+	/**
+	 * The user money is being transferred to, as entered by the sender.
+	 */
+	private static final class Recipient {
+		private final String username;
+		private final int accountId;
+
+		Recipient(String username, int accountId) {
+			this.username = username;
+			this.accountId = accountId;
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package io.github.wangster6.bank;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter of strings. It answers "definitely not added" or
+ * "possibly added", using a fixed number of bits sized for an expected number
+ * of insertions and false positive rate. Strings are hashed character by
+ * character, so neither adding nor checking allocates.
+ *
+ * @author wangster6
+ */
+final class BloomFilter {
+	private final AtomicLongArray words;
+	private final long bitCount;
+	private final int hashCount;
+	private final long expectedInsertions;
+	private final AtomicLong insertions = new AtomicLong();
+
+	/**
+	 * Constructs a new, empty BloomFilter.
+	 *
+	 * @param expectedInsertions the number of strings expected to be added.
+	 * @param falsePositiveRate  the acceptable rate of false positives once that
+	 *                           many strings have been added, such as 0.01.
+	 */
+	BloomFilter(long expectedInsertions, double falsePositiveRate) {
+		long n = Math.max(1, expectedInsertions);
+		long bits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		int wordCount = (int) Math.max(1, (bits + 63) / 64);
+		this.words = new AtomicLongArray(wordCount);
+		this.bitCount = wordCount * 64L;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+		this.expectedInsertions = n;
+	}
+
+	/**
+	 * Adds a string to the filter.
+	 *
+	 * @param value the string to add.
+	 */
+	void put(CharSequence value) {
+		long hash = hash(value);
+		long step = (hash >>> 32) | 1;
+		for (int i = 0; i < hashCount; i++) {
+			long bit = Math.floorMod(hash + i * step, bitCount);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long old;
+			do {
+				old = words.get(word);
+				if ((old & mask) != 0) {
+					break;
+				}
+			} while (!words.compareAndSet(word, old, old | mask));
+		}
+		insertions.incrementAndGet();
+	}
+
+	/**
+	 * Checks whether a string may have been added.
+	 *
+	 * @param value the string to check.
+	 * @return false if the string was definitely never added, true if it
+	 *         probably was.
+	 */
+	boolean mightContain(CharSequence value) {
+		long hash = hash(value);
+		long step = (hash >>> 32) | 1;
+		for (int i = 0; i < hashCount; i++) {
+			long bit = Math.floorMod(hash + i * step, bitCount);
+			if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if more strings were added than the filter was sized for, so
+	 *         its false positive rate is above the requested one.
+	 */
+	boolean isSaturated() {
+		return insertions.get() > expectedInsertions;
+	}
+
+	/**
+	 * Hashes a string with 64-bit FNV-1a followed by the MurmurHash3 finalizer.
+	 *
+	 * @param value the string to hash.
+	 * @return the hash.
+	 */
+	private static long hash(CharSequence value) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,95 @@
+package io.github.wangster6.bank;
+
+import java.time.Instant;
+
+/**
+ * An immutable record of one change to an account balance. Entries are only
+ * ever appended to the ledger, never updated or deleted, and are numbered by a
+ * sequence that increases in the order they were written.
+ *
+ * @author wangster6
+ */
+public final class LedgerEntry {
+	/**
+	 * The kinds of balance changes recorded in the ledger. A transfer is recorded
+	 * once on each of the two accounts.
+	 */
+	public enum Type {
+		DEPOSIT, WITHDRAWAL, TRANSFER_IN, TRANSFER_OUT, INTEREST;
+
+		/**
+		 * @return true if money is added to the account, false if it is taken out.
+		 */
+		public boolean isCredit() {
+			return this == DEPOSIT || this == TRANSFER_IN || this == INTEREST;
+		}
+	}
+
+	private final long sequence;
+	private final int accountId;
+	private final Type type;
+	private final Money amount;
+	private final Money balanceAfter;
+	private final Instant timestamp;
+
+	/**
+	 * Constructs a new LedgerEntry.
+	 *
+	 * @param sequence     the position of the entry in the ledger.
+	 * @param accountId    the ID of the account that changed.
+	 * @param type         whether money was deposited or withdrawn.
+	 * @param amount       the amount moved, always positive.
+	 * @param balanceAfter the balance of the account after the change.
+	 * @param timestamp    when the change was applied.
+	 */
+	public LedgerEntry(long sequence, int accountId, Type type, Money amount, Money balanceAfter, Instant timestamp) {
+		this.sequence = sequence;
+		this.accountId = accountId;
+		this.type = type;
+		this.amount = amount;
+		this.balanceAfter = balanceAfter;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * @return the position of the entry in the ledger.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return the ID of the account that changed.
+	 */
+	public int getAccountId() {
+		return accountId;
+	}
+
+	/**
+	 * @return whether money was deposited or withdrawn.
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return the amount moved, always positive.
+	 */
+	public Money getAmount() {
+		return amount;
+	}
+
+	/**
+	 * @return the balance of the account after the change.
+	 */
+	public Money getBalanceAfter() {
+		return balanceAfter;
+	}
+
+	/**
+	 * @return when the change was applied.
+	 */
+	public Instant getTimestamp() {
+		return timestamp;
+	}
+}
@@ -0,0 +1,91 @@
+package io.github.wangster6.bank;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import io.github.wangster6.storage.UserStore;
+
+/**
+ * Handles the login process with a single database query. The credential row,
+ * which also carries the user's account and balance, is fetched once when the
+ * username is entered, and every password attempt is verified against it
+ * without touching the database again. Passwords stored with an outdated cost
+ * factor are transparently hashed again after a successful login.
+ *
+ * @author wangster6
+ */
+public class LoginService {
+	private final UserStore users;
+	private final PasswordHasher hasher;
+
+	/**
+	 * Constructs a new LoginService.
+	 *
+	 * @param users  the store to read credentials from.
+	 * @param hasher the hasher to verify passwords with.
+	 */
+	public LoginService(UserStore users, PasswordHasher hasher) {
+		this.users = users;
+		this.hasher = hasher;
+	}
+
+	/**
+	 * Fetches the credentials of a user to start a login attempt.
+	 *
+	 * @param username the username entered by the user.
+	 * @return the user's credentials, or null if the username does not exist.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	public UserCredentials findCredentials(String username) throws SQLException, IOException {
+		return users.findCredentials(username);
+	}
+
+	/**
+	 * Verifies a password against previously fetched credentials.
+	 *
+	 * @param credentials the credentials fetched for this login attempt.
+	 * @param password    the password entered by the user.
+	 * @return the authenticated user's session, or null if the password is wrong.
+	 * @throws RejectedExecutionException If the password hasher is saturated.
+	 */
+	public AccountSession authenticate(UserCredentials credentials, String password) {
+		String hashedPassword = credentials.getHashedPassword();
+		boolean verified;
+		try {
+			verified = hasher.verify(password, hashedPassword).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+		if (!verified) {
+			return null;
+		}
+		if (hasher.needsRehash(hashedPassword)) {
+			rehash(credentials.getUserId(), hashedPassword, password);
+		}
+		return credentials.toSession();
+	}
+
+	/**
+	 * Hashes a verified password again with the current cost factor and stores
+	 * it, in the background. If this fails it is simply retried on the next login.
+	 *
+	 * @param userId         the ID of the user.
+	 * @param hashedPassword the outdated hash.
+	 * @param password       the verified password.
+	 */
+	private void rehash(int userId, String hashedPassword, String password) {
+		hasher.hash(password).thenAccept(newHash -> {
+			try {
+				users.updateHashedPassword(userId, hashedPassword, newHash);
+			} catch (SQLException | IOException e) {
+				e.printStackTrace();
+			}
+		});
+	}
+}
@@ -0,0 +1,378 @@
+package io.github.wangster6.bank;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.github.wangster6.config.AppConfig;
+import io.github.wangster6.config.ConfigManager;
+
+/**
+ * Limits how fast logins may be attempted, both per username and per source
+ * address, so a script guessing passwords cannot keep the BCrypt threads and
+ * the database busy. Every username and source has a token bucket: an attempt
+ * takes a token, a successful attempt gives it back, and tokens refill at a
+ * fixed rate, so only failed attempts use up the allowance. After a number of
+ * consecutive failures the username or source is also locked out for a time
+ * that doubles with every further failure, up to a maximum.
+ * <p>
+ * The state is split over shards with a lock each, so concurrent logins rarely
+ * wait for each other. Each shard holds a bounded number of entries, dropping
+ * the least recently used one when full, and entries that have been idle long
+ * enough to be back to a full bucket without a lockout are dropped as well.
+ *
+ * @author wangster6
+ */
+public class LoginThrottle {
+	/** Number of shards, a power of two */
+	private static final int SHARDS = 64;
+	/** Longest part of a username or source that is tracked, so long input cannot use up memory */
+	private static final int MAX_KEY_LENGTH = 64;
+
+	private static LoginThrottle shared;
+
+	private final Table users;
+	private final Table sources;
+	private final long refillNanos;
+	private final int lockoutAfter;
+	private final long lockoutBaseNanos;
+	private final long lockoutMaxNanos;
+
+	/**
+	 * Constructs a new LoginThrottle.
+	 *
+	 * @param userBurst         the number of failed attempts a username may make
+	 *                          in a row before it has to wait for a refill, or 0
+	 *                          to not throttle usernames.
+	 * @param sourceBurst       the number of failed attempts a source may make in
+	 *                          a row before it has to wait for a refill, or 0 to
+	 *                          not throttle sources.
+	 * @param refillMillis      how long it takes for one token to be refilled.
+	 * @param lockoutAfter      the number of consecutive failures after which a
+	 *                          username or source is locked out.
+	 * @param lockoutBaseMillis how long the first lockout lasts.
+	 * @param lockoutMaxMillis  the longest a lockout can last.
+	 * @param maxTracked        the maximum number of usernames and of sources
+	 *                          tracked at once.
+	 */
+	public LoginThrottle(int userBurst, int sourceBurst, long refillMillis, int lockoutAfter, long lockoutBaseMillis,
+			long lockoutMaxMillis, int maxTracked) {
+		this.refillNanos = TimeUnit.MILLISECONDS.toNanos(refillMillis);
+		this.lockoutAfter = lockoutAfter;
+		this.lockoutBaseNanos = TimeUnit.MILLISECONDS.toNanos(lockoutBaseMillis);
+		this.lockoutMaxNanos = TimeUnit.MILLISECONDS.toNanos(lockoutMaxMillis);
+		int perShard = Math.max(1, maxTracked / SHARDS);
+		this.users = new Table(userBurst, perShard);
+		this.sources = new Table(sourceBurst, perShard);
+	}
+
+	/**
+	 * Returns the throttle shared by every session, creating it from the
+	 * configuration on first use.
+	 *
+	 * @return the shared LoginThrottle.
+	 * @throws UncheckedIOException If the configuration cannot be loaded.
+	 */
+	public static synchronized LoginThrottle shared() {
+		if (shared == null) {
+			AppConfig config;
+			try {
+				config = ConfigManager.get();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			shared = new LoginThrottle(config.getLoginUserBurst(), config.getLoginSourceBurst(),
+					config.getLoginRefillMillis(), config.getLoginLockoutAfter(), config.getLoginLockoutBaseMillis(),
+					config.getLoginLockoutMaxMillis(), config.getLoginMaxTracked());
+		}
+		return shared;
+	}
+
+	/**
+	 * Takes a token for a login attempt from the username and the source, unless
+	 * either of them is locked out or has none left. Must be called before any
+	 * work is done for the attempt, and followed by {@link #succeeded},
+	 * {@link #release} or {@link #failed} if the attempt is allowed.
+	 *
+	 * @param username the username of the attempt, or null to only throttle the
+	 *                 source.
+	 * @param source   the address the attempt comes from, or null to only
+	 *                 throttle the username.
+	 * @return 0 if the attempt may go ahead, or how many milliseconds to wait
+	 *         before trying again.
+	 */
+	public long acquire(String username, String source) {
+		return acquire(username, source, System.nanoTime());
+	}
+
+	/**
+	 * Same as {@link #acquire(String, String)}, at the given time.
+	 */
+	long acquire(String username, String source, long now) {
+		long waitNanos = users.take(username, now);
+		if (waitNanos == 0) {
+			waitNanos = sources.take(source, now);
+			if (waitNanos > 0) {
+				users.refund(username, now, false);
+			}
+		}
+		return (waitNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1) / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Gives back the tokens of an attempt that succeeded and clears the
+	 * consecutive failures of the username and the source.
+	 *
+	 * @param username the username of the attempt, or null.
+	 * @param source   the address the attempt came from, or null.
+	 */
+	public void succeeded(String username, String source) {
+		succeeded(username, source, System.nanoTime());
+	}
+
+	/**
+	 * Same as {@link #succeeded(String, String)}, at the given time.
+	 */
+	void succeeded(String username, String source, long now) {
+		users.refund(username, now, true);
+		sources.refund(source, now, true);
+	}
+
+	/**
+	 * Gives back the tokens of an attempt that got past a step without proving
+	 * anything yet, such as entering a username that exists, and leaves the
+	 * consecutive failures as they are.
+	 *
+	 * @param username the username of the attempt, or null.
+	 * @param source   the address the attempt came from, or null.
+	 */
+	public void release(String username, String source) {
+		release(username, source, System.nanoTime());
+	}
+
+	/**
+	 * Same as {@link #release(String, String)}, at the given time.
+	 */
+	void release(String username, String source, long now) {
+		users.refund(username, now, false);
+		sources.refund(source, now, false);
+	}
+
+	/**
+	 * Counts a failed attempt against the username and the source, locking them
+	 * out once they have failed too often in a row.
+	 *
+	 * @param username the username of the attempt, or null.
+	 * @param source   the address the attempt came from, or null.
+	 */
+	public void failed(String username, String source) {
+		failed(username, source, System.nanoTime());
+	}
+
+	/**
+	 * Same as {@link #failed(String, String)}, at the given time.
+	 */
+	void failed(String username, String source, long now) {
+		users.fail(username, now);
+		sources.fail(source, now);
+	}
+
+	/**
+	 * @return the number of usernames currently tracked.
+	 */
+	int getTrackedUsers() {
+		return users.size();
+	}
+
+	/**
+	 * Returns how long a lockout lasts after the given number of consecutive
+	 * failures.
+	 *
+	 * @param failures the number of consecutive failures.
+	 * @return the length of the lockout in nanoseconds, or 0 if there is none.
+	 */
+	long lockoutNanos(int failures) {
+		if (lockoutAfter == 0 || failures < lockoutAfter) {
+			return 0;
+		}
+		long lockout = lockoutBaseNanos;
+		for (int i = lockoutAfter; i < failures && lockout < lockoutMaxNanos; i++) {
+			lockout *= 2;
+		}
+		return Math.min(lockout, lockoutMaxNanos);
+	}
+
+	/**
+	 * The state of one username or source.
+	 */
+	private static final class Attempts {
+		private double tokens;
+		private long refilledAt;
+		private int failures;
+		private boolean locked;
+		private long lockedUntil;
+
+		boolean isLockedAt(long now) {
+			return locked && now - lockedUntil < 0;
+		}
+	}
+
+	/**
+	 * One shard of a table, in access order so its least recently used entries
+	 * come first.
+	 */
+	private static final class Shard extends LinkedHashMap<String, Attempts> {
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Shard(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Attempts> eldest) {
+			return size() > capacity;
+		}
+	}
+
+	/**
+	 * The usernames or the sources, each in the shard its hash picks.
+	 */
+	private final class Table {
+		private final int burst;
+		/** How long an entry can go unused before it carries no state worth keeping */
+		private final long idleNanos;
+		private final Shard[] shards = new Shard[SHARDS];
+
+		Table(int burst, int perShard) {
+			this.burst = burst;
+			this.idleNanos = Math.max(lockoutMaxNanos, burst * refillNanos);
+			for (int i = 0; i < SHARDS; i++) {
+				shards[i] = new Shard(perShard);
+			}
+		}
+
+		/**
+		 * Takes a token for the key if it is neither locked out nor out of tokens.
+		 *
+		 * @return 0 if a token was taken, or how many nanoseconds to wait.
+		 */
+		long take(String key, long now) {
+			if (key == null || burst == 0) {
+				return 0;
+			}
+			key = trim(key);
+			Shard shard = shardOf(key);
+			synchronized (shard) {
+				Attempts attempts = find(shard, key, now);
+				if (attempts == null) {
+					attempts = new Attempts();
+					attempts.tokens = burst;
+					attempts.refilledAt = now;
+					shard.put(key, attempts);
+				}
+				refill(attempts, now);
+				if (attempts.isLockedAt(now)) {
+					return attempts.lockedUntil - now;
+				}
+				if (attempts.tokens < 1) {
+					return (long) Math.ceil((1 - attempts.tokens) * refillNanos);
+				}
+				attempts.tokens--;
+				return 0;
+			}
+		}
+
+		/**
+		 * Gives back the token of an attempt, and clears the failures of the key if
+		 * the attempt succeeded.
+		 */
+		void refund(String key, long now, boolean success) {
+			if (key == null || burst == 0) {
+				return;
+			}
+			key = trim(key);
+			Shard shard = shardOf(key);
+			synchronized (shard) {
+				Attempts attempts = find(shard, key, now);
+				if (attempts != null) {
+					refill(attempts, now);
+					attempts.tokens = Math.min(burst, attempts.tokens + 1);
+					if (success) {
+						attempts.failures = 0;
+						attempts.locked = false;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Counts a failure against the key and locks it out if it has failed too
+		 * often in a row.
+		 */
+		void fail(String key, long now) {
+			if (key == null || burst == 0) {
+				return;
+			}
+			key = trim(key);
+			Shard shard = shardOf(key);
+			synchronized (shard) {
+				Attempts attempts = find(shard, key, now);
+				if (attempts != null) {
+					attempts.failures++;
+					long lockout = lockoutNanos(attempts.failures);
+					if (lockout > 0) {
+						attempts.locked = true;
+						attempts.lockedUntil = now + lockout;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Looks up the entry of a key, first dropping the entries of the shard that
+		 * have been idle too long. The shard is in access order, so those are all at
+		 * its start.
+		 */
+		private Attempts find(Shard shard, String key, long now) {
+			Iterator<Attempts> eldest = shard.values().iterator();
+			while (eldest.hasNext()) {
+				Attempts attempts = eldest.next();
+				if (now - attempts.refilledAt <= idleNanos || attempts.isLockedAt(now)) {
+					break;
+				}
+				eldest.remove();
+			}
+			return shard.get(key);
+		}
+
+		private void refill(Attempts attempts, long now) {
+			attempts.tokens = Math.min(burst, attempts.tokens + (double) (now - attempts.refilledAt) / refillNanos);
+			attempts.refilledAt = now;
+		}
+
+		private Shard shardOf(String key) {
+			int hash = key.hashCode();
+			return shards[(hash ^ (hash >>> 16)) & (SHARDS - 1)];
+		}
+
+		private String trim(String key) {
+			return key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+		}
+
+		int size() {
+			int size = 0;
+			for (Shard shard : shards) {
+				synchronized (shard) {
+					size += shard.size();
+				}
+			}
+			return size;
+		}
+	}
+}
@@ -1,21 +1,21 @@
 package io.github.wangster6.bank;
 
-import java.text.DecimalFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 /**
  * The Messages class provides static methods for printing various messages
- * related to banking operations.
+ * related to banking operations to a session's {@link Renderer}.
  * 
  * @author wangster6
  */
 public class Messages {
-	/** DecimalFormat instance for formatting double values */
-	private static final DecimalFormat df = new DecimalFormat("0.00");
-
 	public static final String DEPOSIT_AMOUNT_PROMPT = "\n\u001B[1;4mHow much money would you like to deposit?\u001B[0m"
 			+ "\nIf you would like to return to the menu, type 'back'.";
 	public static final String DEPOSIT_SUCCESS = "\n\u001B[1;4mYou have successfully deposited:\u001B[0m \u001B[32m$";
 	public static final String NEW_BALANCE = "\nYour new balance is: \u001B[32m$";
+	public static final String CURRENT_BALANCE = "\u001B[32m$";
+	public static final String RESET = "\u001B[0m";
 	public static final String WITHDRAW_AMOUNT_PROMPT = "\n\u001B[1;4mHow much money would you like to withdraw?\u001B[0m"
 			+ "\nIf you would like to return to the menu, type 'back'.";
 	public static final String NO_MONEY = "\n\u001B[31mERROR: You do not have any money in your account. You cannot withdraw anything!\u001B[0m";
@@ -42,9 +42,11 @@ public class Messages {
 			+ "\n1) Check Balance" 
 			+ "\n2) Deposit Money"
 			+ "\n3) Withdraw Money" 
-			+ "\n4) Exit";
+			+ "\n4) Transfer Money"
+			+ "\n5) View History"
+			+ "\n6) Exit";
 	public static final String YOUR_CURRENT_BALANCE = "\n\u001B[1;4mYour Current Balance Is:\u001B[0m";
-	public static final String ACTION_PROMPT_INVALID_CHOICE = "\n\u001B[31mERROR: Invalid input. Please enter 1, 2, 3, or 4.\u001B[0m";
+	public static final String ACTION_PROMPT_INVALID_CHOICE = "\n\u001B[31mERROR: Invalid input. Please enter 1, 2, 3, 4, 5, or 6.\u001B[0m";
 	public static final String ENTER_USERNAME_LOGIN = "\n\u001B[1;4mEnter your username:\u001B[0m"
 			+ "\nIf you would like to return to the menu, please type 0.";
 	public static final String USERNAME_DNE = "\n\u001B[31mERROR: That username does not exist!\u001B[0m";
@@ -71,75 +73,210 @@ public class Messages {
 	public static final String PASSWORDS_DONT_MATCH = "\n\u001B[31mERROR: Your passwords do not match! Try again!\u001B[0m";
 	public static final String SIGNUP_SUCCESS = "\n\u001B[32mSignup successful! You can now log in.\u001B[0m";
 	public static final String SIGNUP_FAILURE = "\n\u001B[31mERROR: Signup failed. Please try again.\u001B[0m";
+	public static final String SYSTEM_ERROR = "\n\u001B[31mERROR: Something went wrong on our side. Please try again later.\u001B[0m";
+	public static final String SYSTEM_BUSY = "\n\u001B[31mERROR: The system is busy right now. Please try again in a moment.\u001B[0m";
+	public static final String LOGIN_THROTTLED = "\n\u001B[31mERROR: Too many failed login attempts. Please try again in ";
+	public static final String LOGIN_THROTTLED_SECONDS = " seconds.\u001B[0m";
+	public static final String HISTORY_HEADER = "\n\u001B[1;4mYour Account History:\u001B[0m";
+	public static final String NO_HISTORY = "\nYou have no deposits or withdrawals yet.";
+	public static final String HISTORY_MORE_PROMPT = "\nType 'more' to see older activity, or press Enter to return to the menu.";
+	public static final String ACTION_WELCOME = "\n\u001B[1;4mWelcome ";
+	public static final String ACTION_WELCOME_END = "!\u001B[0m";
+	public static final String INPUT_PROMPT = "> ";
+	public static final String AMOUNT_INPUT_PROMPT = "> $";
+	public static final String DEPOSIT_MARK = "  \u001B[32m+$";
+	public static final String WITHDRAWAL_MARK = "  \u001B[31m-$";
+	public static final String HISTORY_BALANCE = "  Balance: $";
+	public static final String TRANSFER_RECIPIENT_PROMPT = "\n\u001B[1;4mWho would you like to transfer money to?\u001B[0m"
+			+ "\nEnter their username. If you would like to return to the menu, type 'back'.";
+	public static final String TRANSFER_TO_SELF = "\n\u001B[31mERROR: You cannot transfer money to your own account!\u001B[0m";
+	public static final String TRANSFER_AMOUNT_PROMPT = "\n\u001B[1;4mHow much money would you like to transfer?\u001B[0m"
+			+ "\nIf you would like to return to the menu, type 'back'.";
+	public static final String TRANSFER_NO_MONEY = "\n\u001B[31mERROR: You do not have any money in your account. You cannot transfer anything!\u001B[0m";
+	public static final String TRANSFER_MORE_THAN_BALANCE = "\n\u001B[31mERROR: You cannot transfer more money than you have in your balance!\u001B[0m";
+	public static final String TRANSFER_SUCCESS = "\n\u001B[1;4mYou have successfully transferred:\u001B[0m \u001B[32m$";
+	public static final String TRANSFER_RECIPIENT = " to ";
+	public static final String HISTORY_TRANSFER = "  (transfer)";
+	public static final String HISTORY_INTEREST = "  (interest)";
+	public static final String TRANSACTION_FAILURE = "\n\u001B[31mERROR: Your transaction could not be completed. Please try again.\u001B[0m";
+
+	private static final DateTimeFormatter HISTORY_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+			.withZone(ZoneId.systemDefault());
 	
+	/**
+	 * Prints the action menu, greeting the user by name.
+	 *
+	 * @param out       The renderer to print to.
+	 * @param firstName The first name of the user.
+	 */
+	public static void actionPrompt(Renderer out, String firstName) {
+		out.print(ACTION_WELCOME).print(firstName).print(ACTION_WELCOME_END).println(ACTION_PROMPT);
+		out.print(INPUT_PROMPT);
+	}
+
 	/**
 	 * Prints a prompt for depositing money.
 	 *
+	 * @param out      The renderer to print to.
 	 * @param startBal The starting balance in the account.
 	 */
-	public static void depositAmountPrompt(double startBal) {
-		System.out.println(DEPOSIT_AMOUNT_PROMPT);
-		System.out.print("> $");
+	public static void depositAmountPrompt(Renderer out, Money startBal) {
+		out.println(DEPOSIT_AMOUNT_PROMPT);
+		out.print(AMOUNT_INPUT_PROMPT);
 	}
 
 	/**
 	 * Prints a success message after a successful deposit.
 	 *
+	 * @param out        The renderer to print to.
 	 * @param depositAmt The amount deposited.
 	 * @param endBal     The new balance after the deposit.
 	 */
-	public static void depositSuccess(double depositAmt, double endBal) {
-		System.out.println(DEPOSIT_SUCCESS + df.format(depositAmt) + "\u001B[0m" + NEW_BALANCE + df.format(endBal) + "\u001B[0m");
+	public static void depositSuccess(Renderer out, Money depositAmt, Money endBal) {
+		printAmounts(out, DEPOSIT_SUCCESS, depositAmt, endBal);
 	}
 
 	/**
 	 * Prints a prompt for withdrawing money.
 	 *
+	 * @param out      The renderer to print to.
 	 * @param startBal The starting balance in the account.
 	 */
-	public static void withdrawAmountPrompt(double startBal) {
-		System.out.println(WITHDRAW_AMOUNT_PROMPT);
-		System.out.print("> $");
+	public static void withdrawAmountPrompt(Renderer out, Money startBal) {
+		out.println(WITHDRAW_AMOUNT_PROMPT);
+		out.print(AMOUNT_INPUT_PROMPT);
 	}
 
 	/**
 	 * Prints an error message when attempting to withdraw with no money in the
 	 * account.
+	 *
+	 * @param out The renderer to print to.
 	 */
-	public static void withdrawNoMoney() {
-		System.out.println(NO_MONEY);
+	public static void withdrawNoMoney(Renderer out) {
+		out.println(NO_MONEY);
 	}
 
 	/**
 	 * Prints an error message when attempting to withdraw more than the available
 	 * balance.
+	 *
+	 * @param out The renderer to print to.
 	 */
-	public static void withdrawMoreThanBalance() {
-		System.out.println(MORE_THAN_BALANCE);
+	public static void withdrawMoreThanBalance(Renderer out) {
+		out.println(MORE_THAN_BALANCE);
 	}
 
 	/**
 	 * Prints a success message after a successful withdrawal.
 	 *
+	 * @param out         The renderer to print to.
 	 * @param withdrawAmt The amount withdrawn.
 	 * @param endBal      The new balance after the withdrawal.
 	 */
-	public static void withdrawSuccess(double withdrawAmt, double endBal) {
-		System.out.println(WITHDRAWAL_SUCCESS + df.format(withdrawAmt) + "\u001B[0m" + NEW_BALANCE + df.format(endBal)
-				+ "\u001B[0m");
+	public static void withdrawSuccess(Renderer out, Money withdrawAmt, Money endBal) {
+		printAmounts(out, WITHDRAWAL_SUCCESS, withdrawAmt, endBal);
+	}
+
+	/**
+	 * Prints a prompt for transferring money.
+	 *
+	 * @param out The renderer to print to.
+	 */
+	public static void transferAmountPrompt(Renderer out) {
+		out.println(TRANSFER_AMOUNT_PROMPT);
+		out.print(AMOUNT_INPUT_PROMPT);
+	}
+
+	/**
+	 * Prints a success message after a successful transfer.
+	 *
+	 * @param out         The renderer to print to.
+	 * @param transferAmt The amount transferred.
+	 * @param recipient   The username of the user the money was transferred to.
+	 * @param endBal      The new balance after the transfer.
+	 */
+	public static void transferSuccess(Renderer out, Money transferAmt, String recipient, Money endBal) {
+		out.print(TRANSFER_SUCCESS).print(transferAmt).print(RESET).print(TRANSFER_RECIPIENT).print(recipient);
+		out.print(NEW_BALANCE).print(endBal).println(RESET);
+	}
+
+	/**
+	 * Prints the current balance of the account.
+	 *
+	 * @param out     The renderer to print to.
+	 * @param balance The current balance.
+	 */
+	public static void currentBalance(Renderer out, Money balance) {
+		out.println(YOUR_CURRENT_BALANCE);
+		out.print(CURRENT_BALANCE).print(balance).println(RESET);
 	}
 
 	/**
 	 * Prints an error message when the user enters a non-positive amount.
+	 *
+	 * @param out The renderer to print to.
 	 */
-	public static void inputAmountNotPositive() {
-		System.out.println(AMOUNT_NOT_POSITIVE);
+	public static void inputAmountNotPositive(Renderer out) {
+		out.println(AMOUNT_NOT_POSITIVE);
 	}
 
 	/**
 	 * Prints an error message when the user enters a non-double input.
+	 *
+	 * @param out The renderer to print to.
+	 */
+	public static void inputNotDouble(Renderer out) {
+		out.println(NOT_DOUBLE);
+	}
+
+	/**
+	 * Prints an error message when a deposit or withdrawal could not be applied.
+	 *
+	 * @param out The renderer to print to.
+	 */
+	public static void transactionFailure(Renderer out) {
+		out.println(TRANSACTION_FAILURE);
+	}
+
+	/**
+	 * Prints an error message when a login attempt is throttled.
+	 *
+	 * @param out        The renderer to print to.
+	 * @param waitMillis How long the user has to wait before trying again.
+	 */
+	public static void loginThrottled(Renderer out, long waitMillis) {
+		out.print(LOGIN_THROTTLED).print(String.valueOf((waitMillis + 999) / 1000)).println(LOGIN_THROTTLED_SECONDS);
+	}
+
+	/**
+	 * Prints one line of account history: when the change happened, the amount
+	 * added or taken out, the balance after it, and whether it was a transfer.
+	 *
+	 * @param out   The renderer to print to.
+	 * @param entry The ledger entry to print.
+	 */
+	public static void historyEntry(Renderer out, LedgerEntry entry) {
+		out.print(HISTORY_TIME, entry.getTimestamp());
+		out.print(entry.getType().isCredit() ? DEPOSIT_MARK : WITHDRAWAL_MARK);
+		out.print(entry.getAmount()).print(RESET).print(HISTORY_BALANCE).print(entry.getBalanceAfter());
+		if (entry.getType() == LedgerEntry.Type.TRANSFER_IN || entry.getType() == LedgerEntry.Type.TRANSFER_OUT) {
+			out.print(HISTORY_TRANSFER);
+		} else if (entry.getType() == LedgerEntry.Type.INTEREST) {
+			out.print(HISTORY_INTEREST);
+		}
+		out.println();
+	}
+
+	/**
+	 * Prints a success message followed by the amount moved and the new balance.
+	 *
+	 * @param out     The renderer to print to.
+	 * @param message The success message, ending where the amount goes.
+	 * @param amount  The amount deposited or withdrawn.
+	 * @param endBal  The new balance.
 	 */
-	public static void inputNotDouble() {
-		System.out.println(NOT_DOUBLE);
+	private static void printAmounts(Renderer out, String message, Money amount, Money endBal) {
+		out.print(message).print(amount).print(RESET).print(NEW_BALANCE).print(endBal).println(RESET);
 	}
 }
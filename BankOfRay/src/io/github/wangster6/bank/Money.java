@@ -0,0 +1,199 @@
+package io.github.wangster6.bank;
+
+import java.math.BigDecimal;
+
+/**
+ * An immutable amount of money stored as a whole number of cents. Arithmetic is
+ * exact and throws an {@link ArithmeticException} instead of silently
+ * overflowing. Formatting writes straight into a caller-supplied
+ * {@link StringBuilder}, so it allocates nothing of its own and is safe to use
+ * from any number of threads at once.
+ *
+ * @author wangster6
+ */
+public final class Money implements Comparable<Money> {
+	/** Zero dollars */
+	public static final Money ZERO = new Money(0);
+
+	/** The largest number of digits a whole-dollar amount can have without overflowing */
+	private static final int MAX_DOLLAR_DIGITS = 16;
+
+	private final long cents;
+
+	/**
+	 * Constructs a new amount.
+	 *
+	 * @param cents the amount in cents.
+	 */
+	private Money(long cents) {
+		this.cents = cents;
+	}
+
+	/**
+	 * Returns the amount for the given number of cents.
+	 *
+	 * @param cents the amount in cents.
+	 * @return the amount.
+	 */
+	public static Money ofCents(long cents) {
+		return cents == 0 ? ZERO : new Money(cents);
+	}
+
+	/**
+	 * Converts a decimal value read from the database into an amount.
+	 *
+	 * @param value the value, with at most two decimal places.
+	 * @return the amount.
+	 * @throws ArithmeticException If the value has more than two decimal places or
+	 *                             does not fit.
+	 */
+	public static Money of(BigDecimal value) {
+		return ofCents(value.movePointRight(2).longValueExact());
+	}
+
+	/**
+	 * Parses an amount typed by the user, such as "100", "-3.5" or "12.34". The
+	 * input is read one character at a time without going through a floating
+	 * point value, so the result is exact.
+	 *
+	 * @param input the text to parse.
+	 * @return the amount.
+	 * @throws NumberFormatException If the input is not a number with at most two
+	 *                               decimal places, or is too large.
+	 */
+	public static Money parse(String input) {
+		int length = input.length();
+		int i = 0;
+		boolean negative = false;
+		if (length > 0 && (input.charAt(0) == '-' || input.charAt(0) == '+')) {
+			negative = input.charAt(0) == '-';
+			i++;
+		}
+
+		long dollars = 0;
+		int dollarDigits = 0;
+		while (i < length && input.charAt(i) >= '0' && input.charAt(i) <= '9') {
+			if (++dollarDigits > MAX_DOLLAR_DIGITS) {
+				throw new NumberFormatException("Amount is too large: " + input);
+			}
+			dollars = dollars * 10 + (input.charAt(i++) - '0');
+		}
+
+		long fraction = 0;
+		int fractionDigits = 0;
+		if (i < length && input.charAt(i) == '.') {
+			i++;
+			while (i < length && input.charAt(i) >= '0' && input.charAt(i) <= '9') {
+				if (++fractionDigits > 2) {
+					throw new NumberFormatException("Amount has more than two decimal places: " + input);
+				}
+				fraction = fraction * 10 + (input.charAt(i++) - '0');
+			}
+		}
+
+		if (i != length || dollarDigits + fractionDigits == 0) {
+			throw new NumberFormatException("Not an amount: " + input);
+		}
+		if (fractionDigits == 1) {
+			fraction *= 10;
+		}
+		long cents = dollars * 100 + fraction;
+		return ofCents(negative ? -cents : cents);
+	}
+
+	/**
+	 * Returns this amount plus another.
+	 *
+	 * @param other the amount to add.
+	 * @return the sum.
+	 * @throws ArithmeticException If the result overflows.
+	 */
+	public Money plus(Money other) {
+		return ofCents(Math.addExact(cents, other.cents));
+	}
+
+	/**
+	 * Returns this amount minus another.
+	 *
+	 * @param other the amount to subtract.
+	 * @return the difference.
+	 * @throws ArithmeticException If the result overflows.
+	 */
+	public Money minus(Money other) {
+		return ofCents(Math.subtractExact(cents, other.cents));
+	}
+
+	/**
+	 * @return true if this amount is zero, false if not.
+	 */
+	public boolean isZero() {
+		return cents == 0;
+	}
+
+	/**
+	 * @return true if this amount is greater than zero, false if not.
+	 */
+	public boolean isPositive() {
+		return cents > 0;
+	}
+
+	/**
+	 * @return this amount in cents.
+	 */
+	public long toCents() {
+		return cents;
+	}
+
+	/**
+	 * Converts this amount to a decimal with two decimal places, for binding to a
+	 * DECIMAL column.
+	 *
+	 * @return the amount as a BigDecimal.
+	 */
+	public BigDecimal toBigDecimal() {
+		return BigDecimal.valueOf(cents, 2);
+	}
+
+	/**
+	 * Appends this amount with exactly two decimal places, such as "1234.50", to
+	 * the given builder.
+	 *
+	 * @param builder the builder to append to.
+	 * @return the same builder.
+	 */
+	public StringBuilder appendTo(StringBuilder builder) {
+		long dollars = cents / 100;
+		int remainder = (int) Math.abs(cents % 100);
+		if (cents < 0 && dollars == 0) {
+			builder.append('-'); // Keep the sign of amounts under a dollar
+		}
+		builder.append(dollars).append('.');
+		if (remainder < 10) {
+			builder.append('0');
+		}
+		return builder.append(remainder);
+	}
+
+	@Override
+	public int compareTo(Money other) {
+		return Long.compare(cents, other.cents);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof Money && ((Money) obj).cents == cents;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(cents);
+	}
+
+	/**
+	 * Returns this amount with exactly two decimal places, such as "1234.50".
+	 */
+	@Override
+	public String toString() {
+		return appendTo(new StringBuilder(24)).toString();
+	}
+}
@@ -0,0 +1,56 @@
+package io.github.wangster6.bank;
+
+/**
+ * A user that is about to be created, with their password already hashed.
+ *
+ * @author wangster6
+ */
+public final class NewUser {
+	private final String firstName;
+	private final String lastName;
+	private final String username;
+	private final String hashedPassword;
+
+	/**
+	 * Constructs a new NewUser.
+	 *
+	 * @param firstName      the user's first name.
+	 * @param lastName       the user's last name.
+	 * @param username       the user's username.
+	 * @param hashedPassword the BCrypt hash of the user's password.
+	 */
+	public NewUser(String firstName, String lastName, String username, String hashedPassword) {
+		this.firstName = firstName;
+		this.lastName = lastName;
+		this.username = username;
+		this.hashedPassword = hashedPassword;
+	}
+
+	/**
+	 * @return the user's first name.
+	 */
+	public String getFirstName() {
+		return firstName;
+	}
+
+	/**
+	 * @return the user's last name.
+	 */
+	public String getLastName() {
+		return lastName;
+	}
+
+	/**
+	 * @return the user's username.
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * @return the BCrypt hash of the user's password.
+	 */
+	public String getHashedPassword() {
+		return hashedPassword;
+	}
+}
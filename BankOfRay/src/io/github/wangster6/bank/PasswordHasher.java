@@ -0,0 +1,242 @@
+package io.github.wangster6.bank;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import io.github.wangster6.config.AppConfig;
+import io.github.wangster6.config.ConfigManager;
+import io.github.wangster6.metrics.Metrics;
+import io.github.wangster6.metrics.OperationMetrics;
+
+/**
+ * Runs BCrypt hashing and verification on a dedicated pool of threads sized to
+ * the number of CPUs, so a burst of logins cannot starve the threads serving
+ * sessions. The pool's queue is bounded: once it is full, new requests fail
+ * immediately with a {@link RejectedExecutionException} instead of piling up.
+ * <p>
+ * The cost factor used for new hashes is either taken from the configuration
+ * or calibrated at startup so that one hash takes about the configured target
+ * time on this machine.
+ *
+ * @author wangster6
+ */
+public class PasswordHasher {
+	/** Highest cost factor BCrypt supports */
+	private static final int MAX_COST = 31;
+	private static final OperationMetrics HASH_METRICS = Metrics.operation("bcrypt.hash");
+	private static final OperationMetrics VERIFY_METRICS = Metrics.operation("bcrypt.verify");
+	private static final OperationMetrics QUEUE_WAIT_METRICS = Metrics.operation("bcrypt.queueWait");
+
+	private static PasswordHasher shared;
+
+	private final ThreadPoolExecutor executor;
+	private volatile int cost;
+
+	/**
+	 * Constructs a new PasswordHasher.
+	 *
+	 * @param threads    the number of hashing threads.
+	 * @param queueDepth the maximum number of requests waiting for a thread.
+	 * @param cost       the cost factor used for new hashes.
+	 */
+	public PasswordHasher(int threads, int queueDepth, int cost) {
+		this(newExecutor(threads, queueDepth), cost);
+	}
+
+	/**
+	 * Constructs a new PasswordHasher that hashes on the given pool.
+	 *
+	 * @param executor the pool to hash on, which must reject what it cannot
+	 *                 queue.
+	 * @param cost     the cost factor used for new hashes.
+	 */
+	PasswordHasher(ThreadPoolExecutor executor, int cost) {
+		this.executor = executor;
+		this.cost = cost;
+	}
+
+	/**
+	 * Creates a pool of daemon hashing threads with a bounded queue.
+	 *
+	 * @param threads    the number of hashing threads.
+	 * @param queueDepth the maximum number of requests waiting for a thread.
+	 * @return the pool.
+	 */
+	private static ThreadPoolExecutor newExecutor(int threads, int queueDepth) {
+		AtomicInteger count = new AtomicInteger();
+		return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueDepth),
+				r -> {
+					Thread thread = new Thread(r, "password-hasher-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Returns the hasher shared by every session, creating it from the
+	 * configuration on first use. Calibration, if enabled, runs at that point
+	 * and again whenever the configuration is reloaded.
+	 *
+	 * @return the shared PasswordHasher.
+	 * @throws UncheckedIOException If the configuration cannot be loaded.
+	 */
+	public static synchronized PasswordHasher shared() {
+		if (shared == null) {
+			AppConfig config;
+			try {
+				config = ConfigManager.get();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			int threads = config.getBcryptThreads() > 0 ? config.getBcryptThreads()
+					: Runtime.getRuntime().availableProcessors();
+			PasswordHasher hasher = new PasswordHasher(threads, config.getBcryptQueueDepth(), costFor(config));
+			ConfigManager.addListener(reloaded -> hasher.cost = costFor(reloaded));
+			shared = hasher;
+		}
+		return shared;
+	}
+
+	/**
+	 * Hashes a password with the current cost factor.
+	 *
+	 * @param password the password to hash.
+	 * @return a future completed with the hash, or failed with a
+	 *         RejectedExecutionException if the hasher is saturated.
+	 */
+	public CompletableFuture<String> hash(String password) {
+		int rounds = cost;
+		try {
+			return CompletableFuture.supplyAsync(timed(() -> BCrypt.hashpw(password, BCrypt.gensalt(rounds)), HASH_METRICS),
+					executor);
+		} catch (RejectedExecutionException e) {
+			QUEUE_WAIT_METRICS.recordError();
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Checks a password against a stored hash.
+	 *
+	 * @param password       the password to check.
+	 * @param hashedPassword the stored hash.
+	 * @return a future completed with true if the password matches, or failed
+	 *         with a RejectedExecutionException if the hasher is saturated.
+	 */
+	public CompletableFuture<Boolean> verify(String password, String hashedPassword) {
+		try {
+			return CompletableFuture.supplyAsync(timed(() -> BCrypt.checkpw(password, hashedPassword), VERIFY_METRICS),
+					executor);
+		} catch (RejectedExecutionException e) {
+			QUEUE_WAIT_METRICS.recordError();
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Wraps a BCrypt call so the time it waits in the queue and the time it runs
+	 * are both recorded.
+	 *
+	 * @param <T>     the result type of the call.
+	 * @param call    the BCrypt call.
+	 * @param metrics the metrics to record the running time in.
+	 * @return the wrapped call.
+	 */
+	private static <T> Supplier<T> timed(Supplier<T> call, OperationMetrics metrics) {
+		long submitted = System.nanoTime();
+		return () -> {
+			long start = System.nanoTime();
+			QUEUE_WAIT_METRICS.record(start - submitted);
+			try {
+				return call.get();
+			} catch (RuntimeException e) {
+				metrics.recordError();
+				throw e;
+			} finally {
+				metrics.recordSince(start);
+			}
+		};
+	}
+
+	/**
+	 * Checks whether a stored hash was made with a lower cost factor than the one
+	 * currently used for new hashes.
+	 *
+	 * @param hashedPassword the stored hash, such as "$2a$10$...".
+	 * @return true if the password should be hashed again, false if not.
+	 */
+	public boolean needsRehash(String hashedPassword) {
+		return costOf(hashedPassword) < cost;
+	}
+
+	/**
+	 * @return the cost factor used for new hashes.
+	 */
+	public int getCost() {
+		return cost;
+	}
+
+	/**
+	 * Reads the cost factor out of a BCrypt hash.
+	 *
+	 * @param hashedPassword the hash, such as "$2a$10$...".
+	 * @return the cost factor, or MAX_COST if the hash is not in the expected
+	 *         format so that it is never rehashed.
+	 */
+	static int costOf(String hashedPassword) {
+		int end = hashedPassword.indexOf('$', 4);
+		if (end != 6 || !hashedPassword.startsWith("$2")) {
+			return MAX_COST;
+		}
+		try {
+			return Integer.parseInt(hashedPassword.substring(4, 6));
+		} catch (NumberFormatException e) {
+			return MAX_COST;
+		}
+	}
+
+	/**
+	 * Returns the cost factor a configuration asks for, calibrating it if a
+	 * target time is set.
+	 *
+	 * @param config the configuration.
+	 * @return the cost factor.
+	 */
+	private static int costFor(AppConfig config) {
+		return config.getBcryptTargetMillis() > 0 ? calibrate(config.getBcryptCost(), config.getBcryptTargetMillis())
+				: config.getBcryptCost();
+	}
+
+	/**
+	 * Finds the cost factor whose hashing time is closest to, without going over,
+	 * the target. Hashing time doubles with every step of the cost factor, so
+	 * only the minimum cost is measured and the rest is extrapolated.
+	 *
+	 * @param minCost      the lowest cost factor to use.
+	 * @param targetMillis the target time for one hash, in milliseconds.
+	 * @return the calibrated cost factor.
+	 */
+	static int calibrate(int minCost, long targetMillis) {
+		String salt = BCrypt.gensalt(minCost);
+		BCrypt.hashpw("calibration1", salt); // Warm up
+		long start = System.nanoTime();
+		BCrypt.hashpw("calibration1", salt);
+		double millis = Math.max((System.nanoTime() - start) / 1e6, 0.001);
+
+		int calibrated = minCost;
+		while (calibrated < MAX_COST && millis * 2 <= targetMillis) {
+			calibrated++;
+			millis *= 2;
+		}
+		return calibrated;
+	}
+}
@@ -3,7 +3,7 @@
  */
 package io.github.wangster6.bank;
 
-import java.util.regex.Pattern;
+import io.github.wangster6.validation.ValidationPolicy;
 
 /**
  * Utility class containing methods for working with passwords.
@@ -18,28 +18,17 @@ public class PasswordUtils {
      * @return true if the input contains only letters, false if it does not
      */
 	public static boolean containsOnlyLetters(String input) {
-		return Pattern.matches("[a-zA-Z]+", input);
+		return ValidationPolicy.NAME.isValid(input);
 	}
 
 	/**
-	 * Checks if the inputted String meets all the requirements for a password.
+	 * Checks if the inputted String meets all the requirements for a password:
+	 * at least one letter, at least one number, and between 5 and 15 characters.
 	 * 
 	 * @param input the inputted String to check
 	 * @return true if the input is a valid password, false if it is not
 	 */
 	public static boolean isValidPassword(String input) {
-		// Check if the input contains at least one letter
-		if (!input.matches(".*[a-zA-Z].*")) {
-			return false;
-		}
-
-		// Check if the input contains at least one number
-		if (!input.matches(".*[0-9].*")) {
-			return false;
-		}
-
-		// Check if the input is between 5 and 15 characters in length
-		int length = input.length();
-		return length >= 5 && length <= 15;
+		return ValidationPolicy.PASSWORD.isValid(input);
 	}
-}
\ No newline at end of file
+}
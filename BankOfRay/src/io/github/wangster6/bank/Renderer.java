@@ -0,0 +1,272 @@
+package io.github.wangster6.bank;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Collects everything one session prints in a private byte buffer and writes
+ * it to the session's stream in one call when the session is about to wait for
+ * input. Text is encoded as UTF-8 straight into the buffer, and the constant
+ * strings in {@link Messages} are encoded once for the whole application, both
+ * with and without their ANSI colour codes, so printing them is a plain copy.
+ * <p>
+ * With ANSI disabled, colour and style codes are left out, for clients such as
+ * log files or terminals that would show them as garbage.
+ * <p>
+ * A Renderer belongs to a single session and is not thread safe.
+ *
+ * @author wangster6
+ */
+public final class Renderer {
+	/** Initial size of the buffer, enough for any single prompt */
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+	/** The UTF-8 encodings of every Messages constant, with and without ANSI codes */
+	private static final Map<String, byte[][]> ENCODED_MESSAGES = encodeMessages();
+
+	private final OutputStream out;
+	private final boolean ansi;
+	private final StringBuilder scratch = new StringBuilder(32);
+	private byte[] buffer = new byte[INITIAL_CAPACITY];
+	private int length;
+
+	/**
+	 * Constructs a new Renderer.
+	 *
+	 * @param out  the stream of the session.
+	 * @param ansi true to print ANSI colour and style codes, false to leave them
+	 *             out.
+	 */
+	public Renderer(OutputStream out, boolean ansi) {
+		this.out = out;
+		this.ansi = ansi;
+	}
+
+	/**
+	 * Prints text.
+	 *
+	 * @param text the text to print.
+	 * @return this Renderer.
+	 */
+	public Renderer print(CharSequence text) {
+		byte[][] encoded = text instanceof String ? ENCODED_MESSAGES.get(text) : null;
+		if (encoded != null) {
+			byte[] bytes = encoded[ansi ? 0 : 1];
+			ensureCapacity(bytes.length);
+			System.arraycopy(bytes, 0, buffer, length, bytes.length);
+			length += bytes.length;
+		} else {
+			encode(text);
+		}
+		return this;
+	}
+
+	/**
+	 * Prints text followed by a line separator.
+	 *
+	 * @param text the text to print.
+	 * @return this Renderer.
+	 */
+	public Renderer println(CharSequence text) {
+		return print(text).println();
+	}
+
+	/**
+	 * Prints a line separator.
+	 *
+	 * @return this Renderer.
+	 */
+	public Renderer println() {
+		ensureCapacity(LINE_SEPARATOR.length);
+		System.arraycopy(LINE_SEPARATOR, 0, buffer, length, LINE_SEPARATOR.length);
+		length += LINE_SEPARATOR.length;
+		return this;
+	}
+
+	/**
+	 * Prints an amount of money in the same format as
+	 * {@link Money#appendTo(StringBuilder)}, such as "-0.05" or "1234.50".
+	 *
+	 * @param amount the amount to print.
+	 * @return this Renderer.
+	 */
+	public Renderer print(Money amount) {
+		long cents = amount.toCents();
+		long dollars = cents / 100;
+		int remainder = (int) Math.abs(cents % 100);
+		ensureCapacity(24);
+		if (cents < 0 && dollars == 0) {
+			buffer[length++] = '-'; // Keep the sign of amounts under a dollar
+		}
+		printLong(dollars);
+		buffer[length++] = '.';
+		buffer[length++] = (byte) ('0' + remainder / 10);
+		buffer[length++] = (byte) ('0' + remainder % 10);
+		return this;
+	}
+
+	/**
+	 * Prints a date or time.
+	 *
+	 * @param formatter the format to print it in.
+	 * @param temporal  the date or time to print.
+	 * @return this Renderer.
+	 */
+	public Renderer print(DateTimeFormatter formatter, TemporalAccessor temporal) {
+		scratch.setLength(0);
+		formatter.formatTo(temporal, scratch);
+		return print(scratch);
+	}
+
+	/**
+	 * Writes everything printed since the last flush to the session's stream and
+	 * flushes the stream.
+	 *
+	 * @throws UncheckedIOException If the stream cannot be written to, such as
+	 *                              when the client has disconnected.
+	 */
+	public void flush() {
+		try {
+			if (length > 0) {
+				out.write(buffer, 0, length);
+				length = 0;
+			}
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Encodes text as UTF-8 into the buffer, leaving out ANSI escape sequences if
+	 * ANSI is disabled.
+	 *
+	 * @param text the text to encode.
+	 */
+	private void encode(CharSequence text) {
+		int end = text.length();
+		ensureCapacity(end * 3);
+		for (int i = 0; i < end; i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				if (c == '\u001B' && !ansi) {
+					i = skipEscape(text, i);
+				} else {
+					buffer[length++] = (byte) c;
+				}
+			} else if (c < 0x800) {
+				buffer[length++] = (byte) (0xC0 | c >> 6);
+				buffer[length++] = (byte) (0x80 | c & 0x3F);
+			} else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, text.charAt(++i));
+				buffer[length++] = (byte) (0xF0 | codePoint >> 18);
+				buffer[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+				buffer[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+				buffer[length++] = (byte) (0x80 | codePoint & 0x3F);
+			} else if (Character.isSurrogate(c)) {
+				buffer[length++] = '?'; // Unpaired surrogate, as String.getBytes would
+			} else {
+				buffer[length++] = (byte) (0xE0 | c >> 12);
+				buffer[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+				buffer[length++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+	}
+
+	/**
+	 * Finds the end of an ANSI escape sequence such as "\u001B[1;4m".
+	 *
+	 * @param text  the text containing the sequence.
+	 * @param start the index of the escape character.
+	 * @return the index of the last character of the sequence.
+	 */
+	private static int skipEscape(CharSequence text, int start) {
+		if (start + 1 >= text.length() || text.charAt(start + 1) != '[') {
+			return start; // A lone escape character is dropped on its own
+		}
+		int i = start + 2;
+		while (i < text.length() && (text.charAt(i) < '@' || text.charAt(i) > '~')) {
+			i++;
+		}
+		return Math.min(i, text.length() - 1);
+	}
+
+	/**
+	 * Prints a whole number without creating a String for it.
+	 *
+	 * @param value the number to print. The buffer must have room for 20 bytes.
+	 */
+	private void printLong(long value) {
+		if (value < 0) {
+			buffer[length++] = '-';
+		} else {
+			value = -value; // Work with negative numbers so Long.MIN_VALUE fits
+		}
+		int digits = 1;
+		for (long rest = value / 10; rest != 0; rest /= 10) {
+			digits++;
+		}
+		for (int i = length + digits - 1; i >= length; i--) {
+			buffer[i] = (byte) ('0' - value % 10);
+			value /= 10;
+		}
+		length += digits;
+	}
+
+	/**
+	 * Grows the buffer so that at least the given number of bytes fit after what
+	 * has already been printed.
+	 *
+	 * @param extra the number of bytes about to be printed.
+	 */
+	private void ensureCapacity(int extra) {
+		if (length + extra > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+		}
+	}
+
+	/**
+	 * Encodes every public String constant of {@link Messages} once, with and
+	 * without its ANSI codes. Constants are looked up by identity, which is
+	 * enough because every use of a constant refers to the same interned String.
+	 *
+	 * @return the encodings of each constant.
+	 */
+	private static Map<String, byte[][]> encodeMessages() {
+		Map<String, byte[][]> encoded = new IdentityHashMap<>();
+		for (Field field : Messages.class.getFields()) {
+			if (field.getType() != String.class || !Modifier.isStatic(field.getModifiers())) {
+				continue;
+			}
+			try {
+				String message = (String) field.get(null);
+				encoded.put(message, new byte[][] { encodeOnce(message, true), encodeOnce(message, false) });
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return encoded;
+	}
+
+	/**
+	 * Encodes text with a throwaway Renderer.
+	 *
+	 * @param text the text to encode.
+	 * @param ansi whether to keep ANSI codes.
+	 * @return the encoded bytes.
+	 */
+	private static byte[] encodeOnce(String text, boolean ansi) {
+		Renderer renderer = new Renderer(OutputStream.nullOutputStream(), ansi);
+		renderer.encode(text);
+		return Arrays.copyOf(renderer.buffer, renderer.length);
+	}
+}
@@ -0,0 +1,37 @@
+package io.github.wangster6.bank;
+
+/**
+ * The balances of both accounts right after a transfer between them, as
+ * produced by the transfer itself.
+ *
+ * @author wangster6
+ */
+public final class TransferResult {
+	private final Money fromBalance;
+	private final Money toBalance;
+
+	/**
+	 * Constructs a new TransferResult.
+	 *
+	 * @param fromBalance the balance of the account the money was taken from.
+	 * @param toBalance   the balance of the account the money was given to.
+	 */
+	public TransferResult(Money fromBalance, Money toBalance) {
+		this.fromBalance = fromBalance;
+		this.toBalance = toBalance;
+	}
+
+	/**
+	 * @return the balance of the account the money was taken from.
+	 */
+	public Money getFromBalance() {
+		return fromBalance;
+	}
+
+	/**
+	 * @return the balance of the account the money was given to.
+	 */
+	public Money getToBalance() {
+		return toBalance;
+	}
+}
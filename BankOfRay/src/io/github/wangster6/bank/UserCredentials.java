@@ -0,0 +1,69 @@
+package io.github.wangster6.bank;
+
+/**
+ * A user's stored password hash together with everything needed to start their
+ * session. It is fetched once when a username is entered at login and held for
+ * the rest of that login attempt, so password retries do not query the
+ * database again.
+ *
+ * @author wangster6
+ */
+public class UserCredentials {
+	private final int userId;
+	private final int accountId;
+	private final String username;
+	private final String firstName;
+	private final String hashedPassword;
+	private final Money balance;
+
+	/**
+	 * Constructs a new set of credentials.
+	 *
+	 * @param userId         the ID of the user's row in the "users" table.
+	 * @param accountId      the ID of the user's account.
+	 * @param username       the user's username.
+	 * @param firstName      the user's first name.
+	 * @param hashedPassword the BCrypt hash of the user's password.
+	 * @param balance        the balance of the user's account.
+	 */
+	public UserCredentials(int userId, int accountId, String username, String firstName, String hashedPassword,
+			Money balance) {
+		this.userId = userId;
+		this.accountId = accountId;
+		this.username = username;
+		this.firstName = firstName;
+		this.hashedPassword = hashedPassword;
+		this.balance = balance;
+	}
+
+	/**
+	 * @return the ID of the user's row in the "users" table.
+	 */
+	public int getUserId() {
+		return userId;
+	}
+
+	/**
+	 * @return the username of the user.
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * @return the BCrypt hash of the user's password.
+	 */
+	public String getHashedPassword() {
+		return hashedPassword;
+	}
+
+	/**
+	 * Creates the session for these credentials once the password has been
+	 * verified.
+	 *
+	 * @return a new session for the user.
+	 */
+	public AccountSession toSession() {
+		return new AccountSession(userId, accountId, username, firstName, balance);
+	}
+}
@@ -0,0 +1,234 @@
+package io.github.wangster6.bank;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.github.wangster6.config.AppConfig;
+import io.github.wangster6.config.ConfigManager;
+import io.github.wangster6.storage.StorageEngines;
+import io.github.wangster6.storage.UserStore;
+
+/**
+ * Answers "is this username taken?" for signup mostly without touching the
+ * database. A Bloom filter of every username gives negatives, and a bounded
+ * cache remembers usernames confirmed to exist; only the remaining cases are
+ * looked up. The filter is built by streaming the "users" table in the
+ * background, kept current as users sign up, and rebuilt periodically to pick
+ * up users created by other processes. Until the first build completes, every
+ * question goes to the database.
+ * <p>
+ * A negative only covers the users this process has seen, so it is a hint and
+ * not an answer: logins and transfers must look usernames up in the store. The
+ * filter holds usernames in lower case, matching the case-insensitive
+ * collation of the "users.username" column, so a username that differs only in
+ * case from an existing one is never ruled out.
+ *
+ * @author wangster6
+ */
+public class UsernameIndex {
+	/** False positive rate the Bloom filter is sized for */
+	private static final double FALSE_POSITIVE_RATE = 0.01;
+	/** Smallest number of usernames the Bloom filter is sized for */
+	private static final long MIN_CAPACITY = 1024;
+
+	private static UsernameIndex shared;
+
+	private final UserStore users;
+	private final Map<String, Boolean> knownUsernames;
+	private final AtomicBoolean rebuilding = new AtomicBoolean();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "username-index");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private volatile BloomFilter filter;
+
+	/** Keys of usernames added while a rebuild is streaming the table, guarded by this */
+	private List<String> addedDuringRebuild;
+
+	/**
+	 * Constructs a new, empty UsernameIndex. Call {@link #rebuild()} or
+	 * {@link #start(long)} to build it.
+	 *
+	 * @param users     the store to read usernames from.
+	 * @param cacheSize the maximum number of usernames remembered as existing.
+	 */
+	public UsernameIndex(UserStore users, int cacheSize) {
+		this.users = users;
+		this.knownUsernames = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns the index shared by every session, creating it from the
+	 * configuration on first use. If the index is enabled, it starts building in
+	 * the background at that point.
+	 *
+	 * @return the shared UsernameIndex.
+	 * @throws UncheckedIOException If the configuration cannot be loaded.
+	 */
+	public static synchronized UsernameIndex shared() {
+		if (shared == null) {
+			AppConfig config;
+			try {
+				config = ConfigManager.get();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			shared = new UsernameIndex(StorageEngines.shared().users(), config.getUsernameIndexCacheSize());
+			if (config.isUsernameIndexEnabled()) {
+				shared.start(config.getUsernameIndexRefreshMillis());
+			}
+		}
+		return shared;
+	}
+
+	/**
+	 * Builds the index in the background, and rebuilds it periodically.
+	 *
+	 * @param refreshMillis how often to rebuild, in milliseconds, or 0 to only
+	 *                      build once.
+	 */
+	public void start(long refreshMillis) {
+		if (refreshMillis > 0) {
+			scheduler.scheduleWithFixedDelay(this::rebuild, 0, refreshMillis, TimeUnit.MILLISECONDS);
+		} else {
+			scheduler.execute(this::rebuild);
+		}
+	}
+
+	/**
+	 * Builds a new Bloom filter from every username in the database and swaps it
+	 * in. Usernames added while the table is being read are carried over, so none
+	 * are lost. Does nothing if a rebuild is already running.
+	 */
+	public void rebuild() {
+		if (!rebuilding.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			synchronized (this) {
+				addedDuringRebuild = new ArrayList<>();
+			}
+			BloomFilter next = new BloomFilter(Math.max(MIN_CAPACITY, 2 * users.count()), FALSE_POSITIVE_RATE);
+			users.forEachUsername(username -> next.put(key(username)));
+			synchronized (this) {
+				for (String key : addedDuringRebuild) {
+					next.put(key);
+				}
+				filter = next;
+			}
+		} catch (SQLException | IOException e) {
+			e.printStackTrace(); // Keep using the previous filter, if any
+		} finally {
+			synchronized (this) {
+				addedDuringRebuild = null;
+			}
+			rebuilding.set(false);
+		}
+	}
+
+	/**
+	 * Checks whether a username may exist, without querying the database. A
+	 * false answer only means no user by that name, in any case, was known to
+	 * this process when the filter was last built or added to.
+	 *
+	 * @param username the username to check.
+	 * @return false if the username is not known to exist, true if it might.
+	 */
+	public boolean mightExist(String username) {
+		BloomFilter current = filter;
+		return current == null || current.mightContain(key(username));
+	}
+
+	/**
+	 * Checks whether a username is taken, as a hint for signup. Only usernames
+	 * that the Bloom filter cannot rule out and that are not already known to
+	 * exist are looked up in the database.
+	 *
+	 * @param username the username to check.
+	 * @return true if the username exists, false otherwise.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	public boolean exists(String username) throws SQLException, IOException {
+		if (!mightExist(username)) {
+			return false;
+		}
+		synchronized (knownUsernames) {
+			if (knownUsernames.containsKey(username)) {
+				return true;
+			}
+		}
+		boolean exists = users.exists(username);
+		if (exists) {
+			synchronized (knownUsernames) {
+				knownUsernames.put(username, Boolean.TRUE);
+			}
+		}
+		return exists;
+	}
+
+	/**
+	 * Records a username that was just created. Starts a rebuild in the background
+	 * if the Bloom filter now holds more usernames than it was sized for.
+	 *
+	 * @param username the new username.
+	 */
+	public void added(String username) {
+		String key = key(username);
+		synchronized (this) {
+			BloomFilter current = filter;
+			if (current != null) {
+				current.put(key);
+				if (current.isSaturated()) {
+					scheduler.execute(this::rebuild);
+				}
+			}
+			if (addedDuringRebuild != null) {
+				addedDuringRebuild.add(key);
+			}
+		}
+		synchronized (knownUsernames) {
+			knownUsernames.put(username, Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Records a username that was just deleted. The Bloom filter cannot forget
+	 * it, so later checks for it fall through to the database until the next
+	 * rebuild. Usernames that differ from it only in case are forgotten as well,
+	 * since the database treats them as the same.
+	 *
+	 * @param username the deleted username.
+	 */
+	public void removed(String username) {
+		synchronized (knownUsernames) {
+			knownUsernames.keySet().removeIf(known -> known.equalsIgnoreCase(username));
+		}
+	}
+
+	/**
+	 * Returns the Bloom filter key of a username, which ignores case like the
+	 * collation of the "users.username" column.
+	 */
+	private static String key(String username) {
+		return username.toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,431 @@
+package io.github.wangster6.bulk;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import io.github.wangster6.bank.NewUser;
+import io.github.wangster6.bank.PasswordHasher;
+import io.github.wangster6.config.ConfigManager;
+import io.github.wangster6.database.repo.UserRepository;
+import io.github.wangster6.storage.StorageEngines;
+import io.github.wangster6.storage.UserStore;
+import io.github.wangster6.validation.ValidationPolicy;
+import io.github.wangster6.validation.Violation;
+
+/**
+ * Imports users from a CSV file with the columns first_name, last_name,
+ * username and password. Every user gets a new account with a balance of 0,
+ * exactly as if they had signed up.
+ * <p>
+ * The file is streamed in chunks. Each chunk is validated, checked against
+ * existing usernames with one query, and has its passwords hashed in parallel
+ * on every core, while the previous chunk is inserted in one transaction with
+ * batched inserts. Rows that cannot be imported are written to a rejects file
+ * together with the reasons. Any other error stops the import, leaving the
+ * chunks committed before it imported.
+ *
+ * @author wangster6
+ */
+public class BulkImporter {
+	/** Number of rows validated, hashed and inserted together */
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+	private static final String HEADER = "first_name,last_name,username,password";
+	private static final String REJECTS_HEADER = "line,username,reasons";
+
+	private final UserStore users;
+	private final PasswordHasher hasher;
+	private final int chunkSize;
+
+	private long imported;
+	private long rejected;
+
+	/**
+	 * Constructs a new BulkImporter.
+	 *
+	 * @param users     the store to create users with.
+	 * @param hasher    the hasher to hash passwords with. Its queue must hold at
+	 *                  least two chunks.
+	 * @param chunkSize the number of rows inserted per transaction.
+	 */
+	public BulkImporter(UserStore users, PasswordHasher hasher, int chunkSize) {
+		this.users = users;
+		this.hasher = hasher;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Imports every row of a CSV file.
+	 *
+	 * @param csv     the CSV file, optionally starting with a header line.
+	 * @param rejects where to write the rows that were not imported.
+	 * @return the number of users imported and rows rejected.
+	 * @throws IOException  If the file cannot be read or the rejects cannot be
+	 *                      written.
+	 * @throws SQLException If the database cannot be queried or written for any
+	 *                      reason other than a taken username. Chunks committed
+	 *                      before the error stay imported.
+	 */
+	public Result importCsv(BufferedReader csv, Writer rejects) throws IOException, SQLException {
+		imported = 0;
+		rejected = 0;
+		rejects.write(REJECTS_HEADER);
+		rejects.write(System.lineSeparator());
+
+		Set<String> seenUsernames = new HashSet<>();
+		List<Row> rows = new ArrayList<>(chunkSize);
+		Chunk hashing = null; // The chunk whose passwords are being hashed
+		int lineNumber = 0;
+		String line;
+		while ((line = csv.readLine()) != null) {
+			lineNumber++;
+			if (line.isEmpty() || (lineNumber == 1 && HEADER.equalsIgnoreCase(line.trim()))) {
+				continue;
+			}
+			Row row = parseRow(lineNumber, line, seenUsernames, rejects);
+			if (row != null) {
+				rows.add(row);
+			}
+			if (rows.size() == chunkSize) {
+				Chunk next = startChunk(rows, rejects);
+				if (hashing != null) {
+					finishChunk(hashing, rejects); // Insert while the next chunk is hashed
+				}
+				hashing = next;
+				rows = new ArrayList<>(chunkSize);
+			}
+		}
+
+		Chunk last = rows.isEmpty() ? null : startChunk(rows, rejects);
+		if (hashing != null) {
+			finishChunk(hashing, rejects);
+		}
+		if (last != null) {
+			finishChunk(last, rejects);
+		}
+		rejects.flush();
+		return new Result(imported, rejected);
+	}
+
+	/**
+	 * Parses and validates one line of the file. Rows that are malformed, invalid
+	 * or repeat a username seen earlier in the file are rejected.
+	 *
+	 * @param lineNumber    the line number, starting at 1.
+	 * @param line          the line.
+	 * @param seenUsernames the usernames of every valid row so far.
+	 * @param rejects       where to write the row if it is rejected.
+	 * @return the row, or null if it was rejected.
+	 * @throws IOException If the rejects cannot be written.
+	 */
+	private Row parseRow(int lineNumber, String line, Set<String> seenUsernames, Writer rejects) throws IOException {
+		List<String> fields = parseLine(line);
+		if (fields == null || fields.size() != 4) {
+			reject(rejects, lineNumber, "", "MALFORMED_ROW");
+			return null;
+		}
+
+		String firstName = fields.get(0);
+		String lastName = fields.get(1);
+		String username = fields.get(2);
+		String password = fields.get(3);
+		int firstNameViolations = ValidationPolicy.NAME.validate(firstName);
+		int lastNameViolations = ValidationPolicy.NAME.validate(lastName);
+		int usernameViolations = ValidationPolicy.USERNAME.validate(username);
+		int passwordViolations = ValidationPolicy.PASSWORD.validate(password);
+		if ((firstNameViolations | lastNameViolations | usernameViolations | passwordViolations) != 0) {
+			StringBuilder reasons = new StringBuilder();
+			appendViolations(reasons, "first_name", firstNameViolations);
+			appendViolations(reasons, "last_name", lastNameViolations);
+			appendViolations(reasons, "username", usernameViolations);
+			appendViolations(reasons, "password", passwordViolations);
+			reject(rejects, lineNumber, username, reasons.toString());
+			return null;
+		}
+		if (!seenUsernames.add(username)) {
+			reject(rejects, lineNumber, username, "DUPLICATE_IN_FILE");
+			return null;
+		}
+		return new Row(lineNumber, firstName.toUpperCase(), lastName.toUpperCase(), username, password);
+	}
+
+	/**
+	 * Rejects the rows whose usernames are already taken and starts hashing the
+	 * passwords of the rest.
+	 *
+	 * @param rows    the valid rows of the chunk.
+	 * @param rejects where to write rejected rows.
+	 * @return the chunk, with its hashes in progress.
+	 * @throws IOException  If the rejects cannot be written.
+	 * @throws SQLException If the existing usernames cannot be looked up.
+	 */
+	private Chunk startChunk(List<Row> rows, Writer rejects) throws IOException, SQLException {
+		List<String> usernames = new ArrayList<>(rows.size());
+		for (Row row : rows) {
+			usernames.add(row.username);
+		}
+		Set<String> taken = users.findExisting(usernames);
+
+		Chunk chunk = new Chunk(rows.size());
+		for (Row row : rows) {
+			if (taken.contains(row.username)) {
+				reject(rejects, row.lineNumber, row.username, "USERNAME_TAKEN");
+			} else {
+				chunk.rows.add(row);
+				chunk.hashes.add(hasher.hash(row.password));
+			}
+		}
+		return chunk;
+	}
+
+	/**
+	 * Waits for the passwords of a chunk to be hashed and inserts the chunk in
+	 * one transaction. If a username was taken in the meantime, the rows are
+	 * inserted one at a time so only the taken ones are rejected. Any other
+	 * error is thrown, since retrying row by row would only fail the same way
+	 * for every row.
+	 *
+	 * @param chunk   the chunk to insert.
+	 * @param rejects where to write rejected rows.
+	 * @throws IOException  If the rejects cannot be written, or the store
+	 *                      configuration cannot be loaded.
+	 * @throws SQLException If the chunk cannot be inserted for any reason other
+	 *                      than a taken username.
+	 */
+	private void finishChunk(Chunk chunk, Writer rejects) throws IOException, SQLException {
+		List<Row> rows = new ArrayList<>(chunk.rows.size());
+		List<NewUser> newUsers = new ArrayList<>(chunk.rows.size());
+		for (int i = 0; i < chunk.rows.size(); i++) {
+			Row row = chunk.rows.get(i);
+			try {
+				newUsers.add(new NewUser(row.firstName, row.lastName, row.username, chunk.hashes.get(i).join()));
+				rows.add(row);
+			} catch (CompletionException e) {
+				reject(rejects, row.lineNumber, row.username, "HASH_FAILED");
+			}
+		}
+		if (newUsers.isEmpty()) {
+			return;
+		}
+
+		try {
+			users.createAll(newUsers);
+			imported += newUsers.size();
+			return;
+		} catch (SQLException e) {
+			if (!UserRepository.isDuplicateKey(e)) {
+				throw e;
+			}
+			// Fall back to one row at a time below
+		}
+		for (int i = 0; i < newUsers.size(); i++) {
+			try {
+				users.createAll(Collections.singletonList(newUsers.get(i)));
+				imported++;
+			} catch (SQLException e) {
+				if (!UserRepository.isDuplicateKey(e)) {
+					throw e;
+				}
+				reject(rejects, rows.get(i).lineNumber, rows.get(i).username, "USERNAME_TAKEN");
+			}
+		}
+	}
+
+	/**
+	 * Appends the violations of one field to a list of reasons.
+	 *
+	 * @param reasons    the reasons so far.
+	 * @param field      the name of the field.
+	 * @param violations the {@link Violation} bits of the field.
+	 */
+	private static void appendViolations(StringBuilder reasons, String field, int violations) {
+		for (Violation violation : Violation.values()) {
+			if (violation.isIn(violations)) {
+				if (reasons.length() > 0) {
+					reasons.append(';');
+				}
+				reasons.append(field).append(':').append(violation.name());
+			}
+		}
+	}
+
+	/**
+	 * Writes one rejected row to the rejects file.
+	 *
+	 * @param rejects    the rejects file.
+	 * @param lineNumber the line number of the row.
+	 * @param username   the username of the row, or "" if unknown.
+	 * @param reasons    why the row was rejected.
+	 * @throws IOException If the rejects cannot be written.
+	 */
+	private void reject(Writer rejects, int lineNumber, String username, String reasons) throws IOException {
+		rejected++;
+		rejects.write(Integer.toString(lineNumber));
+		rejects.write(',');
+		rejects.write(quote(username));
+		rejects.write(',');
+		rejects.write(quote(reasons));
+		rejects.write(System.lineSeparator());
+	}
+
+	/**
+	 * Splits one CSV line into fields. Fields may be quoted with '"', and a quote
+	 * inside a quoted field is written as two quotes.
+	 *
+	 * @param line the line to split.
+	 * @return the fields, or null if a quoted field is not closed.
+	 */
+	static List<String> parseLine(String line) {
+		List<String> fields = new ArrayList<>(4);
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					field.append(c);
+				} else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		if (quoted) {
+			return null;
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	/**
+	 * Quotes a CSV field if it contains a comma or a quote.
+	 *
+	 * @param field the field.
+	 * @return the field as it should be written.
+	 */
+	private static String quote(String field) {
+		if (field.indexOf(',') < 0 && field.indexOf('"') < 0) {
+			return field;
+		}
+		return '"' + field.replace("\"", "\"\"") + '"';
+	}
+
+	/**
+	 * Imports users from a CSV file.
+	 *
+	 * @param args the CSV file, optionally followed by the path of the rejects
+	 *             file (default: the CSV file with ".rejects.csv" appended) and
+	 *             the chunk size.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: BulkImporter <users.csv> [rejects.csv] [chunk size]");
+			return;
+		}
+		String rejectsFile = args.length > 1 ? args[1] : args[0] + ".rejects.csv";
+		int chunkSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CHUNK_SIZE;
+
+		try {
+			ConfigManager.load();
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return;
+		}
+		PasswordHasher hasher = new PasswordHasher(Runtime.getRuntime().availableProcessors(), 2 * chunkSize,
+				PasswordHasher.shared().getCost());
+		BulkImporter importer = new BulkImporter(StorageEngines.shared().users(), hasher, chunkSize);
+
+		long start = System.nanoTime();
+		try (BufferedReader csv = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+				BufferedWriter rejects = Files.newBufferedWriter(Paths.get(rejectsFile), StandardCharsets.UTF_8)) {
+			Result result = importer.importCsv(csv, rejects);
+			System.out.println("Imported " + result.getImported() + " users and rejected " + result.getRejected()
+					+ " rows (see " + rejectsFile + ") in " + (System.nanoTime() - start) / 1000000000 + "s");
+		} catch (IOException | SQLException e) {
+			e.printStackTrace();
+			System.err.println("Import stopped after importing " + importer.imported + " users and rejecting "
+					+ importer.rejected + " rows (see " + rejectsFile + ")");
+		}
+	}
+
+	/**
+	 * The outcome of an import.
+	 */
+	public static final class Result {
+		private final long imported;
+		private final long rejected;
+
+		private Result(long imported, long rejected) {
+			this.imported = imported;
+			this.rejected = rejected;
+		}
+
+		/**
+		 * @return the number of users created.
+		 */
+		public long getImported() {
+			return imported;
+		}
+
+		/**
+		 * @return the number of rows written to the rejects file.
+		 */
+		public long getRejected() {
+			return rejected;
+		}
+	}
+
+	/**
+	 * A valid row of the file.
+	 */
+	private static final class Row {
+		private final int lineNumber;
+		private final String firstName;
+		private final String lastName;
+		private final String username;
+		private final String password;
+
+		private Row(int lineNumber, String firstName, String lastName, String username, String password) {
+			this.lineNumber = lineNumber;
+			this.firstName = firstName;
+			this.lastName = lastName;
+			this.username = username;
+			this.password = password;
+		}
+	}
+
+	/**
+	 * The rows of a chunk together with their password hashes in progress.
+	 */
+	private static final class Chunk {
+		private final List<Row> rows;
+		private final List<CompletableFuture<String>> hashes;
+
+		private Chunk(int size) {
+			rows = new ArrayList<>(size);
+			hashes = new ArrayList<>(size);
+		}
+	}
+}
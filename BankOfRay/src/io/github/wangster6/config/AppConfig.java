@@ -0,0 +1,572 @@
+package io.github.wangster6.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * An immutable, validated snapshot of the settings in the app.properties file.
+ * Instances are only created through {@link #load(Path)} or
+ * {@link #fromProperties(Properties)}, which reject missing or malformed values
+ * up front so a bad file fails at startup rather than on the first query.
+ *
+ * @author wangster6
+ */
+public final class AppConfig {
+	private final String storageEngine;
+	private final int storageHistoryLimit;
+	private final String journalDir;
+	private final String journalFsync;
+	private final long journalFsyncIntervalMillis;
+	private final int journalMaxBytes;
+	private final String dbUrl;
+	private final String dbUser;
+	private final String dbPassword;
+	private final List<String> dbReplicaUrls;
+	private final long dbReplicaRetryMillis;
+	private final int poolMaxSize;
+	private final long poolIdleTimeoutMillis;
+	private final long poolAcquireTimeoutMillis;
+	private final long poolLeakThresholdMillis;
+	private final int bcryptCost;
+	private final long bcryptTargetMillis;
+	private final int bcryptThreads;
+	private final int bcryptQueueDepth;
+	private final int loginUserBurst;
+	private final int loginSourceBurst;
+	private final long loginRefillMillis;
+	private final int loginLockoutAfter;
+	private final long loginLockoutBaseMillis;
+	private final long loginLockoutMaxMillis;
+	private final int loginMaxTracked;
+	private final int serverPort;
+	private final int serverMaxSessions;
+	private final long serverIdleTimeoutMillis;
+	private final boolean serverAnsi;
+	private final long ledgerBatchWindowMillis;
+	private final int ledgerMaxBatchSize;
+	private final long interestAnnualRateBps;
+	private final int interestChunkSize;
+	private final int interestParallelism;
+	private final boolean usernameIndexEnabled;
+	private final long usernameIndexRefreshMillis;
+	private final int usernameIndexCacheSize;
+	private final long metricsDumpIntervalMillis;
+
+	/**
+	 * Constructs a configuration snapshot from already validated properties.
+	 *
+	 * @param properties the properties to read.
+	 * @param errors     the list to add a message to for every invalid value.
+	 */
+	private AppConfig(Properties properties, List<String> errors) {
+		storageEngine = readChoice(properties, "storage.engine", "jdbc", errors, "jdbc", "memory", "journal");
+		storageHistoryLimit = (int) readLong(properties, "storage.historyLimit", 100, 0, 1000000, errors);
+		String dir = properties.getProperty("journal.dir", "").trim();
+		journalDir = dir.isEmpty() ? "journal" : dir;
+		journalFsync = readChoice(properties, "journal.fsync", "batched", errors, "perOp", "batched", "interval");
+		journalFsyncIntervalMillis = readLong(properties, "journal.fsyncIntervalMs", 100, 1, 60000, errors);
+		journalMaxBytes = (int) readLong(properties, "journal.maxBytes", 64 * 1024 * 1024, 64 * 1024,
+				1024 * 1024 * 1024, errors);
+		if ("jdbc".equals(storageEngine)) {
+			dbUrl = requireString(properties, "db.url", errors);
+			if (dbUrl != null && !dbUrl.startsWith("jdbc:")) {
+				errors.add("db.url must be a JDBC url starting with 'jdbc:' but was '" + dbUrl + "'");
+			}
+			dbUser = requireString(properties, "db.user", errors);
+		} else {
+			dbUrl = properties.getProperty("db.url", "").trim();
+			dbUser = properties.getProperty("db.user", "").trim();
+		}
+		dbPassword = properties.getProperty("db.password", "");
+		List<String> replicaUrls = new ArrayList<>();
+		for (String url : properties.getProperty("db.replica.urls", "").split(",")) {
+			if (url.trim().startsWith("jdbc:")) {
+				replicaUrls.add(url.trim());
+			} else if (!url.trim().isEmpty()) {
+				errors.add("db.replica.urls must be JDBC urls starting with 'jdbc:' but had '" + url.trim() + "'");
+			}
+		}
+		dbReplicaUrls = Collections.unmodifiableList(replicaUrls);
+		dbReplicaRetryMillis = readLong(properties, "db.replica.retryMs", 30000, 0, Long.MAX_VALUE, errors);
+		poolMaxSize = (int) readLong(properties, "db.pool.maxSize", 10, 1, 1000, errors);
+		poolIdleTimeoutMillis = readLong(properties, "db.pool.idleTimeoutMs", 300000, 1000, Long.MAX_VALUE, errors);
+		poolAcquireTimeoutMillis = readLong(properties, "db.pool.acquireTimeoutMs", 5000, 0, Long.MAX_VALUE, errors);
+		poolLeakThresholdMillis = readLong(properties, "db.pool.leakThresholdMs", 30000, 0, Long.MAX_VALUE, errors);
+		bcryptCost = (int) readLong(properties, "bcrypt.cost", 10, 4, 31, errors);
+		bcryptTargetMillis = readLong(properties, "bcrypt.targetMs", 0, 0, 10000, errors);
+		bcryptThreads = (int) readLong(properties, "bcrypt.threads", 0, 0, 1024, errors);
+		bcryptQueueDepth = (int) readLong(properties, "bcrypt.queueDepth", 64, 1, 100000, errors);
+		loginUserBurst = (int) readLong(properties, "login.userBurst", 5, 0, 100000, errors);
+		loginSourceBurst = (int) readLong(properties, "login.sourceBurst", 20, 0, 100000, errors);
+		loginRefillMillis = readLong(properties, "login.refillMs", 10000, 1, 86400000, errors);
+		loginLockoutAfter = (int) readLong(properties, "login.lockoutAfter", 5, 0, 100000, errors);
+		loginLockoutBaseMillis = readLong(properties, "login.lockoutBaseMs", 1000, 1, 86400000, errors);
+		loginLockoutMaxMillis = readLong(properties, "login.lockoutMaxMs", 300000, 1, 86400000, errors);
+		loginMaxTracked = (int) readLong(properties, "login.maxTracked", 100000, 64, 10000000, errors);
+		serverPort = (int) readLong(properties, "server.port", 4000, 1, 65535, errors);
+		serverMaxSessions = (int) readLong(properties, "server.maxSessions", 100, 1, 1000000, errors);
+		serverIdleTimeoutMillis = readLong(properties, "server.idleTimeoutMs", 300000, 0, Integer.MAX_VALUE, errors);
+		serverAnsi = readBoolean(properties, "server.ansi", true, errors);
+		ledgerBatchWindowMillis = readLong(properties, "ledger.batchWindowMs", 5, 0, 1000, errors);
+		ledgerMaxBatchSize = (int) readLong(properties, "ledger.maxBatchSize", 256, 1, 10000, errors);
+		interestAnnualRateBps = readLong(properties, "interest.annualRateBps", 0, 0, 10000, errors);
+		interestChunkSize = (int) readLong(properties, "interest.chunkSize", 1000, 1, 5000, errors);
+		interestParallelism = (int) readLong(properties, "interest.parallelism", 0, 0, 1024, errors);
+		usernameIndexEnabled = readBoolean(properties, "usernameIndex.enabled", true, errors);
+		usernameIndexRefreshMillis = readLong(properties, "usernameIndex.refreshMs", 300000, 0, Long.MAX_VALUE, errors);
+		usernameIndexCacheSize = (int) readLong(properties, "usernameIndex.cacheSize", 10000, 1, 10000000, errors);
+		metricsDumpIntervalMillis = readLong(properties, "metrics.dumpIntervalMs", 0, 0, Long.MAX_VALUE, errors);
+	}
+
+	/**
+	 * Reads and validates a properties file.
+	 *
+	 * @param path the path of the properties file.
+	 * @return the validated configuration.
+	 * @throws IOException              If the file cannot be read.
+	 * @throws IllegalArgumentException If any setting is missing or invalid.
+	 */
+	public static AppConfig load(Path path) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream input = Files.newInputStream(path)) {
+			properties.load(input);
+		} catch (IOException e) {
+			throw new IOException("Could not load properties file: " + path, e);
+		}
+		return fromProperties(properties);
+	}
+
+	/**
+	 * Validates a set of properties and converts them to a configuration.
+	 *
+	 * @param properties the properties to validate.
+	 * @return the validated configuration.
+	 * @throws IllegalArgumentException If any setting is missing or invalid. The
+	 *                                  message lists every problem found.
+	 */
+	public static AppConfig fromProperties(Properties properties) {
+		List<String> errors = new ArrayList<>();
+		AppConfig config = new AppConfig(properties, errors);
+		if (!errors.isEmpty()) {
+			throw new IllegalArgumentException("Invalid configuration: " + String.join("; ", errors));
+		}
+		return config;
+	}
+
+	/**
+	 * Checks whether another configuration would produce an identical connection
+	 * pool and replicas, so the pool only has to be rebuilt when one of its
+	 * settings changes.
+	 *
+	 * @param other the configuration to compare against.
+	 * @return true if all database and pool settings are equal, false if not.
+	 */
+	public boolean hasSamePoolSettings(AppConfig other) {
+		return other != null && dbUrl.equals(other.dbUrl) && dbUser.equals(other.dbUser)
+				&& dbPassword.equals(other.dbPassword) && dbReplicaUrls.equals(other.dbReplicaUrls)
+				&& dbReplicaRetryMillis == other.dbReplicaRetryMillis && poolMaxSize == other.poolMaxSize
+				&& poolIdleTimeoutMillis == other.poolIdleTimeoutMillis
+				&& poolAcquireTimeoutMillis == other.poolAcquireTimeoutMillis
+				&& poolLeakThresholdMillis == other.poolLeakThresholdMillis;
+	}
+
+	/**
+	 * @return the name of the storage engine, "jdbc", "memory" or "journal".
+	 */
+	public String getStorageEngine() {
+		return storageEngine;
+	}
+
+	/**
+	 * @return the number of most recent ledger entries the memory and journal
+	 *         storage engines keep per account.
+	 */
+	public int getStorageHistoryLimit() {
+		return storageHistoryLimit;
+	}
+
+	/**
+	 * @return the directory the journal storage engine keeps its files in.
+	 */
+	public String getJournalDir() {
+		return journalDir;
+	}
+
+	/**
+	 * @return when the journal is forced to disk, "perOp", "batched" or
+	 *         "interval".
+	 */
+	public String getJournalFsync() {
+		return journalFsync;
+	}
+
+	/**
+	 * @return how often the journal is forced to disk with the "interval" policy,
+	 *         in milliseconds.
+	 */
+	public long getJournalFsyncIntervalMillis() {
+		return journalFsyncIntervalMillis;
+	}
+
+	/**
+	 * @return the size of each journal file in bytes, after which a snapshot is
+	 *         taken and a new journal started.
+	 */
+	public int getJournalMaxBytes() {
+		return journalMaxBytes;
+	}
+
+	/**
+	 * @return the JDBC url of the database, or an empty String if it is not
+	 *         needed by the storage engine and was left out.
+	 */
+	public String getDbUrl() {
+		return dbUrl;
+	}
+
+	/**
+	 * @return the database user, or an empty String if it is not needed by the
+	 *         storage engine and was left out.
+	 */
+	public String getDbUser() {
+		return dbUser;
+	}
+
+	/**
+	 * @return the database password.
+	 */
+	public String getDbPassword() {
+		return dbPassword;
+	}
+
+	/**
+	 * @return the JDBC urls of the read replicas, which use the same user and
+	 *         password as the database, or an empty list if reads go to the
+	 *         database too.
+	 */
+	public List<String> getDbReplicaUrls() {
+		return dbReplicaUrls;
+	}
+
+	/**
+	 * @return how long a replica that could not be reached is left out before it
+	 *         is tried again, in milliseconds.
+	 */
+	public long getDbReplicaRetryMillis() {
+		return dbReplicaRetryMillis;
+	}
+
+	/**
+	 * @return the maximum number of pooled connections.
+	 */
+	public int getPoolMaxSize() {
+		return poolMaxSize;
+	}
+
+	/**
+	 * @return how long an unused pooled connection stays open, in milliseconds.
+	 */
+	public long getPoolIdleTimeoutMillis() {
+		return poolIdleTimeoutMillis;
+	}
+
+	/**
+	 * @return how long to wait for a free pooled connection, in milliseconds.
+	 */
+	public long getPoolAcquireTimeoutMillis() {
+		return poolAcquireTimeoutMillis;
+	}
+
+	/**
+	 * @return how long a connection may be held before a leak is reported, in
+	 *         milliseconds, or 0 if leak detection is disabled.
+	 */
+	public long getPoolLeakThresholdMillis() {
+		return poolLeakThresholdMillis;
+	}
+
+	/**
+	 * @return the BCrypt log rounds used when hashing new passwords, or the lowest
+	 *         rounds allowed if calibration is enabled.
+	 */
+	public int getBcryptCost() {
+		return bcryptCost;
+	}
+
+	/**
+	 * @return the time one hash should take when the BCrypt cost is calibrated at
+	 *         startup, in milliseconds, or 0 if calibration is disabled.
+	 */
+	public long getBcryptTargetMillis() {
+		return bcryptTargetMillis;
+	}
+
+	/**
+	 * @return the number of password hashing threads, or 0 to use one per CPU.
+	 */
+	public int getBcryptThreads() {
+		return bcryptThreads;
+	}
+
+	/**
+	 * @return the maximum number of hashing requests that may wait for a thread.
+	 */
+	public int getBcryptQueueDepth() {
+		return bcryptQueueDepth;
+	}
+
+	/**
+	 * @return the number of failed logins a username may make in a row before it
+	 *         is throttled, or 0 to not throttle usernames.
+	 */
+	public int getLoginUserBurst() {
+		return loginUserBurst;
+	}
+
+	/**
+	 * @return the number of failed logins a source address may make in a row
+	 *         before it is throttled, or 0 to not throttle sources.
+	 */
+	public int getLoginSourceBurst() {
+		return loginSourceBurst;
+	}
+
+	/**
+	 * @return how long it takes for one more failed login to be allowed again, in
+	 *         milliseconds.
+	 */
+	public long getLoginRefillMillis() {
+		return loginRefillMillis;
+	}
+
+	/**
+	 * @return the number of consecutive failed logins after which a username or
+	 *         source is locked out, or 0 to never lock out.
+	 */
+	public int getLoginLockoutAfter() {
+		return loginLockoutAfter;
+	}
+
+	/**
+	 * @return how long the first lockout lasts, in milliseconds.
+	 */
+	public long getLoginLockoutBaseMillis() {
+		return loginLockoutBaseMillis;
+	}
+
+	/**
+	 * @return the longest a lockout can last, in milliseconds.
+	 */
+	public long getLoginLockoutMaxMillis() {
+		return loginLockoutMaxMillis;
+	}
+
+	/**
+	 * @return the maximum number of usernames, and of source addresses, whose
+	 *         login attempts are tracked at once.
+	 */
+	public int getLoginMaxTracked() {
+		return loginMaxTracked;
+	}
+
+	/**
+	 * @return the TCP port the session server listens on.
+	 */
+	public int getServerPort() {
+		return serverPort;
+	}
+
+	/**
+	 * @return the maximum number of concurrent sessions the server accepts.
+	 */
+	public int getServerMaxSessions() {
+		return serverMaxSessions;
+	}
+
+	/**
+	 * @return how long a server session may wait for input before it is closed,
+	 *         in milliseconds, or 0 to never time out.
+	 */
+	public long getServerIdleTimeoutMillis() {
+		return serverIdleTimeoutMillis;
+	}
+
+	/**
+	 * @return true if server sessions are sent ANSI colours and styles, false if
+	 *         they are sent plain text.
+	 */
+	public boolean isServerAnsi() {
+		return serverAnsi;
+	}
+
+	/**
+	 * @return how long deposits and withdrawals wait for others to commit
+	 *         together with in one batch, in milliseconds.
+	 */
+	public long getLedgerBatchWindowMillis() {
+		return ledgerBatchWindowMillis;
+	}
+
+	/**
+	 * @return the maximum number of deposits and withdrawals committed in one
+	 *         batch.
+	 */
+	public int getLedgerMaxBatchSize() {
+		return ledgerMaxBatchSize;
+	}
+
+	/**
+	 * @return the yearly interest rate in basis points, a 365th of which is added
+	 *         to every positive balance by each interest run.
+	 */
+	public long getInterestAnnualRateBps() {
+		return interestAnnualRateBps;
+	}
+
+	/**
+	 * @return the number of account IDs an interest run accrues per transaction.
+	 */
+	public int getInterestChunkSize() {
+		return interestChunkSize;
+	}
+
+	/**
+	 * @return the number of chunks an interest run accrues at once, or 0 for one
+	 *         per CPU but no more than the connection pool holds.
+	 */
+	public int getInterestParallelism() {
+		return interestParallelism;
+	}
+
+	/**
+	 * @return true if username lookups go through the in-memory username index,
+	 *         false if they always query the database.
+	 */
+	public boolean isUsernameIndexEnabled() {
+		return usernameIndexEnabled;
+	}
+
+	/**
+	 * @return how often the username index is rebuilt from the database, in
+	 *         milliseconds, or 0 to only build it at startup.
+	 */
+	public long getUsernameIndexRefreshMillis() {
+		return usernameIndexRefreshMillis;
+	}
+
+	/**
+	 * @return the maximum number of usernames the index remembers as existing.
+	 */
+	public int getUsernameIndexCacheSize() {
+		return usernameIndexCacheSize;
+	}
+
+	/**
+	 * @return how often the latency metrics are printed, in milliseconds, or 0 if
+	 *         they are only available over JMX.
+	 */
+	public long getMetricsDumpIntervalMillis() {
+		return metricsDumpIntervalMillis;
+	}
+
+	/**
+	 * Reads a required, non-empty String property.
+	 *
+	 * @param properties the properties to read from.
+	 * @param key        the key to read.
+	 * @param errors     the list to add a message to if the key is missing.
+	 * @return the trimmed value, or null if it is missing.
+	 */
+	private static String requireString(Properties properties, String key, List<String> errors) {
+		String value = properties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			errors.add(key + " is required");
+			return null;
+		}
+		return value.trim();
+	}
+
+	/**
+	 * Reads an optional whole number property and checks that it is within range.
+	 *
+	 * @param properties   the properties to read from.
+	 * @param key          the key to read.
+	 * @param defaultValue the value to use if the key is missing.
+	 * @param min          the smallest allowed value.
+	 * @param max          the largest allowed value.
+	 * @param errors       the list to add a message to if the value is invalid.
+	 * @return the parsed value, or the default if it is missing or invalid.
+	 */
+	private static long readLong(Properties properties, String key, long defaultValue, long min, long max,
+			List<String> errors) {
+		String value = properties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			long parsed = Long.parseLong(value.trim());
+			if (parsed < min || parsed > max) {
+				errors.add(key + " must be between " + min + " and " + max + " but was " + parsed);
+				return defaultValue;
+			}
+			return parsed;
+		} catch (NumberFormatException e) {
+			errors.add(key + " must be a whole number but was '" + value + "'");
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Reads an optional property that must be one of a fixed set of values.
+	 *
+	 * @param properties   the properties to read from.
+	 * @param key          the key to read.
+	 * @param defaultValue the value to use if the key is missing.
+	 * @param errors       the list to add a message to if the value is invalid.
+	 * @param choices      the allowed values.
+	 * @return the trimmed value, or the default if it is missing or invalid.
+	 */
+	private static String readChoice(Properties properties, String key, String defaultValue, List<String> errors,
+			String... choices) {
+		String value = properties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		for (String choice : choices) {
+			if (choice.equals(value.trim())) {
+				return choice;
+			}
+		}
+		errors.add(key + " must be one of " + String.join(", ", choices) + " but was '" + value + "'");
+		return defaultValue;
+	}
+
+	/**
+	 * Reads an optional true/false property.
+	 *
+	 * @param properties   the properties to read from.
+	 * @param key          the key to read.
+	 * @param defaultValue the value to use if the key is missing.
+	 * @param errors       the list to add a message to if the value is invalid.
+	 * @return the parsed value, or the default if it is missing or invalid.
+	 */
+	private static boolean readBoolean(Properties properties, String key, boolean defaultValue, List<String> errors) {
+		String value = properties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		if ("true".equalsIgnoreCase(value.trim())) {
+			return true;
+		} else if ("false".equalsIgnoreCase(value.trim())) {
+			return false;
+		}
+		errors.add(key + " must be true or false but was '" + value + "'");
+		return defaultValue;
+	}
+}
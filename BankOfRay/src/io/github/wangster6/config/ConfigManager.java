@@ -0,0 +1,135 @@
+package io.github.wangster6.config;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Holds the application's current {@link AppConfig}. The properties file is
+ * parsed once on first use, and a background watcher reloads it whenever the
+ * file changes on disk. Readers always see a complete snapshot without taking
+ * any lock; a reload that fails validation keeps the previous snapshot.
+ *
+ * @author wangster6
+ */
+public final class ConfigManager {
+	/**
+	 * The path to the properties file used for configuration settings. It can be
+	 * overridden with the "bankofray.config" system property.
+	 */
+	private static final Path PROPERTIES_FILE = Paths.get(
+			System.getProperty("bankofray.config", Paths.get("resources", "app.properties").toString()));
+
+	private static volatile AppConfig current;
+	private static final List<Consumer<AppConfig>> listeners = new CopyOnWriteArrayList<>();
+	private static WatchService watchService;
+
+	private ConfigManager() {
+	}
+
+	/**
+	 * Returns the current configuration, loading it on first use.
+	 *
+	 * @return the current configuration snapshot.
+	 * @throws IOException              If the properties file cannot be read.
+	 * @throws IllegalArgumentException If the properties file is invalid.
+	 */
+	public static AppConfig get() throws IOException {
+		AppConfig config = current;
+		return config != null ? config : load();
+	}
+
+	/**
+	 * Loads and validates the properties file if it has not been loaded yet, and
+	 * starts watching it for changes. Calling this at startup makes a missing or
+	 * invalid file fail immediately.
+	 *
+	 * @return the current configuration snapshot.
+	 * @throws IOException              If the properties file cannot be read.
+	 * @throws IllegalArgumentException If the properties file is invalid.
+	 */
+	public static synchronized AppConfig load() throws IOException {
+		if (current == null) {
+			current = AppConfig.load(PROPERTIES_FILE);
+			startWatcher();
+		}
+		return current;
+	}
+
+	/**
+	 * Registers a listener that is called with the new snapshot after every
+	 * successful reload.
+	 *
+	 * @param listener the listener to call.
+	 */
+	public static void addListener(Consumer<AppConfig> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Re-reads the properties file and publishes the new snapshot. If the file can
+	 * no longer be read or is invalid, the previous snapshot stays in effect.
+	 */
+	static synchronized void reload() {
+		AppConfig next;
+		try {
+			next = AppConfig.load(PROPERTIES_FILE);
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("Keeping previous configuration: " + e.getMessage());
+			return;
+		}
+		current = next;
+		for (Consumer<AppConfig> listener : listeners) {
+			listener.accept(next);
+		}
+	}
+
+	/**
+	 * Starts a daemon thread that reloads the configuration when the properties
+	 * file is modified. If the file system does not support watching, the
+	 * configuration is simply never reloaded.
+	 */
+	private static void startWatcher() {
+		Path directory = PROPERTIES_FILE.toAbsolutePath().getParent();
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException | UnsupportedOperationException e) {
+			System.err.println("Configuration changes will not be picked up: " + e.getMessage());
+			return;
+		}
+
+		Thread watcher = new Thread(() -> {
+			try {
+				while (true) {
+					WatchKey key = watchService.take();
+					boolean changed = false;
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (PROPERTIES_FILE.getFileName().equals(event.context())) {
+							changed = true;
+						}
+					}
+					key.reset();
+					if (changed) {
+						Thread.sleep(100); // Let the editor finish writing before re-reading
+						reload();
+					}
+				}
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				// Watcher stopped
+			}
+		}, "config-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+}
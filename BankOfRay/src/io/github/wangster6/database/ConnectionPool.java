@@ -0,0 +1,346 @@
+package io.github.wangster6.database;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import io.github.wangster6.metrics.Metrics;
+import io.github.wangster6.metrics.OperationMetrics;
+
+/**
+ * A bounded pool of JDBC connections. Connections are created lazily up to the
+ * maximum size, validated when they are borrowed, evicted once they have sat
+ * idle for too long, and reported if they are held for longer than the leak
+ * threshold.
+ * <p>
+ * Every borrow receives a new wrapper around the physical connection: closing
+ * it returns the connection to the pool, after which the wrapper refuses all
+ * use, so a stale reference held by an earlier borrower cannot touch the
+ * connection again. Prepared statements are cached per physical connection so
+ * they are reused instead of prepared again.
+ * <p>
+ * A leak warning names the thread that borrowed the connection. Run with
+ * {@code -Dbankofray.pool.traceLeaks=true} to also print where it was borrowed,
+ * at the cost of capturing a stack trace on every borrow.
+ *
+ * @author wangster6
+ */
+public class ConnectionPool {
+	/** Connections used more recently than this are handed out without a validation round trip */
+	private static final long VALIDATION_BYPASS_MILLIS = 500;
+	/** Seconds to wait for the driver to confirm a connection is still alive */
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+	/** Maximum number of prepared statements kept open per physical connection */
+	private static final int STATEMENT_CACHE_SIZE = 64;
+	private static final OperationMetrics ACQUIRE_METRICS = Metrics.operation("db.pool.acquire");
+	/** Whether to capture where each connection was borrowed, which costs a stack trace per borrow */
+	private static final boolean TRACE_LEAKS = Boolean.getBoolean("bankofray.pool.traceLeaks");
+
+	private final String url;
+	private final String user;
+	private final String password;
+	private final int maxSize;
+	private final long idleTimeoutMillis;
+	private final long acquireTimeoutMillis;
+	private final long leakThresholdMillis;
+
+	/** One permit per connection that may be borrowed at the same time */
+	private final Semaphore permits;
+	/** Idle connections, most recently returned first so the warmest are reused */
+	private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+	/** Connections currently handed out, keyed by the connection given to the caller */
+	private final Map<Connection, PooledConnection> borrowed = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService housekeeper;
+	private volatile boolean closed;
+
+	/**
+	 * Constructs a new pool. No connections are opened until the first borrow.
+	 *
+	 * @param url                  the JDBC url of the database.
+	 * @param user                 the database user.
+	 * @param password             the database password.
+	 * @param maxSize              the maximum number of open connections.
+	 * @param idleTimeoutMillis    how long a connection may sit idle before it is
+	 *                             closed.
+	 * @param acquireTimeoutMillis how long a borrower waits for a free connection
+	 *                             before giving up.
+	 * @param leakThresholdMillis  how long a connection may be held before it is
+	 *                             reported as a possible leak, or 0 to disable leak
+	 *                             detection.
+	 */
+	public ConnectionPool(String url, String user, String password, int maxSize, long idleTimeoutMillis,
+			long acquireTimeoutMillis, long leakThresholdMillis) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1: " + maxSize);
+		}
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.maxSize = maxSize;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+		this.leakThresholdMillis = leakThresholdMillis;
+		this.permits = new Semaphore(maxSize, true);
+
+		long period = Math.max(1000, Math.min(idleTimeoutMillis, leakThresholdMillis > 0 ? leakThresholdMillis : Long.MAX_VALUE) / 2);
+		housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "connection-pool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrows a connection from the pool, opening a new one if no idle connection
+	 * is available and the pool is below its maximum size. The connection must be
+	 * handed back by closing it or with {@link #release(Connection)}.
+	 *
+	 * @return a validated connection.
+	 * @throws SQLTimeoutException If no connection became available within the
+	 *                             acquire timeout.
+	 * @throws SQLException        If the pool is closed or a new connection could
+	 *                             not be opened.
+	 */
+	public Connection borrow() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				ACQUIRE_METRICS.recordError();
+				throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis
+						+ "ms waiting for a connection (pool size " + maxSize + ")");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection", e);
+		} finally {
+			ACQUIRE_METRICS.recordSince(start);
+		}
+
+		try {
+			PooledConnection pooled;
+			while ((pooled = idle.pollFirst()) != null) {
+				if (isUsable(pooled)) {
+					break;
+				}
+				discard(pooled);
+			}
+			if (pooled == null) {
+				pooled = new PooledConnection(DriverManager.getConnection(url, user, password));
+			}
+			pooled.borrowedAt = System.currentTimeMillis();
+			pooled.borrower = Thread.currentThread().getName();
+			pooled.borrowSite = leakThresholdMillis > 0 && TRACE_LEAKS ? new Exception("Connection borrowed here")
+					: null;
+			pooled.leakReported = false;
+			Connection lease = pooled.lease();
+			borrowed.put(lease, pooled);
+			return lease;
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Hands a borrowed connection back to the pool. Any open transaction is rolled
+	 * back. Connections that cannot be reset, or that are returned after the pool
+	 * has been closed, are closed instead of being reused.
+	 *
+	 * @param connection the connection to return.
+	 * @return true if the connection was borrowed from this pool, false if it was
+	 *         not or has already been released.
+	 */
+	public boolean release(Connection connection) {
+		PooledConnection pooled = borrowed.remove(connection);
+		if (pooled == null) {
+			return false;
+		}
+		try {
+			if (!pooled.connection.getAutoCommit()) {
+				pooled.connection.rollback();
+				pooled.connection.setAutoCommit(true);
+			}
+			if (closed) {
+				discard(pooled);
+			} else {
+				pooled.lastUsed = System.currentTimeMillis();
+				idle.offerFirst(pooled);
+				if (closed && idle.remove(pooled)) {
+					discard(pooled); // Pool was closed while this connection was being returned
+				}
+			}
+		} catch (SQLException e) {
+			discard(pooled);
+		} finally {
+			permits.release();
+		}
+		return true;
+	}
+
+	/**
+	 * Closes the pool and every idle connection. Connections that are still
+	 * borrowed are closed as they are released.
+	 */
+	public void close() {
+		closed = true;
+		housekeeper.shutdownNow();
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			discard(pooled);
+		}
+	}
+
+	/**
+	 * Returns the number of connections currently borrowed from the pool.
+	 *
+	 * @return the number of borrowed connections.
+	 */
+	public int getActiveCount() {
+		return borrowed.size();
+	}
+
+	/**
+	 * Returns the number of open connections waiting in the pool.
+	 *
+	 * @return the number of idle connections.
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * Checks whether an idle connection can be handed out again. Connections that
+	 * were used very recently skip the validation round trip.
+	 *
+	 * @param pooled the idle connection to check.
+	 * @return true if the connection is still usable, false if not.
+	 */
+	private boolean isUsable(PooledConnection pooled) {
+		long idleFor = System.currentTimeMillis() - pooled.lastUsed;
+		if (idleFor > idleTimeoutMillis) {
+			return false;
+		}
+		if (idleFor < VALIDATION_BYPASS_MILLIS) {
+			return true;
+		}
+		try {
+			return pooled.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Periodic task that closes connections which have been idle for too long and
+	 * reports connections that have been borrowed for longer than the leak
+	 * threshold.
+	 */
+	private void housekeep() {
+		long now = System.currentTimeMillis();
+		for (PooledConnection pooled : idle) {
+			if (now - pooled.lastUsed > idleTimeoutMillis && idle.remove(pooled)) {
+				discard(pooled);
+			}
+		}
+		if (leakThresholdMillis <= 0) {
+			return;
+		}
+		for (PooledConnection pooled : borrowed.values()) {
+			if (!pooled.leakReported && now - pooled.borrowedAt > leakThresholdMillis) {
+				pooled.leakReported = true;
+				System.err.println("WARNING: Connection borrowed by thread " + pooled.borrower + " held for more than "
+						+ leakThresholdMillis + "ms without being released, possible leak");
+				if (pooled.borrowSite != null) {
+					pooled.borrowSite.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes a connection that is no longer part of the pool.
+	 *
+	 * @param pooled the connection to close.
+	 */
+	private void discard(PooledConnection pooled) {
+		try {
+			pooled.connection.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Bookkeeping for a single physical connection owned by the pool, along with
+	 * its statement cache.
+	 */
+	private class PooledConnection {
+		private final Connection connection;
+		private final StatementCache statements;
+		private volatile long lastUsed = System.currentTimeMillis();
+		private volatile long borrowedAt;
+		private volatile String borrower;
+		private volatile Exception borrowSite;
+		private volatile boolean leakReported;
+
+		PooledConnection(Connection connection) {
+			this.connection = connection;
+			this.statements = new StatementCache(connection, STATEMENT_CACHE_SIZE);
+		}
+
+		/**
+		 * Creates the wrapper handed to one borrower. Once it has been closed or
+		 * released it refuses all use, even if the connection has been borrowed again
+		 * in the meantime.
+		 *
+		 * @return the new wrapper.
+		 */
+		Connection lease() {
+			return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, (target, method, args) -> {
+						switch (method.getName()) {
+						case "close":
+							release((Connection) target);
+							return null;
+						case "isClosed":
+							return !borrowed.containsKey(target) || connection.isClosed();
+						case "hashCode":
+							return System.identityHashCode(target);
+						case "equals":
+							return target == args[0];
+						case "toString":
+							return "Pooled " + connection;
+						default:
+							break;
+						}
+						if (!borrowed.containsKey(target)) {
+							throw new SQLException("Connection has already been returned to the pool");
+						}
+						if ("prepareStatement".equals(method.getName()) && args.length <= 2
+								&& (args.length == 1 || args[1] instanceof Integer)) {
+							return statements.prepare((String) args[0], args.length == 1 ? -1 : (Integer) args[1]);
+						}
+						try {
+							return method.invoke(connection, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					});
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package io.github.wangster6.database;
+
+/**
+ * Thrown when data that is read lazily, such as a page of account history
+ * fetched while iterating, cannot be loaded. It carries the original
+ * SQLException or IOException as its cause.
+ *
+ * @author wangster6
+ */
+public class DataAccessException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs a new DataAccessException.
+	 *
+	 * @param cause the error that prevented the data from being loaded.
+	 */
+	public DataAccessException(Throwable cause) {
+		super(cause);
+	}
+}
@@ -1,68 +1,208 @@
 package io.github.wangster6.database;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.sql.*;
-import java.util.Properties;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.github.wangster6.config.AppConfig;
+import io.github.wangster6.config.ConfigManager;
 
 /**
  * This class manages the database connections using the configurations from the app.properties file.
+ * Connections are handed out from a shared {@link ConnectionPool} that is created on first use and
+ * rebuilt whenever the database or pool settings in the configuration change. Reads that may be
+ * served by a read replica borrow from the {@link ReplicaSet} instead, unless the
+ * {@link ReadSession} they belong to has already written to the primary.
  * 
  * @author wangster6
  */
 public class DatabaseConnection {
 	/**
-	 * The path to the properties file used for configuration settings.
+	 * The shared connection pool, created from the current configuration on first use.
+	 */
+	private static volatile ConnectionPool pool;
+
+	/**
+	 * The read replicas, created together with the pool, or null if none are configured.
+	 */
+	private static volatile ReplicaSet replicas;
+
+	/**
+	 * The configuration the current pool was built from.
+	 */
+	private static AppConfig poolConfig;
+
+	/**
+	 * Pools replaced by a configuration reload that still have connections borrowed.
+	 */
+	private static final List<ConnectionPool> retiredPools = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Replicas replaced by a configuration reload that still have connections borrowed.
 	 */
-	private static final String PROPERTIES_FILE = "resources/app.properties";
+	private static final List<ReplicaSet> retiredReplicas = new CopyOnWriteArrayList<>();
+
+	static {
+		ConfigManager.addListener(DatabaseConnection::onConfigReload);
+	}
 
 	/**
-     * Establishes a database connection using the configuration provided in the app.properties file.
+     * Borrows a database connection from the pool configured in the app.properties file.
+     * Borrowing one does not pin the current {@link ReadSession} to the primary; methods that
+     * write call {@link ReadSession#noteWrite()} themselves, so reads that need the primary,
+     * such as counting users, leave the session's other reads on the replicas.
      *
      * @return A Connection object representing the database connection.
-     * @throws SQLException If a database access error occurs.
+     * @throws SQLException If a database access error occurs or no connection became available in time.
      * @throws IOException  If an I/O error occurs while loading properties.
      */
 	public static Connection getConnection() throws SQLException, IOException {
-		Properties properties = loadProperties();
-        String dbUrl = properties.getProperty("db.url");
-        String dbUser = properties.getProperty("db.user");
-        String dbPassword = properties.getProperty("db.password");
-        
-        return DriverManager.getConnection(dbUrl, dbUser, dbPassword);
+		return getPool().borrow();
 	}
 
 	/**
-     * Closes the given database connection.
+	 * Borrows a connection for a read that may see data a little behind the primary. The
+	 * connection comes from a replica, unless none is configured or reachable, or the current
+	 * {@link ReadSession} has written to the primary and has to read its own writes.
+	 *
+	 * @return A Connection object to a replica or the primary database.
+	 * @throws SQLException If the read has to go to the primary and a database access error
+	 *                      occurs or no connection became available in time.
+	 * @throws IOException  If an I/O error occurs while loading properties.
+	 */
+	public static Connection getReadConnection() throws SQLException, IOException {
+		ConnectionPool primary = getPool();
+		ReplicaSet current = replicas;
+		if (current != null && !ReadSession.hasWritten()) {
+			Connection connection = current.borrow();
+			if (connection != null) {
+				return connection;
+			}
+		}
+		return primary.borrow();
+	}
+
+	/**
+     * Returns the given database connection to the pool it was borrowed from.
      *
-     * @param connection The Connection object to be closed.
+     * @param connection The Connection object to be returned.
      */
 	public static void closeConnection(Connection connection) {
-		if (connection != null) {
-			try {
-				connection.close();
-			} catch (SQLException e) {
-				e.printStackTrace();
+		ConnectionPool current = pool;
+		ReplicaSet currentReplicas = replicas;
+		if (connection == null || (current != null && current.release(connection))
+				|| (currentReplicas != null && currentReplicas.release(connection))) {
+			return;
+		}
+		for (ConnectionPool retired : retiredPools) {
+			if (retired.release(connection)) {
+				if (retired.getActiveCount() == 0) {
+					retiredPools.remove(retired);
+				}
+				return;
+			}
+		}
+		for (ReplicaSet retired : retiredReplicas) {
+			if (retired.release(connection)) {
+				if (retired.getActiveCount() == 0) {
+					retiredReplicas.remove(retired);
+				}
+				return;
 			}
 		}
 	}
-	
+
 	/**
-     * Loads properties from the app.properties file.
-     *
-     * @return A Properties object containing the loaded properties.
-     * @throws IOException If an I/O error occurs while loading properties.
-     */
-	private static Properties loadProperties() throws IOException {
-		Properties prop = new Properties();
-		try(InputStream input = new FileInputStream(PROPERTIES_FILE)) {
-			if (input != null) {
-				prop.load(input);
-            }
-		} catch (IOException e) {
-			throw new IOException("Could not load properties file: " + PROPERTIES_FILE);
+	 * Closes the shared connection pool, the replicas and all of their idle connections. A new
+	 * pool is created the next time a connection is requested.
+	 */
+	public static synchronized void shutdown() {
+		if (pool != null) {
+			pool.close();
+			pool = null;
+			poolConfig = null;
+		}
+		if (replicas != null) {
+			replicas.close();
+			replicas = null;
+		}
+	}
+
+	/**
+	 * Returns the shared connection pool, creating it from the current configuration on first use.
+	 *
+	 * @return The shared ConnectionPool.
+	 * @throws IOException If an I/O error occurs while loading properties.
+	 */
+	private static ConnectionPool getPool() throws IOException {
+		ConnectionPool current = pool;
+		if (current == null) {
+			synchronized (DatabaseConnection.class) {
+				current = pool;
+				if (current == null) {
+					poolConfig = ConfigManager.get();
+					current = createPool(poolConfig);
+					replicas = createReplicas(poolConfig);
+					pool = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Replaces the shared pool when a configuration reload changes any of its settings. Connections
+	 * already borrowed from the old pool stay usable and are closed when they are returned.
+	 *
+	 * @param config The newly loaded configuration.
+	 */
+	private static synchronized void onConfigReload(AppConfig config) {
+		if (pool == null || config.hasSamePoolSettings(poolConfig)) {
+			return;
+		}
+		ConnectionPool old = pool;
+		ReplicaSet oldReplicas = replicas;
+		poolConfig = config;
+		replicas = createReplicas(config);
+		pool = createPool(config);
+		old.close();
+		if (old.getActiveCount() > 0) {
+			retiredPools.add(old);
+		}
+		if (oldReplicas != null) {
+			oldReplicas.close();
+			if (oldReplicas.getActiveCount() > 0) {
+				retiredReplicas.add(oldReplicas);
+			}
+		}
+	}
+
+	/**
+	 * Creates a connection pool from the given configuration.
+	 *
+	 * @param config The configuration to use.
+	 * @return A new ConnectionPool.
+	 */
+	private static ConnectionPool createPool(AppConfig config) {
+		return new ConnectionPool(config.getDbUrl(), config.getDbUser(), config.getDbPassword(),
+				config.getPoolMaxSize(), config.getPoolIdleTimeoutMillis(),
+				config.getPoolAcquireTimeoutMillis(), config.getPoolLeakThresholdMillis());
+	}
+
+	/**
+	 * Creates the read replicas from the given configuration, with the same pool settings as
+	 * the primary.
+	 *
+	 * @param config The configuration to use.
+	 * @return A new ReplicaSet, or null if no replicas are configured.
+	 */
+	private static ReplicaSet createReplicas(AppConfig config) {
+		if (config.getDbReplicaUrls().isEmpty()) {
+			return null;
 		}
-		return prop;
+		return new ReplicaSet(config.getDbReplicaUrls(), config.getDbUser(), config.getDbPassword(),
+				config.getPoolMaxSize(), config.getPoolIdleTimeoutMillis(), config.getPoolAcquireTimeoutMillis(),
+				config.getPoolLeakThresholdMillis(), config.getDbReplicaRetryMillis());
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,36 @@
+package io.github.wangster6.database;
+
+import io.github.wangster6.database.repo.AccountRepository;
+import io.github.wangster6.database.repo.LedgerRepository;
+import io.github.wangster6.database.repo.UserRepository;
+import io.github.wangster6.storage.AccountStore;
+import io.github.wangster6.storage.LedgerStore;
+import io.github.wangster6.storage.StorageEngine;
+import io.github.wangster6.storage.UserStore;
+
+/**
+ * The storage engine that keeps everything in MySQL, accessed through the
+ * pooled connections of {@link DatabaseConnection}.
+ *
+ * @author wangster6
+ */
+public class JdbcStorageEngine implements StorageEngine {
+	private final UserRepository users = new UserRepository();
+	private final AccountRepository accounts = new AccountRepository();
+	private final LedgerRepository ledger = new LedgerRepository();
+
+	@Override
+	public UserStore users() {
+		return users;
+	}
+
+	@Override
+	public AccountStore accounts() {
+		return accounts;
+	}
+
+	@Override
+	public LedgerStore ledger() {
+		return ledger;
+	}
+}
@@ -0,0 +1,64 @@
+package io.github.wangster6.database;
+
+/**
+ * The reads and writes of one ATM session on the thread running it. Reads go to
+ * a replica until the session first writes, which every repository method that
+ * changes data notes with {@link #noteWrite()}. From then on its reads go to
+ * the primary too, so the session always sees its own deposits, withdrawals
+ * and other changes, however far the replicas lag behind.
+ * <p>
+ * Threads outside a session, such as those of the interest run, always read
+ * from a replica when one is configured.
+ *
+ * @author wangster6
+ */
+public final class ReadSession implements AutoCloseable {
+	private static final ThreadLocal<ReadSession> CURRENT = new ThreadLocal<>();
+
+	private boolean wrote;
+
+	private ReadSession() {
+	}
+
+	/**
+	 * Starts a session on the current thread. It must be closed on the same
+	 * thread, best with try-with-resources.
+	 *
+	 * @return the new session.
+	 */
+	public static ReadSession begin() {
+		ReadSession session = new ReadSession();
+		CURRENT.set(session);
+		return session;
+	}
+
+	/**
+	 * Notes that the session on the current thread, if any, is about to write to
+	 * the primary, itself or through another thread that writes for it.
+	 */
+	public static void noteWrite() {
+		ReadSession session = CURRENT.get();
+		if (session != null) {
+			session.wrote = true;
+		}
+	}
+
+	/**
+	 * @return true if the session on the current thread has written to the
+	 *         primary, so its reads must go to the primary as well.
+	 */
+	static boolean hasWritten() {
+		ReadSession session = CURRENT.get();
+		return session != null && session.wrote;
+	}
+
+	/**
+	 * Ends the session on the current thread.
+	 */
+	@Override
+	public void close() {
+		if (CURRENT.get() == this) {
+			CURRENT.remove();
+		}
+	}
+}
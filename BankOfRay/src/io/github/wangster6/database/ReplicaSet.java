@@ -0,0 +1,136 @@
+package io.github.wangster6.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.github.wangster6.metrics.Metrics;
+import io.github.wangster6.metrics.OperationMetrics;
+
+/**
+ * The read replicas of the database, each with its own {@link ConnectionPool}.
+ * Reads are spread over the replicas in turn. A replica that cannot open a
+ * connection is left out until its retry delay has passed, while a replica
+ * that is merely busy is only skipped for the one borrow, so a slow replica
+ * does not push all of its reads onto the primary for the whole delay.
+ *
+ * @author wangster6
+ */
+public class ReplicaSet {
+	private static final OperationMetrics BORROW_METRICS = Metrics.operation("db.replica.borrow");
+
+	private final ConnectionPool[] pools;
+	private final String[] urls;
+	private final long retryMillis;
+	/** When each replica may be tried again, or 0 if it is up */
+	private final AtomicLongArray downUntil;
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Constructs a new ReplicaSet. No connections are opened until the first
+	 * borrow.
+	 *
+	 * @param urls                 the JDBC urls of the replicas.
+	 * @param user                 the database user.
+	 * @param password             the database password.
+	 * @param maxSize              the maximum number of open connections per
+	 *                             replica.
+	 * @param idleTimeoutMillis    how long a connection may sit idle before it is
+	 *                             closed.
+	 * @param acquireTimeoutMillis how long a borrower waits for a free connection
+	 *                             of a replica before trying the next one.
+	 * @param leakThresholdMillis  how long a connection may be held before it is
+	 *                             reported as a possible leak, or 0 to disable leak
+	 *                             detection.
+	 * @param retryMillis          how long a replica that could not be reached is
+	 *                             left out.
+	 */
+	public ReplicaSet(List<String> urls, String user, String password, int maxSize, long idleTimeoutMillis,
+			long acquireTimeoutMillis, long leakThresholdMillis, long retryMillis) {
+		this.urls = urls.toArray(new String[0]);
+		this.pools = new ConnectionPool[this.urls.length];
+		for (int i = 0; i < pools.length; i++) {
+			pools[i] = new ConnectionPool(this.urls[i], user, password, maxSize, idleTimeoutMillis,
+					acquireTimeoutMillis, leakThresholdMillis);
+		}
+		this.retryMillis = retryMillis;
+		this.downUntil = new AtomicLongArray(pools.length);
+	}
+
+	/**
+	 * Borrows a connection from the next replica that is up, trying each replica
+	 * at most once.
+	 *
+	 * @return a validated connection to a replica, or null if every replica is
+	 *         down or busy and the read has to go to the primary.
+	 */
+	public Connection borrow() {
+		long start = System.nanoTime();
+		try {
+			int first = next.getAndIncrement();
+			for (int i = 0; i < pools.length; i++) {
+				int replica = Math.floorMod(first + i, pools.length);
+				long until = downUntil.get(replica);
+				if (until != 0 && System.currentTimeMillis() < until) {
+					continue;
+				}
+				try {
+					Connection connection = pools[replica].borrow();
+					downUntil.compareAndSet(replica, until, 0);
+					return connection;
+				} catch (SQLTimeoutException e) {
+					// Busy rather than down, so only skip it this time
+				} catch (SQLException e) {
+					if (downUntil.compareAndSet(replica, until, System.currentTimeMillis() + retryMillis)) {
+						System.err.println("WARNING: Replica " + urls[replica] + " is unreachable, leaving it out for "
+								+ retryMillis + "ms: " + e.getMessage());
+					}
+				}
+			}
+			BORROW_METRICS.recordError();
+			return null;
+		} finally {
+			BORROW_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Hands a borrowed connection back to the replica it came from.
+	 *
+	 * @param connection the connection to return.
+	 * @return true if the connection was borrowed from one of the replicas, false
+	 *         if not.
+	 */
+	public boolean release(Connection connection) {
+		for (ConnectionPool pool : pools) {
+			if (pool.release(connection)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of connections currently borrowed from all replicas.
+	 */
+	public int getActiveCount() {
+		int active = 0;
+		for (ConnectionPool pool : pools) {
+			active += pool.getActiveCount();
+		}
+		return active;
+	}
+
+	/**
+	 * Closes the pools of all replicas. Connections still borrowed are closed
+	 * when they are returned.
+	 */
+	public void close() {
+		for (ConnectionPool pool : pools) {
+			pool.close();
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package io.github.wangster6.database;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache of prepared statements for a single pooled
+ * connection. The statements it hands out ignore {@code close()}, so callers can
+ * keep using try-with-resources while the same statement is reused by every
+ * borrower of the connection. Closing one resets its parameters, batch, fetch
+ * size, row limit and query timeout, so nothing a caller set carries over to
+ * the next one. Statements are only closed for real when they are evicted or
+ * the connection is closed.
+ * <p>
+ * Every distinct SQL string takes a slot, so callers that build SQL with a
+ * variable number of values should round it to a few fixed sizes.
+ *
+ * @author wangster6
+ */
+class StatementCache {
+	private final Connection connection;
+	private final Map<String, CachedStatement> statements;
+
+	/**
+	 * Constructs a new cache for the given physical connection.
+	 *
+	 * @param connection    the connection the statements are prepared on.
+	 * @param maxStatements the maximum number of statements to keep open.
+	 */
+	StatementCache(Connection connection, int maxStatements) {
+		this.connection = connection;
+		this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+				if (size() > maxStatements) {
+					closeQuietly(eldest.getValue().raw);
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns a cached statement for the given SQL, preparing it on first use.
+	 *
+	 * @param sql               the SQL of the statement.
+	 * @param autoGeneratedKeys {@link java.sql.Statement#RETURN_GENERATED_KEYS} or
+	 *                          {@link java.sql.Statement#NO_GENERATED_KEYS}, or -1
+	 *                          if it was not specified.
+	 * @return a statement whose {@code close()} only resets it for the next
+	 *         caller.
+	 * @throws SQLException If the statement could not be prepared.
+	 */
+	PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+		// Only ever used by the thread that currently holds the connection
+		String key = autoGeneratedKeys == -1 ? sql : autoGeneratedKeys + ":" + sql;
+		CachedStatement cached = statements.get(key);
+		if (cached == null || cached.raw.isClosed()) {
+			PreparedStatement raw = autoGeneratedKeys == -1 ? connection.prepareStatement(sql)
+					: connection.prepareStatement(sql, autoGeneratedKeys);
+			cached = new CachedStatement(raw);
+			statements.put(key, cached);
+		}
+		return cached.proxy;
+	}
+
+	/**
+	 * Returns the number of statements currently cached.
+	 *
+	 * @return the number of cached statements.
+	 */
+	int size() {
+		return statements.size();
+	}
+
+	/**
+	 * Wraps a statement so that closing it leaves it open for the next borrower.
+	 *
+	 * @param cached the statement to wrap.
+	 * @return the wrapped statement.
+	 */
+	private static PreparedStatement wrap(CachedStatement cached) {
+		PreparedStatement raw = cached.raw;
+		return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+				new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "close":
+						cached.reset();
+						return null;
+					case "addBatch":
+					case "setFetchSize":
+					case "setMaxRows":
+					case "setLargeMaxRows":
+					case "setQueryTimeout":
+						cached.dirty = true;
+						break;
+					case "isClosed":
+						return raw.isClosed();
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						break;
+					}
+					try {
+						return method.invoke(raw, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+	/**
+	 * Closes a statement that is being evicted.
+	 *
+	 * @param statement the driver's statement to close.
+	 */
+	private static void closeQuietly(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * A driver statement together with the wrapper handed out to callers and the
+	 * settings it was prepared with.
+	 */
+	private static class CachedStatement {
+		private final PreparedStatement raw;
+		private final PreparedStatement proxy;
+		private final int fetchSize;
+		private final int maxRows;
+		private final int queryTimeout;
+		/** Whether a caller added to the batch or changed a setting since the last reset */
+		private boolean dirty;
+
+		CachedStatement(PreparedStatement raw) throws SQLException {
+			this.raw = raw;
+			this.fetchSize = raw.getFetchSize();
+			this.maxRows = raw.getMaxRows();
+			this.queryTimeout = raw.getQueryTimeout();
+			this.proxy = wrap(this);
+		}
+
+		/**
+		 * Clears what the last caller left behind.
+		 *
+		 * @throws SQLException If the statement could not be reset.
+		 */
+		void reset() throws SQLException {
+			raw.clearParameters();
+			if (dirty) {
+				raw.clearBatch();
+				raw.setFetchSize(fetchSize);
+				raw.setMaxRows(maxRows);
+				raw.setQueryTimeout(queryTimeout);
+				dirty = false;
+			}
+		}
+	}
+}
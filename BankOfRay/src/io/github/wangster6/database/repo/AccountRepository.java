@@ -0,0 +1,428 @@
+package io.github.wangster6.database.repo;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+
+import io.github.wangster6.bank.Accrual;
+import io.github.wangster6.bank.LedgerEntry;
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.bank.TransferResult;
+import io.github.wangster6.database.DatabaseConnection;
+import io.github.wangster6.database.ReadSession;
+import io.github.wangster6.metrics.Metrics;
+import io.github.wangster6.metrics.OperationMetrics;
+import io.github.wangster6.storage.AccountStore;
+
+/**
+ * Data access for the "accounts" table. Accounts are addressed by their primary
+ * key. Every method borrows a pooled connection for the duration of a single
+ * call, and its prepared statements are reused from the connection's statement
+ * cache. Balances are read from a read replica when one is configured, while
+ * balance changes always read back the balance they produced on the primary.
+ * Every balance change inserts its ledger entries in the transaction that
+ * changes the balance, so the ledger can never miss a committed change.
+ * Deposits and withdrawals are group committed by {@link GroupCommit}, sharing
+ * one transaction with those of other sessions that arrive at about the same
+ * time.
+ *
+ * @author wangster6
+ */
+public class AccountRepository implements AccountStore {
+	private static final String SELECT_BALANCE = "SELECT balance FROM accounts WHERE id = ?";
+	// The new balance is also handed to LAST_INSERT_ID() in cents, which the
+	// driver returns as the statement's generated key
+	private static final String DEPOSIT = "UPDATE accounts SET balance = LAST_INSERT_ID((balance + ?) * 100) / 100 "
+			+ "WHERE id = ?";
+	private static final String WITHDRAW = "UPDATE accounts SET balance = LAST_INSERT_ID((balance - ?) * 100) / 100 "
+			+ "WHERE id = ? AND balance >= ?";
+	private static final String LOCK_PAIR = "SELECT id, balance FROM accounts WHERE id IN (?, ?) ORDER BY id FOR UPDATE";
+	private static final String TRANSFER = "UPDATE accounts SET balance = CASE WHEN id = ? THEN balance - ? ELSE balance + ? END "
+			+ "WHERE id IN (?, ?)";
+	private static final String SELECT_MAX_ID = "SELECT MAX(id) FROM accounts";
+	private static final String SELECT_ACCRUED = "SELECT first_id, last_id FROM interest_checkpoints WHERE run_id = ?";
+	private static final String INSERT_ACCRUED = "INSERT INTO interest_checkpoints (run_id, first_id, last_id) VALUES (?, ?, ?)";
+	private static final String LOCK_RANGE = "SELECT id, balance FROM accounts WHERE id BETWEEN ? AND ? AND balance > 0 "
+			+ "ORDER BY id FOR UPDATE";
+	private static final String SET_BALANCE = "UPDATE accounts SET balance = ? WHERE id = ?";
+
+	private static final OperationMetrics FIND_BALANCE_METRICS = Metrics.operation("db.accounts.findBalance");
+	private static final OperationMetrics DEPOSIT_METRICS = Metrics.operation("db.accounts.deposit");
+	private static final OperationMetrics WITHDRAW_METRICS = Metrics.operation("db.accounts.withdraw");
+	private static final OperationMetrics TRANSFER_METRICS = Metrics.operation("db.accounts.transfer");
+	private static final OperationMetrics FIND_MAX_ID_METRICS = Metrics.operation("db.accounts.findMaxId");
+	private static final OperationMetrics FIND_ACCRUED_METRICS = Metrics.operation("db.accounts.findAccruedRanges");
+	private static final OperationMetrics ACCRUE_METRICS = Metrics.operation("db.accounts.accrueInterest");
+
+	/**
+	 * Retrieves the balance of an account.
+	 *
+	 * @param accountId The ID of the account.
+	 * @return The account balance, or null if the account is not found.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public Money findBalance(int accountId) throws SQLException, IOException {
+		long start = System.nanoTime();
+		try (Connection connection = DatabaseConnection.getReadConnection()) {
+			return findBalance(connection, accountId);
+		} catch (SQLException | IOException e) {
+			FIND_BALANCE_METRICS.recordError();
+			throw e;
+		} finally {
+			FIND_BALANCE_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Atomically adds an amount to an account's balance and records the deposit
+	 * in the ledger, in a group-committed batch. The update is applied by the
+	 * database, so concurrent sessions on the same account cannot lose each
+	 * other's changes.
+	 *
+	 * @param accountId The ID of the account.
+	 * @param amount    The positive amount to deposit.
+	 * @return The balance after the deposit, or null if the account is not found.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public Money deposit(int accountId, Money amount) throws SQLException, IOException {
+		return applyDelta(DEPOSIT, accountId, amount, LedgerEntry.Type.DEPOSIT, DEPOSIT_METRICS);
+	}
+
+	/**
+	 * Atomically subtracts an amount from an account's balance, but only if the
+	 * balance covers it at the moment the update runs, and records the
+	 * withdrawal in the ledger, in a group-committed batch.
+	 *
+	 * @param accountId The ID of the account.
+	 * @param amount    The positive amount to withdraw.
+	 * @return The balance after the withdrawal, or null if the account is not
+	 *         found or does not hold enough money.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public Money withdraw(int accountId, Money amount) throws SQLException, IOException {
+		return applyDelta(WITHDRAW, accountId, amount, LedgerEntry.Type.WITHDRAWAL, WITHDRAW_METRICS);
+	}
+
+	/**
+	 * Atomically moves an amount from one account to another in one transaction.
+	 * Both rows are locked up front in ascending ID order, whichever direction the
+	 * money moves in, so two transfers between the same accounts always queue for
+	 * the same lock first instead of deadlocking. The new balances are worked out
+	 * from the locked rows, so they are reported without reading them again, and
+	 * the transfer is recorded in the ledger of both accounts before the commit.
+	 *
+	 * @param fromAccountId The ID of the account to take the money from.
+	 * @param toAccountId   The ID of the account to give the money to.
+	 * @param amount        The positive amount to transfer.
+	 * @return The balances of both accounts after the transfer, or null if either
+	 *         account is not found or the first does not hold enough money.
+	 * @throws SQLException             If a database access error occurs, or the
+	 *                                  balance of the second account would
+	 *                                  become too large.
+	 * @throws IOException              If the database configuration cannot be
+	 *                                  loaded.
+	 * @throws IllegalArgumentException If both IDs are the same account.
+	 */
+	@Override
+	public TransferResult transfer(int fromAccountId, int toAccountId, Money amount) throws SQLException, IOException {
+		if (fromAccountId == toAccountId) {
+			throw new IllegalArgumentException("Cannot transfer from account " + fromAccountId + " to itself");
+		}
+		int firstId = Math.min(fromAccountId, toAccountId);
+		int secondId = Math.max(fromAccountId, toAccountId);
+		long start = System.nanoTime();
+		ReadSession.noteWrite();
+		try (Connection connection = DatabaseConnection.getConnection()) {
+			connection.setAutoCommit(false);
+			Money fromBal = null;
+			Money toBal = null;
+			try (PreparedStatement preparedStatement = connection.prepareStatement(LOCK_PAIR)) {
+				preparedStatement.setInt(1, firstId);
+				preparedStatement.setInt(2, secondId);
+				try (ResultSet resultSet = preparedStatement.executeQuery()) {
+					while (resultSet.next()) {
+						Money balance = Money.of(resultSet.getBigDecimal("balance"));
+						if (resultSet.getInt("id") == fromAccountId) {
+							fromBal = balance;
+						} else {
+							toBal = balance;
+						}
+					}
+				}
+			}
+			if (fromBal == null || toBal == null || fromBal.compareTo(amount) < 0) {
+				return null; // Nothing changed, returning the connection rolls back
+			}
+			TransferResult result;
+			try {
+				result = new TransferResult(fromBal.minus(amount), toBal.plus(amount));
+			} catch (ArithmeticException e) {
+				throw new SQLDataException("Balance of account " + toAccountId + " out of range", e);
+			}
+			try (PreparedStatement preparedStatement = connection.prepareStatement(TRANSFER)) {
+				preparedStatement.setInt(1, fromAccountId);
+				preparedStatement.setBigDecimal(2, amount.toBigDecimal());
+				preparedStatement.setBigDecimal(3, amount.toBigDecimal());
+				preparedStatement.setInt(4, firstId);
+				preparedStatement.setInt(5, secondId);
+				preparedStatement.executeUpdate();
+			}
+			Timestamp createdAt = Timestamp.from(Instant.now());
+			try (PreparedStatement preparedStatement = connection.prepareStatement(LedgerRepository.INSERT_ENTRY)) {
+				LedgerRepository.bindEntry(preparedStatement, toAccountId, LedgerEntry.Type.TRANSFER_IN, amount,
+						result.getToBalance(), createdAt);
+				preparedStatement.addBatch();
+				LedgerRepository.bindEntry(preparedStatement, fromAccountId, LedgerEntry.Type.TRANSFER_OUT, amount,
+						result.getFromBalance(), createdAt);
+				preparedStatement.addBatch();
+				preparedStatement.executeBatch();
+			}
+			connection.commit(); // On failure, returning the connection rolls back
+			return result;
+		} catch (SQLException | IOException e) {
+			TRANSFER_METRICS.recordError();
+			throw e;
+		} finally {
+			TRANSFER_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Retrieves the highest account ID handed out so far.
+	 *
+	 * @return The highest account ID, or 0 if there are no accounts.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public int findMaxAccountId() throws SQLException, IOException {
+		long start = System.nanoTime();
+		try (Connection connection = DatabaseConnection.getConnection();
+				PreparedStatement preparedStatement = connection.prepareStatement(SELECT_MAX_ID);
+				ResultSet resultSet = preparedStatement.executeQuery()) {
+			return resultSet.next() ? resultSet.getInt(1) : 0; // MAX of no rows is NULL, read as 0
+		} catch (SQLException | IOException e) {
+			FIND_MAX_ID_METRICS.recordError();
+			throw e;
+		} finally {
+			FIND_MAX_ID_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Retrieves the ranges of account IDs that interest has already been accrued
+	 * on in a run, from the "interest_checkpoints" table.
+	 *
+	 * @param runId The ID of the run.
+	 * @return The first ID of each accrued range mapped to its last ID.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public NavigableMap<Integer, Integer> findAccruedRanges(String runId) throws SQLException, IOException {
+		long start = System.nanoTime();
+		try (Connection connection = DatabaseConnection.getConnection();
+				PreparedStatement preparedStatement = connection.prepareStatement(SELECT_ACCRUED)) {
+			preparedStatement.setString(1, runId);
+			NavigableMap<Integer, Integer> ranges = new TreeMap<>();
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					ranges.put(resultSet.getInt("first_id"), resultSet.getInt("last_id"));
+				}
+			}
+			return ranges;
+		} catch (SQLException | IOException e) {
+			FIND_ACCRUED_METRICS.recordError();
+			throw e;
+		} finally {
+			FIND_ACCRUED_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Adds interest to every account with a positive balance in a range of IDs in
+	 * one transaction. The checkpoint row of the range is inserted first, so a
+	 * range already accrued in the run fails on its primary key before any
+	 * balance is touched, and is committed together with the new balances, so a
+	 * range is never accrued twice. The accounts are then locked in ascending ID
+	 * order, the same order transfers lock in, and updated with one batch, and
+	 * their INTEREST ledger rows are inserted with another before the commit.
+	 *
+	 * @param runId    The ID of the run.
+	 * @param firstId  The first account ID of the range.
+	 * @param lastId   The last account ID of the range, inclusive.
+	 * @param interest Works out the interest on a locked balance.
+	 * @return The accounts interest was added to, or null if a range starting at
+	 *         the same ID was already accrued in the run.
+	 * @throws SQLException If a database access error occurs, or a balance would
+	 *                      become too large.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public List<Accrual> accrueInterest(String runId, int firstId, int lastId, UnaryOperator<Money> interest)
+			throws SQLException, IOException {
+		long start = System.nanoTime();
+		ReadSession.noteWrite();
+		try (Connection connection = DatabaseConnection.getConnection()) {
+			connection.setAutoCommit(false);
+			try (PreparedStatement preparedStatement = connection.prepareStatement(INSERT_ACCRUED)) {
+				preparedStatement.setString(1, runId);
+				preparedStatement.setInt(2, firstId);
+				preparedStatement.setInt(3, lastId);
+				preparedStatement.executeUpdate();
+			} catch (SQLException e) {
+				if (UserRepository.isDuplicateKey(e)) {
+					return null; // Already accrued, returning the connection rolls back
+				}
+				throw e;
+			}
+
+			List<Accrual> accruals = new ArrayList<>();
+			try (PreparedStatement preparedStatement = connection.prepareStatement(LOCK_RANGE)) {
+				preparedStatement.setInt(1, firstId);
+				preparedStatement.setInt(2, lastId);
+				try (ResultSet resultSet = preparedStatement.executeQuery()) {
+					while (resultSet.next()) {
+						int accountId = resultSet.getInt("id");
+						Money balance = Money.of(resultSet.getBigDecimal("balance"));
+						Money credit = interest.apply(balance);
+						if (credit.isPositive()) {
+							try {
+								accruals.add(new Accrual(accountId, credit, balance.plus(credit)));
+							} catch (ArithmeticException e) {
+								throw new SQLDataException("Balance of account " + accountId + " out of range", e);
+							}
+						}
+					}
+				}
+			}
+			if (!accruals.isEmpty()) {
+				try (PreparedStatement preparedStatement = connection.prepareStatement(SET_BALANCE)) {
+					for (Accrual accrual : accruals) {
+						preparedStatement.setBigDecimal(1, accrual.getBalanceAfter().toBigDecimal());
+						preparedStatement.setInt(2, accrual.getAccountId());
+						preparedStatement.addBatch();
+					}
+					preparedStatement.executeBatch();
+				}
+				Timestamp createdAt = Timestamp.from(Instant.now());
+				try (PreparedStatement preparedStatement = connection.prepareStatement(LedgerRepository.INSERT_ENTRY)) {
+					for (Accrual accrual : accruals) {
+						LedgerRepository.bindEntry(preparedStatement, accrual.getAccountId(), LedgerEntry.Type.INTEREST,
+								accrual.getInterest(), accrual.getBalanceAfter(), createdAt);
+						preparedStatement.addBatch();
+					}
+					preparedStatement.executeBatch();
+				}
+			}
+			connection.commit(); // On failure, returning the connection rolls back
+			return accruals;
+		} catch (SQLException | IOException e) {
+			ACCRUE_METRICS.recordError();
+			throw e;
+		} finally {
+			ACCRUE_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Applies a deposit or withdrawal through the shared {@link GroupCommit}, so
+	 * it commits together with those of other sessions.
+	 *
+	 * @param update    The update statement to run.
+	 * @param accountId The ID of the account.
+	 * @param amount    The amount to bind.
+	 * @param type      How the change is recorded in the ledger.
+	 * @param metrics   The metrics to record the call in.
+	 * @return The balance after the update, or null if no row was updated.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	private Money applyDelta(String update, int accountId, Money amount, LedgerEntry.Type type,
+			OperationMetrics metrics) throws SQLException, IOException {
+		long start = System.nanoTime();
+		try {
+			ReadSession.noteWrite(); // The batch is written on another thread, but the change is this session's
+			return GroupCommit.shared().apply(update, accountId, amount, type);
+		} catch (SQLException | IOException e) {
+			metrics.recordError();
+			throw e;
+		} finally {
+			metrics.recordSince(start);
+		}
+	}
+
+	/**
+	 * Runs a relative balance update inside a transaction and reads back the
+	 * resulting balance from it. The update passes the new balance, in cents, to
+	 * LAST_INSERT_ID(), since that only holds integers while the column has two
+	 * decimals, and the driver returns it as the generated key, so the balance
+	 * comes back without another round trip. The driver reports no key for a
+	 * value of 0, so a balance left at 0 is read back with a select; the row
+	 * stays locked by the update until the commit, so that is still exactly the
+	 * balance this update produced.
+	 *
+	 * @param connection The connection of the transaction.
+	 * @param update     The update statement to run.
+	 * @param accountId  The ID of the account.
+	 * @param amount     The amount to bind.
+	 * @param withdrawal True to also bind the amount as the minimum balance
+	 *                   required.
+	 * @return The balance after the update, or null if no row was updated.
+	 * @throws SQLException If a database access error occurs.
+	 */
+	static Money applyDelta(Connection connection, String update, int accountId, Money amount, boolean withdrawal)
+			throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(update,
+				Statement.RETURN_GENERATED_KEYS)) {
+			preparedStatement.setBigDecimal(1, amount.toBigDecimal());
+			preparedStatement.setInt(2, accountId);
+			if (withdrawal) {
+				preparedStatement.setBigDecimal(3, amount.toBigDecimal());
+			}
+			if (preparedStatement.executeUpdate() == 0) {
+				return null;
+			}
+			try (ResultSet generatedKeys = preparedStatement.getGeneratedKeys()) {
+				if (generatedKeys.next()) {
+					return Money.ofCents(generatedKeys.getLong(1));
+				}
+			}
+		}
+		return findBalance(connection, accountId);
+	}
+
+	/**
+	 * Retrieves the balance of an account on an already borrowed connection.
+	 *
+	 * @param connection The connection to use.
+	 * @param accountId  The ID of the account.
+	 * @return The account balance, or null if the account is not found.
+	 * @throws SQLException If a database access error occurs.
+	 */
+	private static Money findBalance(Connection connection, int accountId) throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_BALANCE)) {
+			preparedStatement.setInt(1, accountId);
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return resultSet.next() ? Money.of(resultSet.getBigDecimal("balance")) : null;
+			}
+		}
+	}
+}
@@ -0,0 +1,287 @@
+package io.github.wangster6.database.repo;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.github.wangster6.bank.LedgerEntry;
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.config.AppConfig;
+import io.github.wangster6.config.ConfigManager;
+import io.github.wangster6.database.DatabaseConnection;
+import io.github.wangster6.metrics.Metrics;
+import io.github.wangster6.metrics.OperationMetrics;
+
+/**
+ * Applies the deposits and withdrawals of concurrent sessions in shared
+ * transactions. Every change is handed to a single writer thread, which groups
+ * whatever arrives within a short window, up to a maximum size, and applies
+ * the whole group on one connection: each balance update and the ledger rows
+ * of all of them, then a single commit. Many sessions therefore share one
+ * commit, and one fsync, instead of paying for one each, and the ledger rows
+ * still commit together with the balances they record.
+ * <p>
+ * The changes of a batch are applied in ascending account ID order, keeping
+ * the order they arrived in for the same account, so a batch locks its rows in
+ * the same order as transfers and interest runs and cannot deadlock with them.
+ * If a batch fails before its commit, for example because one deposit would
+ * overflow a balance, it is rolled back and each of its changes is retried in
+ * a transaction of its own, so one bad change only fails its own session.
+ *
+ * @author wangster6
+ */
+class GroupCommit {
+	/** Marks the end of the queue when the writer is closed */
+	private static final Delta STOP = new Delta(null, 0, null, null);
+
+	private static final OperationMetrics BATCH_METRICS = Metrics.operation("db.accounts.groupCommit");
+
+	private static GroupCommit shared;
+
+	private final long windowNanos;
+	private final int maxBatchSize;
+	private final BlockingQueue<Delta> queue;
+	private final Thread writer;
+	private volatile boolean closed;
+
+	/**
+	 * Constructs a new GroupCommit and starts its writer thread.
+	 *
+	 * @param windowMillis how long the writer waits for more changes after the
+	 *                     first one of a batch arrives, in milliseconds, or 0 to
+	 *                     only batch the changes already waiting.
+	 * @param maxBatchSize the maximum number of changes applied in one batch.
+	 */
+	GroupCommit(long windowMillis, int maxBatchSize) {
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+		this.maxBatchSize = maxBatchSize;
+		this.queue = new LinkedBlockingQueue<>(maxBatchSize * 64);
+		this.writer = new Thread(this::writeLoop, "group-commit");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Returns the writer shared by every session, creating it from the
+	 * configuration on first use.
+	 *
+	 * @return the shared GroupCommit.
+	 * @throws IOException If the configuration cannot be loaded.
+	 */
+	static synchronized GroupCommit shared() throws IOException {
+		if (shared == null) {
+			AppConfig config = ConfigManager.get();
+			shared = new GroupCommit(config.getLedgerBatchWindowMillis(), config.getLedgerMaxBatchSize());
+		}
+		return shared;
+	}
+
+	/**
+	 * Applies a balance change in the next batch and waits for the batch to
+	 * commit.
+	 *
+	 * @param update    the relative update statement of the change.
+	 * @param accountId the ID of the account.
+	 * @param amount    the amount to bind.
+	 * @param type      how the change is recorded in the ledger.
+	 * @return the balance after the change, or null if the update changed no row.
+	 * @throws SQLException If the change could not be applied.
+	 * @throws IOException  If the database configuration cannot be loaded, or the
+	 *                      thread was interrupted while waiting.
+	 */
+	Money apply(String update, int accountId, Money amount, LedgerEntry.Type type) throws SQLException, IOException {
+		if (closed) {
+			throw new IllegalStateException("Group commit is closed");
+		}
+		Delta delta = new Delta(update, accountId, amount, type);
+		try {
+			queue.put(delta);
+			return delta.result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the balance change to commit");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException) {
+				throw (SQLException) cause;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new CompletionException(cause);
+		}
+	}
+
+	/**
+	 * Applies every change queued so far and stops the writer thread.
+	 *
+	 * @throws InterruptedException If interrupted while waiting for the writer.
+	 */
+	void close() throws InterruptedException {
+		closed = true;
+		queue.put(STOP);
+		writer.join();
+	}
+
+	/**
+	 * Takes changes off the queue in batches and applies them until closed.
+	 */
+	private void writeLoop() {
+		List<Delta> batch = new ArrayList<>(maxBatchSize);
+		boolean running = true;
+		try {
+			while (running) {
+				Delta first = queue.take();
+				if (first == STOP) {
+					break;
+				}
+				batch.add(first);
+
+				// Collect whatever else arrives within the window
+				long deadline = System.nanoTime() + windowNanos;
+				while (batch.size() < maxBatchSize) {
+					long remaining = deadline - System.nanoTime();
+					Delta next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+					if (next == null) {
+						break;
+					} else if (next == STOP) {
+						running = false;
+						break;
+					}
+					batch.add(next);
+				}
+
+				write(batch);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			// Writer stopped
+		}
+
+		IllegalStateException closedException = new IllegalStateException("Group commit is closed");
+		for (Delta delta : batch) {
+			delta.result.completeExceptionally(closedException);
+		}
+		for (Delta delta = queue.poll(); delta != null; delta = queue.poll()) {
+			if (delta != STOP) {
+				delta.result.completeExceptionally(closedException);
+			}
+		}
+	}
+
+	/**
+	 * Applies one batch in one transaction and completes the results of its
+	 * changes. A batch of more than one change that fails before its commit is
+	 * retried one change at a time; a failed commit is not retried, since it may
+	 * have gone through.
+	 *
+	 * @param batch the changes to apply, in the order they arrived.
+	 */
+	void write(List<Delta> batch) {
+		List<Delta> ordered = new ArrayList<>(batch);
+		ordered.sort(Comparator.comparingInt(delta -> delta.accountId)); // Stable, so each account keeps its order
+		boolean retryAlone = false;
+		long start = System.nanoTime();
+		try (Connection connection = DatabaseConnection.getConnection()) {
+			connection.setAutoCommit(false);
+			List<Money> balances = null;
+			try {
+				balances = applyAll(connection, ordered);
+			} catch (SQLException e) {
+				if (ordered.size() == 1) {
+					throw e;
+				}
+				retryAlone = true; // Returning the connection rolls back
+			}
+			if (balances != null) {
+				connection.commit();
+				for (int i = 0; i < ordered.size(); i++) {
+					ordered.get(i).result.complete(balances.get(i));
+				}
+			}
+		} catch (SQLException | IOException e) {
+			BATCH_METRICS.recordError();
+			for (Delta delta : ordered) {
+				delta.result.completeExceptionally(e);
+			}
+		} finally {
+			BATCH_METRICS.recordSince(start);
+		}
+		if (retryAlone) {
+			for (Delta delta : ordered) {
+				write(List.of(delta));
+			}
+		}
+	}
+
+	/**
+	 * Runs the balance update of every change of a batch and inserts the ledger
+	 * rows of those that changed a balance, without committing.
+	 *
+	 * @param connection the connection of the batch's transaction.
+	 * @param batch      the changes, in the order to apply them.
+	 * @return the balance after each change, or null where it changed nothing.
+	 * @throws SQLException If a statement fails.
+	 */
+	List<Money> applyAll(Connection connection, List<Delta> batch) throws SQLException {
+		List<Money> balances = new ArrayList<>(batch.size());
+		for (Delta delta : batch) {
+			balances.add(AccountRepository.applyDelta(connection, delta.update, delta.accountId, delta.amount,
+					delta.type == LedgerEntry.Type.WITHDRAWAL));
+		}
+		try (PreparedStatement preparedStatement = connection.prepareStatement(LedgerRepository.INSERT_ENTRY)) {
+			boolean any = false;
+			for (int i = 0; i < batch.size(); i++) {
+				Delta delta = batch.get(i);
+				if (balances.get(i) != null) {
+					LedgerRepository.bindEntry(preparedStatement, delta.accountId, delta.type, delta.amount,
+							balances.get(i), Timestamp.from(delta.createdAt));
+					preparedStatement.addBatch();
+					any = true;
+				}
+			}
+			if (any) {
+				preparedStatement.executeBatch();
+			}
+		}
+		return balances;
+	}
+
+	/**
+	 * A balance change waiting to be applied.
+	 */
+	static final class Delta {
+		private final String update;
+		private final int accountId;
+		private final Money amount;
+		private final LedgerEntry.Type type;
+		private final Instant createdAt = Instant.now();
+		final CompletableFuture<Money> result = new CompletableFuture<>();
+
+		Delta(String update, int accountId, Money amount, LedgerEntry.Type type) {
+			this.update = update;
+			this.accountId = accountId;
+			this.amount = amount;
+			this.type = type;
+		}
+
+		/**
+		 * @return the ID of the account the change is for.
+		 */
+		int getAccountId() {
+			return accountId;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package io.github.wangster6.database.repo;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.wangster6.bank.LedgerEntry;
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.database.DatabaseConnection;
+import io.github.wangster6.metrics.Metrics;
+import io.github.wangster6.metrics.OperationMetrics;
+import io.github.wangster6.storage.LedgerStore;
+
+/**
+ * Data access for the append-only "ledger" table. Entries are only ever
+ * inserted, and their sequence is assigned by the database's AUTO_INCREMENT
+ * column, so every process writing to the ledger draws from the same sequence.
+ * The entries of a balance change are inserted by {@link AccountRepository} in
+ * the transaction that changes the balance, so a committed change always has
+ * its entries. Sequences are assigned when a row is inserted, not when it is
+ * committed, but the entries of one account are inserted while its row is
+ * locked, so they always commit in sequence order.
+ * <p>
+ * An account's history is read newest first in pages keyed on
+ * (account_id, sequence): each page starts below the last sequence of the
+ * previous one, so every page is a short index range scan no matter how deep
+ * into the history it is. Pages are read from a read replica when one is
+ * configured.
+ *
+ * @author wangster6
+ */
+public class LedgerRepository implements LedgerStore {
+	/** Inserts one entry, letting the database assign its sequence */
+	static final String INSERT_ENTRY = "INSERT INTO ledger (account_id, type, amount, balance_after, created_at) "
+			+ "VALUES (?, ?, ?, ?, ?)";
+	private static final String SELECT_PAGE = "SELECT sequence, account_id, type, amount, balance_after, created_at FROM ledger "
+			+ "WHERE account_id = ? AND sequence < ? ORDER BY sequence DESC LIMIT ?";
+
+	private static final OperationMetrics FIND_PAGE_METRICS = Metrics.operation("db.ledger.findPage");
+
+	/**
+	 * Retrieves one page of an account's history, newest first.
+	 *
+	 * @param accountId      The ID of the account.
+	 * @param beforeSequence Only entries with a lower sequence are returned. Use
+	 *                       Long.MAX_VALUE for the first page and the sequence of
+	 *                       the last entry of a page for the page after it.
+	 * @param limit          The maximum number of entries to return.
+	 * @return The entries, empty if there are no more.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public List<LedgerEntry> findPage(int accountId, long beforeSequence, int limit) throws SQLException, IOException {
+		List<LedgerEntry> page = new ArrayList<>(limit);
+		long start = System.nanoTime();
+		try (Connection connection = DatabaseConnection.getReadConnection();
+				PreparedStatement preparedStatement = connection.prepareStatement(SELECT_PAGE)) {
+			preparedStatement.setFetchSize(limit);
+			preparedStatement.setInt(1, accountId);
+			preparedStatement.setLong(2, beforeSequence);
+			preparedStatement.setInt(3, limit);
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					page.add(new LedgerEntry(resultSet.getLong("sequence"), resultSet.getInt("account_id"),
+							LedgerEntry.Type.valueOf(resultSet.getString("type")),
+							Money.of(resultSet.getBigDecimal("amount")),
+							Money.of(resultSet.getBigDecimal("balance_after")),
+							resultSet.getTimestamp("created_at").toInstant()));
+				}
+			}
+		} catch (SQLException | IOException e) {
+			FIND_PAGE_METRICS.recordError();
+			throw e;
+		} finally {
+			FIND_PAGE_METRICS.recordSince(start);
+		}
+		return page;
+	}
+
+	/**
+	 * Binds the columns of an entry to a statement prepared from
+	 * {@link #INSERT_ENTRY}.
+	 *
+	 * @param preparedStatement The statement to bind to.
+	 * @param accountId         The ID of the account that changed.
+	 * @param type              How the money was moved.
+	 * @param amount            The amount moved.
+	 * @param balanceAfter      The balance of the account after the change.
+	 * @param createdAt         When the change was applied.
+	 * @throws SQLException If a database access error occurs.
+	 */
+	static void bindEntry(PreparedStatement preparedStatement, int accountId, LedgerEntry.Type type, Money amount,
+			Money balanceAfter, Timestamp createdAt) throws SQLException {
+		preparedStatement.setInt(1, accountId);
+		preparedStatement.setString(2, type.name());
+		preparedStatement.setBigDecimal(3, amount.toBigDecimal());
+		preparedStatement.setBigDecimal(4, balanceAfter.toBigDecimal());
+		preparedStatement.setTimestamp(5, createdAt);
+	}
+}
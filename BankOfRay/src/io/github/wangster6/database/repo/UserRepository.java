@@ -0,0 +1,424 @@
+package io.github.wangster6.database.repo;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.bank.NewUser;
+import io.github.wangster6.bank.UserCredentials;
+import io.github.wangster6.database.DatabaseConnection;
+import io.github.wangster6.database.ReadSession;
+import io.github.wangster6.metrics.Metrics;
+import io.github.wangster6.metrics.OperationMetrics;
+import io.github.wangster6.storage.UserStore;
+
+/**
+ * Data access for the "users" table. Every method borrows a pooled connection
+ * for the duration of a single call, and its prepared statements are reused
+ * from the connection's statement cache. Looking up a user's credentials or
+ * account and whether a username exists are served by a read replica when one
+ * is configured.
+ *
+ * @author wangster6
+ */
+public class UserRepository implements UserStore {
+	private static final String SELECT_CREDENTIALS = "SELECT u.id, u.account_id, u.first_name, u.hashed_password, a.balance "
+			+ "FROM users u JOIN accounts a ON a.id = u.account_id WHERE u.username = ?";
+	private static final String SELECT_ACCOUNT_ID = "SELECT account_id FROM users WHERE username = ?";
+	private static final String COUNT_BY_USERNAME = "SELECT COUNT(*) as count FROM users WHERE username = ?";
+	private static final String INSERT_USER = "INSERT INTO users (first_name, last_name, username, hashed_password, account_id) VALUES (?, ?, ?, ?, ?)";
+	private static final String UPDATE_HASHED_PASSWORD = "UPDATE users SET hashed_password = ? WHERE id = ? AND hashed_password = ?";
+	private static final String DELETE_ACCOUNT_BY_USERNAME = "DELETE FROM accounts WHERE id = (SELECT account_id FROM users WHERE username = ?)";
+	private static final String DELETE_USER_BY_USERNAME = "DELETE FROM users WHERE username = ?";
+	private static final String COUNT_USERS = "SELECT COUNT(*) as count FROM users";
+	private static final String SELECT_USERNAMES = "SELECT username FROM users";
+	private static final String INSERT_ACCOUNTS = "INSERT INTO accounts (balance) VALUES ";
+	private static final String SELECT_USERNAMES_IN = "SELECT username FROM users WHERE username IN ";
+	/** The MySQL error code of a duplicate entry for a unique key */
+	private static final int ER_DUP_ENTRY = 1062;
+
+	private static final OperationMetrics FIND_CREDENTIALS_METRICS = Metrics.operation("db.users.findCredentials");
+	private static final OperationMetrics FIND_ACCOUNT_ID_METRICS = Metrics.operation("db.users.findAccountId");
+	private static final OperationMetrics EXISTS_METRICS = Metrics.operation("db.users.exists");
+	private static final OperationMetrics UPDATE_HASHED_PASSWORD_METRICS = Metrics.operation("db.users.updateHashedPassword");
+	private static final OperationMetrics DELETE_BY_USERNAME_METRICS = Metrics.operation("db.users.deleteByUsername");
+	private static final OperationMetrics CREATE_ALL_METRICS = Metrics.operation("db.users.createAll");
+	private static final OperationMetrics FIND_EXISTING_METRICS = Metrics.operation("db.users.findExisting");
+	private static final OperationMetrics COUNT_METRICS = Metrics.operation("db.users.count");
+	private static final OperationMetrics FOR_EACH_USERNAME_METRICS = Metrics.operation("db.users.forEachUsername");
+
+	/**
+	 * Loads a user's password hash along with everything a logged-in session needs
+	 * about the user and their account, with a single query.
+	 *
+	 * @param username The username of the user.
+	 * @return The user's credentials, or null if the user or their account is not
+	 *         found.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public UserCredentials findCredentials(String username) throws SQLException, IOException {
+		long start = System.nanoTime();
+		try (Connection connection = DatabaseConnection.getReadConnection();
+				PreparedStatement preparedStatement = connection.prepareStatement(SELECT_CREDENTIALS)) {
+			preparedStatement.setString(1, username);
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				if (!resultSet.next()) {
+					return null;
+				}
+				return new UserCredentials(resultSet.getInt("id"), resultSet.getInt("account_id"), username,
+						resultSet.getString("first_name"), resultSet.getString("hashed_password"),
+						Money.of(resultSet.getBigDecimal("balance")));
+			}
+		} catch (SQLException | IOException e) {
+			FIND_CREDENTIALS_METRICS.recordError();
+			throw e;
+		} finally {
+			FIND_CREDENTIALS_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Finds the account of a user by their username, reading only the account ID.
+	 *
+	 * @param username The username of the user.
+	 * @return The ID of the user's account, or null if the user is not found.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public Integer findAccountId(String username) throws SQLException, IOException {
+		long start = System.nanoTime();
+		try (Connection connection = DatabaseConnection.getReadConnection();
+				PreparedStatement preparedStatement = connection.prepareStatement(SELECT_ACCOUNT_ID)) {
+			preparedStatement.setString(1, username);
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return resultSet.next() ? resultSet.getInt("account_id") : null;
+			}
+		} catch (SQLException | IOException e) {
+			FIND_ACCOUNT_ID_METRICS.recordError();
+			throw e;
+		} finally {
+			FIND_ACCOUNT_ID_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Checks if a given username exists in the "users" table.
+	 *
+	 * @param username The username to be checked.
+	 * @return True if the username exists, false otherwise.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public boolean exists(String username) throws SQLException, IOException {
+		long start = System.nanoTime();
+		try (Connection connection = DatabaseConnection.getReadConnection();
+				PreparedStatement preparedStatement = connection.prepareStatement(COUNT_BY_USERNAME)) {
+			preparedStatement.setString(1, username);
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return resultSet.next() && resultSet.getInt("count") > 0;
+			}
+		} catch (SQLException | IOException e) {
+			EXISTS_METRICS.recordError();
+			throw e;
+		} finally {
+			EXISTS_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Creates a user together with a new account with a balance of 0, in one
+	 * transaction on one connection. Whether the username is taken is decided by
+	 * the unique constraint on "users.username", so two sessions signing up with
+	 * the same username at the same time cannot both succeed, and a failed signup
+	 * never leaves an account behind.
+	 *
+	 * @param newUser The user to create.
+	 * @return True if the user was created, false if the username is taken.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public boolean create(NewUser newUser) throws SQLException, IOException {
+		try {
+			createAll(Collections.singletonList(newUser));
+			return true;
+		} catch (SQLException e) {
+			if (isDuplicateKey(e)) {
+				return false;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Replaces a user's password hash, as long as it has not been changed since
+	 * the old hash was read.
+	 *
+	 * @param userId  The ID of the user.
+	 * @param oldHash The hash that was read.
+	 * @param newHash The hash to store.
+	 * @return True if the hash was replaced, false otherwise.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public boolean updateHashedPassword(int userId, String oldHash, String newHash) throws SQLException, IOException {
+		long start = System.nanoTime();
+		ReadSession.noteWrite();
+		try (Connection connection = DatabaseConnection.getConnection();
+				PreparedStatement preparedStatement = connection.prepareStatement(UPDATE_HASHED_PASSWORD)) {
+			preparedStatement.setString(1, newHash);
+			preparedStatement.setInt(2, userId);
+			preparedStatement.setString(3, oldHash);
+			return preparedStatement.executeUpdate() > 0;
+		} catch (SQLException | IOException e) {
+			UPDATE_HASHED_PASSWORD_METRICS.recordError();
+			throw e;
+		} finally {
+			UPDATE_HASHED_PASSWORD_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Deletes a user and their associated account in a single transaction.
+	 *
+	 * @param username The username of the user to be deleted.
+	 * @throws SQLException If a database access error occurs. Nothing is deleted
+	 *                      in that case.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public void deleteByUsername(String username) throws SQLException, IOException {
+		long start = System.nanoTime();
+		ReadSession.noteWrite();
+		try (Connection connection = DatabaseConnection.getConnection()) {
+			connection.setAutoCommit(false);
+			try (PreparedStatement deleteAccount = connection.prepareStatement(DELETE_ACCOUNT_BY_USERNAME);
+					PreparedStatement deleteUser = connection.prepareStatement(DELETE_USER_BY_USERNAME)) {
+				deleteAccount.setString(1, username);
+				deleteAccount.executeUpdate();
+				deleteUser.setString(1, username);
+				deleteUser.executeUpdate();
+			}
+			connection.commit(); // Returning the connection rolls back if this is not reached
+		} catch (SQLException | IOException e) {
+			DELETE_BY_USERNAME_METRICS.recordError();
+			throw e;
+		} finally {
+			DELETE_BY_USERNAME_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Creates many users, each with a new account, in a single transaction. The
+	 * accounts are inserted with one multi-row insert and the users with one JDBC
+	 * batch.
+	 *
+	 * @param newUsers The users to create.
+	 * @throws SQLException If a database access error occurs, for example because
+	 *                      one of the usernames is already taken. Nothing is
+	 *                      created in that case.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public void createAll(List<NewUser> newUsers) throws SQLException, IOException {
+		long start = System.nanoTime();
+		ReadSession.noteWrite();
+		try (Connection connection = DatabaseConnection.getConnection()) {
+			connection.setAutoCommit(false);
+			int[] accountIds = new int[newUsers.size()];
+			// Inserted in groups whose sizes are powers of two, so the statement cache
+			// only ever sees a handful of distinct statements
+			for (int inserted = 0; inserted < accountIds.length;) {
+				int group = Integer.highestOneBit(accountIds.length - inserted);
+				try (PreparedStatement insertAccounts = connection.prepareStatement(
+						repeatedValues(INSERT_ACCOUNTS, "(0)", group), Statement.RETURN_GENERATED_KEYS)) {
+					insertAccounts.executeUpdate();
+					try (ResultSet generatedKeys = insertAccounts.getGeneratedKeys()) {
+						for (int i = 0; i < group; i++) {
+							if (!generatedKeys.next()) {
+								throw new SQLException("Expected " + group + " account IDs but got " + i);
+							}
+							accountIds[inserted + i] = generatedKeys.getInt(1);
+						}
+					}
+				}
+				inserted += group;
+			}
+
+			try (PreparedStatement insertUsers = connection.prepareStatement(INSERT_USER)) {
+				for (int i = 0; i < accountIds.length; i++) {
+					NewUser newUser = newUsers.get(i);
+					insertUsers.setString(1, newUser.getFirstName());
+					insertUsers.setString(2, newUser.getLastName());
+					insertUsers.setString(3, newUser.getUsername());
+					insertUsers.setString(4, newUser.getHashedPassword());
+					insertUsers.setInt(5, accountIds[i]);
+					insertUsers.addBatch();
+				}
+				insertUsers.executeBatch();
+			}
+			connection.commit(); // Returning the connection rolls back if this is not reached
+		} catch (SQLException | IOException e) {
+			CREATE_ALL_METRICS.recordError();
+			throw e;
+		} finally {
+			CREATE_ALL_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Finds which of the given usernames are already taken, with a single query.
+	 *
+	 * @param usernames The usernames to look up.
+	 * @return The usernames that exist in the "users" table.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public Set<String> findExisting(Collection<String> usernames) throws SQLException, IOException {
+		Set<String> existing = new HashSet<>();
+		if (usernames.isEmpty()) {
+			return existing;
+		}
+		long start = System.nanoTime();
+		// Padded to a power of two by repeating the last username, so the statement
+		// cache only ever sees a handful of distinct statements
+		int size = Integer.highestOneBit(usernames.size());
+		size = size == usernames.size() ? size : size * 2;
+		try (Connection connection = DatabaseConnection.getConnection();
+				PreparedStatement preparedStatement = connection.prepareStatement(
+						repeatedValues(SELECT_USERNAMES_IN + "(", "?", size) + ")")) {
+			int index = 1;
+			String last = null;
+			for (String username : usernames) {
+				preparedStatement.setString(index++, username);
+				last = username;
+			}
+			while (index <= size) {
+				preparedStatement.setString(index++, last);
+			}
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					existing.add(resultSet.getString("username"));
+				}
+			}
+		} catch (SQLException | IOException e) {
+			FIND_EXISTING_METRICS.recordError();
+			throw e;
+		} finally {
+			FIND_EXISTING_METRICS.recordSince(start);
+		}
+		return existing;
+	}
+
+	/**
+	 * Counts the users in the "users" table.
+	 *
+	 * @return The number of users.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public long count() throws SQLException, IOException {
+		long start = System.nanoTime();
+		try (Connection connection = DatabaseConnection.getConnection();
+				PreparedStatement preparedStatement = connection.prepareStatement(COUNT_USERS);
+				ResultSet resultSet = preparedStatement.executeQuery()) {
+			return resultSet.next() ? resultSet.getLong("count") : 0;
+		} catch (SQLException | IOException e) {
+			COUNT_METRICS.recordError();
+			throw e;
+		} finally {
+			COUNT_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Streams every username in the "users" table to a consumer, fetching rows in
+	 * blocks instead of loading them all at once.
+	 *
+	 * @param action The consumer to call with each username.
+	 * @throws SQLException If a database access error occurs.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	@Override
+	public void forEachUsername(Consumer<String> action) throws SQLException, IOException {
+		long start = System.nanoTime();
+		try (Connection connection = DatabaseConnection.getConnection();
+				PreparedStatement preparedStatement = connection.prepareStatement(SELECT_USERNAMES)) {
+			preparedStatement.setFetchSize(1000);
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					action.accept(resultSet.getString(1));
+				}
+			}
+		} catch (SQLException | IOException e) {
+			FOR_EACH_USERNAME_METRICS.recordError();
+			throw e;
+		} finally {
+			FOR_EACH_USERNAME_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Checks whether an error, or any error it was caused by, is a duplicate key
+	 * on a primary key or unique index: MySQL error 1062 with SQLState 23000, or
+	 * the standard unique violation SQLState 23505. Other integrity constraint
+	 * violations, such as a missing foreign key or a NULL in a NOT NULL column,
+	 * are bugs or bad data rather than a taken key, so they do not count.
+	 *
+	 * @param e The error to check.
+	 * @return True if a key was duplicated, false otherwise.
+	 */
+	public static boolean isDuplicateKey(SQLException e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLException) {
+				SQLException sqlException = (SQLException) cause;
+				if (sqlException.getErrorCode() == ER_DUP_ENTRY && ("23000".equals(sqlException.getSQLState())
+						|| sqlException instanceof SQLIntegrityConstraintViolationException)) {
+					return true;
+				}
+				if ("23505".equals(sqlException.getSQLState())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Builds a statement that repeats a value a number of times, separated by
+	 * commas.
+	 *
+	 * @param prefix The start of the statement.
+	 * @param value  The value to repeat.
+	 * @param count  How many times to repeat it.
+	 * @return The statement.
+	 */
+	private static String repeatedValues(String prefix, String value, int count) {
+		StringBuilder sql = new StringBuilder(prefix.length() + count * (value.length() + 2)).append(prefix);
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(value);
+		}
+		return sql.toString();
+	}
+}
@@ -0,0 +1,365 @@
+package io.github.wangster6.interest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.github.wangster6.bank.Accrual;
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.config.AppConfig;
+import io.github.wangster6.config.ConfigManager;
+import io.github.wangster6.metrics.Metrics;
+import io.github.wangster6.metrics.OperationMetrics;
+import io.github.wangster6.storage.AccountStore;
+import io.github.wangster6.storage.StorageEngines;
+
+/**
+ * The end-of-day job that adds a day's interest to every account with a
+ * positive balance. The account IDs are walked in ranges of a fixed size, and
+ * the ranges are accrued in parallel on a fork/join pool, each in its own short
+ * transaction that also records every credit in the ledger and the range as
+ * done. Interactive sessions therefore only ever wait for one range, never for
+ * the whole run.
+ * <p>
+ * Every run has an ID, by default the date it accrues interest for. A run that
+ * stopped part way, or whose ranges partly failed, is finished by starting it
+ * again with the same ID: ranges already accrued are skipped, so no account is
+ * ever credited twice in a run.
+ *
+ * @author wangster6
+ */
+public class InterestAccrual {
+	/** Basis points in a whole, times the days in a year */
+	private static final BigDecimal DAILY_RATE_DIVISOR = BigDecimal.valueOf(10000L * 365);
+	private static final OperationMetrics CHUNK_METRICS = Metrics.operation("interest.chunk");
+
+	private final AccountStore accounts;
+	private final long annualRateBps;
+	private final int chunkSize;
+	private final int parallelism;
+
+	private final LongAdder chunksDone = new LongAdder();
+	private final LongAdder chunksSkipped = new LongAdder();
+	private final LongAdder chunksFailed = new LongAdder();
+	private final LongAdder accountsCredited = new LongAdder();
+	private final LongAdder centsCredited = new LongAdder();
+	private final AtomicReference<Exception> firstFailure = new AtomicReference<>();
+
+	/**
+	 * Constructs a new InterestAccrual.
+	 *
+	 * @param accounts      the store to accrue interest in.
+	 * @param annualRateBps the yearly interest rate in basis points.
+	 * @param chunkSize     the number of account IDs accrued per transaction.
+	 * @param parallelism   the number of ranges accrued at once.
+	 */
+	public InterestAccrual(AccountStore accounts, long annualRateBps, int chunkSize, int parallelism) {
+		this.accounts = accounts;
+		this.annualRateBps = annualRateBps;
+		this.chunkSize = chunkSize;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Works out one day's interest on a balance, rounded half to even to the
+	 * cent so rounding does not drift in either direction over many accounts.
+	 *
+	 * @param balance       the balance.
+	 * @param annualRateBps the yearly interest rate in basis points.
+	 * @return the interest, or 0 if the balance is not positive.
+	 */
+	static Money dailyInterest(Money balance, long annualRateBps) {
+		if (!balance.isPositive()) {
+			return Money.ZERO;
+		}
+		return Money.ofCents(BigDecimal.valueOf(balance.toCents()).multiply(BigDecimal.valueOf(annualRateBps))
+				.divide(DAILY_RATE_DIVISOR, 0, RoundingMode.HALF_EVEN).longValueExact());
+	}
+
+	/**
+	 * Accrues interest on every account not yet accrued in a run. Ranges that
+	 * fail are counted and left for the next attempt while the rest go on.
+	 *
+	 * @param runId                  the ID of the run.
+	 * @param progress               where to report progress, or null for none.
+	 * @param progressIntervalMillis how often progress is reported.
+	 * @return what the run did.
+	 * @throws SQLException If the accounts to accrue cannot be found.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	public Result run(String runId, PrintStream progress, long progressIntervalMillis)
+			throws SQLException, IOException {
+		long start = System.nanoTime();
+		List<Range> chunks = planChunks(accounts.findAccruedRanges(runId), accounts.findMaxAccountId());
+		if (chunks.isEmpty()) {
+			return result(0, start);
+		}
+
+		ScheduledExecutorService reporter = null;
+		if (progress != null) {
+			reporter = new ScheduledThreadPoolExecutor(1, task -> {
+				Thread thread = new Thread(task, "interest-progress");
+				thread.setDaemon(true);
+				return thread;
+			});
+			reporter.scheduleAtFixedRate(() -> progress.println(result(chunks.size(), start).format()),
+					progressIntervalMillis, progressIntervalMillis, TimeUnit.MILLISECONDS);
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new Accrue(runId, chunks, 0, chunks.size()));
+		} finally {
+			pool.shutdown();
+			if (reporter != null) {
+				reporter.shutdownNow();
+			}
+		}
+		return result(chunks.size(), start);
+	}
+
+	/**
+	 * Cuts the account IDs from 1 up to the highest one into ranges of at most
+	 * the chunk size, leaving out the ranges already accrued.
+	 *
+	 * @param accrued the ranges already accrued, first ID mapped to last ID.
+	 * @param maxId   the highest account ID.
+	 * @return every range still to accrue, in ID order.
+	 */
+	List<Range> planChunks(NavigableMap<Integer, Integer> accrued, int maxId) {
+		List<Range> chunks = new ArrayList<>();
+		long next = 1;
+		for (Map.Entry<Integer, Integer> range : accrued.entrySet()) {
+			addChunks(chunks, next, Math.min(range.getKey() - 1L, maxId));
+			next = Math.max(next, range.getValue() + 1L);
+		}
+		addChunks(chunks, next, maxId);
+		return chunks;
+	}
+
+	/**
+	 * Cuts a range of IDs into chunks.
+	 *
+	 * @param chunks where to add the chunks.
+	 * @param first  the first ID of the range.
+	 * @param last   the last ID of the range, inclusive.
+	 */
+	private void addChunks(List<Range> chunks, long first, long last) {
+		for (long chunkFirst = first; chunkFirst <= last; chunkFirst += chunkSize) {
+			chunks.add(new Range((int) chunkFirst, (int) Math.min(chunkFirst + chunkSize - 1, last)));
+		}
+	}
+
+	/**
+	 * Accrues one range, which the store records in the ledger as it does.
+	 *
+	 * @param runId the ID of the run.
+	 * @param chunk the range.
+	 */
+	private void accrue(String runId, Range chunk) {
+		long start = System.nanoTime();
+		List<Accrual> accruals;
+		try {
+			accruals = accounts.accrueInterest(runId, chunk.first, chunk.last,
+					balance -> dailyInterest(balance, annualRateBps));
+		} catch (SQLException | IOException e) {
+			CHUNK_METRICS.recordError();
+			chunksFailed.increment();
+			firstFailure.compareAndSet(null, e);
+			return;
+		} finally {
+			CHUNK_METRICS.recordSince(start);
+		}
+		if (accruals == null) {
+			chunksSkipped.increment(); // Accrued by another attempt since the run was planned
+			return;
+		}
+		for (Accrual accrual : accruals) {
+			centsCredited.add(accrual.getInterest().toCents());
+		}
+		accountsCredited.add(accruals.size());
+		chunksDone.increment();
+	}
+
+	/**
+	 * @param chunks the number of ranges the run set out to accrue.
+	 * @param start  the value of {@link System#nanoTime()} the run started at.
+	 * @return what the run has done so far.
+	 */
+	private Result result(int chunks, long start) {
+		return new Result(chunks, chunksDone.sum(), chunksSkipped.sum(), chunksFailed.sum(), accountsCredited.sum(),
+				Money.ofCents(centsCredited.sum()), System.nanoTime() - start, firstFailure.get());
+	}
+
+	/**
+	 * A range of account IDs accrued in one transaction.
+	 */
+	static final class Range {
+		final int first;
+		final int last;
+
+		Range(int first, int last) {
+			this.first = first;
+			this.last = last;
+		}
+	}
+
+	/**
+	 * Accrues the ranges of a slice of the plan, splitting the slice in half
+	 * until each task holds a single range, so idle workers steal whole halves
+	 * of the remaining work from busy ones. Tasks are never serialized, so the
+	 * plan they share is not either.
+	 */
+	private final class Accrue extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final String runId;
+		private final transient List<Range> chunks;
+		private final int from;
+		private final int to;
+
+		private Accrue(String runId, List<Range> chunks, int from, int to) {
+			this.runId = runId;
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				accrue(runId, chunks.get(from));
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new Accrue(runId, chunks, from, middle), new Accrue(runId, chunks, middle, to));
+		}
+	}
+
+	/**
+	 * Runs the interest accrual for a day.
+	 *
+	 * @param args the ID of the run, by default today's date.
+	 */
+	public static void main(String[] args) {
+		String runId = args.length > 0 ? args[0] : LocalDate.now().toString();
+
+		AppConfig config;
+		try {
+			config = ConfigManager.load();
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return;
+		}
+		if (config.getInterestAnnualRateBps() == 0) {
+			System.err.println("interest.annualRateBps is 0, there is no interest to accrue");
+			return;
+		}
+		int parallelism = config.getInterestParallelism() > 0 ? config.getInterestParallelism()
+				: Math.min(Runtime.getRuntime().availableProcessors(), config.getPoolMaxSize());
+		Metrics.startReporter(config.getMetricsDumpIntervalMillis(), System.err);
+		InterestAccrual accrual = new InterestAccrual(StorageEngines.shared().accounts(),
+				config.getInterestAnnualRateBps(), config.getInterestChunkSize(), parallelism);
+		try {
+			Result result = accrual.run(runId, System.out, 1000);
+			System.out.println("Run " + runId + ": " + result.format());
+			if (result.getFirstFailure() != null) {
+				System.err.println("Run it again with the same ID to retry the failed ranges:");
+				result.getFirstFailure().printStackTrace();
+			}
+		} catch (SQLException | IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * What an interest run has done.
+	 */
+	public static final class Result {
+		private final int chunks;
+		private final long chunksDone;
+		private final long chunksSkipped;
+		private final long chunksFailed;
+		private final long accountsCredited;
+		private final Money interest;
+		private final long elapsedNanos;
+		private final Exception firstFailure;
+
+		private Result(int chunks, long chunksDone, long chunksSkipped, long chunksFailed, long accountsCredited,
+				Money interest, long elapsedNanos, Exception firstFailure) {
+			this.chunks = chunks;
+			this.chunksDone = chunksDone;
+			this.chunksSkipped = chunksSkipped;
+			this.chunksFailed = chunksFailed;
+			this.accountsCredited = accountsCredited;
+			this.interest = interest;
+			this.elapsedNanos = elapsedNanos;
+			this.firstFailure = firstFailure;
+		}
+
+		/**
+		 * @return the number of ranges accrued by this run.
+		 */
+		public long getChunksDone() {
+			return chunksDone;
+		}
+
+		/**
+		 * @return the number of ranges found already accrued by another attempt.
+		 */
+		public long getChunksSkipped() {
+			return chunksSkipped;
+		}
+
+		/**
+		 * @return the number of ranges that failed and are left to retry.
+		 */
+		public long getChunksFailed() {
+			return chunksFailed;
+		}
+
+		/**
+		 * @return the number of accounts interest was added to.
+		 */
+		public long getAccountsCredited() {
+			return accountsCredited;
+		}
+
+		/**
+		 * @return the total interest added.
+		 */
+		public Money getInterest() {
+			return interest;
+		}
+
+		/**
+		 * @return the error of the first range that failed, or null if none did.
+		 */
+		public Exception getFirstFailure() {
+			return firstFailure;
+		}
+
+		/**
+		 * @return the progress, totals and throughput on one line.
+		 */
+		public String format() {
+			double seconds = elapsedNanos / 1e9;
+			return String.format("%d/%d ranges accrued, %d skipped, %d failed, %d accounts credited with $%s "
+					+ "in %.1fs (%.0f accounts/s)", chunksDone, chunks, chunksSkipped, chunksFailed, accountsCredited,
+					interest, seconds, seconds > 0 ? accountsCredited / seconds : 0);
+		}
+	}
+}
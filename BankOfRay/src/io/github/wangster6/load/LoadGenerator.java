@@ -0,0 +1,437 @@
+package io.github.wangster6.load;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import io.github.wangster6.bank.Bank;
+import io.github.wangster6.bank.LoginThrottle;
+import io.github.wangster6.bank.NewUser;
+import io.github.wangster6.bank.PasswordHasher;
+import io.github.wangster6.bank.UsernameIndex;
+import io.github.wangster6.config.AppConfig;
+import io.github.wangster6.config.ConfigManager;
+import io.github.wangster6.metrics.LatencyHistogram;
+import io.github.wangster6.metrics.Metrics;
+import io.github.wangster6.storage.StorageEngines;
+import io.github.wangster6.storage.UserStore;
+
+/**
+ * Drives many concurrent scripted ATM sessions against the configured database
+ * to find out how much load one machine can take. Sessions are picked at
+ * random from a weighted mix of {@link Scenario scenarios} and run through
+ * {@link Bank} exactly as a terminal would, and the throughput, latency
+ * percentiles and error count of every scenario are reported at the end.
+ * <p>
+ * With a target rate, sessions are started on a fixed schedule regardless of
+ * how fast earlier ones finish, and each latency is measured from the time the
+ * session was scheduled to start. A machine that cannot keep up therefore
+ * shows growing latencies instead of silently lowering the rate. Without a
+ * target rate, every worker runs sessions back to back.
+ * <p>
+ * The users the sessions log in as are created before the run and, together
+ * with every user signed up during it, deleted afterwards. Sessions are not
+ * login throttled, so failed passwords cannot lock the seed users out of the
+ * other scenarios and the results measure the bank rather than the throttle.
+ *
+ * @author wangster6
+ */
+public class LoadGenerator {
+	/** Mix used when none is given */
+	public static final String DEFAULT_MIX = "signup=1,login=3,deposit=3,withdraw=2,failedPassword=1";
+	/** Password of every user created by the load generator */
+	static final String PASSWORD = "loadTest1";
+	/** Number of users created per transaction before the run */
+	private static final int SEED_CHUNK_SIZE = 1000;
+	/** Throttle of every session, with no bursts and no lockouts so it never turns an attempt away */
+	private static final LoginThrottle UNTHROTTLED = new LoginThrottle(0, 0, 1000, 0, 1000, 1000, 64);
+
+	private final Map<Scenario, Integer> mix;
+	private final int totalWeight;
+	private final int concurrency;
+	private final double sessionsPerSecond;
+	private final long durationMillis;
+	private final int seedUsers;
+	/** Prefix of every username created by this run, at most 7 characters */
+	private final String runTag = "lg" + Long.toString(System.currentTimeMillis() % 60466176, 36); // 36^5
+	private final List<String> seeded = new ArrayList<>();
+	private final Queue<String> signedUp = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger nextSignup = new AtomicInteger();
+	private final Map<Scenario, Stats> stats = new EnumMap<>(Scenario.class);
+	private final Stats total = new Stats();
+
+	/**
+	 * Constructs a new LoadGenerator.
+	 *
+	 * @param mix               the relative weight of every scenario.
+	 * @param concurrency       the maximum number of sessions running at once.
+	 * @param sessionsPerSecond the rate sessions are started at, or 0 to run them
+	 *                          back to back.
+	 * @param durationMillis    how long to keep starting sessions, in
+	 *                          milliseconds.
+	 * @param seedUsers         the number of users to create for the sessions to
+	 *                          log in as.
+	 * @throws IllegalArgumentException If the mix logs in but no users are
+	 *                                  seeded, or transfers but fewer than two
+	 *                                  are.
+	 */
+	public LoadGenerator(Map<Scenario, Integer> mix, int concurrency, double sessionsPerSecond, long durationMillis,
+			int seedUsers) {
+		int sum = 0;
+		for (Map.Entry<Scenario, Integer> weight : mix.entrySet()) {
+			sum += weight.getValue();
+			if (weight.getKey() != Scenario.SIGNUP && weight.getValue() > 0 && seedUsers < 1) {
+				throw new IllegalArgumentException("The " + weight.getKey().getKey() + " scenario needs seed users");
+			}
+			if (weight.getKey() == Scenario.TRANSFER && weight.getValue() > 0 && seedUsers < 2) {
+				throw new IllegalArgumentException("The transfer scenario needs at least two seed users");
+			}
+		}
+		this.mix = new EnumMap<>(mix);
+		this.totalWeight = sum;
+		this.concurrency = concurrency;
+		this.sessionsPerSecond = sessionsPerSecond;
+		this.durationMillis = durationMillis;
+		this.seedUsers = seedUsers;
+		for (Scenario scenario : Scenario.values()) {
+			stats.put(scenario, new Stats());
+		}
+	}
+
+	/**
+	 * Creates the seed users, runs sessions for the configured duration and
+	 * deletes every user created along the way.
+	 *
+	 * @return the results of the run.
+	 * @throws SQLException         If the seed users cannot be created or
+	 *                              deleted.
+	 * @throws IOException          If the database configuration cannot be
+	 *                              loaded.
+	 * @throws InterruptedException If interrupted while waiting for sessions to
+	 *                              finish.
+	 */
+	public Report run() throws SQLException, IOException, InterruptedException {
+		try {
+			seed();
+			long elapsedMillis = drive();
+			return new Report(stats, total, elapsedMillis);
+		} finally {
+			cleanUp();
+		}
+	}
+
+	/**
+	 * Creates the users sessions log in as. They all share one password hash, so
+	 * seeding costs a single BCrypt call however many users are created.
+	 *
+	 * @throws SQLException If the users cannot be inserted.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	private void seed() throws SQLException, IOException {
+		UserStore users = StorageEngines.shared().users();
+		String hashedPassword = PasswordHasher.shared().hash(PASSWORD).join();
+		UsernameIndex usernameIndex = UsernameIndex.shared();
+		List<NewUser> chunk = new ArrayList<>(Math.min(seedUsers, SEED_CHUNK_SIZE));
+		for (int i = 0; i < seedUsers; i++) {
+			String username = runTag + "s" + Integer.toString(i, 36);
+			chunk.add(new NewUser("Load", "Tester", username, hashedPassword));
+			if (chunk.size() == SEED_CHUNK_SIZE || i == seedUsers - 1) {
+				users.createAll(chunk);
+				for (NewUser user : chunk) {
+					seeded.add(user.getUsername());
+					usernameIndex.added(user.getUsername());
+				}
+				chunk.clear();
+			}
+		}
+	}
+
+	/**
+	 * Starts sessions until the duration is over, then waits for the ones still
+	 * running.
+	 *
+	 * @return the time from the first session starting to the last one
+	 *         finishing, in milliseconds.
+	 * @throws InterruptedException If interrupted while waiting for sessions to
+	 *                              finish.
+	 */
+	private long drive() throws InterruptedException {
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService workers = Executors.newFixedThreadPool(concurrency, r -> {
+			Thread thread = new Thread(r, "load-session-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		long start = System.nanoTime();
+		long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+		if (sessionsPerSecond > 0) {
+			long periodNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / sessionsPerSecond));
+			for (long scheduled = start; scheduled < end; scheduled += periodNanos) {
+				long wait;
+				while ((wait = scheduled - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(wait);
+				}
+				long startAt = scheduled;
+				workers.execute(() -> runSession(startAt));
+			}
+		} else {
+			for (int i = 0; i < concurrency; i++) {
+				workers.execute(() -> {
+					while (System.nanoTime() < end) {
+						runSession(System.nanoTime());
+					}
+				});
+			}
+		}
+		workers.shutdown();
+		workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	/**
+	 * Runs one session of a randomly picked scenario and records its outcome.
+	 *
+	 * @param scheduledNanos the value of {@link System#nanoTime()} the session
+	 *                       was scheduled to start at.
+	 */
+	private void runSession(long scheduledNanos) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Scenario scenario = pick(random.nextInt(totalWeight));
+		String username;
+		String recipient = null;
+		if (scenario == Scenario.SIGNUP) {
+			username = runTag + "n" + Integer.toString(nextSignup.getAndIncrement(), 36);
+			signedUp.add(username);
+		} else {
+			int index = random.nextInt(seeded.size());
+			username = seeded.get(index);
+			if (seeded.size() > 1) {
+				// Any other seeded user, so transfers run both ways between every pair
+				recipient = seeded.get((index + 1 + random.nextInt(seeded.size() - 1)) % seeded.size());
+			}
+		}
+
+		boolean succeeded = runScript(scenario.script(username, PASSWORD, recipient), scenario.getSuccessMessage());
+		long latency = System.nanoTime() - scheduledNanos;
+		stats.get(scenario).record(latency, succeeded);
+		total.record(latency, succeeded);
+	}
+
+	/**
+	 * Picks the scenario a roll of the dice lands on, each scenario taking up as
+	 * many numbers as its weight.
+	 *
+	 * @param roll a number from 0 up to, but not including, the total weight.
+	 * @return the scenario.
+	 */
+	Scenario pick(int roll) {
+		int remaining = roll;
+		for (Map.Entry<Scenario, Integer> weight : mix.entrySet()) {
+			remaining -= weight.getValue();
+			if (remaining < 0) {
+				return weight.getKey();
+			}
+		}
+		throw new IllegalArgumentException("Roll " + roll + " is not below the total weight " + totalWeight);
+	}
+
+	/**
+	 * Deletes every user created by this run.
+	 *
+	 * @throws SQLException If a user cannot be deleted.
+	 * @throws IOException  If the database configuration cannot be loaded.
+	 */
+	private void cleanUp() throws SQLException, IOException {
+		UserStore users = StorageEngines.shared().users();
+		UsernameIndex usernameIndex = UsernameIndex.shared();
+		List<String> created = new ArrayList<>(seeded);
+		created.addAll(signedUp);
+		for (String username : created) {
+			users.deleteByUsername(username);
+			usernameIndex.removed(username);
+		}
+	}
+
+	/**
+	 * Runs one complete session from a script.
+	 *
+	 * @param script         the input of the session.
+	 * @param successMessage the message the session must print to count as
+	 *                       successful.
+	 * @return true if the session printed the message, false if it did not or
+	 *         went off script.
+	 */
+	static boolean runScript(String script, String successMessage) {
+		InputStream in = new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8));
+		ByteArrayOutputStream output = new ByteArrayOutputStream(4096);
+		try {
+			new Bank(in, output, true, null, UNTHROTTLED).run(1, in);
+		} catch (RuntimeException e) {
+			return false; // Such as a NoSuchElementException when the session went off script
+		}
+		return output.toString(StandardCharsets.UTF_8).contains(successMessage);
+	}
+
+	/**
+	 * Parses a mix such as "signup=1,login=3". Scenarios left out get a weight of
+	 * 0.
+	 *
+	 * @param mix the comma separated scenario weights.
+	 * @return the weight of every scenario.
+	 * @throws IllegalArgumentException If a scenario or weight is invalid, or all
+	 *                                  weights are 0.
+	 */
+	public static Map<Scenario, Integer> parseMix(String mix) {
+		Map<Scenario, Integer> weights = new EnumMap<>(Scenario.class);
+		int sum = 0;
+		for (String part : mix.split(",")) {
+			String[] keyValue = part.trim().split("=");
+			if (keyValue.length != 2) {
+				throw new IllegalArgumentException("Mix entries must look like 'login=3' but was '" + part + "'");
+			}
+			int weight;
+			try {
+				weight = Integer.parseInt(keyValue[1].trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Weight of " + keyValue[0] + " must be a whole number", e);
+			}
+			if (weight < 0) {
+				throw new IllegalArgumentException("Weight of " + keyValue[0] + " must not be negative");
+			}
+			weights.put(Scenario.fromKey(keyValue[0].trim()), weight);
+			sum += weight;
+		}
+		if (sum == 0) {
+			throw new IllegalArgumentException("At least one scenario needs a positive weight");
+		}
+		return weights;
+	}
+
+	/**
+	 * Runs a load test against the configured database and prints the results.
+	 *
+	 * @param args the sessions started per second (0 to run them back to back),
+	 *             the duration in seconds, the number of concurrent sessions,
+	 *             the mix and the number of seed users, all optional.
+	 */
+	public static void main(String[] args) {
+		double rate = args.length > 0 ? Double.parseDouble(args[0]) : 50;
+		long durationSeconds = args.length > 1 ? Long.parseLong(args[1]) : 60;
+		int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+		String mix = args.length > 3 ? args[3] : DEFAULT_MIX;
+		int seedUsers = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+
+		AppConfig config;
+		LoadGenerator generator;
+		try {
+			config = ConfigManager.load();
+			generator = new LoadGenerator(parseMix(mix), concurrency, rate, durationSeconds * 1000, seedUsers);
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return;
+		}
+		Metrics.startReporter(config.getMetricsDumpIntervalMillis(), System.err);
+		try {
+			System.out.print(generator.run().format());
+		} catch (SQLException | IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The latencies and errors of the sessions of one scenario.
+	 */
+	private static final class Stats {
+		private final LatencyHistogram latencies = new LatencyHistogram();
+		private final LongAdder errors = new LongAdder();
+
+		private void record(long latencyNanos, boolean succeeded) {
+			latencies.record(latencyNanos);
+			if (!succeeded) {
+				errors.increment();
+			}
+		}
+	}
+
+	/**
+	 * The outcome of a run.
+	 */
+	public static final class Report {
+		private final Map<Scenario, Stats> stats;
+		private final Stats total;
+		private final long elapsedMillis;
+
+		private Report(Map<Scenario, Stats> stats, Stats total, long elapsedMillis) {
+			this.stats = stats;
+			this.total = total;
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		/**
+		 * @return the number of sessions run.
+		 */
+		public long getSessions() {
+			return total.latencies.getCount();
+		}
+
+		/**
+		 * @return the number of sessions that failed.
+		 */
+		public long getErrors() {
+			return total.errors.sum();
+		}
+
+		/**
+		 * @return the time from the first session starting to the last one
+		 *         finishing, in milliseconds.
+		 */
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		/**
+		 * Formats the results as a table with a row per scenario that ran and a
+		 * total row.
+		 *
+		 * @return the table.
+		 */
+		public String format() {
+			StringBuilder table = new StringBuilder(String.format("%-16s %10s %8s %10s %10s %10s %10s %10s%n",
+					"scenario", "sessions", "errors", "sessions/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+			for (Map.Entry<Scenario, Stats> entry : stats.entrySet()) {
+				if (entry.getValue().latencies.getCount() > 0) {
+					appendRow(table, entry.getKey().getKey(), entry.getValue());
+				}
+			}
+			appendRow(table, "total", total);
+			return table.toString();
+		}
+
+		private void appendRow(StringBuilder table, String name, Stats row) {
+			LatencyHistogram latencies = row.latencies;
+			double rate = elapsedMillis > 0 ? latencies.getCount() * 1000.0 / elapsedMillis : 0;
+			table.append(String.format("%-16s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n", name,
+					latencies.getCount(), row.errors.sum(), rate, latencies.getPercentile(0.5) / 1e6,
+					latencies.getPercentile(0.99) / 1e6, latencies.getPercentile(0.999) / 1e6,
+					latencies.getMax() / 1e6));
+		}
+	}
+}
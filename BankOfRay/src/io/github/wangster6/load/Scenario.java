@@ -0,0 +1,103 @@
+package io.github.wangster6.load;
+
+import io.github.wangster6.bank.Messages;
+
+/**
+ * The kinds of scripted session the load generator runs. Each one is a
+ * complete session from the main menu back to exit, and is successful when its
+ * output contains the scenario's success message.
+ *
+ * @author wangster6
+ */
+public enum Scenario {
+	/** Signs up a new user */
+	SIGNUP("signup", Messages.SIGNUP_SUCCESS) {
+		@Override
+		String script(String username, String password, String recipient) {
+			return "2\nLoad\nTester\n" + username + "\n" + password + "\n" + password + "\n3\n";
+		}
+	},
+	/** Logs in and exits straight away */
+	LOGIN("login", Messages.LOGIN_SUCCESS) {
+		@Override
+		String script(String username, String password, String recipient) {
+			return "1\n" + username + "\n" + password + "\n6\n3\n";
+		}
+	},
+	/** Logs in and deposits money */
+	DEPOSIT("deposit", Messages.DEPOSIT_SUCCESS) {
+		@Override
+		String script(String username, String password, String recipient) {
+			return "1\n" + username + "\n" + password + "\n2\n25\n6\n3\n";
+		}
+	},
+	/** Logs in, deposits money and withdraws it again */
+	WITHDRAW("withdraw", Messages.WITHDRAWAL_SUCCESS) {
+		@Override
+		String script(String username, String password, String recipient) {
+			return "1\n" + username + "\n" + password + "\n2\n25\n3\n25\n6\n3\n";
+		}
+	},
+	/** Logs in, deposits money and transfers it to another user */
+	TRANSFER("transfer", Messages.TRANSFER_SUCCESS) {
+		@Override
+		String script(String username, String password, String recipient) {
+			return "1\n" + username + "\n" + password + "\n2\n25\n4\n" + recipient + "\n25\n6\n3\n";
+		}
+	},
+	/** Enters a wrong password once and gives up */
+	FAILED_PASSWORD("failedPassword", Messages.INVALID_PASSWORD) {
+		@Override
+		String script(String username, String password, String recipient) {
+			return "1\n" + username + "\nwrong" + password + "\n0\n3\n";
+		}
+	};
+
+	private final String key;
+	private final String successMessage;
+
+	Scenario(String key, String successMessage) {
+		this.key = key;
+		this.successMessage = successMessage;
+	}
+
+	/**
+	 * Builds the input of one session.
+	 *
+	 * @param username  the user to sign up or log in as.
+	 * @param password  the user's password.
+	 * @param recipient another user to transfer money to.
+	 * @return the lines the session reads, each ending with a newline.
+	 */
+	abstract String script(String username, String password, String recipient);
+
+	/**
+	 * @return the name of the scenario in a mix, such as "failedPassword".
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the message every successful session of this scenario prints.
+	 */
+	String getSuccessMessage() {
+		return successMessage;
+	}
+
+	/**
+	 * Finds a scenario by its name in a mix.
+	 *
+	 * @param key the name of the scenario.
+	 * @return the scenario.
+	 * @throws IllegalArgumentException If no scenario has that name.
+	 */
+	public static Scenario fromKey(String key) {
+		for (Scenario scenario : values()) {
+			if (scenario.key.equals(key)) {
+				return scenario;
+			}
+		}
+		throw new IllegalArgumentException("Unknown scenario '" + key + "'");
+	}
+}
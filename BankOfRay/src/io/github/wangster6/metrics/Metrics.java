@@ -0,0 +1,107 @@
+package io.github.wangster6.metrics;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The registry of every timed operation in the application. Each operation is
+ * registered with the platform MBean server under
+ * "io.github.wangster6:type=Operation,name=..." when it is first requested,
+ * and all of them can be dumped as a text table periodically.
+ *
+ * @author wangster6
+ */
+public final class Metrics {
+	private static final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+	private static ScheduledExecutorService reporter;
+
+	private Metrics() {
+	}
+
+	/**
+	 * Returns the metrics of an operation, creating and registering them on first
+	 * use.
+	 *
+	 * @param name the name of the operation, such as "db.users.findCredentials".
+	 * @return the metrics of the operation.
+	 */
+	public static OperationMetrics operation(String name) {
+		return operations.computeIfAbsent(name, Metrics::register);
+	}
+
+	/**
+	 * Creates the metrics of an operation and registers them with JMX. If
+	 * registration fails, the metrics are still recorded and dumped.
+	 *
+	 * @param name the name of the operation.
+	 * @return the new metrics.
+	 */
+	private static OperationMetrics register(String name) {
+		OperationMetrics metrics = new OperationMetrics(name);
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+					new ObjectName("io.github.wangster6:type=Operation,name=" + name));
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+		return metrics;
+	}
+
+	/**
+	 * Formats every operation as a table with its count, throughput, errors and
+	 * latency percentiles.
+	 *
+	 * @param previousCounts the count of each operation at the last report, which
+	 *                       is updated to the current counts.
+	 * @param elapsedMillis  the time since the last report, in milliseconds.
+	 * @return the table.
+	 */
+	static String report(Map<String, Long> previousCounts, long elapsedMillis) {
+		List<String> names = new ArrayList<>(operations.keySet());
+		names.sort(null);
+		StringBuilder table = new StringBuilder(String.format("%-32s %10s %10s %8s %10s %10s %10s %10s%n",
+				"operation", "count", "ops/s", "errors", "p50 us", "p99 us", "p999 us", "max us"));
+		for (String name : names) {
+			OperationMetrics metrics = operations.get(name);
+			long count = metrics.getCount();
+			Long previous = previousCounts.put(name, count);
+			double rate = elapsedMillis > 0 ? (count - (previous == null ? 0 : previous)) * 1000.0 / elapsedMillis : 0;
+			table.append(String.format("%-32s %10d %10.1f %8d %10.1f %10.1f %10.1f %10.1f%n", name, count, rate,
+					metrics.getErrors(), metrics.getP50Micros(), metrics.getP99Micros(), metrics.getP999Micros(),
+					metrics.getMaxMicros()));
+		}
+		return table.toString();
+	}
+
+	/**
+	 * Starts printing the metrics table at a fixed interval on a daemon thread.
+	 * Does nothing if the reporter is already running or the interval is 0.
+	 *
+	 * @param intervalMillis the time between reports, in milliseconds.
+	 * @param out            the stream to print to.
+	 */
+	public static synchronized void startReporter(long intervalMillis, PrintStream out) {
+		if (reporter != null || intervalMillis <= 0) {
+			return;
+		}
+		reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "metrics-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		Map<String, Long> previousCounts = new HashMap<>();
+		reporter.scheduleAtFixedRate(() -> out.print(report(previousCounts, intervalMillis)), intervalMillis,
+				intervalMillis, TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,106 @@
+package io.github.wangster6.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latency histogram and error count of one kind of operation, such as a
+ * repository method or a BCrypt call. Instances are obtained from
+ * {@link Metrics#operation(String)} and are usually kept in a static field by
+ * the code they measure:
+ *
+ * <pre>
+ * long start = System.nanoTime();
+ * try {
+ * 	...
+ * } catch (SQLException e) {
+ * 	METRICS.recordError();
+ * 	throw e;
+ * } finally {
+ * 	METRICS.recordSince(start);
+ * }
+ * </pre>
+ *
+ * @author wangster6
+ */
+public final class OperationMetrics implements OperationMetricsMXBean {
+	private final String name;
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final LongAdder errors = new LongAdder();
+
+	/**
+	 * Constructs a new OperationMetrics.
+	 *
+	 * @param name the name of the operation.
+	 */
+	OperationMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Records the latency of a call that started at the given time.
+	 *
+	 * @param startNanos the value of {@link System#nanoTime()} when the call
+	 *                   started.
+	 */
+	public void recordSince(long startNanos) {
+		latencies.record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Records a latency directly.
+	 *
+	 * @param nanos the latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		latencies.record(nanos);
+	}
+
+	/**
+	 * Counts a failed call. Its latency is recorded separately.
+	 */
+	public void recordError() {
+		errors.increment();
+	}
+
+	/**
+	 * @return the name of the operation.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getCount() {
+		return latencies.getCount();
+	}
+
+	@Override
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	@Override
+	public double getMeanMicros() {
+		return latencies.getMean() / 1000;
+	}
+
+	@Override
+	public double getP50Micros() {
+		return latencies.getPercentile(0.5) / 1000.0;
+	}
+
+	@Override
+	public double getP99Micros() {
+		return latencies.getPercentile(0.99) / 1000.0;
+	}
+
+	@Override
+	public double getP999Micros() {
+		return latencies.getPercentile(0.999) / 1000.0;
+	}
+
+	@Override
+	public double getMaxMicros() {
+		return latencies.getMax() / 1000.0;
+	}
+}
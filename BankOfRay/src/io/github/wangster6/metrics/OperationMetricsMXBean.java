@@ -0,0 +1,44 @@
+package io.github.wangster6.metrics;
+
+/**
+ * The JMX view of one timed operation. Latencies are reported in
+ * microseconds.
+ *
+ * @author wangster6
+ */
+public interface OperationMetricsMXBean {
+	/**
+	 * @return the number of calls that completed, successfully or not.
+	 */
+	long getCount();
+
+	/**
+	 * @return the number of calls that failed.
+	 */
+	long getErrors();
+
+	/**
+	 * @return the mean latency in microseconds.
+	 */
+	double getMeanMicros();
+
+	/**
+	 * @return the median latency in microseconds.
+	 */
+	double getP50Micros();
+
+	/**
+	 * @return the 99th percentile latency in microseconds.
+	 */
+	double getP99Micros();
+
+	/**
+	 * @return the 99.9th percentile latency in microseconds.
+	 */
+	double getP999Micros();
+
+	/**
+	 * @return the highest latency in microseconds.
+	 */
+	double getMaxMicros();
+}
@@ -0,0 +1,205 @@
+package io.github.wangster6.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import io.github.wangster6.bank.Bank;
+import io.github.wangster6.bank.Messages;
+import io.github.wangster6.bank.Renderer;
+import io.github.wangster6.config.AppConfig;
+import io.github.wangster6.config.ConfigManager;
+import io.github.wangster6.metrics.Metrics;
+
+/**
+ * Serves many ATM sessions from one process over TCP. Every connection gets its
+ * own {@link Bank} reading from and writing to that connection, running on its
+ * own virtual thread when the JVM supports them. Connections beyond the session
+ * limit are turned away, and sessions that wait too long for input are closed.
+ *
+ * @author wangster6
+ */
+public class BankServer {
+	private final int port;
+	private final long idleTimeoutMillis;
+	private final boolean ansi;
+	private final Semaphore sessionPermits;
+	private final ExecutorService sessions = newSessionExecutor();
+	private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+	private volatile ServerSocket serverSocket;
+
+	/**
+	 * Constructs a new BankServer.
+	 *
+	 * @param port              the port to listen on, or 0 for any free port.
+	 * @param maxSessions       the maximum number of concurrent sessions.
+	 * @param idleTimeoutMillis how long a session may wait for input before it is
+	 *                          closed, or 0 to never time out.
+	 * @param ansi              true to send ANSI colours and styles, false for
+	 *                          plain text clients.
+	 */
+	public BankServer(int port, int maxSessions, long idleTimeoutMillis, boolean ansi) {
+		this.port = port;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.ansi = ansi;
+		this.sessionPermits = new Semaphore(maxSessions);
+	}
+
+	/**
+	 * Binds the server socket and starts accepting connections in the background.
+	 *
+	 * @return the port the server is listening on.
+	 * @throws IOException If the port cannot be bound.
+	 */
+	public int start() throws IOException {
+		serverSocket = new ServerSocket(port);
+		Thread acceptor = new Thread(this::acceptLoop, "bank-server-acceptor");
+		acceptor.start();
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Stops accepting connections and closes every open session.
+	 */
+	public void close() {
+		try {
+			if (serverSocket != null) {
+				serverSocket.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		for (Socket socket : openSockets) {
+			closeQuietly(socket);
+		}
+		sessions.shutdown();
+	}
+
+	/**
+	 * Accepts connections until the server socket is closed, handing each one to
+	 * its own session thread.
+	 */
+	private void acceptLoop() {
+		while (!serverSocket.isClosed()) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (SocketException e) {
+				break; // Server socket was closed
+			} catch (IOException e) {
+				e.printStackTrace();
+				continue;
+			}
+
+			if (!sessionPermits.tryAcquire()) {
+				reject(socket);
+				continue;
+			}
+			openSockets.add(socket);
+			try {
+				sessions.execute(() -> runSession(socket));
+			} catch (RejectedExecutionException e) {
+				openSockets.remove(socket);
+				sessionPermits.release();
+				reject(socket);
+			}
+		}
+	}
+
+	/**
+	 * Runs a complete ATM session over a single connection. The session ends
+	 * when the user exits, disconnects, or stays idle for too long.
+	 *
+	 * @param socket the connection of the session.
+	 */
+	private void runSession(Socket socket) {
+		try (Socket s = socket) {
+			s.setSoTimeout((int) idleTimeoutMillis);
+			InputStream in = s.getInputStream();
+			new Bank(in, s.getOutputStream(), ansi, s.getInetAddress().getHostAddress()).run(1, in);
+		} catch (IOException | UncheckedIOException | NoSuchElementException e) {
+			// Client disconnected or timed out
+		} finally {
+			openSockets.remove(socket);
+			sessionPermits.release();
+		}
+	}
+
+	/**
+	 * Tells a client that the server is full and closes its connection.
+	 *
+	 * @param socket the connection to turn away.
+	 */
+	private void reject(Socket socket) {
+		try (Socket s = socket) {
+			Renderer out = new Renderer(s.getOutputStream(), ansi);
+			out.println(Messages.SYSTEM_BUSY);
+			out.flush();
+		} catch (IOException | UncheckedIOException e) {
+			// Client already gone
+		}
+	}
+
+	/**
+	 * Closes a connection, ignoring any error.
+	 *
+	 * @param socket the connection to close.
+	 */
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Already closed
+		}
+	}
+
+	/**
+	 * Creates the executor sessions run on. Each session gets its own virtual
+	 * thread when the JVM provides them, and its own platform thread otherwise.
+	 * The number of sessions is limited by the session permits either way.
+	 *
+	 * @return the session executor.
+	 */
+	static ExecutorService newSessionExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Starts the server with the port, session limit and idle timeout from the
+	 * configuration.
+	 *
+	 * @param args Command-line arguments (not used).
+	 */
+	public static void main(String[] args) {
+		AppConfig config;
+		try {
+			config = ConfigManager.load();
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return;
+		}
+		Metrics.startReporter(config.getMetricsDumpIntervalMillis(), System.err);
+		BankServer server = new BankServer(config.getServerPort(), config.getServerMaxSessions(),
+				config.getServerIdleTimeoutMillis(), config.isServerAnsi());
+		try {
+			int port = server.start();
+			System.out.println("Bank server listening on port " + port);
+		} catch (IOException e) {
+			System.err.println("Could not start server: " + e.getMessage());
+		}
+	}
+}
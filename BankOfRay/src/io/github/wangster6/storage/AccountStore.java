@@ -0,0 +1,125 @@
+package io.github.wangster6.storage;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.function.UnaryOperator;
+
+import io.github.wangster6.bank.Accrual;
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.bank.TransferResult;
+
+/**
+ * Where account balances are stored. Balance changes are applied atomically
+ * by the store, so concurrent sessions on the same account cannot lose each
+ * other's changes, and each change writes its own entries to the ledger of the
+ * same storage engine as part of the change, so a change that took effect is
+ * never missing from the ledger.
+ *
+ * @author wangster6
+ */
+public interface AccountStore {
+	/**
+	 * Retrieves the balance of an account.
+	 *
+	 * @param accountId The ID of the account.
+	 * @return The account balance, or null if the account is not found.
+	 * @throws SQLException If the store cannot be read.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	Money findBalance(int accountId) throws SQLException, IOException;
+
+	/**
+	 * Atomically adds an amount to an account's balance and records a
+	 * {@link io.github.wangster6.bank.LedgerEntry.Type#DEPOSIT} entry.
+	 *
+	 * @param accountId The ID of the account.
+	 * @param amount    The positive amount to deposit.
+	 * @return The balance after the deposit, or null if the account is not found.
+	 * @throws SQLException If the store cannot be written, or the balance would
+	 *                      become too large.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	Money deposit(int accountId, Money amount) throws SQLException, IOException;
+
+	/**
+	 * Atomically subtracts an amount from an account's balance, but only if the
+	 * balance covers it at the moment the change is applied, and records a
+	 * {@link io.github.wangster6.bank.LedgerEntry.Type#WITHDRAWAL} entry.
+	 *
+	 * @param accountId The ID of the account.
+	 * @param amount    The positive amount to withdraw.
+	 * @return The balance after the withdrawal, or null if the account is not
+	 *         found or does not hold enough money.
+	 * @throws SQLException If the store cannot be written.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	Money withdraw(int accountId, Money amount) throws SQLException, IOException;
+
+	/**
+	 * Atomically moves an amount from one account to another, but only if the
+	 * first account covers it at the moment the transfer is applied. Concurrent
+	 * transfers between the same accounts in opposite directions never deadlock.
+	 * The transfer is recorded as a TRANSFER_OUT entry of the first account and a
+	 * TRANSFER_IN entry of the second.
+	 *
+	 * @param fromAccountId The ID of the account to take the money from.
+	 * @param toAccountId   The ID of the account to give the money to.
+	 * @param amount        The positive amount to transfer.
+	 * @return The balances of both accounts after the transfer, or null if either
+	 *         account is not found or the first does not hold enough money.
+	 * @throws SQLException             If the store cannot be written, or the
+	 *                                  balance of the second account would
+	 *                                  become too large.
+	 * @throws IOException              If the store configuration cannot be
+	 *                                  loaded.
+	 * @throws IllegalArgumentException If both IDs are the same account.
+	 */
+	TransferResult transfer(int fromAccountId, int toAccountId, Money amount) throws SQLException, IOException;
+
+	/**
+	 * Retrieves the highest account ID handed out so far, so every account can be
+	 * visited by walking the IDs up to it in ranges.
+	 *
+	 * @return The highest account ID, or 0 if there are no accounts.
+	 * @throws SQLException If the store cannot be read.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	int findMaxAccountId() throws SQLException, IOException;
+
+	/**
+	 * Retrieves the ranges of account IDs that interest has already been accrued
+	 * on in a run.
+	 *
+	 * @param runId The ID of the run, such as the date it accrues interest for.
+	 * @return The first ID of each accrued range mapped to its last ID.
+	 * @throws SQLException If the store cannot be read.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	NavigableMap<Integer, Integer> findAccruedRanges(String runId) throws SQLException, IOException;
+
+	/**
+	 * Adds interest to every account with a positive balance and an ID in a
+	 * range, records each credit as an
+	 * {@link io.github.wangster6.bank.LedgerEntry.Type#INTEREST} entry and
+	 * records the range as accrued in the run, all at once. Each
+	 * balance is locked only for as long as this call takes, so the range should
+	 * be small enough for the call to be short. A range is only ever accrued
+	 * once per run, so a run that stopped part way can safely be started again.
+	 *
+	 * @param runId    The ID of the run.
+	 * @param firstId  The first account ID of the range.
+	 * @param lastId   The last account ID of the range, inclusive.
+	 * @param interest Works out the interest on a balance. Called with the
+	 *                 balance at the moment the interest is added, and may be
+	 *                 called more than once for the same account.
+	 * @return The accounts interest was added to, or null if a range starting at
+	 *         the same ID was already accrued in the run.
+	 * @throws SQLException If the store cannot be written, or a balance would
+	 *                      become too large.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	List<Accrual> accrueInterest(String runId, int firstId, int lastId, UnaryOperator<Money> interest)
+			throws SQLException, IOException;
+}
@@ -0,0 +1,146 @@
+package io.github.wangster6.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.wangster6.bank.LedgerEntry;
+
+/**
+ * The most recent ledger entries of one account, for the storage engines that
+ * keep history in memory. Entries are held in a ring buffer sorted on
+ * sequence, which grows up to a fixed limit and from then on drops the oldest
+ * entry for every new one, so an account's history takes bounded memory
+ * however long the engine runs. Entries usually arrive in sequence order; one
+ * that arrives a little late is moved back into place, and one with a sequence
+ * already held replaces it.
+ * <p>
+ * Every method locks the history, which only the sessions of the same account
+ * contend on.
+ *
+ * @author wangster6
+ */
+public final class History {
+	/** Capacity of the buffer of a new history, doubled as it fills up */
+	private static final int INITIAL_CAPACITY = 8;
+
+	private final int limit;
+	private LedgerEntry[] entries;
+	/** Index of the oldest entry in the buffer */
+	private int first;
+	private int size;
+
+	/**
+	 * Constructs a new, empty History.
+	 *
+	 * @param limit the number of entries to keep, 0 to keep none.
+	 */
+	public History(int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("History limit must not be negative but was " + limit);
+		}
+		this.limit = limit;
+		this.entries = new LedgerEntry[Math.min(limit, INITIAL_CAPACITY)];
+	}
+
+	/**
+	 * Adds an entry, dropping the oldest one if the history is full. An entry
+	 * older than everything in a full history is dropped itself.
+	 *
+	 * @param entry the entry to add.
+	 */
+	public synchronized void add(LedgerEntry entry) {
+		if (limit == 0) {
+			return;
+		}
+		long sequence = entry.getSequence();
+		int index = size;
+		while (index > 0 && get(index - 1).getSequence() > sequence) {
+			index--;
+		}
+		if (index > 0 && get(index - 1).getSequence() == sequence) {
+			set(index - 1, entry);
+			return;
+		}
+		if (size == entries.length) {
+			if (size < limit) {
+				grow();
+			} else if (index == 0) {
+				return;
+			} else {
+				first = (first + 1) % entries.length;
+				size--;
+				index--;
+			}
+		}
+		for (int i = size; i > index; i--) {
+			set(i, get(i - 1));
+		}
+		set(index, entry);
+		size++;
+	}
+
+	/**
+	 * Finds a page of entries, newest first.
+	 *
+	 * @param beforeSequence only entries with a lower sequence are returned.
+	 * @param pageSize       the maximum number of entries to return.
+	 * @return the entries, newest first.
+	 */
+	public synchronized List<LedgerEntry> findPage(long beforeSequence, int pageSize) {
+		// Binary search for the first entry at or after beforeSequence
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (get(middle).getSequence() < beforeSequence) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		List<LedgerEntry> page = new ArrayList<>(Math.min(pageSize, low));
+		for (int i = low - 1; i >= 0 && page.size() < pageSize; i--) {
+			page.add(get(i));
+		}
+		return page;
+	}
+
+	/**
+	 * @return a copy of every entry held, oldest first.
+	 */
+	public synchronized List<LedgerEntry> toList() {
+		List<LedgerEntry> list = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			list.add(get(i));
+		}
+		return list;
+	}
+
+	/**
+	 * @return the number of entries held.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Moves the entries to a buffer twice as large, or as large as the limit,
+	 * with the oldest entry first.
+	 */
+	private void grow() {
+		LedgerEntry[] grown = new LedgerEntry[(int) Math.min(limit, 2L * entries.length)];
+		for (int i = 0; i < size; i++) {
+			grown[i] = get(i);
+		}
+		entries = grown;
+		first = 0;
+	}
+
+	private LedgerEntry get(int index) {
+		return entries[(first + index) % entries.length];
+	}
+
+	private void set(int index, LedgerEntry entry) {
+		entries[(first + index) % entries.length] = entry;
+	}
+}
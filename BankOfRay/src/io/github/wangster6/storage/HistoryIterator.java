@@ -0,0 +1,68 @@
+package io.github.wangster6.storage;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import io.github.wangster6.bank.LedgerEntry;
+import io.github.wangster6.database.DataAccessException;
+
+/**
+ * Walks an account's history one keyset page at a time.
+ *
+ * @author wangster6
+ */
+class HistoryIterator implements Iterator<LedgerEntry> {
+	private final LedgerStore store;
+	private final int accountId;
+	private final int pageSize;
+	private List<LedgerEntry> page = new ArrayList<>();
+	private int index;
+	private long beforeSequence = Long.MAX_VALUE;
+	private boolean exhausted;
+
+	/**
+	 * Constructs a new HistoryIterator.
+	 *
+	 * @param store     the store to read pages from.
+	 * @param accountId the ID of the account.
+	 * @param pageSize  the number of entries fetched at a time.
+	 */
+	HistoryIterator(LedgerStore store, int accountId, int pageSize) {
+		this.store = store;
+		this.accountId = accountId;
+		this.pageSize = pageSize;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (index < page.size()) {
+			return true;
+		}
+		if (exhausted) {
+			return false;
+		}
+		try {
+			page = store.findPage(accountId, beforeSequence, pageSize);
+		} catch (SQLException | IOException e) {
+			throw new DataAccessException(e);
+		}
+		index = 0;
+		exhausted = page.size() < pageSize; // A short page is the last one
+		if (!page.isEmpty()) {
+			beforeSequence = page.get(page.size() - 1).getSequence();
+		}
+		return !page.isEmpty();
+	}
+
+	@Override
+	public LedgerEntry next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page.get(index++);
+	}
+}
@@ -0,0 +1,64 @@
+package io.github.wangster6.storage;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import io.github.wangster6.bank.LedgerEntry;
+
+/**
+ * Where the append-only ledger of deposits and withdrawals is stored. Entries
+ * are only ever inserted, and read back per account newest first in pages
+ * keyed on their sequence number. Entries are written by the
+ * {@link AccountStore} of the same engine as part of the balance changes they
+ * record, and numbered by the store in the order they are written.
+ *
+ * @author wangster6
+ */
+public interface LedgerStore {
+	/**
+	 * Retrieves one page of an account's history, newest first.
+	 *
+	 * @param accountId      The ID of the account.
+	 * @param beforeSequence Only entries with a lower sequence are returned. Use
+	 *                       Long.MAX_VALUE for the first page and the sequence of
+	 *                       the last entry of a page for the page after it.
+	 * @param limit          The maximum number of entries to return.
+	 * @return The entries, empty if there are no more.
+	 * @throws SQLException If the store cannot be read.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	List<LedgerEntry> findPage(int accountId, long beforeSequence, int limit) throws SQLException, IOException;
+
+	/**
+	 * Iterates over an account's entire history, newest first. Pages are fetched
+	 * lazily as the iteration reaches them, so at most one page is in memory at a
+	 * time.
+	 *
+	 * @param accountId The ID of the account.
+	 * @param pageSize  The number of entries fetched at a time.
+	 * @return An iterator over the history. Its methods throw a
+	 *         DataAccessException if a page cannot be fetched.
+	 */
+	default Iterator<LedgerEntry> iterateHistory(int accountId, int pageSize) {
+		return new HistoryIterator(this, accountId, pageSize);
+	}
+
+	/**
+	 * Streams an account's entire history, newest first, fetching pages lazily
+	 * like {@link #iterateHistory(int, int)}.
+	 *
+	 * @param accountId The ID of the account.
+	 * @param pageSize  The number of entries fetched at a time.
+	 * @return A sequential stream over the history.
+	 */
+	default Stream<LedgerEntry> streamHistory(int accountId, int pageSize) {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterateHistory(accountId, pageSize),
+				Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+	}
+}
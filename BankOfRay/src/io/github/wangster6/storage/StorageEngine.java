@@ -0,0 +1,25 @@
+package io.github.wangster6.storage;
+
+/**
+ * A complete set of stores backed by one storage technology. The engine in use
+ * is picked with the "storage.engine" setting and obtained from
+ * {@link StorageEngines#shared()}.
+ *
+ * @author wangster6
+ */
+public interface StorageEngine {
+	/**
+	 * @return where users are stored.
+	 */
+	UserStore users();
+
+	/**
+	 * @return where account balances are stored.
+	 */
+	AccountStore accounts();
+
+	/**
+	 * @return where the ledger is stored.
+	 */
+	LedgerStore ledger();
+}
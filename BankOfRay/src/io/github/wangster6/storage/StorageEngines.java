@@ -0,0 +1,81 @@
+package io.github.wangster6.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import io.github.wangster6.config.AppConfig;
+import io.github.wangster6.config.ConfigManager;
+import io.github.wangster6.database.JdbcStorageEngine;
+import io.github.wangster6.storage.journal.JournalStorageEngine;
+import io.github.wangster6.storage.memory.MemoryStorageEngine;
+
+/**
+ * Creates storage engines by name and holds the one shared by the whole
+ * application.
+ *
+ * @author wangster6
+ */
+public final class StorageEngines {
+	/** Name of the engine that stores everything in MySQL through JDBC */
+	public static final String JDBC = "jdbc";
+	/** Name of the engine that keeps everything in memory until the JVM exits */
+	public static final String MEMORY = "memory";
+	/** Name of the engine that keeps everything in memory and journals it to local files */
+	public static final String JOURNAL = "journal";
+
+	private static StorageEngine shared;
+
+	private StorageEngines() {
+	}
+
+	/**
+	 * Returns the engine shared by every session, creating the one named in the
+	 * configuration on first use. Changing the engine requires a restart.
+	 *
+	 * @return the shared StorageEngine.
+	 * @throws UncheckedIOException If the configuration cannot be loaded.
+	 */
+	public static synchronized StorageEngine shared() {
+		if (shared == null) {
+			shared = create(loadConfig().getStorageEngine());
+		}
+		return shared;
+	}
+
+	/**
+	 * Creates a new, independent engine. The journal engine is opened in the
+	 * directory named in the configuration, which only one engine can use at a
+	 * time.
+	 *
+	 * @param name the name of the engine, {@link #JDBC}, {@link #MEMORY} or
+	 *             {@link #JOURNAL}.
+	 * @return the engine.
+	 * @throws IllegalArgumentException If there is no engine with that name.
+	 * @throws UncheckedIOException     If the configuration cannot be loaded or
+	 *                                  the journal cannot be opened.
+	 */
+	public static StorageEngine create(String name) {
+		switch (name) {
+		case JDBC:
+			return new JdbcStorageEngine();
+		case MEMORY:
+			return new MemoryStorageEngine(loadConfig().getStorageHistoryLimit());
+		case JOURNAL:
+			return JournalStorageEngine.open(loadConfig());
+		default:
+			throw new IllegalArgumentException("Unknown storage engine '" + name + "'");
+		}
+	}
+
+	/**
+	 * @return the current configuration.
+	 * @throws UncheckedIOException If the configuration cannot be loaded.
+	 */
+	private static AppConfig loadConfig() {
+		try {
+			return ConfigManager.get();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package io.github.wangster6.storage;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import io.github.wangster6.bank.NewUser;
+import io.github.wangster6.bank.UserCredentials;
+
+/**
+ * Where users are stored. Every user owns exactly one account, which is
+ * created and deleted together with the user.
+ * <p>
+ * Implementations must be safe to use from any number of sessions at once. The
+ * checked exceptions are those of the JDBC engine; other engines only throw
+ * them for the same kinds of failure, such as a taken username.
+ *
+ * @author wangster6
+ */
+public interface UserStore {
+	/**
+	 * Loads a user's password hash along with everything a logged-in session needs
+	 * about the user and their account.
+	 *
+	 * @param username The username of the user.
+	 * @return The user's credentials, or null if the user or their account is not
+	 *         found.
+	 * @throws SQLException If the store cannot be read.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	UserCredentials findCredentials(String username) throws SQLException, IOException;
+
+	/**
+	 * Finds the account of a user, without loading their password hash or
+	 * balance, such as to pay money into it.
+	 *
+	 * @param username The username of the user.
+	 * @return The ID of the user's account, or null if the user is not found.
+	 * @throws SQLException If the store cannot be read.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	Integer findAccountId(String username) throws SQLException, IOException;
+
+	/**
+	 * Checks if a user with the given username exists.
+	 *
+	 * @param username The username to be checked.
+	 * @return True if the username exists, false otherwise.
+	 * @throws SQLException If the store cannot be read.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	boolean exists(String username) throws SQLException, IOException;
+
+	/**
+	 * Creates a user together with a new account with a balance of 0. Two
+	 * sessions creating the same username at the same time cannot both succeed,
+	 * and a failed create never leaves an account behind.
+	 *
+	 * @param newUser The user to create.
+	 * @return True if the user was created, false if the username is taken.
+	 * @throws SQLException If the store cannot be written.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	boolean create(NewUser newUser) throws SQLException, IOException;
+
+	/**
+	 * Creates many users, each with a new account, all at once.
+	 *
+	 * @param newUsers The users to create.
+	 * @throws SQLException If the store cannot be written, for example because
+	 *                      one of the usernames is already taken. Nothing is
+	 *                      created in that case.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	void createAll(List<NewUser> newUsers) throws SQLException, IOException;
+
+	/**
+	 * Finds which of the given usernames are already taken.
+	 *
+	 * @param usernames The usernames to look up.
+	 * @return The usernames that exist.
+	 * @throws SQLException If the store cannot be read.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	Set<String> findExisting(Collection<String> usernames) throws SQLException, IOException;
+
+	/**
+	 * Replaces a user's password hash, as long as it has not been changed since
+	 * the old hash was read.
+	 *
+	 * @param userId  The ID of the user.
+	 * @param oldHash The hash that was read.
+	 * @param newHash The hash to store.
+	 * @return True if the hash was replaced, false otherwise.
+	 * @throws SQLException If the store cannot be written.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	boolean updateHashedPassword(int userId, String oldHash, String newHash) throws SQLException, IOException;
+
+	/**
+	 * Deletes a user and their account together.
+	 *
+	 * @param username The username of the user to be deleted.
+	 * @throws SQLException If the store cannot be written. Nothing is deleted in
+	 *                      that case.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	void deleteByUsername(String username) throws SQLException, IOException;
+
+	/**
+	 * Counts the users.
+	 *
+	 * @return The number of users.
+	 * @throws SQLException If the store cannot be read.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	long count() throws SQLException, IOException;
+
+	/**
+	 * Passes every username to a consumer, without loading them all at once.
+	 *
+	 * @param action The consumer to call with each username.
+	 * @throws SQLException If the store cannot be read.
+	 * @throws IOException  If the store configuration cannot be loaded.
+	 */
+	void forEachUsername(Consumer<String> action) throws SQLException, IOException;
+}
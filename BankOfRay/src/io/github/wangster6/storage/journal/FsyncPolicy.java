@@ -0,0 +1,58 @@
+package io.github.wangster6.storage.journal;
+
+/**
+ * When the journal is forced to disk, trading how many changes a power failure
+ * or operating system crash can lose against how many changes per second the
+ * journal can take. A crash of the application alone never loses a change,
+ * because the journal is memory-mapped and the operating system writes it out
+ * on its own.
+ *
+ * @author wangster6
+ */
+public enum FsyncPolicy {
+	/**
+	 * Forces the journal after every change, before the change is visible to
+	 * anyone. Nothing is ever lost, but changes are committed one at a time.
+	 */
+	PER_OP("perOp"),
+	/**
+	 * Makes every change wait until the journal has been forced past it, with
+	 * one force covering every change that arrived while the previous one ran.
+	 * Nothing is ever lost, and busy sessions share the cost of each force.
+	 */
+	BATCHED("batched"),
+	/**
+	 * Forces the journal in the background at a fixed interval and never makes a
+	 * change wait, so a crash can lose the changes of the last interval.
+	 */
+	INTERVAL("interval");
+
+	private final String key;
+
+	FsyncPolicy(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * @return the name of the policy in the configuration, such as "perOp".
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Finds a policy by its name in the configuration.
+	 *
+	 * @param key the name of the policy.
+	 * @return the policy.
+	 * @throws IllegalArgumentException If no policy has that name.
+	 */
+	public static FsyncPolicy fromKey(String key) {
+		for (FsyncPolicy policy : values()) {
+			if (policy.key.equals(key)) {
+				return policy;
+			}
+		}
+		throw new IllegalArgumentException("Unknown fsync policy '" + key + "'");
+	}
+}
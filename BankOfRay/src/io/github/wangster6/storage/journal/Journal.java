@@ -0,0 +1,226 @@
+package io.github.wangster6.storage.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * One journal file, mapped into memory in full so appending a record is a copy
+ * into the page cache. The file is created at its full size and filled with
+ * zeros, so the first record that is missing or fails its checksum marks the
+ * end of what was written. Each journal belongs to a generation, and holds the
+ * changes made after the journal of the generation before it was full.
+ * <p>
+ * Appending is not thread safe and is left to the engine's write lock, but
+ * {@link #force()} may be called from any thread at any time.
+ *
+ * @author wangster6
+ */
+final class Journal implements Closeable {
+	/** "BORJRNL1", the first bytes of every journal file */
+	private static final long MAGIC = 0x424F524A524E4C31L;
+	/** Size of the magic number and generation at the start of the file */
+	static final int FILE_HEADER_SIZE = 16;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final long generation;
+
+	private Journal(FileChannel channel, MappedByteBuffer buffer, long generation) {
+		this.channel = channel;
+		this.buffer = buffer;
+		this.generation = generation;
+	}
+
+	/**
+	 * Creates an empty journal, replacing any file already at the path.
+	 *
+	 * @param file       the path of the file.
+	 * @param generation the generation of the journal.
+	 * @param size       the size of the file in bytes.
+	 * @return the journal.
+	 * @throws IOException If the file cannot be created.
+	 */
+	static Journal create(Path file, long generation, int size) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.putLong(MAGIC).putLong(generation);
+			buffer.force();
+			return new Journal(channel, buffer, generation);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens an existing journal and passes every intact record to a consumer, in
+	 * the order they were written. Whatever follows the last intact record is
+	 * erased, so that records appended from now on can never run into the
+	 * remains of a record that was cut short.
+	 *
+	 * @param file       the path of the file.
+	 * @param generation the generation the journal must belong to.
+	 * @param replay     the consumer to pass the body of each record to.
+	 * @return the journal, positioned after the last intact record.
+	 * @throws IOException If the file cannot be read or is not a journal of that
+	 *                     generation.
+	 */
+	static Journal open(Path file, long generation, Consumer<ByteBuffer> replay) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long size = channel.size();
+			if (size < FILE_HEADER_SIZE || size > Integer.MAX_VALUE) {
+				throw new IOException("Journal " + file + " has an invalid size of " + size + " bytes");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			long magic = buffer.getLong();
+			long fileGeneration = buffer.getLong();
+			if (magic != MAGIC || fileGeneration != generation) {
+				throw new IOException("Journal " + file + " is not a journal of generation " + generation);
+			}
+			for (ByteBuffer body = Records.next(buffer); body != null; body = Records.next(buffer)) {
+				replay.accept(body);
+			}
+			int end = buffer.position();
+			byte[] zeros = new byte[64 * 1024];
+			while (buffer.hasRemaining()) {
+				buffer.put(zeros, 0, Math.min(zeros.length, buffer.remaining()));
+			}
+			buffer.force();
+			buffer.position(end);
+			return new Journal(channel, buffer, generation);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Checks whether a journal file was created but its header never reached the
+	 * disk, in which case it holds nothing and can be created again.
+	 *
+	 * @param file the path of the file.
+	 * @return true if the file is too short for a header or its header is zero.
+	 * @throws IOException If the file cannot be read.
+	 */
+	static boolean isBlank(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+				// Keep reading until the header is full or the file ends
+			}
+			header.flip();
+			return header.remaining() < FILE_HEADER_SIZE || header.getLong() == 0 && header.getLong() == 0;
+		}
+	}
+
+	/**
+	 * Appends a record.
+	 *
+	 * @param type the type of the record.
+	 * @param body writes the rest of the body.
+	 * @return the body of the record as written, positioned at its type.
+	 * @throws BufferOverflowException If the journal is too full for the record.
+	 *                                 Nothing is appended in that case.
+	 */
+	ByteBuffer append(byte type, Records.Body body) {
+		int start = buffer.position();
+		Records.write(buffer, type, body);
+		ByteBuffer record = buffer.duplicate();
+		record.limit(buffer.position()).position(start + Records.HEADER_SIZE);
+		return record;
+	}
+
+	/**
+	 * Forces everything appended so far to disk.
+	 *
+	 * @throws java.io.UncheckedIOException If the journal cannot be written.
+	 */
+	void force() {
+		buffer.force();
+	}
+
+	/**
+	 * @return the number of bytes used, including the file header.
+	 */
+	int position() {
+		return buffer.position();
+	}
+
+	/**
+	 * @return the generation of the journal.
+	 */
+	long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Closes the file. The mapping stays valid until it is garbage collected, so
+	 * a force already in progress on another thread still completes.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * @param directory  the directory of the journal.
+	 * @param generation the generation of the journal.
+	 * @return the path of the journal file of that generation.
+	 */
+	static Path fileOf(Path directory, long generation) {
+		return directory.resolve("journal-" + generation + ".log");
+	}
+
+	/**
+	 * Lists the generations of the journal files in a directory.
+	 *
+	 * @param directory the directory of the journal.
+	 * @return the generations, in ascending order.
+	 * @throws IOException If the directory cannot be listed.
+	 */
+	static List<Long> generations(Path directory) throws IOException {
+		List<Long> generations = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.log")) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					generations.add(Long.parseLong(name.substring("journal-".length(), name.length() - ".log".length())));
+				} catch (NumberFormatException e) {
+					// Not a journal file
+				}
+			}
+		}
+		Collections.sort(generations);
+		return generations;
+	}
+
+	/**
+	 * Deletes every journal file in a directory older than a generation.
+	 *
+	 * @param directory  the directory of the journal.
+	 * @param generation the oldest generation to keep.
+	 * @throws IOException If the directory cannot be listed or a file deleted.
+	 */
+	static void deleteBefore(Path directory, long generation) throws IOException {
+		for (long older : generations(directory)) {
+			if (older < generation) {
+				Files.delete(fileOf(directory, older));
+			}
+		}
+	}
+}
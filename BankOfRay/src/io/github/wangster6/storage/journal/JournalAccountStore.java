@@ -0,0 +1,183 @@
+package io.github.wangster6.storage.journal;
+
+import java.io.IOException;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.UnaryOperator;
+
+import io.github.wangster6.bank.Accrual;
+import io.github.wangster6.bank.LedgerEntry;
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.bank.TransferResult;
+import io.github.wangster6.storage.AccountStore;
+
+/**
+ * Reads balances straight from the journal engine's state and journals every
+ * change as the account's new balance, so replaying a change twice does no
+ * harm. A deposit, withdrawal or transfer is journaled as one record holding
+ * its ledger entries, which carry the new balances, so a change is recovered
+ * together with its entries or not at all. Each range of an interest run is
+ * journaled in one record together with its checkpoint and the ledger entries
+ * of its credits.
+ *
+ * @author wangster6
+ */
+class JournalAccountStore implements AccountStore {
+	private final JournalStorageEngine engine;
+	private final JournalState state;
+
+	/**
+	 * Constructs a new JournalAccountStore.
+	 *
+	 * @param engine the engine to journal changes through.
+	 * @param state  the state of the engine.
+	 */
+	JournalAccountStore(JournalStorageEngine engine, JournalState state) {
+		this.engine = engine;
+		this.state = state;
+	}
+
+	@Override
+	public Money findBalance(int accountId) {
+		Long cents = state.balances.get(accountId);
+		return cents == null ? null : Money.ofCents(cents);
+	}
+
+	@Override
+	public Money deposit(int accountId, Money amount) throws SQLException, IOException {
+		return engine.write(() -> {
+			Long cents = state.balances.get(accountId);
+			if (cents == null) {
+				return null;
+			}
+			long updated;
+			try {
+				updated = Math.addExact(cents, amount.toCents());
+			} catch (ArithmeticException e) {
+				throw new SQLDataException("Balance of account " + accountId + " out of range", e);
+			}
+			return post(entry(1, accountId, LedgerEntry.Type.DEPOSIT, amount, updated)).getBalanceAfter();
+		});
+	}
+
+	@Override
+	public Money withdraw(int accountId, Money amount) throws SQLException, IOException {
+		return engine.write(() -> {
+			Long cents = state.balances.get(accountId);
+			if (cents == null || cents < amount.toCents()) {
+				return null;
+			}
+			return post(entry(1, accountId, LedgerEntry.Type.WITHDRAWAL, amount, cents - amount.toCents()))
+					.getBalanceAfter();
+		});
+	}
+
+	@Override
+	public TransferResult transfer(int fromAccountId, int toAccountId, Money amount) throws SQLException, IOException {
+		if (fromAccountId == toAccountId) {
+			throw new IllegalArgumentException("Cannot transfer from account " + fromAccountId + " to itself");
+		}
+		return engine.write(() -> {
+			Long fromCents = state.balances.get(fromAccountId);
+			Long toCents = state.balances.get(toAccountId);
+			if (fromCents == null || toCents == null || fromCents < amount.toCents()) {
+				return null;
+			}
+			long fromUpdated = fromCents - amount.toCents();
+			long toUpdated;
+			try {
+				toUpdated = Math.addExact(toCents, amount.toCents());
+			} catch (ArithmeticException e) {
+				throw new SQLDataException("Balance of account " + toAccountId + " out of range", e);
+			}
+			post(entry(1, toAccountId, LedgerEntry.Type.TRANSFER_IN, amount, toUpdated),
+					entry(2, fromAccountId, LedgerEntry.Type.TRANSFER_OUT, amount, fromUpdated));
+			return new TransferResult(Money.ofCents(fromUpdated), Money.ofCents(toUpdated));
+		});
+	}
+
+	@Override
+	public int findMaxAccountId() throws SQLException, IOException {
+		return engine.write(() -> state.lastAccountId);
+	}
+
+	@Override
+	public NavigableMap<Integer, Integer> findAccruedRanges(String runId) {
+		ConcurrentSkipListMap<Integer, Integer> ranges = state.accrued.get(runId);
+		return ranges == null ? new TreeMap<>() : new TreeMap<>(ranges);
+	}
+
+	@Override
+	public List<Accrual> accrueInterest(String runId, int firstId, int lastId, UnaryOperator<Money> interest)
+			throws SQLException, IOException {
+		return engine.write(() -> {
+			ConcurrentSkipListMap<Integer, Integer> ranges = state.accrued.get(runId);
+			if (ranges != null && ranges.containsKey(firstId)) {
+				return null;
+			}
+			List<Accrual> accruals = new ArrayList<>();
+			List<LedgerEntry> entries = new ArrayList<>();
+			for (int accountId = firstId; accountId <= Math.min(lastId, state.lastAccountId); accountId++) {
+				Long cents = state.balances.get(accountId);
+				if (cents == null || cents <= 0) {
+					continue;
+				}
+				Money balance = Money.ofCents(cents);
+				Money credit = interest.apply(balance);
+				if (credit.isPositive()) {
+					Accrual accrual;
+					try {
+						accrual = new Accrual(accountId, credit, balance.plus(credit));
+					} catch (ArithmeticException e) {
+						throw new SQLDataException("Balance of account " + accountId + " out of range", e);
+					}
+					accruals.add(accrual);
+					entries.add(entry(entries.size() + 1, accountId, LedgerEntry.Type.INTEREST, credit,
+							accrual.getBalanceAfter().toCents()));
+				}
+			}
+			engine.append(Records.ACCRUE_AND_POST, out -> {
+				Records.putString(out, runId);
+				out.putInt(firstId).putInt(lastId);
+				JournalState.putEntries(out, entries);
+			});
+			return accruals;
+		});
+	}
+
+	/**
+	 * Creates a ledger entry for a change. Must be called from a change, and the
+	 * entries of one change numbered from 1 up.
+	 *
+	 * @param number    the number of the entry within the change.
+	 * @param accountId the ID of the account.
+	 * @param type      how the money was moved.
+	 * @param amount    the amount moved.
+	 * @param cents     the balance after the change in cents.
+	 * @return the entry.
+	 */
+	private LedgerEntry entry(int number, int accountId, LedgerEntry.Type type, Money amount, long cents) {
+		return new LedgerEntry(state.lastSequence + number, accountId, type, amount, Money.ofCents(cents),
+				Instant.now());
+	}
+
+	/**
+	 * Journals and applies ledger entries together with the balances they leave
+	 * their accounts at. Must be called from a change.
+	 *
+	 * @param entries the entries.
+	 * @return the first entry.
+	 * @throws IOException If the change cannot be journaled.
+	 */
+	private LedgerEntry post(LedgerEntry... entries) throws IOException {
+		engine.append(Records.POST, out -> JournalState.putEntries(out, Arrays.asList(entries)));
+		return entries[0];
+	}
+}
@@ -0,0 +1,37 @@
+package io.github.wangster6.storage.journal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.wangster6.bank.LedgerEntry;
+import io.github.wangster6.storage.History;
+import io.github.wangster6.storage.LedgerStore;
+
+/**
+ * Reads history from the journal engine's bounded per-account histories.
+ * Entries are journaled by {@link JournalAccountStore} in the same records as
+ * the balance changes they record, numbered under the engine's write lock.
+ *
+ * @author wangster6
+ */
+class JournalLedgerStore implements LedgerStore {
+	private final JournalState state;
+
+	/**
+	 * Constructs a new JournalLedgerStore.
+	 *
+	 * @param state the state of the engine.
+	 */
+	JournalLedgerStore(JournalState state) {
+		this.state = state;
+	}
+
+	@Override
+	public List<LedgerEntry> findPage(int accountId, long beforeSequence, int limit) {
+		History history = state.histories.get(accountId);
+		if (history == null) {
+			return new ArrayList<>();
+		}
+		return history.findPage(beforeSequence, limit);
+	}
+}
@@ -0,0 +1,276 @@
+package io.github.wangster6.storage.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import io.github.wangster6.bank.LedgerEntry;
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.storage.History;
+
+/**
+ * Everything the journal engine stores, rebuilt on startup from the last
+ * snapshot and the records journaled after it. Records are only ever applied
+ * by one thread at a time, under the engine's write lock, and the same code
+ * applies them while running and while recovering, so recovery always arrives
+ * at the state the records produced. Readers look the maps up without locking.
+ * <p>
+ * Only the most recent entries of each account's history are kept, up to a
+ * configured limit, and a deleted account's history goes with it, so neither
+ * memory nor the snapshots grow with the age of the journal.
+ *
+ * @author wangster6
+ */
+final class JournalState {
+	/** Number of users or ledger entries written to a snapshot per record */
+	private static final int SNAPSHOT_CHUNK = 256;
+
+	final ConcurrentHashMap<String, User> byUsername = new ConcurrentHashMap<>();
+	final ConcurrentHashMap<Integer, User> byId = new ConcurrentHashMap<>();
+	/** Balance of each account in cents */
+	final ConcurrentHashMap<Integer, Long> balances = new ConcurrentHashMap<>();
+	final ConcurrentHashMap<Integer, History> histories = new ConcurrentHashMap<>();
+	/** The accrued ranges of each interest run, first ID mapped to last ID */
+	final ConcurrentHashMap<String, ConcurrentSkipListMap<Integer, Integer>> accrued = new ConcurrentHashMap<>();
+	volatile int lastUserId;
+	volatile int lastAccountId;
+	volatile long lastSequence;
+	private final int historyLimit;
+
+	/**
+	 * Constructs a new, empty JournalState.
+	 *
+	 * @param historyLimit the number of ledger entries kept per account.
+	 */
+	JournalState(int historyLimit) {
+		this.historyLimit = historyLimit;
+	}
+
+	/**
+	 * Where a snapshot is written to, one record at a time.
+	 */
+	@FunctionalInterface
+	interface Sink {
+		/**
+		 * Writes a record.
+		 *
+		 * @param type the type of the record.
+		 * @param body writes the rest of the body.
+		 * @throws IOException If the record cannot be written.
+		 */
+		void write(byte type, Records.Body body) throws IOException;
+	}
+
+	/**
+	 * Applies a record.
+	 *
+	 * @param body the body of the record, positioned at its type.
+	 * @throws IllegalStateException If the record type is unknown.
+	 */
+	void apply(ByteBuffer body) {
+		byte type = body.get();
+		switch (type) {
+		case Records.CREATE_USERS:
+			for (int count = body.getInt(); count > 0; count--) {
+				User user = new User(body.getInt(), body.getInt(), Records.getString(body), Records.getString(body),
+						Records.getString(body));
+				byUsername.put(user.username, user);
+				byId.put(user.id, user);
+				balances.put(user.accountId, 0L);
+				lastUserId = Math.max(lastUserId, user.id);
+				lastAccountId = Math.max(lastAccountId, user.accountId);
+			}
+			break;
+		case Records.SET_BALANCE:
+			balances.replace(body.getInt(), body.getLong());
+			break;
+		case Records.ACCRUED:
+			accrued.computeIfAbsent(Records.getString(body), id -> new ConcurrentSkipListMap<>()).put(body.getInt(),
+					body.getInt());
+			break;
+		case Records.SET_PASSWORD:
+			User user = byId.get(body.getInt());
+			String hashedPassword = Records.getString(body);
+			if (user != null) {
+				User updated = new User(user.id, user.accountId, user.firstName, user.username, hashedPassword);
+				byUsername.put(updated.username, updated);
+				byId.put(updated.id, updated);
+			}
+			break;
+		case Records.DELETE_USER:
+			User deleted = byId.remove(body.getInt());
+			if (deleted != null) {
+				byUsername.remove(deleted.username);
+				balances.remove(deleted.accountId);
+				histories.remove(deleted.accountId);
+			}
+			break;
+		case Records.LEDGER:
+			for (int count = body.getInt(); count > 0; count--) {
+				insert(getEntry(body));
+			}
+			break;
+		case Records.POST:
+			post(body);
+			break;
+		case Records.ACCRUE_AND_POST:
+			accrued.computeIfAbsent(Records.getString(body), id -> new ConcurrentSkipListMap<>()).put(body.getInt(),
+					body.getInt());
+			post(body);
+			break;
+		case Records.LAST_IDS:
+			lastUserId = Math.max(lastUserId, body.getInt());
+			lastAccountId = Math.max(lastAccountId, body.getInt());
+			lastSequence = Math.max(lastSequence, body.getLong());
+			break;
+		default:
+			throw new IllegalStateException("Unknown journal record type " + type);
+		}
+	}
+
+	/**
+	 * Applies the entries written by {@link #putEntries(ByteBuffer, List)}, each
+	 * setting the balance of its account and adding to its history.
+	 *
+	 * @param in the buffer to read from.
+	 */
+	private void post(ByteBuffer in) {
+		for (int count = in.getInt(); count > 0; count--) {
+			LedgerEntry entry = getEntry(in);
+			balances.replace(entry.getAccountId(), entry.getBalanceAfter().toCents());
+			insert(entry);
+		}
+	}
+
+	/**
+	 * Adds an entry to the history of its account, dropping the oldest entry if
+	 * the history is full.
+	 *
+	 * @param entry the entry to add.
+	 */
+	private void insert(LedgerEntry entry) {
+		histories.computeIfAbsent(entry.getAccountId(), id -> new History(historyLimit)).add(entry);
+		lastSequence = Math.max(lastSequence, entry.getSequence());
+	}
+
+	/**
+	 * Writes the whole state as records which, applied to an empty state,
+	 * recreate it. Runs on the snapshot thread while changes go on being applied,
+	 * so it may capture some of the changes made while it runs and miss others.
+	 * That is safe because the records of all those changes are in the journal
+	 * the snapshot belongs to, and recovery replays that journal in full after
+	 * loading it: every record sets absolute values, so a change the snapshot
+	 * already holds is simply applied again.
+	 *
+	 * @param sink where to write the records.
+	 * @throws IOException If a record cannot be written.
+	 */
+	void writeSnapshot(Sink sink) throws IOException {
+		int userId = lastUserId;
+		int accountId = lastAccountId;
+		long sequence = lastSequence;
+		sink.write(Records.LAST_IDS, out -> out.putInt(userId).putInt(accountId).putLong(sequence));
+		List<User> users = new ArrayList<>(SNAPSHOT_CHUNK);
+		for (Iterator<User> all = byId.values().iterator(); all.hasNext();) {
+			users.add(all.next());
+			if (users.size() == SNAPSHOT_CHUNK || !all.hasNext()) {
+				sink.write(Records.CREATE_USERS, out -> putUsers(out, users));
+				users.clear();
+			}
+		}
+		for (User user : byId.values()) {
+			long cents = balances.getOrDefault(user.accountId, 0L);
+			if (cents != 0) {
+				sink.write(Records.SET_BALANCE, out -> out.putInt(user.accountId).putLong(cents));
+			}
+		}
+		for (Map.Entry<String, ConcurrentSkipListMap<Integer, Integer>> run : accrued.entrySet()) {
+			for (Map.Entry<Integer, Integer> range : run.getValue().entrySet()) {
+				sink.write(Records.ACCRUED, out -> {
+					Records.putString(out, run.getKey());
+					out.putInt(range.getKey()).putInt(range.getValue());
+				});
+			}
+		}
+		List<LedgerEntry> entries = new ArrayList<>(SNAPSHOT_CHUNK);
+		for (History history : histories.values()) {
+			for (Iterator<LedgerEntry> all = history.toList().iterator(); all.hasNext();) {
+				entries.add(all.next());
+				if (entries.size() == SNAPSHOT_CHUNK || !all.hasNext()) {
+					sink.write(Records.LEDGER, out -> putEntries(out, entries));
+					entries.clear();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the body of a {@link Records#CREATE_USERS} record.
+	 *
+	 * @param out   the buffer to write to.
+	 * @param users the users to create.
+	 */
+	static void putUsers(ByteBuffer out, List<User> users) {
+		out.putInt(users.size());
+		for (User user : users) {
+			out.putInt(user.id).putInt(user.accountId);
+			Records.putString(out, user.firstName);
+			Records.putString(out, user.username);
+			Records.putString(out, user.hashedPassword);
+		}
+	}
+
+	/**
+	 * Writes the body of a {@link Records#LEDGER} or {@link Records#POST}
+	 * record, or the end of the body of a {@link Records#ACCRUE_AND_POST} record.
+	 *
+	 * @param out     the buffer to write to.
+	 * @param entries the entries to insert.
+	 */
+	static void putEntries(ByteBuffer out, List<LedgerEntry> entries) {
+		out.putInt(entries.size());
+		for (LedgerEntry entry : entries) {
+			out.putLong(entry.getSequence()).putInt(entry.getAccountId()).put((byte) entry.getType().ordinal());
+			out.putLong(entry.getAmount().toCents()).putLong(entry.getBalanceAfter().toCents());
+			out.putLong(entry.getTimestamp().getEpochSecond()).putInt(entry.getTimestamp().getNano());
+		}
+	}
+
+	/**
+	 * Reads one entry written by {@link #putEntries(ByteBuffer, List)}.
+	 *
+	 * @param in the buffer to read from.
+	 * @return the entry.
+	 */
+	private static LedgerEntry getEntry(ByteBuffer in) {
+		return new LedgerEntry(in.getLong(), in.getInt(), LedgerEntry.Type.values()[in.get()],
+				Money.ofCents(in.getLong()), Money.ofCents(in.getLong()),
+				Instant.ofEpochSecond(in.getLong(), in.getInt()));
+	}
+
+	/**
+	 * An immutable snapshot of a stored user. Changing the password hash replaces
+	 * the snapshot.
+	 */
+	static final class User {
+		final int id;
+		final int accountId;
+		final String firstName;
+		final String username;
+		final String hashedPassword;
+
+		User(int id, int accountId, String firstName, String username, String hashedPassword) {
+			this.id = id;
+			this.accountId = accountId;
+			this.firstName = firstName;
+			this.username = username;
+			this.hashedPassword = hashedPassword;
+		}
+	}
+}
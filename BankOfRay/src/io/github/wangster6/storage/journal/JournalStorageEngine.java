@@ -0,0 +1,604 @@
+package io.github.wangster6.storage.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.github.wangster6.config.AppConfig;
+import io.github.wangster6.metrics.Metrics;
+import io.github.wangster6.metrics.OperationMetrics;
+import io.github.wangster6.storage.AccountStore;
+import io.github.wangster6.storage.LedgerStore;
+import io.github.wangster6.storage.StorageEngine;
+import io.github.wangster6.storage.UserStore;
+
+/**
+ * The storage engine that keeps everything in memory and makes it durable in
+ * a directory of its own, for terminals that should not need a database
+ * server. Every change is appended to a memory-mapped, checksummed journal
+ * before it is applied, under one write lock, so the journal always holds the
+ * changes in the order they were made. When the journal is full, a new, empty
+ * journal is started right away and the whole state is written to a snapshot
+ * on a background thread, after which the journals before it are deleted.
+ * That bounds both the disk space used and the time it takes to start up,
+ * without making the change that filled the journal wait for the snapshot.
+ * <p>
+ * On startup, the last complete snapshot is loaded and every journal from the
+ * one it belongs to onwards is replayed up to its last intact record, so a
+ * crash at any moment loses at most the changes the {@link FsyncPolicy} allows. Readers never lock, and with
+ * the batched and interval policies may see a change a moment before it is
+ * forced to disk.
+ * <p>
+ * If forcing the journal ever fails, the engine refuses every further change,
+ * since what is in memory may no longer match what is on disk, and has to be
+ * restarted to recover.
+ *
+ * @author wangster6
+ */
+public class JournalStorageEngine implements StorageEngine, Closeable {
+	private static final OperationMetrics FSYNC_METRICS = Metrics.operation("journal.fsync");
+	private static final OperationMetrics SNAPSHOT_METRICS = Metrics.operation("journal.snapshot");
+	/** "BORSNAP1", the first bytes of every snapshot file */
+	private static final long SNAPSHOT_MAGIC = 0x424F52534E415031L;
+	private static final String SNAPSHOT_FILE = "snapshot.dat";
+	private static final String SNAPSHOT_TEMP_FILE = "snapshot.dat.tmp";
+	private static final String LOCK_FILE = "lock";
+	/** Size of the buffer a snapshot is written through */
+	private static final int SNAPSHOT_BUFFER_SIZE = 1024 * 1024;
+
+	private final Path directory;
+	private final FsyncPolicy policy;
+	private final int maxJournalBytes;
+	private final JournalState state;
+	private final ReentrantLock writeLock = new ReentrantLock();
+	private final Object syncMonitor = new Object();
+	private final FileChannel lockChannel;
+	private final FileLock directoryLock;
+	private final ScheduledExecutorService syncer;
+	private final ExecutorService snapshotter;
+	private final JournalLedgerStore ledger;
+	/** Created by {@link #start(long)}, since they journal through the engine */
+	private JournalUserStore users;
+	private JournalAccountStore accounts;
+
+	/** Replaced under the write lock when the journal is full */
+	private volatile Journal journal;
+	/** The snapshot being written, or null, guarded by the write lock */
+	private Future<?> pendingSnapshot;
+	/** Total bytes of records appended since startup, across journals */
+	private volatile long appended;
+	/** How much of {@link #appended} is known to be on disk, guarded by syncMonitor */
+	private long durable;
+	/** Whether a thread is forcing the journal, guarded by syncMonitor */
+	private boolean syncing;
+	/** Why the engine refuses changes, or null while it accepts them */
+	private volatile IOException failure;
+
+	/**
+	 * Opens the journal in a directory, creating the directory if needed, and
+	 * recovers everything stored in it. The engine is only handed out once it
+	 * is started, so nothing can reach it while it is still being constructed.
+	 *
+	 * @param directory          the directory to keep the journal and snapshots
+	 *                           in. Only one engine may use it at a time.
+	 * @param policy             when to force the journal to disk.
+	 * @param syncIntervalMillis how often the journal is forced with the
+	 *                           {@link FsyncPolicy#INTERVAL} policy.
+	 * @param maxJournalBytes    the size of each journal file, after which a
+	 *                           snapshot is taken.
+	 * @param historyLimit       the number of ledger entries kept per account.
+	 * @return the started engine.
+	 * @throws IOException If the directory is in use or the journal cannot be
+	 *                     read or created.
+	 */
+	public static JournalStorageEngine open(Path directory, FsyncPolicy policy, long syncIntervalMillis,
+			int maxJournalBytes, int historyLimit) throws IOException {
+		JournalStorageEngine engine = new JournalStorageEngine(directory, policy, maxJournalBytes, historyLimit);
+		engine.start(syncIntervalMillis);
+		return engine;
+	}
+
+	/**
+	 * Locks the directory and recovers everything stored in it, without starting
+	 * anything that uses the engine.
+	 *
+	 * @param directory       the directory to keep the journal and snapshots in.
+	 * @param policy          when to force the journal to disk.
+	 * @param maxJournalBytes the size of each journal file.
+	 * @param historyLimit    the number of ledger entries kept per account.
+	 * @throws IOException If the directory is in use or the journal cannot be
+	 *                     read or created.
+	 */
+	private JournalStorageEngine(Path directory, FsyncPolicy policy, int maxJournalBytes, int historyLimit)
+			throws IOException {
+		this.directory = directory;
+		this.policy = policy;
+		this.maxJournalBytes = maxJournalBytes;
+		this.state = new JournalState(historyLimit);
+		Files.createDirectories(directory);
+		lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+		try {
+			directoryLock = lockChannel.tryLock();
+			if (directoryLock == null) {
+				throw new IOException("Journal " + directory + " is in use by another process");
+			}
+			journal = recover();
+		} catch (IOException | RuntimeException e) {
+			lockChannel.close();
+			if (e instanceof OverlappingFileLockException) {
+				throw new IOException("Journal " + directory + " is already open", e);
+			}
+			throw e;
+		}
+		if (policy == FsyncPolicy.INTERVAL) {
+			syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "journal-sync");
+				thread.setDaemon(true);
+				return thread;
+			});
+		} else {
+			syncer = null;
+		}
+		snapshotter = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "journal-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ledger = new JournalLedgerStore(state);
+	}
+
+	/**
+	 * Creates the stores that journal through the engine and schedules the
+	 * background sync, once the engine is fully constructed.
+	 *
+	 * @param syncIntervalMillis how often the journal is forced with the
+	 *                           {@link FsyncPolicy#INTERVAL} policy.
+	 */
+	private void start(long syncIntervalMillis) {
+		users = new JournalUserStore(this, state);
+		accounts = new JournalAccountStore(this, state);
+		if (syncer != null) {
+			syncer.scheduleWithFixedDelay(this::syncInBackground, syncIntervalMillis, syncIntervalMillis,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Opens the journal described by the configuration.
+	 *
+	 * @param config the configuration.
+	 * @return the engine.
+	 * @throws UncheckedIOException If the journal cannot be opened.
+	 */
+	public static JournalStorageEngine open(AppConfig config) {
+		try {
+			return open(Paths.get(config.getJournalDir()),
+					FsyncPolicy.fromKey(config.getJournalFsync()), config.getJournalFsyncIntervalMillis(),
+					config.getJournalMaxBytes(), config.getStorageHistoryLimit());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public UserStore users() {
+		return users;
+	}
+
+	@Override
+	public AccountStore accounts() {
+		return accounts;
+	}
+
+	@Override
+	public LedgerStore ledger() {
+		return ledger;
+	}
+
+	/**
+	 * A change made under the write lock.
+	 *
+	 * @param <T> the type of the result of the change.
+	 */
+	@FunctionalInterface
+	interface Change<T> {
+		/**
+		 * Checks whether the change can be made and, if so, appends its records with
+		 * {@link JournalStorageEngine#append(byte, Records.Body)}.
+		 *
+		 * @return the result of the change.
+		 * @throws SQLException If the change is not allowed.
+		 * @throws IOException  If a record cannot be appended.
+		 */
+		T apply() throws SQLException, IOException;
+	}
+
+	/**
+	 * Makes a change under the write lock and then waits, as the policy requires,
+	 * until its records are on disk.
+	 *
+	 * @param <T>    the type of the result of the change.
+	 * @param change the change.
+	 * @return the result of the change.
+	 * @throws SQLException If the change is not allowed.
+	 * @throws IOException  If the journal cannot be written.
+	 */
+	<T> T write(Change<T> change) throws SQLException, IOException {
+		T result;
+		long before;
+		long position;
+		writeLock.lock();
+		try {
+			if (failure != null) {
+				throw new IOException("Journal " + directory + " no longer accepts changes", failure);
+			}
+			before = appended;
+			result = change.apply();
+			position = appended;
+		} finally {
+			writeLock.unlock();
+		}
+		if (policy == FsyncPolicy.BATCHED && position != before) {
+			awaitDurable(position);
+		}
+		return result;
+	}
+
+	/**
+	 * Appends a record to the journal and applies it, starting a new journal
+	 * first if the current one is full. Must be called from a {@link Change}.
+	 *
+	 * @param type the type of the record.
+	 * @param body writes the rest of the body.
+	 * @throws IOException If the record cannot be appended.
+	 */
+	void append(byte type, Records.Body body) throws IOException {
+		int start = journal.position();
+		ByteBuffer record;
+		try {
+			record = journal.append(type, body);
+		} catch (BufferOverflowException e) {
+			rollOver();
+			start = journal.position();
+			try {
+				record = journal.append(type, body);
+			} catch (BufferOverflowException tooLarge) {
+				throw new IOException("Journal record does not fit in " + maxJournalBytes + " bytes", tooLarge);
+			}
+		}
+		if (policy == FsyncPolicy.PER_OP) {
+			force(journal);
+		}
+		state.apply(record);
+		appended += journal.position() - start;
+	}
+
+	/**
+	 * Waits until the journal has been forced past a position, forcing it itself
+	 * if no other thread is already doing so. Every change appended before the
+	 * force starts is covered by it, so one force commits a whole group of
+	 * concurrent changes.
+	 *
+	 * @param position the position to wait for.
+	 * @throws IOException If the journal cannot be forced.
+	 */
+	private void awaitDurable(long position) throws IOException {
+		while (true) {
+			synchronized (syncMonitor) {
+				while (durable < position && syncing && failure == null) {
+					try {
+						syncMonitor.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted waiting for the journal to be forced");
+					}
+				}
+				if (durable >= position) {
+					return;
+				}
+				if (failure != null) {
+					throw new IOException("Journal " + directory + " could not be forced", failure);
+				}
+				syncing = true;
+			}
+			sync();
+		}
+	}
+
+	/**
+	 * Forces the journal and records how far it is durable. Reads the appended
+	 * position before the journal, so that if a new journal replaces it in
+	 * between, the position is covered by the force of the old journal that
+	 * came before the replacement.
+	 */
+	private void sync() {
+		long target = appended;
+		Journal current = journal;
+		IOException error = null;
+		try {
+			force(current);
+		} catch (IOException e) {
+			error = e;
+		}
+		synchronized (syncMonitor) {
+			syncing = false;
+			if (error == null) {
+				durable = Math.max(durable, target);
+			}
+			syncMonitor.notifyAll();
+		}
+	}
+
+	/**
+	 * Forces the journal on the background thread of the interval policy.
+	 */
+	private void syncInBackground() {
+		synchronized (syncMonitor) {
+			if (syncing || durable == appended) {
+				return;
+			}
+			syncing = true;
+		}
+		sync();
+	}
+
+	/**
+	 * Forces a journal to disk. If that fails, the engine stops accepting
+	 * changes.
+	 *
+	 * @param target the journal to force.
+	 * @throws IOException If the journal cannot be forced.
+	 */
+	private void force(Journal target) throws IOException {
+		long start = System.nanoTime();
+		try {
+			target.force();
+		} catch (UncheckedIOException e) {
+			FSYNC_METRICS.recordError();
+			failure = e.getCause();
+			throw e.getCause();
+		} finally {
+			FSYNC_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Starts a new, empty journal and writes a snapshot of the new journal's
+	 * generation in the background. The old journal is forced first, so every
+	 * change appended so far is durable before its journal stops being written.
+	 * Waits for the previous snapshot if it is still being written, so at most
+	 * one is written at a time. Must be called under the write lock.
+	 *
+	 * @throws IOException If the old journal cannot be forced or the new one
+	 *                     cannot be created.
+	 */
+	private void rollOver() throws IOException {
+		awaitSnapshot();
+		Journal previous = journal;
+		force(previous);
+		long generation = previous.getGeneration() + 1;
+		journal = Journal.create(Journal.fileOf(directory, generation), generation, maxJournalBytes);
+		previous.close();
+		synchronized (syncMonitor) {
+			durable = appended; // Everything appended so far was in the old journal
+			syncMonitor.notifyAll();
+		}
+		pendingSnapshot = snapshotter.submit(() -> snapshot(generation));
+	}
+
+	/**
+	 * Waits for the snapshot being written, if any. Must be called under the
+	 * write lock.
+	 *
+	 * @throws InterruptedIOException If interrupted while waiting.
+	 */
+	private void awaitSnapshot() throws InterruptedIOException {
+		if (pendingSnapshot == null) {
+			return;
+		}
+		try {
+			pendingSnapshot.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for the journal snapshot");
+		} catch (ExecutionException e) {
+			// Already recorded by the snapshot itself
+		}
+		pendingSnapshot = null;
+	}
+
+	/**
+	 * Writes the whole state to a new snapshot of a generation, then deletes the
+	 * journals before it. Runs on the snapshot thread while changes go on being
+	 * appended to the journal of the same generation, which recovery replays in
+	 * full after loading the snapshot. The snapshot is written to a temporary
+	 * file and renamed once it is on disk, and older journals are only deleted
+	 * after that, so a crash at any point leaves a complete snapshot and every
+	 * journal that follows it. If the snapshot fails, the journals are kept and
+	 * the next one covers them.
+	 *
+	 * @param generation the generation of the snapshot.
+	 */
+	private void snapshot(long generation) {
+		long start = System.nanoTime();
+		try {
+			Path temp = directory.resolve(SNAPSHOT_TEMP_FILE);
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.allocateDirect(SNAPSHOT_BUFFER_SIZE);
+				buffer.putLong(SNAPSHOT_MAGIC).putLong(generation);
+				JournalState.Sink sink = (type, body) -> {
+					try {
+						Records.write(buffer, type, body);
+					} catch (BufferOverflowException e) {
+						writeFully(channel, buffer);
+						try {
+							Records.write(buffer, type, body);
+						} catch (BufferOverflowException tooLarge) {
+							throw new IOException("Snapshot record does not fit in " + SNAPSHOT_BUFFER_SIZE
+									+ " bytes", tooLarge);
+						}
+					}
+				};
+				state.writeSnapshot(sink);
+				sink.write(Records.END, out -> {
+				});
+				writeFully(channel, buffer);
+				channel.force(true);
+			}
+			Files.move(temp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			forceDirectory();
+			Journal.deleteBefore(directory, generation);
+		} catch (IOException | RuntimeException e) {
+			SNAPSHOT_METRICS.recordError();
+			System.err.println("WARNING: Snapshot of journal " + directory
+					+ " failed, keeping the journals before it: " + e);
+		} finally {
+			SNAPSHOT_METRICS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Loads the last snapshot and replays every journal from its generation
+	 * onwards, oldest first, after removing whatever files an interrupted
+	 * snapshot left behind. Only the newest journal can be blank, since a
+	 * journal is only started once the one before it is complete.
+	 *
+	 * @return the journal to append to.
+	 * @throws IOException If the snapshot or a journal cannot be read.
+	 */
+	private Journal recover() throws IOException {
+		long generation = 0;
+		Path snapshot = directory.resolve(SNAPSHOT_FILE);
+		if (Files.exists(snapshot)) {
+			generation = loadSnapshot(snapshot);
+		}
+		Files.deleteIfExists(directory.resolve(SNAPSHOT_TEMP_FILE));
+		Journal.deleteBefore(directory, generation);
+		List<Long> generations = Journal.generations(directory);
+		if (generations.isEmpty()) {
+			return Journal.create(Journal.fileOf(directory, generation), generation, maxJournalBytes);
+		}
+		Journal current = null;
+		try {
+			for (long next : generations) {
+				if (current != null) {
+					current.close();
+				}
+				Path file = Journal.fileOf(directory, next);
+				current = Journal.isBlank(file) ? Journal.create(file, next, maxJournalBytes)
+						: Journal.open(file, next, state::apply);
+			}
+			return current;
+		} catch (IOException | RuntimeException e) {
+			if (current != null) {
+				current.close();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Loads a snapshot into the empty state.
+	 *
+	 * @param file the path of the snapshot.
+	 * @return the generation of the snapshot.
+	 * @throws IOException If the snapshot cannot be read or is incomplete.
+	 */
+	private long loadSnapshot(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < Journal.FILE_HEADER_SIZE || buffer.getLong() != SNAPSHOT_MAGIC) {
+				throw new IOException("Snapshot " + file + " is not a snapshot");
+			}
+			long generation = buffer.getLong();
+			for (ByteBuffer body = Records.next(buffer); body != null; body = Records.next(buffer)) {
+				if (body.get(body.position()) == Records.END) {
+					return generation;
+				}
+				state.apply(body);
+			}
+			throw new IOException("Snapshot " + file + " is incomplete");
+		}
+	}
+
+	/**
+	 * Forces the directory, so the rename of a new snapshot survives a crash.
+	 * Some platforms cannot open a directory, and make renames durable by
+	 * themselves.
+	 */
+	private void forceDirectory() {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// The platform does not support forcing directories
+		}
+	}
+
+	/**
+	 * Writes everything in a buffer to a channel and clears the buffer.
+	 *
+	 * @param channel the channel to write to.
+	 * @param buffer  the buffer, in write mode.
+	 * @throws IOException If the channel cannot be written.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Forces the journal to disk, waits for the snapshot being written, if any,
+	 * and closes the journal. Changes made after closing fail.
+	 *
+	 * @throws IOException If the journal cannot be forced or closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!lockChannel.isOpen()) {
+			return;
+		}
+		if (syncer != null) {
+			syncer.shutdownNow();
+		}
+		writeLock.lock();
+		try {
+			if (failure == null) {
+				force(journal);
+				failure = new IOException("Journal " + directory + " is closed");
+			}
+			awaitSnapshot();
+			journal.close();
+		} finally {
+			snapshotter.shutdown();
+			writeLock.unlock();
+			directoryLock.release();
+			lockChannel.close();
+		}
+	}
+}
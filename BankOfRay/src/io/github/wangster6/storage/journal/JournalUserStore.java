@@ -0,0 +1,158 @@
+package io.github.wangster6.storage.journal;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.bank.NewUser;
+import io.github.wangster6.bank.UserCredentials;
+import io.github.wangster6.storage.UserStore;
+import io.github.wangster6.storage.journal.JournalState.User;
+
+/**
+ * Looks users up in the journal engine's state without locking, and journals
+ * every change to them. A batch of new users is journaled as one record, so it
+ * is recovered whole or not at all.
+ *
+ * @author wangster6
+ */
+class JournalUserStore implements UserStore {
+	private final JournalStorageEngine engine;
+	private final JournalState state;
+
+	/**
+	 * Constructs a new JournalUserStore.
+	 *
+	 * @param engine the engine to journal changes through.
+	 * @param state  the state of the engine.
+	 */
+	JournalUserStore(JournalStorageEngine engine, JournalState state) {
+		this.engine = engine;
+		this.state = state;
+	}
+
+	@Override
+	public UserCredentials findCredentials(String username) {
+		User user = state.byUsername.get(username);
+		if (user == null) {
+			return null;
+		}
+		Long cents = state.balances.get(user.accountId);
+		if (cents == null) {
+			return null;
+		}
+		return new UserCredentials(user.id, user.accountId, username, user.firstName, user.hashedPassword,
+				Money.ofCents(cents));
+	}
+
+	@Override
+	public Integer findAccountId(String username) {
+		User user = state.byUsername.get(username);
+		return user == null ? null : user.accountId;
+	}
+
+	@Override
+	public boolean exists(String username) {
+		return state.byUsername.containsKey(username);
+	}
+
+	@Override
+	public boolean create(NewUser newUser) throws SQLException, IOException {
+		return engine.write(() -> {
+			if (state.byUsername.containsKey(newUser.getUsername())) {
+				return false;
+			}
+			insert(Collections.singletonList(newUser));
+			return true;
+		});
+	}
+
+	@Override
+	public void createAll(List<NewUser> newUsers) throws SQLException, IOException {
+		if (newUsers.isEmpty()) {
+			return;
+		}
+		engine.write(() -> {
+			Set<String> usernames = new HashSet<>();
+			for (NewUser newUser : newUsers) {
+				if (!usernames.add(newUser.getUsername()) || state.byUsername.containsKey(newUser.getUsername())) {
+					throw new SQLIntegrityConstraintViolationException(
+							"Duplicate entry '" + newUser.getUsername() + "' for key 'users.username'", "23000", 1062);
+				}
+			}
+			insert(newUsers);
+			return null;
+		});
+	}
+
+	@Override
+	public Set<String> findExisting(Collection<String> usernames) {
+		Set<String> existing = new HashSet<>();
+		for (String username : usernames) {
+			if (state.byUsername.containsKey(username)) {
+				existing.add(username);
+			}
+		}
+		return existing;
+	}
+
+	@Override
+	public boolean updateHashedPassword(int userId, String oldHash, String newHash) throws SQLException, IOException {
+		return engine.write(() -> {
+			User user = state.byId.get(userId);
+			if (user == null || !user.hashedPassword.equals(oldHash)) {
+				return false;
+			}
+			engine.append(Records.SET_PASSWORD, out -> {
+				out.putInt(userId);
+				Records.putString(out, newHash);
+			});
+			return true;
+		});
+	}
+
+	@Override
+	public void deleteByUsername(String username) throws SQLException, IOException {
+		engine.write(() -> {
+			User user = state.byUsername.get(username);
+			if (user != null) {
+				engine.append(Records.DELETE_USER, out -> out.putInt(user.id));
+			}
+			return null;
+		});
+	}
+
+	@Override
+	public long count() {
+		return state.byUsername.mappingCount();
+	}
+
+	@Override
+	public void forEachUsername(Consumer<String> action) {
+		state.byUsername.keySet().forEach(action);
+	}
+
+	/**
+	 * Journals and applies new users, each with the next free user and account
+	 * IDs. Must be called from a change that has checked the usernames are free.
+	 *
+	 * @param newUsers the users to create.
+	 * @throws IOException If the users cannot be journaled.
+	 */
+	private void insert(List<NewUser> newUsers) throws IOException {
+		List<User> users = new ArrayList<>(newUsers.size());
+		for (NewUser newUser : newUsers) {
+			users.add(new User(state.lastUserId + users.size() + 1, state.lastAccountId + users.size() + 1,
+					newUser.getFirstName(), newUser.getUsername(), newUser.getHashedPassword()));
+		}
+		engine.append(Records.CREATE_USERS, out -> JournalState.putUsers(out, users));
+	}
+}
@@ -0,0 +1,164 @@
+package io.github.wangster6.storage.journal;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * The format of the records in journal and snapshot files. Each record is the
+ * length of its body, a CRC-32C checksum of the body and the body itself, which
+ * starts with the type of the record. A record whose length or checksum does
+ * not match, such as one that was only partly written when the machine went
+ * down, marks the end of the file.
+ * <p>
+ * A journal holds one record per change: {@link #CREATE_USERS},
+ * {@link #SET_PASSWORD}, {@link #DELETE_USER}, {@link #POST} for deposits,
+ * withdrawals and transfers, and {@link #ACCRUE_AND_POST} for a chunk of an
+ * interest run. A snapshot describes the whole state instead, starting with
+ * {@link #LAST_IDS}, then {@link #CREATE_USERS}, {@link #SET_BALANCE},
+ * {@link #ACCRUED} and {@link #LEDGER} records, and ending with {@link #END}.
+ * Every record sets absolute values, so applying one that is already reflected
+ * in the state changes nothing.
+ *
+ * @author wangster6
+ */
+final class Records {
+	/** Users created together, each with a new account with a balance of 0 */
+	static final byte CREATE_USERS = 1;
+	/** The new password hash of a user */
+	static final byte SET_PASSWORD = 2;
+	/** A user deleted together with their account and its history */
+	static final byte DELETE_USER = 3;
+	/**
+	 * Ledger entries that each set the balance of their account to the balance
+	 * after the entry and are added to its history, all applied at once
+	 */
+	static final byte POST = 4;
+	/** A range of accounts accrued in an interest run, followed by a {@link #POST} body of the credits */
+	static final byte ACCRUE_AND_POST = 5;
+	/** The balance of an account, in snapshots */
+	static final byte SET_BALANCE = 6;
+	/** A range of accounts accrued in an interest run, in snapshots */
+	static final byte ACCRUED = 7;
+	/** Ledger entries added to their accounts' histories without changing balances, in snapshots */
+	static final byte LEDGER = 8;
+	/** The highest IDs and ledger sequence handed out so far, in snapshots */
+	static final byte LAST_IDS = 9;
+	/** The end of a snapshot, so a snapshot cut short is never mistaken for a whole one */
+	static final byte END = 10;
+
+	/** Size of the length and checksum in front of every body */
+	static final int HEADER_SIZE = 8;
+
+	private Records() {
+	}
+
+	/**
+	 * Writes the body of a record.
+	 */
+	@FunctionalInterface
+	interface Body {
+		/**
+		 * Writes the body after its type. May be called again if the record did not
+		 * fit the first time, so it must always write the same bytes.
+		 *
+		 * @param out the buffer to write to.
+		 * @throws BufferOverflowException If the body does not fit.
+		 */
+		void writeTo(ByteBuffer out);
+	}
+
+	/**
+	 * Writes a record at the position of a buffer and moves the position past it.
+	 *
+	 * @param out  the buffer to write to.
+	 * @param type the type of the record.
+	 * @param body writes the rest of the body.
+	 * @throws BufferOverflowException If the record does not fit in the rest of
+	 *                                 the buffer. The position is left unchanged.
+	 */
+	static void write(ByteBuffer out, byte type, Body body) {
+		int start = out.position();
+		if (out.remaining() < HEADER_SIZE + 1) {
+			throw new BufferOverflowException();
+		}
+		try {
+			out.position(start + HEADER_SIZE);
+			out.put(type);
+			body.writeTo(out);
+		} catch (BufferOverflowException e) {
+			out.position(start);
+			throw e;
+		}
+		int end = out.position();
+		out.putInt(start, end - start - HEADER_SIZE);
+		out.putInt(start + 4, checksum(out, start + HEADER_SIZE, end));
+	}
+
+	/**
+	 * Reads the record at the position of a buffer and moves the position past
+	 * it.
+	 *
+	 * @param in the buffer to read from.
+	 * @return the body of the record, positioned at its type, or null if there is
+	 *         no complete, intact record at the position, which is then left
+	 *         unchanged.
+	 */
+	static ByteBuffer next(ByteBuffer in) {
+		int start = in.position();
+		if (in.remaining() < HEADER_SIZE + 1) {
+			return null;
+		}
+		int length = in.getInt(start);
+		if (length <= 0 || length > in.remaining() - HEADER_SIZE) {
+			return null;
+		}
+		int end = start + HEADER_SIZE + length;
+		if (checksum(in, start + HEADER_SIZE, end) != in.getInt(start + 4)) {
+			return null;
+		}
+		ByteBuffer body = in.duplicate();
+		body.limit(end).position(start + HEADER_SIZE);
+		in.position(end);
+		return body;
+	}
+
+	/**
+	 * Writes a String as its length followed by its UTF-8 bytes.
+	 *
+	 * @param out  the buffer to write to.
+	 * @param text the text to write.
+	 */
+	static void putString(ByteBuffer out, String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.putInt(bytes.length);
+		out.put(bytes);
+	}
+
+	/**
+	 * Reads a String written by {@link #putString(ByteBuffer, String)}.
+	 *
+	 * @param in the buffer to read from.
+	 * @return the text.
+	 */
+	static String getString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param buffer the buffer holding the bytes.
+	 * @param start  the index of the first byte.
+	 * @param end    the index after the last byte.
+	 * @return the CRC-32C of the bytes.
+	 */
+	private static int checksum(ByteBuffer buffer, int start, int end) {
+		ByteBuffer bytes = buffer.duplicate();
+		bytes.limit(end).position(start);
+		CRC32C crc = new CRC32C();
+		crc.update(bytes);
+		return (int) crc.getValue();
+	}
+}
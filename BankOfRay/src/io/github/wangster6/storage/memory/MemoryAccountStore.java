@@ -0,0 +1,251 @@
+package io.github.wangster6.storage.memory;
+
+import java.sql.SQLDataException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+import io.github.wangster6.bank.Accrual;
+import io.github.wangster6.bank.LedgerEntry;
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.bank.TransferResult;
+import io.github.wangster6.storage.AccountStore;
+
+/**
+ * Keeps every balance in its own atomic counter of cents. Reads are a single
+ * volatile load and changes are a compare-and-set loop on the one account, so
+ * sessions on different accounts never contend and sessions on the same
+ * account never block each other.
+ * <p>
+ * Each change takes its ledger sequence number after reading the balance it
+ * changes, so if its compare-and-set succeeds, every earlier change of the
+ * account took a lower number, and the history of an account is always in the
+ * order its balance changed. The entry is inserted right after the change.
+ *
+ * @author wangster6
+ */
+class MemoryAccountStore implements AccountStore {
+	private final ConcurrentHashMap<Integer, AtomicLong> balances = new ConcurrentHashMap<>();
+	private final AtomicInteger nextId = new AtomicInteger();
+	/** The accrued ranges of each interest run, first ID mapped to last ID */
+	private final ConcurrentHashMap<String, ConcurrentSkipListMap<Integer, Integer>> accrued = new ConcurrentHashMap<>();
+	private final MemoryLedgerStore ledger;
+
+	/**
+	 * Constructs a new MemoryAccountStore.
+	 *
+	 * @param ledger the ledger to record balance changes in.
+	 */
+	MemoryAccountStore(MemoryLedgerStore ledger) {
+		this.ledger = ledger;
+	}
+
+	/**
+	 * Opens a new account with a balance of 0.
+	 *
+	 * @return the ID of the account.
+	 */
+	int open() {
+		int accountId = nextId.incrementAndGet();
+		balances.put(accountId, new AtomicLong());
+		return accountId;
+	}
+
+	/**
+	 * Closes an account and drops its history. Changes still in progress on it
+	 * are lost.
+	 *
+	 * @param accountId the ID of the account.
+	 */
+	void close(int accountId) {
+		balances.remove(accountId);
+		ledger.remove(accountId);
+	}
+
+	@Override
+	public Money findBalance(int accountId) {
+		AtomicLong balance = balances.get(accountId);
+		return balance == null ? null : Money.ofCents(balance.get());
+	}
+
+	@Override
+	public Money deposit(int accountId, Money amount) throws SQLDataException {
+		return add(accountId, amount, LedgerEntry.Type.DEPOSIT);
+	}
+
+	@Override
+	public Money withdraw(int accountId, Money amount) {
+		return subtract(accountId, amount, LedgerEntry.Type.WITHDRAWAL);
+	}
+
+	/**
+	 * Adds an amount to a balance and records the change in the ledger.
+	 *
+	 * @param accountId the ID of the account.
+	 * @param amount    the positive amount to add.
+	 * @param type      how the change is recorded in the ledger.
+	 * @return the new balance, or null if the account is not found.
+	 * @throws SQLDataException If the balance would become too large.
+	 */
+	private Money add(int accountId, Money amount, LedgerEntry.Type type) throws SQLDataException {
+		AtomicLong balance = balances.get(accountId);
+		if (balance == null) {
+			return null;
+		}
+		long current;
+		long sequence;
+		long updated;
+		do {
+			current = balance.get();
+			sequence = ledger.nextSequence();
+			try {
+				updated = Math.addExact(current, amount.toCents());
+			} catch (ArithmeticException e) {
+				throw new SQLDataException("Balance of account " + accountId + " out of range", e);
+			}
+		} while (!balance.compareAndSet(current, updated));
+		return record(sequence, accountId, type, amount, updated);
+	}
+
+	/**
+	 * Subtracts an amount from a balance if the balance covers it, and records
+	 * the change in the ledger.
+	 *
+	 * @param accountId the ID of the account.
+	 * @param amount    the positive amount to subtract.
+	 * @param type      how the change is recorded in the ledger.
+	 * @return the new balance, or null if the account is not found or does not
+	 *         hold enough money.
+	 */
+	private Money subtract(int accountId, Money amount, LedgerEntry.Type type) {
+		AtomicLong balance = balances.get(accountId);
+		if (balance == null) {
+			return null;
+		}
+		long current;
+		long sequence;
+		do {
+			current = balance.get();
+			if (current < amount.toCents()) {
+				return null;
+			}
+			sequence = ledger.nextSequence();
+		} while (!balance.compareAndSet(current, current - amount.toCents()));
+		return record(sequence, accountId, type, amount, current - amount.toCents());
+	}
+
+	/**
+	 * Inserts the ledger entry of a change that has been applied.
+	 *
+	 * @param sequence  the sequence number the change took.
+	 * @param accountId the ID of the account.
+	 * @param type      how the money was moved.
+	 * @param amount    the amount moved.
+	 * @param cents     the balance after the change in cents.
+	 * @return the balance after the change.
+	 */
+	private Money record(long sequence, int accountId, LedgerEntry.Type type, Money amount, long cents) {
+		Money balanceAfter = Money.ofCents(cents);
+		ledger.insert(new LedgerEntry(sequence, accountId, type, amount, balanceAfter, Instant.now()));
+		return balanceAfter;
+	}
+
+	/**
+	 * Moves an amount between accounts without taking any lock, so transfers can
+	 * never deadlock: the first account is debited with the same compare-and-set
+	 * loop as a withdrawal, then the second is credited like a deposit. Neither
+	 * step can be lost or applied twice, but another session reading both
+	 * accounts between the two steps sees the money in neither. If the credit
+	 * cannot be made, the money is given back to the first account, and the
+	 * refund is recorded as a deposit.
+	 */
+	@Override
+	public TransferResult transfer(int fromAccountId, int toAccountId, Money amount) throws SQLDataException {
+		if (fromAccountId == toAccountId) {
+			throw new IllegalArgumentException("Cannot transfer from account " + fromAccountId + " to itself");
+		}
+		if (!balances.containsKey(toAccountId)) {
+			return null;
+		}
+		Money fromBal = subtract(fromAccountId, amount, LedgerEntry.Type.TRANSFER_OUT);
+		if (fromBal == null) {
+			return null;
+		}
+		Money toBal;
+		try {
+			toBal = add(toAccountId, amount, LedgerEntry.Type.TRANSFER_IN);
+		} catch (SQLDataException e) {
+			deposit(fromAccountId, amount); // Give the money back
+			throw e;
+		}
+		if (toBal == null) {
+			deposit(fromAccountId, amount); // The account was closed in the meantime
+			return null;
+		}
+		return new TransferResult(fromBal, toBal);
+	}
+
+	@Override
+	public int findMaxAccountId() {
+		return nextId.get();
+	}
+
+	@Override
+	public NavigableMap<Integer, Integer> findAccruedRanges(String runId) {
+		ConcurrentSkipListMap<Integer, Integer> ranges = accrued.get(runId);
+		return ranges == null ? new TreeMap<>() : new TreeMap<>(ranges);
+	}
+
+	/**
+	 * Claims the range for the run and then adds interest to each account with
+	 * the same compare-and-set loop as a deposit, working the interest out again
+	 * whenever the balance changed in between, and records each credit in the
+	 * ledger right after it is added. The range is claimed before any
+	 * interest is added, so the accounts of a range are never credited twice even
+	 * though they are not credited at one instant.
+	 */
+	@Override
+	public List<Accrual> accrueInterest(String runId, int firstId, int lastId, UnaryOperator<Money> interest)
+			throws SQLDataException {
+		if (accrued.computeIfAbsent(runId, id -> new ConcurrentSkipListMap<>()).putIfAbsent(firstId, lastId) != null) {
+			return null;
+		}
+		List<Accrual> accruals = new ArrayList<>();
+		for (int accountId = firstId; accountId <= Math.min(lastId, nextId.get()); accountId++) {
+			AtomicLong balance = balances.get(accountId);
+			if (balance == null) {
+				continue;
+			}
+			long current;
+			long credit;
+			long sequence = 0;
+			long updated;
+			do {
+				current = balance.get();
+				credit = current > 0 ? interest.apply(Money.ofCents(current)).toCents() : 0;
+				if (credit <= 0) {
+					break;
+				}
+				sequence = ledger.nextSequence();
+				try {
+					updated = Math.addExact(current, credit);
+				} catch (ArithmeticException e) {
+					throw new SQLDataException("Balance of account " + accountId + " out of range", e);
+				}
+			} while (!balance.compareAndSet(current, updated));
+			if (credit > 0) {
+				Money balanceAfter = record(sequence, accountId, LedgerEntry.Type.INTEREST, Money.ofCents(credit),
+						current + credit);
+				accruals.add(new Accrual(accountId, Money.ofCents(credit), balanceAfter));
+			}
+		}
+		return accruals;
+	}
+}
@@ -0,0 +1,74 @@
+package io.github.wangster6.storage.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.wangster6.bank.LedgerEntry;
+import io.github.wangster6.storage.History;
+import io.github.wangster6.storage.LedgerStore;
+
+/**
+ * Keeps the most recent entries of every account's history in a bounded
+ * {@link History} of its own, so a page of history is a search in one buffer
+ * and memory use does not grow with the number of changes made. Sequences are
+ * drawn from one atomic counter, and entries are inserted by
+ * {@link MemoryAccountStore} as it changes balances.
+ *
+ * @author wangster6
+ */
+class MemoryLedgerStore implements LedgerStore {
+	private final ConcurrentHashMap<Integer, History> histories = new ConcurrentHashMap<>();
+	private final AtomicLong lastSequence = new AtomicLong();
+	private final int historyLimit;
+
+	/**
+	 * Constructs a new MemoryLedgerStore.
+	 *
+	 * @param historyLimit the number of entries kept per account.
+	 */
+	MemoryLedgerStore(int historyLimit) {
+		this.historyLimit = historyLimit;
+	}
+
+	/**
+	 * Hands out the next sequence number. Numbers handed out but never inserted
+	 * leave gaps, which the ledger allows.
+	 *
+	 * @return the sequence number.
+	 */
+	long nextSequence() {
+		return lastSequence.incrementAndGet();
+	}
+
+	/**
+	 * Inserts an entry that already has its sequence number, dropping the oldest
+	 * entry of the account if its history is full.
+	 *
+	 * @param entry the entry to insert.
+	 */
+	void insert(LedgerEntry entry) {
+		if (historyLimit > 0) {
+			histories.computeIfAbsent(entry.getAccountId(), id -> new History(historyLimit)).add(entry);
+		}
+	}
+
+	/**
+	 * Drops the history of a closed account.
+	 *
+	 * @param accountId the ID of the account.
+	 */
+	void remove(int accountId) {
+		histories.remove(accountId);
+	}
+
+	@Override
+	public List<LedgerEntry> findPage(int accountId, long beforeSequence, int limit) {
+		History history = histories.get(accountId);
+		if (history == null) {
+			return new ArrayList<>();
+		}
+		return history.findPage(beforeSequence, limit);
+	}
+}
@@ -0,0 +1,60 @@
+package io.github.wangster6.storage.memory;
+
+import io.github.wangster6.storage.AccountStore;
+import io.github.wangster6.storage.LedgerStore;
+import io.github.wangster6.storage.StorageEngine;
+import io.github.wangster6.storage.UserStore;
+
+/**
+ * The storage engine that keeps everything in memory, for benchmarks,
+ * simulations and tests that should not need a database. Balances are
+ * per-account atomics and user changes take striped locks, so operations on
+ * different accounts scale across cores. Only the most recent ledger entries
+ * of each account are kept, so memory use stays flat however many changes are
+ * made. Nothing survives the JVM.
+ *
+ * @author wangster6
+ */
+public class MemoryStorageEngine implements StorageEngine {
+	/** Number of ledger entries kept per account unless configured otherwise */
+	public static final int DEFAULT_HISTORY_LIMIT = 100;
+
+	private final MemoryLedgerStore ledger;
+	private final MemoryAccountStore accounts;
+	private final MemoryUserStore users;
+
+	/**
+	 * Constructs a new, empty MemoryStorageEngine that keeps the default number
+	 * of ledger entries per account.
+	 */
+	public MemoryStorageEngine() {
+		this(DEFAULT_HISTORY_LIMIT);
+	}
+
+	/**
+	 * Constructs a new, empty MemoryStorageEngine.
+	 *
+	 * @param historyLimit the number of ledger entries kept per account, 0 to
+	 *                     keep none.
+	 */
+	public MemoryStorageEngine(int historyLimit) {
+		ledger = new MemoryLedgerStore(historyLimit);
+		accounts = new MemoryAccountStore(ledger);
+		users = new MemoryUserStore(accounts);
+	}
+
+	@Override
+	public UserStore users() {
+		return users;
+	}
+
+	@Override
+	public AccountStore accounts() {
+		return accounts;
+	}
+
+	@Override
+	public LedgerStore ledger() {
+		return ledger;
+	}
+}
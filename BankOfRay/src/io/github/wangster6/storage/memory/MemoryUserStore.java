@@ -0,0 +1,222 @@
+package io.github.wangster6.storage.memory;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.bank.NewUser;
+import io.github.wangster6.bank.UserCredentials;
+import io.github.wangster6.storage.UserStore;
+
+/**
+ * Keeps users in concurrent maps by username and by ID. Lookups never lock.
+ * Changes lock the stripe of every username they touch, always in ascending
+ * stripe order so that two changes can never deadlock, which makes creating a
+ * batch of users all-or-nothing with respect to other changes.
+ *
+ * @author wangster6
+ */
+class MemoryUserStore implements UserStore {
+	/** Number of locks usernames are spread over, a power of two */
+	private static final int STRIPES = 64;
+
+	private final MemoryAccountStore accounts;
+	private final ConcurrentHashMap<String, User> byUsername = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Integer, User> byId = new ConcurrentHashMap<>();
+	private final AtomicInteger nextId = new AtomicInteger();
+	private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+	/**
+	 * Constructs a new MemoryUserStore.
+	 *
+	 * @param accounts the store to open and close the users' accounts in.
+	 */
+	MemoryUserStore(MemoryAccountStore accounts) {
+		this.accounts = accounts;
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+
+	@Override
+	public UserCredentials findCredentials(String username) {
+		User user = byUsername.get(username);
+		if (user == null) {
+			return null;
+		}
+		Money balance = accounts.findBalance(user.accountId);
+		if (balance == null) {
+			return null;
+		}
+		return new UserCredentials(user.id, user.accountId, username, user.firstName, user.hashedPassword, balance);
+	}
+
+	@Override
+	public Integer findAccountId(String username) {
+		User user = byUsername.get(username);
+		return user == null ? null : user.accountId;
+	}
+
+	@Override
+	public boolean exists(String username) {
+		return byUsername.containsKey(username);
+	}
+
+	@Override
+	public boolean create(NewUser newUser) {
+		ReentrantLock lock = stripeOf(newUser.getUsername());
+		lock.lock();
+		try {
+			if (byUsername.containsKey(newUser.getUsername())) {
+				return false;
+			}
+			insert(newUser);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void createAll(List<NewUser> newUsers) throws SQLIntegrityConstraintViolationException {
+		Set<Integer> stripeIndexes = new TreeSet<>();
+		for (NewUser newUser : newUsers) {
+			stripeIndexes.add(stripeIndexOf(newUser.getUsername()));
+		}
+		for (int index : stripeIndexes) {
+			stripes[index].lock();
+		}
+		try {
+			Set<String> usernames = new HashSet<>();
+			for (NewUser newUser : newUsers) {
+				if (!usernames.add(newUser.getUsername()) || byUsername.containsKey(newUser.getUsername())) {
+					throw new SQLIntegrityConstraintViolationException(
+							"Duplicate entry '" + newUser.getUsername() + "' for key 'users.username'", "23000", 1062);
+				}
+			}
+			for (NewUser newUser : newUsers) {
+				insert(newUser);
+			}
+		} finally {
+			for (int index : stripeIndexes) {
+				stripes[index].unlock();
+			}
+		}
+	}
+
+	@Override
+	public Set<String> findExisting(Collection<String> usernames) {
+		Set<String> existing = new HashSet<>();
+		for (String username : usernames) {
+			if (byUsername.containsKey(username)) {
+				existing.add(username);
+			}
+		}
+		return existing;
+	}
+
+	@Override
+	public boolean updateHashedPassword(int userId, String oldHash, String newHash) {
+		User user = byId.get(userId);
+		if (user == null) {
+			return false;
+		}
+		ReentrantLock lock = stripeOf(user.username);
+		lock.lock();
+		try {
+			User current = byUsername.get(user.username);
+			if (current == null || current.id != userId || !current.hashedPassword.equals(oldHash)) {
+				return false;
+			}
+			User updated = new User(current.id, current.accountId, current.firstName, current.username, newHash);
+			byUsername.put(current.username, updated);
+			byId.put(current.id, updated);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void deleteByUsername(String username) {
+		ReentrantLock lock = stripeOf(username);
+		lock.lock();
+		try {
+			User user = byUsername.remove(username);
+			if (user != null) {
+				byId.remove(user.id);
+				accounts.close(user.accountId);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long count() {
+		return byUsername.mappingCount();
+	}
+
+	@Override
+	public void forEachUsername(Consumer<String> action) {
+		byUsername.keySet().forEach(action);
+	}
+
+	/**
+	 * Stores a user with a new account. The caller must hold the user's stripe
+	 * and have checked that the username is free.
+	 *
+	 * @param newUser the user to store.
+	 */
+	private void insert(NewUser newUser) {
+		User user = new User(nextId.incrementAndGet(), accounts.open(), newUser.getFirstName(),
+				newUser.getUsername(), newUser.getHashedPassword());
+		byUsername.put(user.username, user);
+		byId.put(user.id, user);
+	}
+
+	/**
+	 * @param username a username.
+	 * @return the lock guarding changes to that username.
+	 */
+	private ReentrantLock stripeOf(String username) {
+		return stripes[stripeIndexOf(username)];
+	}
+
+	/**
+	 * @param username a username.
+	 * @return the index of the lock guarding changes to that username.
+	 */
+	private static int stripeIndexOf(String username) {
+		int hash = username.hashCode();
+		return (hash ^ hash >>> 16) & (STRIPES - 1);
+	}
+
+	/**
+	 * An immutable snapshot of a stored user. Changing the password hash replaces
+	 * the snapshot.
+	 */
+	private static final class User {
+		private final int id;
+		private final int accountId;
+		private final String firstName;
+		private final String username;
+		private final String hashedPassword;
+
+		private User(int id, int accountId, String firstName, String username, String hashedPassword) {
+			this.id = id;
+			this.accountId = accountId;
+			this.firstName = firstName;
+			this.username = username;
+			this.hashedPassword = hashedPassword;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package io.github.wangster6.validation;
+
+import java.util.Arrays;
+
+/**
+ * A set of rules a single input such as a name, username or password has to
+ * follow: length bounds, which kinds of characters are allowed, and which kinds
+ * must appear at least once. Every rule is checked in one pass over the
+ * characters without allocating, and the result lists every rule that failed
+ * as {@link Violation} bits rather than a single true or false.
+ * <p>
+ * Characters are grouped into classes that can be combined with '|'. Only
+ * ASCII letters and digits count as letters and digits; everything outside
+ * printable ASCII is {@link #OTHER}.
+ *
+ * @author wangster6
+ */
+public final class ValidationPolicy {
+	/** ASCII uppercase letters */
+	public static final int UPPERCASE = 1;
+	/** ASCII lowercase letters */
+	public static final int LOWERCASE = 1 << 1;
+	/** ASCII letters of either case */
+	public static final int LETTER = UPPERCASE | LOWERCASE;
+	/** ASCII digits */
+	public static final int DIGIT = 1 << 2;
+	/** Printable ASCII characters that are not letters, digits or spaces */
+	public static final int SYMBOL = 1 << 3;
+	/** The space character */
+	public static final int SPACE = 1 << 4;
+	/** Control characters and anything outside ASCII */
+	public static final int OTHER = 1 << 5;
+	/** Every character */
+	public static final int ANY = LETTER | DIGIT | SYMBOL | SPACE | OTHER;
+
+	/** First and last names: letters only */
+	public static final ValidationPolicy NAME = new ValidationPolicy(1, Integer.MAX_VALUE, LETTER);
+	/** Usernames: 3 to 15 characters of any kind */
+	public static final ValidationPolicy USERNAME = new ValidationPolicy(3, 15, ANY);
+	/** Passwords: 5 to 15 characters with at least one letter and one digit */
+	public static final ValidationPolicy PASSWORD = new ValidationPolicy(5, 15, ANY, LETTER, DIGIT);
+
+	/** The class of every ASCII character, indexed by the character */
+	private static final byte[] ASCII_CLASSES = new byte[128];
+
+	static {
+		for (int c = 0; c < ASCII_CLASSES.length; c++) {
+			int charClass;
+			if (c >= 'A' && c <= 'Z') {
+				charClass = UPPERCASE;
+			} else if (c >= 'a' && c <= 'z') {
+				charClass = LOWERCASE;
+			} else if (c >= '0' && c <= '9') {
+				charClass = DIGIT;
+			} else if (c == ' ') {
+				charClass = SPACE;
+			} else if (c > ' ' && c < 127) {
+				charClass = SYMBOL;
+			} else {
+				charClass = OTHER;
+			}
+			ASCII_CLASSES[c] = (byte) charClass;
+		}
+	}
+
+	private final int minLength;
+	private final int maxLength;
+	private final int allowedClasses;
+	private final int[] requiredClasses;
+	private final int[] missingViolations;
+
+	/**
+	 * Constructs a new ValidationPolicy.
+	 *
+	 * @param minLength       the minimum number of characters.
+	 * @param maxLength       the maximum number of characters.
+	 * @param allowedClasses  the character classes that may appear.
+	 * @param requiredClasses the character classes that must each appear at least
+	 *                        once: {@link #LETTER}, {@link #UPPERCASE},
+	 *                        {@link #LOWERCASE}, {@link #DIGIT} or
+	 *                        {@link #SYMBOL}.
+	 * @throws IllegalArgumentException If the bounds are invalid or a class cannot
+	 *                                  be required.
+	 */
+	public ValidationPolicy(int minLength, int maxLength, int allowedClasses, int... requiredClasses) {
+		if (minLength < 0 || maxLength < minLength) {
+			throw new IllegalArgumentException("Invalid length bounds " + minLength + " - " + maxLength);
+		}
+		this.minLength = minLength;
+		this.maxLength = maxLength;
+		this.allowedClasses = allowedClasses;
+		this.requiredClasses = Arrays.copyOf(requiredClasses, requiredClasses.length);
+		this.missingViolations = new int[requiredClasses.length];
+		for (int i = 0; i < requiredClasses.length; i++) {
+			missingViolations[i] = Violation.missing(requiredClasses[i]).mask();
+		}
+	}
+
+	/**
+	 * Checks a value against every rule of this policy.
+	 *
+	 * @param input the value to check, may be null.
+	 * @return the {@link Violation} bits of every failed rule, or 0 if the value is
+	 *         valid.
+	 */
+	public int validate(CharSequence input) {
+		if (input == null) {
+			return Violation.TOO_SHORT.mask();
+		}
+
+		int length = input.length();
+		int seen = 0;
+		for (int i = 0; i < length; i++) {
+			char c = input.charAt(i);
+			seen |= c < 128 ? ASCII_CLASSES[c] : OTHER;
+		}
+
+		int violations = 0;
+		if (length < minLength) {
+			violations |= Violation.TOO_SHORT.mask();
+		} else if (length > maxLength) {
+			violations |= Violation.TOO_LONG.mask();
+		}
+		if ((seen & ~allowedClasses) != 0) {
+			violations |= Violation.INVALID_CHARACTER.mask();
+		}
+		for (int i = 0; i < requiredClasses.length; i++) {
+			if ((seen & requiredClasses[i]) == 0) {
+				violations |= missingViolations[i];
+			}
+		}
+		return violations;
+	}
+
+	/**
+	 * Checks whether a value follows every rule of this policy.
+	 *
+	 * @param input the value to check, may be null.
+	 * @return true if the value is valid, false if not.
+	 */
+	public boolean isValid(CharSequence input) {
+		return validate(input) == 0;
+	}
+}
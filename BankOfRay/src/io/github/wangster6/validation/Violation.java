@@ -0,0 +1,87 @@
+package io.github.wangster6.validation;
+
+import java.util.EnumSet;
+
+/**
+ * The reasons a value can fail a {@link ValidationPolicy}. A validation result
+ * is an int with one bit set per violation, so checking a value never
+ * allocates; use {@link #isIn(int)} or {@link #decode(int)} to read it.
+ *
+ * @author wangster6
+ */
+public enum Violation {
+	/** The value is shorter than the minimum length, or missing */
+	TOO_SHORT,
+	/** The value is longer than the maximum length */
+	TOO_LONG,
+	/** The value contains a character the policy does not allow */
+	INVALID_CHARACTER,
+	/** The value does not contain a letter */
+	MISSING_LETTER,
+	/** The value does not contain an uppercase letter */
+	MISSING_UPPERCASE,
+	/** The value does not contain a lowercase letter */
+	MISSING_LOWERCASE,
+	/** The value does not contain a digit */
+	MISSING_DIGIT,
+	/** The value does not contain a symbol */
+	MISSING_SYMBOL;
+
+	/**
+	 * @return the bit of this violation in a validation result.
+	 */
+	public int mask() {
+		return 1 << ordinal();
+	}
+
+	/**
+	 * Checks whether a validation result contains this violation.
+	 *
+	 * @param violations the validation result.
+	 * @return true if this violation is set, false if not.
+	 */
+	public boolean isIn(int violations) {
+		return (violations & mask()) != 0;
+	}
+
+	/**
+	 * Converts a validation result to a set of violations.
+	 *
+	 * @param violations the validation result.
+	 * @return the violations that are set, empty if the value was valid.
+	 */
+	public static EnumSet<Violation> decode(int violations) {
+		EnumSet<Violation> set = EnumSet.noneOf(Violation.class);
+		for (Violation violation : values()) {
+			if (violation.isIn(violations)) {
+				set.add(violation);
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Returns the violation reported when a value contains no character of a
+	 * required class.
+	 *
+	 * @param charClasses the required character class.
+	 * @return the matching violation.
+	 * @throws IllegalArgumentException If the class cannot be required.
+	 */
+	static Violation missing(int charClasses) {
+		switch (charClasses) {
+		case ValidationPolicy.LETTER:
+			return MISSING_LETTER;
+		case ValidationPolicy.UPPERCASE:
+			return MISSING_UPPERCASE;
+		case ValidationPolicy.LOWERCASE:
+			return MISSING_LOWERCASE;
+		case ValidationPolicy.DIGIT:
+			return MISSING_DIGIT;
+		case ValidationPolicy.SYMBOL:
+			return MISSING_SYMBOL;
+		default:
+			throw new IllegalArgumentException("Character class " + charClasses + " cannot be required");
+		}
+	}
+}
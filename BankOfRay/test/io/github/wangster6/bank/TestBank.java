@@ -8,7 +8,13 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -28,7 +34,7 @@ class TestBank {
 	@BeforeEach
 	public void setUpStreams() {
 		System.setOut(new PrintStream(outContent));
-		bank = new Bank();
+		bank = new Bank(System.in, System.out, false); // Plain text, so the output compares the same under a terminal
 	}
 
 	@AfterEach
@@ -59,7 +65,7 @@ class TestBank {
      */
     @Test
     public void testLogIn() {
-    	String input = "2\nfirst\nlast\nusername\npassword123\npassword123\n1\nusername\npassword123\n1\n0\n1\ninvalid\n-321\n100\n3\n150\nA\n100\n4\n3\n";
+    	String input = "2\nfirst\nlast\nusername\npassword123\npassword123\n1\nusername\npassword123\n1\n0\n1\ninvalid\n-321\n100\n3\n150\nA\n100\n5\n6\n3\n";
 	    InputStream in = new ByteArrayInputStream(input.getBytes());
 	    System.setIn(in);
 	
@@ -93,7 +99,7 @@ class TestBank {
      */
     @Test
     public void testSimulateDeposit() {
-    	String input = "2\ntest\none\ntest1\ntest1\ntest1\n1\ntest1\ntest1\n2\ninvalid\n-100\n0\n100\n3\ninvalid\n-100\n0\n100\n4\n3\n";
+    	String input = "2\ntest\none\ntest1\ntest1\ntest1\n1\ntest1\ntest1\n2\ninvalid\n-100\n0\n100\n3\ninvalid\n-100\n0\n100\n6\n3\n";
 	    InputStream in = new ByteArrayInputStream(input.getBytes());
 	    System.setIn(in);
 	
@@ -110,7 +116,7 @@ class TestBank {
      */
     @Test
     public void testReturnToMenu() {
-    	String input = "2\ntest\ntwo\ntest2\ntest2\ntest2\n1\ntest2\ntest2\n2\nback\n2\n100\n3\n500\nback\n1\n4\n3\n";
+    	String input = "2\ntest\ntwo\ntest2\ntest2\ntest2\n1\ntest2\ntest2\n2\nback\n2\n100\n3\n500\nback\n1\n6\n3\n";
 	    InputStream in = new ByteArrayInputStream(input.getBytes());
 	    System.setIn(in);
 	
@@ -127,7 +133,7 @@ class TestBank {
      */
     @Test
     public void testWithdrawNoMoney() {
-    	String input = "2\ntest\nthree\ntest3\ntest3\ntest3\n1\n0\n1\nrandouser\ntest3\n0\n1\ntest3\ntest3\n3\n4\n3\n";
+    	String input = "2\ntest\nthree\ntest3\ntest3\ntest3\n1\n0\n1\nrandouser\ntest3\n0\n1\ntest3\ntest3\n3\n6\n3\n";
 	    InputStream in = new ByteArrayInputStream(input.getBytes());
 	    System.setIn(in);
 	
@@ -161,7 +167,7 @@ class TestBank {
     			+ "2\ntest\nfour\ntest4\n0\n"
     			+ "2\ntest\nfour\ntest4\ntest\ntest4\n0\n"
     			+ "2\ntest\nfour\ntest4\ntest4\ntest5\ntest4"
-    			+ "1\ntest4\ntest5\ntest4\n4\n3\n";
+    			+ "1\ntest4\ntest5\ntest4\n6\n3\n";
 	    InputStream in = new ByteArrayInputStream(input.getBytes());
 	    System.setIn(in);
 		
@@ -178,7 +184,7 @@ class TestBank {
      */
     @Test
     public void testSignUpUsernameAlreadyExists() {
-    	String input = "2\ntest\nfive\ntest5\ntest5\ntest5\n2\ntesting\nduplicate\ntest5\n0\n3\n";
+    	String input = "2\ntest\nfive\ntest5\ntest5\ntest5\n2\ntesting\nduplicate\ntest5\ntest5\ntest5\n0\n3\n";
 	    InputStream in = new ByteArrayInputStream(input.getBytes());
 	    System.setIn(in);
 		
@@ -189,6 +195,167 @@ class TestBank {
 	    bank.deleteUserByUsername("test5");
     }
 
+    /**
+     * Test transferring money to another user, including every way the transfer
+     * prompts can be answered wrongly.
+     * Verifies that the transfer is applied to both accounts and shows up in the history.
+     */
+    @Test
+    public void testTransfer() {
+    	String input = "2\ntest\nsix\ntest6\ntest6\ntest6\n2\ntest\nseven\ntest7\ntest7\ntest7\n"
+    			+ "1\ntest6\ntest6\n4\n2\n100\n4\nback\n4\ntest6\nnobody\ntest7\n-5\n500\n40\n5\n6\n"
+    			+ "1\ntest7\ntest7\n1\n5\n6\n3\n";
+	    InputStream in = new ByteArrayInputStream(input.getBytes());
+	    System.setIn(in);
+	    bank.run(0, in);
+	    System.setIn(System.in);
+
+	    String output = outContent.toString();
+	    assertTrue(output.contains("You cannot transfer anything!"));
+	    assertTrue(output.contains("You cannot transfer money to your own account!"));
+	    assertTrue(output.contains("You cannot transfer more money than you have in your balance!"));
+	    assertTrue(output.contains("You have successfully transferred: $40.00 to test7"));
+	    assertTrue(output.contains("Your new balance is: $60.00"));
+	    assertTrue(output.contains("+$40.00  Balance: $40.00  (transfer)"));
+
+	    bank.deleteUserByUsername("test6");
+	    bank.deleteUserByUsername("test7");
+    }
+
+    /**
+     * Test transferring money to a user who is logged in at the same time.
+     * Verifies that the recipient's session sees the incoming money and can withdraw it.
+     */
+    @Test
+    public void testTransferToLoggedInUser() throws Exception {
+    	String input = "2\ntest\nten\ntest10\ntest10\ntest10\n2\ntest\neleven\ntest11\ntest11\ntest11\n3\n";
+	    InputStream in = new ByteArrayInputStream(input.getBytes());
+	    bank.run(0, in);
+
+	    // The recipient logs in and checks their balance in a session of their own
+	    PipedOutputStream recipientInput = new PipedOutputStream();
+	    PipedInputStream recipientIn = new PipedInputStream(recipientInput);
+	    ByteArrayOutputStream recipientOut = new ByteArrayOutputStream();
+	    Bank recipientBank = new Bank(recipientIn, recipientOut, false);
+	    Thread recipient = new Thread(() -> recipientBank.run(0, recipientIn));
+	    recipient.start();
+	    recipientInput.write("1\ntest11\ntest11\n1\n".getBytes());
+	    recipientInput.flush();
+	    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+	    while (!recipientOut.toString().contains("$0.00")) {
+	    	assertTrue(System.nanoTime() < deadline);
+	    	Thread.sleep(10);
+	    }
+
+	    input = "1\ntest10\ntest10\n2\n100\n4\ntest11\n40\n6\n3\n";
+	    in = new ByteArrayInputStream(input.getBytes());
+	    bank.run(0, in);
+
+	    recipientInput.write("1\n3\n40\n6\n3\n".getBytes());
+	    recipientInput.close();
+	    recipient.join();
+
+	    String output = recipientOut.toString();
+	    assertTrue(output.contains("Your Current Balance Is:\n$40.00"));
+	    assertFalse(output.contains("You cannot withdraw more money than you have in your balance!"));
+	    assertTrue(output.contains("You have successfully withdrawn: $40.00"));
+
+	    bank.deleteUserByUsername("test10");
+	    bank.deleteUserByUsername("test11");
+    }
+
+    /**
+     * Test that a user guessing passwords is throttled.
+     * Verifies that once the failed attempts are used up, further passwords are turned away without being checked.
+     */
+    @Test
+    public void testLoginThrottled() {
+    	String input = "2\ntest\neight\ntest8\ntest8\ntest8\n"
+    			+ "1\ntest8\nguess1\nguess2\nguess3\nguess4\nguess5\ntest8\n0\n3\n";
+	    InputStream in = new ByteArrayInputStream(input.getBytes());
+	    System.setIn(in);
+	    bank.run(0, in);
+	    System.setIn(System.in);
+
+	    String output = outContent.toString();
+	    assertTrue(output.contains("Too many failed login attempts. Please try again in"));
+	    assertFalse(output.contains("Login successful!"));
+
+	    bank.deleteUserByUsername("test8");
+    }
+
+    /**
+     * Test logging in while the password hasher's queue is full.
+     * Verifies that each attempt is turned away as busy without using up the user's login attempts.
+     */
+    @Test
+    public void testLoginHasherBusy() throws Exception {
+    	String input = "2\ntest\nnine\ntest9\ntest9\ntest9\n3\n";
+	    InputStream in = new ByteArrayInputStream(input.getBytes());
+	    bank.run(0, in);
+
+	    // One hashing thread and one queue slot, both taken until the latch opens
+	    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+	    		new ArrayBlockingQueue<>(1));
+	    CountDownLatch latch = new CountDownLatch(1);
+	    for (int i = 0; i < 2; i++) {
+	    	executor.execute(() -> {
+	    		try {
+	    			latch.await();
+	    		} catch (InterruptedException e) {
+	    			Thread.currentThread().interrupt();
+	    		}
+	    	});
+	    }
+	    LoginThrottle throttle = new LoginThrottle(1, 1, 86400000, 0, 1000, 1000, 64);
+	    Bank busy = new Bank(System.in, System.out, false, null, throttle, new PasswordHasher(executor, 4));
+	    input = "1\ntest9\ntest9\ntest9\ntest9\n0\n3\n";
+	    in = new ByteArrayInputStream(input.getBytes());
+	    busy.run(0, in);
+	    latch.countDown();
+	    executor.shutdown();
+
+	    String output = outContent.toString();
+	    assertEquals(3, output.split("The system is busy right now", -1).length - 1);
+	    assertFalse(output.contains("Too many failed login attempts"));
+	    assertFalse(output.contains("Login successful!"));
+
+	    bank.deleteUserByUsername("test9");
+    }
+
+    /**
+     * Test logging in when checking the password fails with an unexpected error.
+     * Verifies that the session shows a system error and carries on without using up the user's login attempts.
+     */
+    @Test
+    public void testLoginHasherError() {
+    	String input = "2\ntest\nnine\ntest9\ntest9\ntest9\n3\n";
+	    InputStream in = new ByteArrayInputStream(input.getBytes());
+	    bank.run(0, in);
+
+	    // Fails every check the way BCrypt does for a malformed stored hash
+	    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+	    		new ArrayBlockingQueue<>(1)) {
+	    	@Override
+	    	public void execute(Runnable command) {
+	    		throw new IllegalArgumentException("Invalid salt version");
+	    	}
+	    };
+	    LoginThrottle throttle = new LoginThrottle(1, 1, 86400000, 0, 1000, 1000, 64);
+	    Bank failing = new Bank(System.in, System.out, false, null, throttle, new PasswordHasher(executor, 4));
+	    input = "1\ntest9\ntest9\ntest9\ntest9\n0\n3\n";
+	    in = new ByteArrayInputStream(input.getBytes());
+	    failing.run(0, in);
+	    executor.shutdown();
+
+	    String output = outContent.toString();
+	    assertEquals(3, output.split("Something went wrong on our side", -1).length - 1);
+	    assertFalse(output.contains("Too many failed login attempts"));
+	    assertFalse(output.contains("Login successful!"));
+
+	    bank.deleteUserByUsername("test9");
+    }
+
     /**
      * Test the creation of the Messages class.
      * Verifies that the Messages class can be instantiated without exceptions.
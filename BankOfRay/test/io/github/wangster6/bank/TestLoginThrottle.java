@@ -0,0 +1,119 @@
+/**
+ *
+ */
+package io.github.wangster6.bank;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases to test the functionality of the LoginThrottle Class and its
+ * methods.
+ *
+ * @author wangster6
+ */
+class TestLoginThrottle {
+	/** System.nanoTime() may be negative, so the clock of these tests starts there */
+	private static final long START = -TimeUnit.SECONDS.toNanos(5);
+
+	private static long at(long millis) {
+		return START + TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/**
+	 * Test that failed attempts use up the tokens of a username, which refill
+	 * over time, while successful attempts give theirs back.
+	 */
+	@Test
+	void testBurstAndRefill() {
+		LoginThrottle throttle = new LoginThrottle(3, 0, 1000, 0, 1000, 60000, 1000);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(0, throttle.acquire("ray", "10.0.0.1", at(0)));
+			throttle.succeeded("ray", "10.0.0.1", at(0));
+		}
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, throttle.acquire("ray", null, at(0)));
+			throttle.failed("ray", null, at(0));
+		}
+		assertEquals(1000, throttle.acquire("ray", null, at(0)));
+		assertEquals(400, throttle.acquire("ray", null, at(600)));
+		assertEquals(0, throttle.acquire("jay", null, at(600))); // Other usernames are not affected
+		assertEquals(0, throttle.acquire("ray", null, at(1000)));
+		assertEquals(1000, throttle.acquire("ray", null, at(1000)));
+	}
+
+	/**
+	 * Test that consecutive failures lock a username out for twice as long every
+	 * time, up to the maximum, and that a successful login ends it.
+	 */
+	@Test
+	void testExponentialLockout() {
+		LoginThrottle throttle = new LoginThrottle(100, 0, 1000, 3, 1000, 4000, 1000);
+		assertEquals(0, throttle.lockoutNanos(2));
+		assertEquals(TimeUnit.SECONDS.toNanos(1), throttle.lockoutNanos(3));
+		assertEquals(TimeUnit.SECONDS.toNanos(2), throttle.lockoutNanos(4));
+		assertEquals(TimeUnit.SECONDS.toNanos(4), throttle.lockoutNanos(5));
+		assertEquals(TimeUnit.SECONDS.toNanos(4), throttle.lockoutNanos(50));
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, throttle.acquire("ray", null, at(0)));
+			throttle.failed("ray", null, at(0));
+		}
+		assertEquals(1000, throttle.acquire("ray", null, at(0)));
+		assertEquals(0, throttle.acquire("ray", null, at(1000)));
+		throttle.failed("ray", null, at(1000));
+		assertEquals(2000, throttle.acquire("ray", null, at(1000)));
+		assertEquals(0, throttle.acquire("ray", null, at(3000)));
+		throttle.succeeded("ray", null, at(3000));
+		assertEquals(0, throttle.acquire("ray", null, at(3000)));
+		throttle.failed("ray", null, at(3000));
+		assertEquals(0, throttle.acquire("ray", null, at(3000))); // The failures start over
+	}
+
+	/**
+	 * Test that a source is throttled across usernames, that a username's token
+	 * is given back when its source is throttled, and that releasing a token does
+	 * not clear the failures of the source.
+	 */
+	@Test
+	void testSource() {
+		LoginThrottle throttle = new LoginThrottle(1, 2, 1000, 3, 5000, 60000, 1000);
+		assertEquals(0, throttle.acquire("a", "10.0.0.1", at(0)));
+		throttle.failed("a", "10.0.0.1", at(0));
+		assertEquals(0, throttle.acquire("b", "10.0.0.1", at(0)));
+		throttle.failed("b", "10.0.0.1", at(0));
+		assertEquals(1000, throttle.acquire("c", "10.0.0.1", at(0)));
+		assertEquals(0, throttle.acquire("c", "10.0.0.2", at(0)));
+
+		assertEquals(0, throttle.acquire(null, "10.0.0.1", at(1000)));
+		throttle.release(null, "10.0.0.1", at(1000));
+		assertEquals(0, throttle.acquire(null, "10.0.0.1", at(1000)));
+		throttle.failed(null, "10.0.0.1", at(1000));
+		assertEquals(5000, throttle.acquire(null, "10.0.0.1", at(1000))); // Third failure in a row
+	}
+
+	/**
+	 * Test that the number of tracked usernames stays within its bound, and that
+	 * idle usernames are dropped.
+	 */
+	@Test
+	void testBounded() {
+		LoginThrottle throttle = new LoginThrottle(5, 0, 1000, 5, 1000, 2000, 640);
+		for (int i = 0; i < 10000; i++) {
+			throttle.acquire("user" + i, null, at(0));
+		}
+		assertTrue(throttle.getTrackedUsers() <= 640);
+
+		throttle = new LoginThrottle(5, 0, 1000, 5, 1000, 2000, 100000);
+		for (int i = 0; i < 2000; i++) {
+			throttle.acquire("old" + i, null, at(0));
+		}
+		for (int i = 0; i < 2000; i++) {
+			throttle.acquire("new" + i, null, at(6000));
+		}
+		assertEquals(2000, throttle.getTrackedUsers());
+	}
+}
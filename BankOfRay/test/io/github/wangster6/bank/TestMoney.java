@@ -0,0 +1,77 @@
+/**
+ *
+ */
+package io.github.wangster6.bank;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases to test the functionality of the Money Class and its methods.
+ *
+ * @author wangster6
+ */
+class TestMoney {
+
+	/**
+	 * Test method for {@link io.github.wangster6.bank.Money#parse(java.lang.String)}.
+	 */
+	@Test
+	void testParse() {
+		assertEquals(10000, Money.parse("100").toCents());
+		assertEquals(10050, Money.parse("100.5").toCents());
+		assertEquals(10055, Money.parse("100.55").toCents());
+		assertEquals(50, Money.parse(".5").toCents());
+		assertEquals(-32100, Money.parse("-321").toCents());
+		assertEquals(0, Money.parse("0").toCents());
+		assertThrows(NumberFormatException.class, () -> Money.parse("invalid"));
+		assertThrows(NumberFormatException.class, () -> Money.parse(""));
+		assertThrows(NumberFormatException.class, () -> Money.parse("-"));
+		assertThrows(NumberFormatException.class, () -> Money.parse("."));
+		assertThrows(NumberFormatException.class, () -> Money.parse("1.234"));
+		assertThrows(NumberFormatException.class, () -> Money.parse("1e3"));
+		assertThrows(NumberFormatException.class, () -> Money.parse("12345678901234567"));
+	}
+
+	/**
+	 * Test that repeated arithmetic stays exact where doubles would drift.
+	 */
+	@Test
+	void testArithmetic() {
+		Money balance = Money.ZERO;
+		for (int i = 0; i < 10; i++) {
+			balance = balance.plus(Money.parse("0.10"));
+		}
+		assertEquals(Money.parse("1.00"), balance);
+		assertEquals(Money.parse("0.75"), balance.minus(Money.parse(".25")));
+		assertThrows(ArithmeticException.class, () -> Money.ofCents(Long.MAX_VALUE).plus(Money.ofCents(1)));
+		assertThrows(ArithmeticException.class, () -> Money.ofCents(Long.MIN_VALUE).minus(Money.ofCents(1)));
+	}
+
+	/**
+	 * Test method for {@link io.github.wangster6.bank.Money#toString()}.
+	 */
+	@Test
+	void testFormat() {
+		assertEquals("0.00", Money.ZERO.toString());
+		assertEquals("0.05", Money.ofCents(5).toString());
+		assertEquals("-0.05", Money.ofCents(-5).toString());
+		assertEquals("1234.50", Money.ofCents(123450).toString());
+		assertEquals("-1.05", Money.ofCents(-105).toString());
+		assertEquals("$7.00!", Money.ofCents(700).appendTo(new StringBuilder("$")).append('!').toString());
+	}
+
+	/**
+	 * Test conversion to and from the database's DECIMAL representation.
+	 */
+	@Test
+	void testBigDecimal() {
+		assertEquals(new BigDecimal("12.34"), Money.ofCents(1234).toBigDecimal());
+		assertEquals(Money.ofCents(1230), Money.of(new BigDecimal("12.3")));
+		assertEquals(Money.ofCents(1200), Money.of(new BigDecimal("12.0000")));
+		assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("12.345")));
+	}
+}
@@ -0,0 +1,55 @@
+/**
+ *
+ */
+package io.github.wangster6.bank;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases to test the functionality of the PasswordHasher Class and its
+ * methods.
+ *
+ * @author wangster6
+ */
+class TestPasswordHasher {
+	private PasswordHasher hasher;
+
+	@BeforeEach
+	void setUp() {
+		hasher = new PasswordHasher(2, 8, 5);
+	}
+
+	/**
+	 * Test that a hashed password verifies and a wrong one does not.
+	 */
+	@Test
+	void testHashAndVerify() {
+		String hashed = hasher.hash("password123").join();
+		assertTrue(hasher.verify("password123", hashed).join());
+		assertFalse(hasher.verify("password124", hashed).join());
+		assertEquals(5, PasswordHasher.costOf(hashed));
+	}
+
+	/**
+	 * Test method for {@link io.github.wangster6.bank.PasswordHasher#needsRehash(java.lang.String)}.
+	 */
+	@Test
+	void testNeedsRehash() {
+		assertTrue(hasher.needsRehash("$2a$04$abcdefghijklmnopqrstuu"));
+		assertFalse(hasher.needsRehash("$2a$05$abcdefghijklmnopqrstuu"));
+		assertFalse(hasher.needsRehash("$2a$12$abcdefghijklmnopqrstuu"));
+		assertFalse(hasher.needsRehash("not a hash"));
+	}
+
+	/**
+	 * Test that calibration never goes below the minimum cost.
+	 */
+	@Test
+	void testCalibrate() {
+		assertEquals(4, PasswordHasher.calibrate(4, 0));
+		assertTrue(PasswordHasher.calibrate(6, 1) >= 6);
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package io.github.wangster6.bank;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases to test the functionality of the Renderer Class and its methods.
+ *
+ * @author wangster6
+ */
+class TestRenderer {
+	private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+	/**
+	 * Test that Messages constants and other text are printed unchanged with ANSI
+	 * enabled.
+	 */
+	@Test
+	void testPrintWithAnsi() {
+		Renderer renderer = new Renderer(output, true);
+		renderer.println(Messages.LOGIN_SUCCESS).print(new StringBuilder("Ren\u00e9 \u20ac\ud83d\ude00"));
+		renderer.flush();
+		assertEquals(Messages.LOGIN_SUCCESS + System.lineSeparator() + "Ren\u00e9 \u20ac\ud83d\ude00",
+				output.toString(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Test that ANSI codes are left out of both Messages constants and other text
+	 * with ANSI disabled.
+	 */
+	@Test
+	void testPrintWithoutAnsi() {
+		Renderer renderer = new Renderer(output, false);
+		renderer.println(Messages.LOGIN_SUCCESS);
+		renderer.print("\u001B[1;4mBold\u001B[0m plain \u001B[31");
+		renderer.flush();
+		assertEquals("\nLogin successful!" + System.lineSeparator() + "Bold plain ",
+				output.toString(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Test method for
+	 * {@link io.github.wangster6.bank.Renderer#print(io.github.wangster6.bank.Money)}.
+	 */
+	@Test
+	void testPrintMoney() {
+		Renderer renderer = new Renderer(output, true);
+		long[] amounts = { 0, 5, -5, 100, 123450, -123405, Long.MAX_VALUE, Long.MIN_VALUE };
+		StringBuilder expected = new StringBuilder();
+		for (long cents : amounts) {
+			renderer.print(Money.ofCents(cents)).println();
+			Money.ofCents(cents).appendTo(expected).append(System.lineSeparator());
+		}
+		renderer.flush();
+		assertEquals(expected.toString(), output.toString(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Test that nothing is written until the renderer is flushed, and that a whole
+	 * prompt is then written in one call.
+	 */
+	@Test
+	void testFlush() {
+		int[] writes = new int[1];
+		OutputStream counting = new OutputStream() {
+			@Override
+			public void write(int b) {
+				writes[0]++;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				writes[0]++;
+				output.write(b, off, len);
+			}
+		};
+		Renderer renderer = new Renderer(counting, true);
+		Messages.actionPrompt(renderer, "Ray");
+		for (int i = 0; i < 100; i++) {
+			Messages.currentBalance(renderer, Money.ofCents(i));
+		}
+		assertEquals(0, writes[0]);
+		renderer.flush();
+		assertEquals(1, writes[0]);
+		assertTrue(output.toString(StandardCharsets.UTF_8).startsWith("\n\u001B[1;4mWelcome Ray!\u001B[0m"));
+	}
+
+	/**
+	 * Test that a failed write is reported as an UncheckedIOException.
+	 */
+	@Test
+	void testFlushFailure() {
+		Renderer renderer = new Renderer(new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("Connection reset");
+			}
+		}, true);
+		renderer.print("text");
+		assertThrows(UncheckedIOException.class, renderer::flush);
+	}
+}
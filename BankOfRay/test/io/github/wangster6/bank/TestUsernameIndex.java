@@ -0,0 +1,131 @@
+/**
+ *
+ */
+package io.github.wangster6.bank;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.github.wangster6.database.repo.UserRepository;
+
+/**
+ * Test cases to test the functionality of the UsernameIndex and BloomFilter
+ * Classes and their methods.
+ *
+ * @author wangster6
+ */
+class TestUsernameIndex {
+	private CountingUserRepository users;
+	private UsernameIndex index;
+
+	/**
+	 * A repository with a fixed list of usernames that counts lookups.
+	 */
+	private static class CountingUserRepository extends UserRepository {
+		private final List<String> usernames = Arrays.asList("alice", "bob", "carol");
+		private int lookups;
+
+		@Override
+		public long count() {
+			return usernames.size();
+		}
+
+		@Override
+		public void forEachUsername(Consumer<String> action) {
+			usernames.forEach(action);
+		}
+
+		@Override
+		public boolean exists(String username) {
+			lookups++;
+			return usernames.contains(username);
+		}
+	}
+
+	@BeforeEach
+	void setUp() {
+		users = new CountingUserRepository();
+		index = new UsernameIndex(users, 10);
+	}
+
+	/**
+	 * Test that lookups go to the database until the index is built, and that
+	 * afterwards most of them do not.
+	 */
+	@Test
+	void testExists() throws Exception {
+		assertFalse(index.exists("dave"));
+		assertEquals(1, users.lookups);
+
+		index.rebuild();
+		assertTrue(index.exists("alice"));
+		assertTrue(index.exists("alice"));
+		assertEquals(2, users.lookups); // Second check was answered from the cache
+
+		int before = users.lookups;
+		for (int i = 0; i < 100; i++) {
+			assertFalse(index.exists("missing" + i));
+		}
+		assertTrue(users.lookups - before < 10); // Almost all ruled out by the filter
+	}
+
+	/**
+	 * Test that the filter ignores case, like the collation of the username
+	 * column, so a username is never ruled out because of its case.
+	 */
+	@Test
+	void testIgnoresCase() throws Exception {
+		index.rebuild();
+		assertTrue(index.mightExist("Alice"));
+		assertTrue(index.mightExist("BOB"));
+
+		index.added("Erin");
+		assertTrue(index.mightExist("erin"));
+		assertTrue(index.exists("Erin"));
+		index.removed("ERIN");
+		assertFalse(index.exists("Erin")); // Forgotten from the cache and not in the repository
+	}
+
+	/**
+	 * Test that added usernames are found without a lookup and removed ones are
+	 * looked up again.
+	 */
+	@Test
+	void testAddedAndRemoved() throws Exception {
+		index.rebuild();
+		assertFalse(index.exists("erin"));
+
+		index.added("erin");
+		int before = users.lookups;
+		assertTrue(index.mightExist("erin"));
+		assertTrue(index.exists("erin"));
+		assertEquals(before, users.lookups);
+
+		index.removed("erin");
+		assertFalse(index.exists("erin")); // Not in the repository, so it is gone
+	}
+
+	/**
+	 * Test that the Bloom filter never forgets an added value and reports when it
+	 * is over capacity.
+	 */
+	@Test
+	void testBloomFilter() {
+		BloomFilter filter = new BloomFilter(100, 0.01);
+		for (int i = 0; i < 100; i++) {
+			filter.put("user" + i);
+		}
+		for (int i = 0; i < 100; i++) {
+			assertTrue(filter.mightContain("user" + i));
+		}
+		assertFalse(filter.isSaturated());
+		filter.put("one more");
+		assertTrue(filter.isSaturated());
+	}
+}
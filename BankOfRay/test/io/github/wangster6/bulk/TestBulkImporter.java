@@ -0,0 +1,133 @@
+/**
+ *
+ */
+package io.github.wangster6.bulk;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.wangster6.bank.NewUser;
+import io.github.wangster6.bank.PasswordHasher;
+import io.github.wangster6.database.repo.UserRepository;
+
+/**
+ * Test cases to test the functionality of the BulkImporter Class and its
+ * methods.
+ *
+ * @author wangster6
+ */
+class TestBulkImporter {
+
+	/**
+	 * A repository that keeps created users in memory, rejects any batch
+	 * containing the username "clash" as a duplicate and fails any batch
+	 * containing the username "broken".
+	 */
+	private static class MemoryUserRepository extends UserRepository {
+		private final List<NewUser> created = new ArrayList<>();
+		private int batches;
+
+		@Override
+		public void createAll(List<NewUser> newUsers) throws SQLException {
+			batches++;
+			for (NewUser newUser : newUsers) {
+				if ("clash".equals(newUser.getUsername())) {
+					throw new SQLIntegrityConstraintViolationException("Duplicate entry 'clash'", "23000", 1062);
+				} else if ("broken".equals(newUser.getUsername())) {
+					throw new SQLException("Communications link failure", "08S01");
+				}
+			}
+			created.addAll(newUsers);
+		}
+
+		@Override
+		public Set<String> findExisting(Collection<String> usernames) {
+			Set<String> existing = new HashSet<>();
+			if (usernames.contains("taken")) {
+				existing.add("taken");
+			}
+			return existing;
+		}
+	}
+
+	/**
+	 * Test method for {@link io.github.wangster6.bulk.BulkImporter#parseLine(java.lang.String)}.
+	 */
+	@Test
+	void testParseLine() {
+		assertEquals(Arrays.asList("a", "b", "", "d"), BulkImporter.parseLine("a,b,,d"));
+		assertEquals(Arrays.asList("a,b", "say \"hi\""), BulkImporter.parseLine("\"a,b\",\"say \"\"hi\"\"\""));
+		assertNull(BulkImporter.parseLine("\"unterminated,b"));
+	}
+
+	/**
+	 * Test that valid rows are imported in chunks and every other row is written
+	 * to the rejects with its reasons.
+	 */
+	@Test
+	void testImport() throws Exception {
+		String csv = "first_name,last_name,username,password\n"
+				+ "ray,wang,raywang,password1\n"
+				+ "amy,lee,amylee,password2\n"
+				+ "bad1,lee,badname,password3\n"
+				+ "tom,ford,taken,password4\n"
+				+ "tim,ford,raywang,password5\n"
+				+ "too,few,fields\n"
+				+ "sam,kim,clash,password6\n"
+				+ "joe,kim,joekim,nodigits\n";
+		MemoryUserRepository users = new MemoryUserRepository();
+		BulkImporter importer = new BulkImporter(users, new PasswordHasher(2, 4, 4), 2);
+		StringWriter rejects = new StringWriter();
+
+		BulkImporter.Result result = importer.importCsv(new BufferedReader(new StringReader(csv)), rejects);
+
+		assertEquals(2, result.getImported());
+		assertEquals(6, result.getRejected());
+		assertEquals("RAY", users.created.get(0).getFirstName());
+		assertTrue(users.created.get(0).getHashedPassword().startsWith("$2a$04$"));
+
+		String report = rejects.toString();
+		assertTrue(report.contains("4,badname,first_name:INVALID_CHARACTER"));
+		assertTrue(report.contains("5,taken,USERNAME_TAKEN"));
+		assertTrue(report.contains("6,raywang,DUPLICATE_IN_FILE"));
+		assertTrue(report.contains("7,,MALFORMED_ROW"));
+		assertTrue(report.contains("8,clash,USERNAME_TAKEN"));
+		assertTrue(report.contains("9,joekim,password:MISSING_DIGIT"));
+	}
+
+	/**
+	 * Test that an error other than a taken username stops the import instead of
+	 * rejecting every row, and that the chunks committed before it stay imported.
+	 */
+	@Test
+	void testImportStopsOnError() throws Exception {
+		String csv = "ray,wang,raywang,password1\n"
+				+ "amy,lee,amylee,password2\n"
+				+ "bob,lee,broken,password3\n"
+				+ "tom,ford,tomford,password4\n"
+				+ "tim,ford,timford,password5\n";
+		MemoryUserRepository users = new MemoryUserRepository();
+		BulkImporter importer = new BulkImporter(users, new PasswordHasher(2, 4, 4), 2);
+		StringWriter rejects = new StringWriter();
+
+		SQLException e = assertThrows(SQLException.class,
+				() -> importer.importCsv(new BufferedReader(new StringReader(csv)), rejects));
+		assertEquals("08S01", e.getSQLState());
+		assertEquals(2, users.created.size());
+		assertEquals(2, users.batches); // The failed chunk was not retried row by row
+		assertFalse(rejects.toString().contains("broken"));
+	}
+}
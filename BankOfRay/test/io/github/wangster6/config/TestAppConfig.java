@@ -0,0 +1,243 @@
+/**
+ *
+ */
+package io.github.wangster6.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases to test the functionality of the AppConfig Class and its methods.
+ *
+ * @author wangster6
+ */
+class TestAppConfig {
+	private Properties properties;
+
+	@BeforeEach
+	void setUp() {
+		properties = new Properties();
+		properties.setProperty("db.url", "jdbc:mysql://localhost:3306/bank");
+		properties.setProperty("db.user", "root");
+		properties.setProperty("db.password", "secret");
+	}
+
+	/**
+	 * Test that optional settings fall back to their defaults.
+	 */
+	@Test
+	void testDefaults() {
+		AppConfig config = AppConfig.fromProperties(properties);
+		assertEquals("jdbc:mysql://localhost:3306/bank", config.getDbUrl());
+		assertEquals("root", config.getDbUser());
+		assertEquals("secret", config.getDbPassword());
+		assertEquals(10, config.getPoolMaxSize());
+		assertEquals(5000, config.getPoolAcquireTimeoutMillis());
+		assertEquals(10, config.getBcryptCost());
+	}
+
+	/**
+	 * Test that optional settings are read when present.
+	 */
+	@Test
+	void testOverrides() {
+		properties.setProperty("db.pool.maxSize", "25");
+		properties.setProperty("bcrypt.cost", " 12 ");
+		AppConfig config = AppConfig.fromProperties(properties);
+		assertEquals(25, config.getPoolMaxSize());
+		assertEquals(12, config.getBcryptCost());
+	}
+
+	/**
+	 * Test that every invalid setting is reported at once.
+	 */
+	@Test
+	void testInvalid() {
+		properties.setProperty("db.url", "mysql://localhost");
+		properties.remove("db.user");
+		properties.setProperty("db.pool.maxSize", "lots");
+		properties.setProperty("bcrypt.cost", "40");
+		properties.setProperty("usernameIndex.enabled", "yes");
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> AppConfig.fromProperties(properties));
+		assertTrue(e.getMessage().contains("db.url"));
+		assertTrue(e.getMessage().contains("db.user"));
+		assertTrue(e.getMessage().contains("db.pool.maxSize"));
+		assertTrue(e.getMessage().contains("bcrypt.cost"));
+		assertTrue(e.getMessage().contains("usernameIndex.enabled"));
+	}
+
+	/**
+	 * Test that the database settings are only required by the JDBC storage
+	 * engine.
+	 */
+	@Test
+	void testStorageEngine() {
+		assertEquals("jdbc", AppConfig.fromProperties(properties).getStorageEngine());
+
+		Properties memory = new Properties();
+		memory.setProperty("storage.engine", "memory");
+		AppConfig config = AppConfig.fromProperties(memory);
+		assertEquals("memory", config.getStorageEngine());
+		assertEquals("", config.getDbUrl());
+
+		memory.setProperty("storage.engine", "oracle");
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> AppConfig.fromProperties(memory));
+		assertTrue(e.getMessage().contains("storage.engine"));
+		assertTrue(e.getMessage().contains("db.url"));
+	}
+
+	/**
+	 * Test the defaults and validation of the journal storage engine settings.
+	 */
+	@Test
+	void testJournalSettings() {
+		Properties journal = new Properties();
+		journal.setProperty("storage.engine", "journal");
+		AppConfig config = AppConfig.fromProperties(journal);
+		assertEquals("journal", config.getStorageEngine());
+		assertEquals("journal", config.getJournalDir());
+		assertEquals("batched", config.getJournalFsync());
+		assertEquals(100, config.getJournalFsyncIntervalMillis());
+		assertEquals(64 * 1024 * 1024, config.getJournalMaxBytes());
+		assertEquals(100, config.getStorageHistoryLimit());
+
+		journal.setProperty("journal.dir", "/var/lib/bankofray");
+		journal.setProperty("journal.fsync", "interval");
+		journal.setProperty("journal.fsyncIntervalMs", "1000");
+		journal.setProperty("storage.historyLimit", "0");
+		config = AppConfig.fromProperties(journal);
+		assertEquals(0, config.getStorageHistoryLimit());
+		assertEquals("/var/lib/bankofray", config.getJournalDir());
+		assertEquals("interval", config.getJournalFsync());
+		assertEquals(1000, config.getJournalFsyncIntervalMillis());
+
+		journal.setProperty("journal.fsync", "never");
+		journal.setProperty("journal.maxBytes", "1024");
+		journal.setProperty("storage.historyLimit", "-1");
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> AppConfig.fromProperties(journal));
+		assertTrue(e.getMessage().contains("journal.fsync"));
+		assertTrue(e.getMessage().contains("journal.maxBytes"));
+		assertTrue(e.getMessage().contains("storage.historyLimit"));
+	}
+
+	/**
+	 * Test the defaults and validation of the group commit settings.
+	 */
+	@Test
+	void testLedgerSettings() {
+		AppConfig config = AppConfig.fromProperties(properties);
+		assertEquals(5, config.getLedgerBatchWindowMillis());
+		assertEquals(256, config.getLedgerMaxBatchSize());
+
+		properties.setProperty("ledger.batchWindowMs", "0");
+		properties.setProperty("ledger.maxBatchSize", "0");
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> AppConfig.fromProperties(properties));
+		assertFalse(e.getMessage().contains("ledger.batchWindowMs"));
+		assertTrue(e.getMessage().contains("ledger.maxBatchSize"));
+	}
+
+	/**
+	 * Test the defaults and validation of the interest run settings.
+	 */
+	@Test
+	void testInterestSettings() {
+		Properties interest = new Properties();
+		interest.setProperty("storage.engine", "memory");
+		AppConfig config = AppConfig.fromProperties(interest);
+		assertEquals(0, config.getInterestAnnualRateBps());
+		assertEquals(1000, config.getInterestChunkSize());
+		assertEquals(0, config.getInterestParallelism());
+
+		interest.setProperty("interest.annualRateBps", "250");
+		interest.setProperty("interest.chunkSize", "500");
+		interest.setProperty("interest.parallelism", "4");
+		config = AppConfig.fromProperties(interest);
+		assertEquals(250, config.getInterestAnnualRateBps());
+		assertEquals(500, config.getInterestChunkSize());
+		assertEquals(4, config.getInterestParallelism());
+
+		interest.setProperty("interest.annualRateBps", "-1");
+		interest.setProperty("interest.chunkSize", "0");
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> AppConfig.fromProperties(interest));
+		assertTrue(e.getMessage().contains("interest.annualRateBps"));
+		assertTrue(e.getMessage().contains("interest.chunkSize"));
+	}
+
+	/**
+	 * Test the defaults and validation of the login throttling settings.
+	 */
+	@Test
+	void testLoginSettings() {
+		Properties login = new Properties();
+		login.setProperty("storage.engine", "memory");
+		AppConfig config = AppConfig.fromProperties(login);
+		assertEquals(5, config.getLoginUserBurst());
+		assertEquals(20, config.getLoginSourceBurst());
+		assertEquals(10000, config.getLoginRefillMillis());
+		assertEquals(5, config.getLoginLockoutAfter());
+		assertEquals(1000, config.getLoginLockoutBaseMillis());
+		assertEquals(300000, config.getLoginLockoutMaxMillis());
+		assertEquals(100000, config.getLoginMaxTracked());
+
+		login.setProperty("login.userBurst", "0");
+		login.setProperty("login.lockoutAfter", "0");
+		config = AppConfig.fromProperties(login);
+		assertEquals(0, config.getLoginUserBurst());
+		assertEquals(0, config.getLoginLockoutAfter());
+
+		login.setProperty("login.refillMs", "0");
+		login.setProperty("login.maxTracked", "10");
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> AppConfig.fromProperties(login));
+		assertTrue(e.getMessage().contains("login.refillMs"));
+		assertTrue(e.getMessage().contains("login.maxTracked"));
+	}
+
+	/**
+	 * Test that only database and pool settings decide whether the pool has to be
+	 * rebuilt.
+	 */
+	@Test
+	void testHasSamePoolSettings() {
+		AppConfig config = AppConfig.fromProperties(properties);
+		properties.setProperty("bcrypt.cost", "12");
+		assertTrue(config.hasSamePoolSettings(AppConfig.fromProperties(properties)));
+		properties.setProperty("db.pool.maxSize", "20");
+		assertFalse(config.hasSamePoolSettings(AppConfig.fromProperties(properties)));
+		config = AppConfig.fromProperties(properties);
+		properties.setProperty("db.replica.urls", "jdbc:mysql://replica/bank");
+		assertFalse(config.hasSamePoolSettings(AppConfig.fromProperties(properties)));
+	}
+
+	/**
+	 * Test that replica urls are read as a comma separated list of JDBC urls.
+	 */
+	@Test
+	void testReplicaSettings() {
+		AppConfig config = AppConfig.fromProperties(properties);
+		assertTrue(config.getDbReplicaUrls().isEmpty());
+		assertEquals(30000, config.getDbReplicaRetryMillis());
+
+		properties.setProperty("db.replica.urls", " jdbc:mysql://replica1/bank, ,jdbc:mysql://replica2/bank ");
+		properties.setProperty("db.replica.retryMs", "5000");
+		config = AppConfig.fromProperties(properties);
+		assertEquals(Arrays.asList("jdbc:mysql://replica1/bank", "jdbc:mysql://replica2/bank"),
+				config.getDbReplicaUrls());
+		assertEquals(5000, config.getDbReplicaRetryMillis());
+
+		properties.setProperty("db.replica.urls", "jdbc:mysql://replica1/bank,replica2");
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> AppConfig.fromProperties(properties));
+		assertTrue(e.getMessage().contains("db.replica.urls"));
+	}
+}
@@ -0,0 +1,269 @@
+/**
+ *
+ */
+package io.github.wangster6.database;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases to test the functionality of the ConnectionPool Class and its
+ * methods. Uses an in-process fake driver so no database server is needed.
+ *
+ * @author wangster6
+ */
+class TestConnectionPool {
+	private static final String URL = "jdbc:fakepool:test";
+
+	private FakeDriver driver;
+	private ConnectionPool pool;
+
+	@BeforeEach
+	public void setUp() throws SQLException {
+		driver = new FakeDriver();
+		DriverManager.registerDriver(driver);
+		pool = new ConnectionPool(URL, "user", "password", 2, 60000, 100, 0);
+	}
+
+	@AfterEach
+	public void tearDown() throws SQLException {
+		pool.close();
+		DriverManager.deregisterDriver(driver);
+	}
+
+	/**
+	 * Test that a released connection is handed out again instead of opening a new
+	 * one, wrapped anew for the next borrower.
+	 */
+	@Test
+	public void testReusesReleasedConnection() throws SQLException {
+		Connection first = pool.borrow();
+		pool.release(first);
+		Connection second = pool.borrow();
+
+		assertNotSame(first, second);
+		assertEquals(1, driver.opened.get());
+		assertEquals(1, pool.getActiveCount());
+		assertEquals(0, pool.getIdleCount());
+	}
+
+	/**
+	 * Test that borrowing beyond the maximum size times out instead of opening more
+	 * connections.
+	 */
+	@Test
+	public void testAcquireTimeout() throws SQLException {
+		pool.borrow();
+		pool.borrow();
+
+		assertThrows(SQLTimeoutException.class, () -> pool.borrow());
+		assertEquals(2, driver.opened.get());
+	}
+
+	/**
+	 * Test that releasing a connection with an open transaction rolls it back and
+	 * restores auto-commit.
+	 */
+	@Test
+	public void testReleaseResetsAutoCommit() throws SQLException {
+		Connection connection = pool.borrow();
+		connection.setAutoCommit(false);
+		pool.release(connection);
+
+		assertTrue(pool.borrow().getAutoCommit());
+	}
+
+	/**
+	 * Test that closing a borrowed connection returns it to the pool, and that its
+	 * prepared statements are reused by the next borrower.
+	 */
+	@Test
+	public void testCachesPreparedStatements() throws SQLException {
+		PreparedStatement first;
+		try (Connection connection = pool.borrow();
+				PreparedStatement statement = connection.prepareStatement("SELECT 1")) {
+			first = statement;
+		}
+		assertEquals(0, pool.getActiveCount());
+		try (Connection connection = pool.borrow();
+				PreparedStatement statement = connection.prepareStatement("SELECT 1")) {
+			assertSame(first, statement);
+			assertFalse(statement.isClosed());
+		}
+		assertEquals(1, driver.prepared.get());
+	}
+
+	/**
+	 * Test that a connection cannot be used after it has been returned.
+	 */
+	@Test
+	public void testUseAfterRelease() throws SQLException {
+		Connection connection = pool.borrow();
+		connection.close();
+
+		assertTrue(connection.isClosed());
+		assertThrows(SQLException.class, () -> connection.prepareStatement("SELECT 1"));
+	}
+
+	/**
+	 * Test that a stale reference from an earlier borrower can neither use nor
+	 * return the connection while someone else holds it.
+	 */
+	@Test
+	public void testStaleReference() throws SQLException {
+		Connection stale = pool.borrow();
+		stale.close();
+		Connection current = pool.borrow();
+		current.setAutoCommit(false);
+
+		stale.close();
+		assertFalse(pool.release(stale));
+		assertThrows(SQLException.class, () -> stale.prepareStatement("SELECT 1"));
+		assertTrue(stale.isClosed());
+		assertEquals(1, pool.getActiveCount());
+		assertFalse(current.isClosed());
+		assertFalse(current.getAutoCommit()); // Not rolled back by the stale close
+	}
+
+	/**
+	 * Test that a cached statement is handed to the next caller without the
+	 * batch and settings of the last one.
+	 */
+	@Test
+	public void testStatementReset() throws SQLException {
+		try (Connection connection = pool.borrow();
+				PreparedStatement statement = connection.prepareStatement("SELECT 1")) {
+			statement.setFetchSize(1000);
+			statement.addBatch();
+		}
+		try (Connection connection = pool.borrow();
+				PreparedStatement statement = connection.prepareStatement("SELECT 1")) {
+			assertEquals(0, statement.getFetchSize());
+			assertEquals(0, driver.batched.get());
+		}
+	}
+
+	/**
+	 * Test that closing the pool closes idle connections and rejects new borrows.
+	 */
+	@Test
+	public void testClose() throws SQLException {
+		Connection connection = pool.borrow();
+		pool.release(connection);
+		pool.close();
+
+		assertTrue(connection.isClosed());
+		assertThrows(SQLException.class, () -> pool.borrow());
+	}
+
+	/**
+	 * Minimal JDBC driver that hands out proxy connections which only track their
+	 * open and auto-commit state.
+	 */
+	private static class FakeDriver implements Driver {
+		private final AtomicInteger opened = new AtomicInteger();
+		private final AtomicInteger prepared = new AtomicInteger();
+		private final AtomicInteger batched = new AtomicInteger();
+
+		@Override
+		public Connection connect(String url, Properties info) {
+			if (!acceptsURL(url)) {
+				return null;
+			}
+			opened.incrementAndGet();
+			boolean[] state = { false, true }; // closed, autoCommit
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+						switch (method.getName()) {
+						case "close":
+							state[0] = true;
+							return null;
+						case "isClosed":
+							return state[0];
+						case "isValid":
+							return !state[0];
+						case "getAutoCommit":
+							return state[1];
+						case "setAutoCommit":
+							state[1] = (Boolean) args[0];
+							return null;
+						case "prepareStatement":
+							prepared.incrementAndGet();
+							int[] fetchSize = { 0 };
+							return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+									new Class<?>[] { PreparedStatement.class },
+									(statement, statementMethod, statementArgs) -> {
+										switch (statementMethod.getName()) {
+										case "isClosed":
+											return state[0];
+										case "setFetchSize":
+											fetchSize[0] = (Integer) statementArgs[0];
+											return null;
+										case "getFetchSize":
+											return fetchSize[0];
+										case "addBatch":
+											batched.incrementAndGet();
+											return null;
+										case "clearBatch":
+											batched.set(0);
+											return null;
+										default:
+											return statementMethod.getReturnType() == int.class ? 0 : null;
+										}
+									});
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						default:
+							return null;
+						}
+					});
+		}
+
+		@Override
+		public boolean acceptsURL(String url) {
+			return URL.equals(url);
+		}
+
+		@Override
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+			return new DriverPropertyInfo[0];
+		}
+
+		@Override
+		public int getMajorVersion() {
+			return 1;
+		}
+
+		@Override
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		@Override
+		public boolean jdbcCompliant() {
+			return false;
+		}
+
+		@Override
+		public Logger getParentLogger() {
+			return Logger.getGlobal();
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ *
+ */
+package io.github.wangster6.database;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases to test the functionality of the ReplicaSet Class and of the
+ * ReadSession that decides whether reads may use it. Uses an in-process fake
+ * driver standing in for two replica databases.
+ *
+ * @author wangster6
+ */
+class TestReplicaSet {
+	private static final String REPLICA_A = "jdbc:fakereplica:a";
+	private static final String REPLICA_B = "jdbc:fakereplica:b";
+
+	private FakeDriver driver;
+	private ReplicaSet replicas;
+
+	@BeforeEach
+	public void setUp() throws SQLException {
+		driver = new FakeDriver();
+		DriverManager.registerDriver(driver);
+		replicas = open(60000);
+	}
+
+	@AfterEach
+	public void tearDown() throws SQLException {
+		replicas.close();
+		DriverManager.deregisterDriver(driver);
+	}
+
+	private static ReplicaSet open(long retryMillis) {
+		return new ReplicaSet(Arrays.asList(REPLICA_A, REPLICA_B), "user", "password", 1, 60000, 100, 0,
+				retryMillis);
+	}
+
+	/**
+	 * Test that reads take turns between the replicas.
+	 */
+	@Test
+	public void testRoundRobin() {
+		Connection first = replicas.borrow();
+		assertTrue(replicas.release(first));
+		Connection second = replicas.borrow();
+		assertTrue(replicas.release(second));
+		assertEquals(1, driver.connects(REPLICA_A)); // The second read went to the other replica
+		assertEquals(1, driver.connects(REPLICA_B));
+		Connection third = replicas.borrow();
+		assertTrue(replicas.release(third));
+
+		assertEquals(1, driver.connects(REPLICA_A));
+		assertEquals(1, driver.connects(REPLICA_B));
+		assertEquals(0, replicas.getActiveCount());
+	}
+
+	/**
+	 * Test that an unreachable replica is left out until its retry delay has
+	 * passed, and that reads fall back to the primary when no replica is left.
+	 */
+	@Test
+	public void testUnreachableReplica() {
+		driver.down.add(REPLICA_A);
+		for (int i = 0; i < 4; i++) {
+			Connection connection = replicas.borrow();
+			assertNotNull(connection);
+			replicas.release(connection);
+		}
+		assertEquals(1, driver.connects(REPLICA_A)); // Not tried again while it is left out
+
+		driver.down.add(REPLICA_B);
+		replicas.close();
+		replicas = open(0);
+		assertNull(replicas.borrow()); // Every replica is down, so the read goes to the primary
+		driver.down.clear();
+		assertNotNull(replicas.borrow()); // Tried again once its retry delay has passed
+	}
+
+	/**
+	 * Test that a replica with no free connection is skipped without being left
+	 * out.
+	 */
+	@Test
+	public void testBusyReplica() {
+		Connection first = replicas.borrow();
+		Connection second = replicas.borrow();
+		assertNull(replicas.borrow());
+
+		replicas.release(first);
+		replicas.release(second);
+		assertNotNull(replicas.borrow());
+		assertNotNull(replicas.borrow());
+		assertEquals(1, driver.connects(REPLICA_A));
+		assertEquals(1, driver.connects(REPLICA_B));
+	}
+
+	/**
+	 * Test that a session may read from replicas until it writes, and that it
+	 * only affects its own thread.
+	 */
+	@Test
+	public void testReadSession() throws Exception {
+		ReadSession.noteWrite(); // Outside a session, nothing is remembered
+		assertFalse(ReadSession.hasWritten());
+
+		ReadSession session = ReadSession.begin();
+		try {
+			assertFalse(ReadSession.hasWritten());
+			ReadSession.noteWrite();
+			assertTrue(ReadSession.hasWritten());
+
+			AtomicBoolean otherThread = new AtomicBoolean(true);
+			Thread thread = new Thread(() -> otherThread.set(ReadSession.hasWritten()));
+			thread.start();
+			thread.join();
+			assertFalse(otherThread.get());
+		} finally {
+			session.close();
+		}
+		assertFalse(ReadSession.hasWritten());
+	}
+
+	/**
+	 * Minimal JDBC driver for any number of fake databases, some of which can be
+	 * made unreachable.
+	 */
+	private static class FakeDriver implements Driver {
+		private final Map<String, AtomicInteger> connects = new ConcurrentHashMap<>();
+		private final Set<String> down = ConcurrentHashMap.newKeySet();
+
+		int connects(String url) {
+			AtomicInteger count = connects.get(url);
+			return count == null ? 0 : count.get();
+		}
+
+		@Override
+		public Connection connect(String url, Properties info) throws SQLException {
+			if (!acceptsURL(url)) {
+				return null;
+			}
+			connects.computeIfAbsent(url, key -> new AtomicInteger()).incrementAndGet();
+			if (down.contains(url)) {
+				throw new SQLException("Connection refused: " + url, "08001");
+			}
+			boolean[] closed = { false };
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+						switch (method.getName()) {
+						case "close":
+							closed[0] = true;
+							return null;
+						case "isClosed":
+							return closed[0];
+						case "isValid":
+							return !closed[0];
+						case "getAutoCommit":
+							return true;
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						default:
+							return null;
+						}
+					});
+		}
+
+		@Override
+		public boolean acceptsURL(String url) {
+			return url.startsWith("jdbc:fakereplica:");
+		}
+
+		@Override
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+			return new DriverPropertyInfo[0];
+		}
+
+		@Override
+		public int getMajorVersion() {
+			return 1;
+		}
+
+		@Override
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		@Override
+		public boolean jdbcCompliant() {
+			return false;
+		}
+
+		@Override
+		public Logger getParentLogger() {
+			return Logger.getGlobal();
+		}
+	}
+}
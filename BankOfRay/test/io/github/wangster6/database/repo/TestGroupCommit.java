@@ -0,0 +1,102 @@
+/**
+ *
+ */
+package io.github.wangster6.database.repo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.wangster6.bank.LedgerEntry;
+import io.github.wangster6.bank.Money;
+
+/**
+ * Test cases to test the batching of the GroupCommit Class without a database.
+ *
+ * @author wangster6
+ */
+class TestGroupCommit {
+	private static final String UPDATE = "UPDATE accounts SET balance = balance + ? WHERE id = ?";
+
+	/**
+	 * A group commit that keeps the account IDs of every batch instead of
+	 * writing them, and fails the changes of account 0.
+	 */
+	private static class RecordingGroupCommit extends GroupCommit {
+		private final List<List<Integer>> batches = new ArrayList<>();
+
+		RecordingGroupCommit(long windowMillis, int maxBatchSize) {
+			super(windowMillis, maxBatchSize);
+		}
+
+		@Override
+		void write(List<Delta> batch) {
+			List<Integer> accountIds = new ArrayList<>();
+			for (Delta delta : batch) {
+				accountIds.add(delta.getAccountId());
+				if (delta.getAccountId() == 0) {
+					delta.result.completeExceptionally(new SQLException("Simulated failure"));
+				} else {
+					delta.result.complete(Money.ofCents(delta.getAccountId()));
+				}
+			}
+			synchronized (batches) {
+				batches.add(accountIds);
+			}
+		}
+	}
+
+	/**
+	 * Test that concurrent changes are grouped into fewer batches that respect
+	 * the maximum size, and that each caller gets its own result.
+	 */
+	@Test
+	void testBatches() throws Exception {
+		RecordingGroupCommit groupCommit = new RecordingGroupCommit(50, 30);
+		ExecutorService sessions = Executors.newFixedThreadPool(100);
+		List<Future<Money>> results = new ArrayList<>();
+		for (int i = 1; i <= 100; i++) {
+			int accountId = i;
+			results.add(sessions.submit(() -> groupCommit.apply(UPDATE, accountId,
+					Money.ofCents(100), LedgerEntry.Type.DEPOSIT)));
+		}
+		for (int i = 1; i <= 100; i++) {
+			assertEquals(Money.ofCents(i), results.get(i - 1).get());
+		}
+		sessions.shutdown();
+		groupCommit.close();
+
+		int total = 0;
+		for (List<Integer> batch : groupCommit.batches) {
+			assertTrue(batch.size() <= 30);
+			total += batch.size();
+		}
+		assertEquals(100, total);
+		assertTrue(groupCommit.batches.size() < 100);
+	}
+
+	/**
+	 * Test that a failed change is reported to its caller as it was thrown, and
+	 * that nothing is accepted once closed.
+	 */
+	@Test
+	void testFailureAndClose() throws Exception {
+		RecordingGroupCommit groupCommit = new RecordingGroupCommit(0, 10);
+		SQLException e = assertThrows(SQLException.class, () -> groupCommit.apply(UPDATE, 0,
+				Money.ofCents(100), LedgerEntry.Type.DEPOSIT));
+		assertEquals("Simulated failure", e.getMessage());
+		assertEquals(Money.ofCents(7),
+				groupCommit.apply(UPDATE, 7, Money.ofCents(100), LedgerEntry.Type.DEPOSIT));
+
+		groupCommit.close();
+		assertThrows(IllegalStateException.class, () -> groupCommit.apply(UPDATE, 7,
+				Money.ofCents(100), LedgerEntry.Type.DEPOSIT));
+	}
+}
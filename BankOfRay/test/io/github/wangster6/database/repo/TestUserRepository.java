@@ -0,0 +1,41 @@
+/**
+ *
+ */
+package io.github.wangster6.database.repo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases to test the functionality of the UserRepository Class and its
+ * methods that do not need a database.
+ *
+ * @author wangster6
+ */
+class TestUserRepository {
+
+	/**
+	 * Test that only duplicate keys count as a taken key, and that other
+	 * integrity constraint violations do not.
+	 */
+	@Test
+	void testIsDuplicateKey() {
+		assertTrue(UserRepository.isDuplicateKey(
+				new SQLIntegrityConstraintViolationException("Duplicate entry 'ray' for key 'users.username'", "23000",
+						1062)));
+		assertTrue(UserRepository.isDuplicateKey(new SQLException("Batch failed",
+				new SQLException("Duplicate entry 'ray' for key 'users.username'", "23000", 1062))));
+		assertTrue(UserRepository.isDuplicateKey(new SQLException("duplicate key value", "23505")));
+
+		assertFalse(UserRepository.isDuplicateKey(
+				new SQLIntegrityConstraintViolationException("Column 'first_name' cannot be null", "23000", 1048)));
+		assertFalse(UserRepository.isDuplicateKey(
+				new SQLIntegrityConstraintViolationException("Cannot add or update a child row", "23000", 1452)));
+		assertFalse(UserRepository.isDuplicateKey(new SQLException("Duplicate entry", "42000", 1062)));
+		assertFalse(UserRepository.isDuplicateKey(new SQLException("Communications link failure", "08S01")));
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ *
+ */
+package io.github.wangster6.interest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.wangster6.bank.LedgerEntry;
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.bank.NewUser;
+import io.github.wangster6.storage.AccountStore;
+import io.github.wangster6.storage.memory.MemoryStorageEngine;
+
+/**
+ * Test cases to test the functionality of the InterestAccrual Class and its
+ * methods.
+ *
+ * @author wangster6
+ */
+class TestInterestAccrual {
+	private static final long TEN_PERCENT = 1000;
+
+	/**
+	 * Test method for
+	 * {@link io.github.wangster6.interest.InterestAccrual#dailyInterest(io.github.wangster6.bank.Money, long)}.
+	 */
+	@Test
+	void testDailyInterest() {
+		assertEquals(Money.ofCents(100), InterestAccrual.dailyInterest(Money.ofCents(365000), TEN_PERCENT));
+		assertEquals(Money.ZERO, InterestAccrual.dailyInterest(Money.ofCents(18250), 100));
+		assertEquals(Money.ofCents(2), InterestAccrual.dailyInterest(Money.ofCents(54750), 100));
+		assertEquals(Money.ZERO, InterestAccrual.dailyInterest(Money.ZERO, TEN_PERCENT));
+		assertEquals(Money.ZERO, InterestAccrual.dailyInterest(Money.ofCents(365000), 0));
+	}
+
+	/**
+	 * Test that the plan leaves out accrued ranges, even ones cut with another
+	 * chunk size, and stops at the highest account ID.
+	 */
+	@Test
+	void testPlanChunks() {
+		InterestAccrual accrual = new InterestAccrual(null, TEN_PERCENT, 10, 1);
+		NavigableMap<Integer, Integer> accrued = new TreeMap<>();
+		assertEquals(0, accrual.planChunks(accrued, 0).size());
+
+		accrued.put(11, 20);
+		List<InterestAccrual.Range> chunks = accrual.planChunks(accrued, 35);
+		assertEquals(3, chunks.size());
+		assertEquals(1, chunks.get(0).first);
+		assertEquals(10, chunks.get(0).last);
+		assertEquals(21, chunks.get(1).first);
+		assertEquals(31, chunks.get(2).first);
+		assertEquals(35, chunks.get(2).last);
+
+		accrued.clear();
+		accrued.put(5, 14);
+		chunks = accrual.planChunks(accrued, 35);
+		assertEquals(4, chunks.size());
+		assertEquals(4, chunks.get(0).last);
+		assertEquals(15, chunks.get(1).first);
+		assertEquals(24, chunks.get(1).last);
+		assertEquals(35, chunks.get(3).first);
+	}
+
+	/**
+	 * Test that a run started again after part of it was accrued credits every
+	 * positive balance exactly once and records each credit in the ledger, and
+	 * that running it once more changes nothing.
+	 */
+	@Test
+	void testRunAndResume() throws Exception {
+		MemoryStorageEngine engine = new MemoryStorageEngine();
+		AccountStore accounts = engine.accounts();
+		List<NewUser> newUsers = new ArrayList<>();
+		for (int i = 0; i < 95; i++) {
+			newUsers.add(new NewUser("First", "Last", "user" + i, "hash"));
+		}
+		engine.users().createAll(newUsers);
+		for (int accountId = 1; accountId <= 95; accountId++) {
+			if (accountId % 5 != 0) {
+				accounts.deposit(accountId, Money.ofCents(365000));
+			}
+		}
+
+		// A first attempt that stopped after one range
+		assertEquals(8, accounts.accrueInterest("2026-10-17", 21, 30, balance -> Money.ofCents(100)).size());
+		assertNull(accounts.accrueInterest("2026-10-17", 21, 30, balance -> Money.ofCents(100)));
+
+		InterestAccrual accrual = new InterestAccrual(accounts, TEN_PERCENT, 10, 4);
+		InterestAccrual.Result result = accrual.run("2026-10-17", null, 1000);
+		assertEquals(9, result.getChunksDone());
+		assertEquals(0, result.getChunksFailed());
+		assertEquals(68, result.getAccountsCredited());
+		assertEquals(Money.ofCents(6800), result.getInterest());
+		for (int accountId = 1; accountId <= 95; accountId++) {
+			Money expected = accountId % 5 == 0 ? Money.ZERO : Money.ofCents(365100);
+			assertEquals(expected, accounts.findBalance(accountId));
+		}
+
+		result = new InterestAccrual(accounts, TEN_PERCENT, 25, 4).run("2026-10-17", null, 1000);
+		assertEquals(0, result.getChunksDone());
+		assertEquals(Money.ofCents(365100), accounts.findBalance(1));
+
+		List<LedgerEntry> history = engine.ledger().findPage(1, Long.MAX_VALUE, 10);
+		assertEquals(2, history.size());
+		assertEquals(LedgerEntry.Type.INTEREST, history.get(0).getType());
+		assertEquals(Money.ofCents(365100), history.get(0).getBalanceAfter());
+		assertEquals(LedgerEntry.Type.DEPOSIT, history.get(1).getType());
+		assertEquals(0, engine.ledger().findPage(5, Long.MAX_VALUE, 10).size());
+	}
+}
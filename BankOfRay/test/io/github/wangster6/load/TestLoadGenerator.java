@@ -0,0 +1,85 @@
+/**
+ *
+ */
+package io.github.wangster6.load;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases to test the functionality of the LoadGenerator Class and its
+ * methods.
+ *
+ * @author wangster6
+ */
+class TestLoadGenerator {
+
+	/**
+	 * Test method for
+	 * {@link io.github.wangster6.load.LoadGenerator#parseMix(java.lang.String)}.
+	 */
+	@Test
+	void testParseMix() {
+		Map<Scenario, Integer> mix = LoadGenerator.parseMix(LoadGenerator.DEFAULT_MIX);
+		assertEquals(5, mix.size());
+		assertEquals(Integer.valueOf(1), mix.get(Scenario.SIGNUP));
+		assertEquals(Integer.valueOf(3), mix.get(Scenario.LOGIN));
+		assertEquals(Integer.valueOf(1), mix.get(Scenario.FAILED_PASSWORD));
+
+		mix = LoadGenerator.parseMix(" deposit = 2 ");
+		assertEquals(1, mix.size());
+		assertEquals(Integer.valueOf(2), mix.get(Scenario.DEPOSIT));
+
+		assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parseMix("teleport=1"));
+		assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parseMix("login"));
+		assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parseMix("login=x"));
+		assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parseMix("login=-1"));
+		assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parseMix("login=0,signup=0"));
+	}
+
+	/**
+	 * Test that every scenario takes up as many rolls as its weight, in order.
+	 */
+	@Test
+	void testPick() {
+		LoadGenerator generator = new LoadGenerator(LoadGenerator.parseMix("signup=1,login=2,withdraw=3"), 1, 0,
+				0, 1);
+		assertEquals(Scenario.SIGNUP, generator.pick(0));
+		assertEquals(Scenario.LOGIN, generator.pick(1));
+		assertEquals(Scenario.LOGIN, generator.pick(2));
+		assertEquals(Scenario.WITHDRAW, generator.pick(3));
+		assertEquals(Scenario.WITHDRAW, generator.pick(5));
+		assertThrows(IllegalArgumentException.class, () -> generator.pick(6));
+	}
+
+	/**
+	 * Test that a mix logging in without any seed users, or transferring with
+	 * only one, is rejected.
+	 */
+	@Test
+	void testNeedsSeedUsers() {
+		assertThrows(IllegalArgumentException.class,
+				() -> new LoadGenerator(LoadGenerator.parseMix("signup=1,login=1"), 1, 0, 0, 0));
+		assertDoesNotThrow(() -> new LoadGenerator(LoadGenerator.parseMix("signup=1"), 1, 0, 0, 0));
+		assertThrows(IllegalArgumentException.class,
+				() -> new LoadGenerator(LoadGenerator.parseMix("transfer=1"), 1, 0, 0, 1));
+		assertDoesNotThrow(() -> new LoadGenerator(LoadGenerator.parseMix("transfer=1"), 1, 0, 0, 2));
+	}
+
+	/**
+	 * Test that every script ends by exiting from the main menu, and that
+	 * scenarios are found by their mix name.
+	 */
+	@Test
+	void testScenarios() {
+		for (Scenario scenario : Scenario.values()) {
+			assertTrue(scenario.script("user", "pass1", "other").endsWith("\n3\n"));
+			assertEquals(scenario, Scenario.fromKey(scenario.getKey()));
+		}
+		assertEquals("2\nLoad\nTester\nuser\npass1\npass1\n3\n", Scenario.SIGNUP.script("user", "pass1", "other"));
+		assertTrue(Scenario.TRANSFER.script("user", "pass1", "other").contains("\n4\nother\n"));
+	}
+}
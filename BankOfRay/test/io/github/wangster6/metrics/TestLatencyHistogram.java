@@ -0,0 +1,82 @@
+/**
+ *
+ */
+package io.github.wangster6.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases to test the functionality of the LatencyHistogram Class and its
+ * methods.
+ *
+ * @author wangster6
+ */
+class TestLatencyHistogram {
+
+	/**
+	 * Test that every value falls into a bucket whose upper bound is at least the
+	 * value and within about 6% of it.
+	 */
+	@Test
+	void testBucketBounds() {
+		long[] values = { 0, 1, 15, 16, 17, 31, 32, 1000, 123456, 1L << 30, (1L << 40) - 1 };
+		for (long value : values) {
+			int bucket = LatencyHistogram.bucketOf(value);
+			long upper = LatencyHistogram.upperBoundOf(bucket);
+			assertTrue(upper >= value, "upper bound " + upper + " below " + value);
+			assertTrue(upper <= value + value / 16, "upper bound " + upper + " too far above " + value);
+			if (bucket > 0) {
+				assertTrue(LatencyHistogram.upperBoundOf(bucket - 1) < value);
+			}
+		}
+		assertEquals(LatencyHistogram.bucketOf(1L << 41), LatencyHistogram.bucketOf(Long.MAX_VALUE));
+	}
+
+	/**
+	 * Test method for
+	 * {@link io.github.wangster6.metrics.LatencyHistogram#getPercentile(double)}.
+	 */
+	@Test
+	void testGetPercentile() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(0.99));
+
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500500.0, histogram.getMean(), 0.001);
+		assertEquals(1000000, histogram.getMax());
+		assertEquals(500000, histogram.getPercentile(0.5), 500000 / 16);
+		assertEquals(990000, histogram.getPercentile(0.99), 990000 / 16);
+		assertEquals(1000000, histogram.getPercentile(1.0));
+	}
+
+	/**
+	 * Test that an operation's counts and errors show up in the report and over
+	 * its MXBean getters.
+	 */
+	@Test
+	void testOperationReport() {
+		OperationMetrics metrics = Metrics.operation("test.operation");
+		assertSame(metrics, Metrics.operation("test.operation"));
+		metrics.record(2000);
+		metrics.record(4000);
+		metrics.recordError();
+		assertEquals(2, metrics.getCount());
+		assertEquals(1, metrics.getErrors());
+		assertEquals(3.0, metrics.getMeanMicros(), 0.001);
+		assertEquals(4.0, metrics.getMaxMicros(), 0.001);
+
+		Map<String, Long> previousCounts = new HashMap<>();
+		String report = Metrics.report(previousCounts, 1000);
+		assertTrue(report.startsWith("operation"));
+		assertTrue(report.contains("test.operation"));
+		assertEquals(Long.valueOf(2), previousCounts.get("test.operation"));
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ *
+ */
+package io.github.wangster6.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.github.wangster6.bank.Messages;
+
+/**
+ * Test cases to test the functionality of the BankServer Class and its methods.
+ *
+ * @author wangster6
+ */
+class TestBankServer {
+	private BankServer server;
+
+	@AfterEach
+	void tearDown() {
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	/**
+	 * Test that a connection beyond the session limit is told the server is busy
+	 * and then closed.
+	 */
+	@Test
+	void testRejectsWhenFull() throws IOException {
+		server = new BankServer(0, 0, 1000, true);
+		int port = server.start();
+		try (Socket client = new Socket("localhost", port);
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8))) {
+			StringBuilder received = new StringBuilder();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				received.append(line).append(System.lineSeparator());
+			}
+			assertEquals(Messages.SYSTEM_BUSY + System.lineSeparator(), received.toString());
+		}
+	}
+
+	/**
+	 * Test method for {@link io.github.wangster6.server.BankServer#newSessionExecutor()}.
+	 */
+	@Test
+	void testNewSessionExecutor() throws Exception {
+		ExecutorService executor = BankServer.newSessionExecutor();
+		try {
+			assertEquals("ran", executor.submit(() -> "ran").get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
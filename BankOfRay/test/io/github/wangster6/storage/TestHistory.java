@@ -0,0 +1,69 @@
+/**
+ *
+ */
+package io.github.wangster6.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.wangster6.bank.LedgerEntry;
+import io.github.wangster6.bank.Money;
+
+/**
+ * Test cases to test the functionality of the History Class.
+ *
+ * @author wangster6
+ */
+class TestHistory {
+	private static LedgerEntry entry(long sequence) {
+		return new LedgerEntry(sequence, 1, LedgerEntry.Type.DEPOSIT, Money.ofCents(sequence),
+				Money.ofCents(sequence), Instant.EPOCH);
+	}
+
+	private static List<Long> sequences(List<LedgerEntry> entries) {
+		return entries.stream().map(LedgerEntry::getSequence).collect(Collectors.toList());
+	}
+
+	/**
+	 * Test that a full history drops its oldest entries and pages through the
+	 * rest newest first.
+	 */
+	@Test
+	void testBounded() {
+		History history = new History(20);
+		for (long sequence = 1; sequence <= 50; sequence++) {
+			history.add(entry(sequence));
+		}
+		assertEquals(20, history.size());
+		assertEquals(31, history.toList().get(0).getSequence());
+		assertEquals(List.of(50L, 49L, 48L), sequences(history.findPage(Long.MAX_VALUE, 3)));
+		assertEquals(List.of(39L, 38L), sequences(history.findPage(40, 2)));
+		assertEquals(List.of(32L, 31L), sequences(history.findPage(33, 10)));
+		assertTrue(history.findPage(31, 10).isEmpty());
+	}
+
+	/**
+	 * Test that late entries are moved into place, that a sequence already held
+	 * is replaced rather than repeated, and that a limit of 0 keeps nothing.
+	 */
+	@Test
+	void testOutOfOrder() {
+		History history = new History(4);
+		for (long sequence : new long[] { 2, 5, 3, 1, 4, 3 }) {
+			history.add(entry(sequence));
+		}
+		assertEquals(List.of(2L, 3L, 4L, 5L), sequences(history.toList()));
+		history.add(entry(1)); // Older than everything in a full history
+		assertEquals(List.of(2L, 3L, 4L, 5L), sequences(history.toList()));
+
+		History none = new History(0);
+		none.add(entry(1));
+		assertEquals(0, none.size());
+		assertTrue(none.findPage(Long.MAX_VALUE, 10).isEmpty());
+	}
+}
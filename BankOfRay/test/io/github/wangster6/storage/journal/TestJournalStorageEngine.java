@@ -0,0 +1,340 @@
+/**
+ *
+ */
+package io.github.wangster6.storage.journal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.github.wangster6.bank.LedgerEntry;
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.bank.NewUser;
+import io.github.wangster6.bank.UserCredentials;
+
+/**
+ * Test cases to test the functionality of the JournalStorageEngine Class,
+ * mostly that everything it stores survives being closed or cut off and
+ * opened again.
+ *
+ * @author wangster6
+ */
+class TestJournalStorageEngine {
+	private static final int SMALL_JOURNAL = 64 * 1024;
+	private static final int HISTORY_LIMIT = 100;
+
+	private Path directory;
+	private JournalStorageEngine engine;
+
+	private static NewUser newUser(String username) {
+		return new NewUser("First", "Last", username, "hash-" + username);
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		directory = Files.createTempDirectory("journal");
+		engine = open(FsyncPolicy.BATCHED, SMALL_JOURNAL);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		engine.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	private JournalStorageEngine open(FsyncPolicy policy, int maxBytes) throws IOException {
+		return JournalStorageEngine.open(directory, policy, 10, maxBytes, HISTORY_LIMIT);
+	}
+
+	private JournalStorageEngine reopen() throws IOException {
+		engine.close();
+		engine = open(FsyncPolicy.BATCHED, SMALL_JOURNAL);
+		return engine;
+	}
+
+	/**
+	 * Test that users, balances, password changes, deletions and the ledger are
+	 * all recovered after reopening.
+	 */
+	@Test
+	void testRecoversEverything() throws Exception {
+		assertTrue(engine.users().create(newUser("ray")));
+		assertTrue(engine.users().create(newUser("gone")));
+		int accountId = engine.users().findCredentials("ray").toSession().getAccountId();
+		engine.accounts().deposit(accountId, Money.ofCents(10000));
+		engine.accounts().withdraw(accountId, Money.ofCents(2550));
+		int userId = engine.users().findCredentials("ray").getUserId();
+		assertTrue(engine.users().updateHashedPassword(userId, "hash-ray", "rehashed"));
+		engine.users().deleteByUsername("gone");
+		Instant deposited = engine.ledger().findPage(accountId, Long.MAX_VALUE, 2).get(1).getTimestamp();
+
+		reopen();
+		UserCredentials credentials = engine.users().findCredentials("ray");
+		assertEquals(userId, credentials.getUserId());
+		assertEquals("rehashed", credentials.getHashedPassword());
+		assertEquals(Money.ofCents(7450), credentials.toSession().getBalance());
+		assertFalse(engine.users().exists("gone"));
+		assertEquals(Integer.valueOf(accountId), engine.users().findAccountId("ray"));
+		assertNull(engine.users().findAccountId("gone"));
+		assertEquals(1, engine.users().count());
+		List<LedgerEntry> page = engine.ledger().findPage(accountId, Long.MAX_VALUE, 10);
+		assertEquals(2, page.size());
+		assertEquals(2, page.get(0).getSequence());
+		assertEquals(LedgerEntry.Type.WITHDRAWAL, page.get(0).getType());
+		assertEquals(Money.ofCents(7450), page.get(0).getBalanceAfter());
+		assertEquals(deposited, page.get(1).getTimestamp());
+
+		assertTrue(engine.users().create(newUser("next")));
+		assertTrue(engine.users().findCredentials("next").getUserId() > userId + 1, "IDs are never reused");
+	}
+
+	/**
+	 * Test that filling the journal starts a new one and takes a snapshot, and
+	 * that the snapshot plus the journals after it recover the same state.
+	 */
+	@Test
+	void testSnapshot() throws Exception {
+		List<NewUser> newUsers = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			newUsers.add(newUser("user" + i));
+		}
+		engine.users().createAll(newUsers);
+		int accountId = engine.users().findCredentials("user7").toSession().getAccountId();
+		for (int i = 0; i < 5000; i++) {
+			engine.accounts().deposit(accountId, Money.ofCents(1));
+		}
+		engine.close(); // Waits for the snapshot being written
+		assertTrue(Files.exists(directory.resolve("snapshot.dat")));
+		assertFalse(Files.exists(Journal.fileOf(directory, 0))); // Deleted once the first snapshot is written
+
+		engine = open(FsyncPolicy.BATCHED, SMALL_JOURNAL);
+		assertEquals(500, engine.users().count());
+		assertEquals(Money.ofCents(5000), engine.accounts().findBalance(accountId));
+		List<LedgerEntry> page = engine.ledger().findPage(accountId, Long.MAX_VALUE, HISTORY_LIMIT + 1);
+		assertEquals(HISTORY_LIMIT, page.size()); // Only the newest entries are kept
+		assertEquals(Money.ofCents(5000), page.get(0).getBalanceAfter());
+	}
+
+	/**
+	 * Test that when snapshots fail, the journals are kept and all replayed, and
+	 * that deleting a user drops their history.
+	 */
+	@Test
+	void testFailedSnapshots() throws Exception {
+		Files.createDirectory(directory.resolve("snapshot.dat.tmp")); // Cannot be opened as a file
+		engine.users().create(newUser("ray"));
+		engine.users().create(newUser("gone"));
+		int accountId = engine.users().findCredentials("ray").toSession().getAccountId();
+		int goneId = engine.users().findCredentials("gone").toSession().getAccountId();
+		engine.accounts().deposit(goneId, Money.ofCents(1));
+		for (int i = 0; i < 5000; i++) {
+			engine.accounts().deposit(accountId, Money.ofCents(1));
+		}
+		engine.users().deleteByUsername("gone");
+		assertTrue(engine.ledger().findPage(goneId, Long.MAX_VALUE, 10).isEmpty());
+		engine.close();
+		assertFalse(Files.exists(directory.resolve("snapshot.dat")));
+		assertTrue(Journal.generations(directory).size() > 1);
+		assertEquals(Long.valueOf(0), Journal.generations(directory).get(0));
+
+		engine = open(FsyncPolicy.BATCHED, SMALL_JOURNAL);
+		assertEquals(Money.ofCents(5000), engine.accounts().findBalance(accountId));
+		assertEquals(HISTORY_LIMIT, engine.ledger().findPage(accountId, Long.MAX_VALUE, HISTORY_LIMIT + 1).size());
+		assertTrue(engine.ledger().findPage(goneId, Long.MAX_VALUE, 10).isEmpty());
+		assertTrue(engine.users().create(newUser("next")));
+
+		// The next snapshot succeeds and covers every journal before it
+		for (int i = 0; i < 5000; i++) {
+			engine.accounts().deposit(accountId, Money.ofCents(1));
+		}
+		reopen();
+		assertEquals(1, Journal.generations(directory).size());
+		assertEquals(Money.ofCents(10000), engine.accounts().findBalance(accountId));
+		assertTrue(engine.users().exists("next"));
+	}
+
+	/**
+	 * Test that a record cut short at the end of the journal is dropped, along
+	 * with everything after it, and that appending continues from there.
+	 */
+	@Test
+	void testTornRecord() throws Exception {
+		engine.users().create(newUser("ray"));
+		int accountId = engine.users().findCredentials("ray").toSession().getAccountId();
+		engine.accounts().deposit(accountId, Money.ofCents(100));
+		engine.close();
+
+		// Corrupt the last record, as if the machine went down while writing it
+		Path file = Journal.fileOf(directory, 0);
+		try (RandomAccessFile journal = new RandomAccessFile(file.toFile(), "rw")) {
+			long end = Journal.FILE_HEADER_SIZE;
+			journal.seek(end);
+			while (journal.readInt() != 0) {
+				journal.seek(end);
+				end += Records.HEADER_SIZE + journal.readInt();
+				journal.seek(end);
+			}
+			journal.seek(end - 1);
+			journal.write(0xFF);
+		}
+
+		engine = open(FsyncPolicy.BATCHED, SMALL_JOURNAL);
+		assertEquals(Money.ZERO, engine.accounts().findBalance(accountId));
+		engine.accounts().deposit(accountId, Money.ofCents(5));
+		reopen();
+		assertEquals(Money.ofCents(5), engine.accounts().findBalance(accountId));
+	}
+
+	/**
+	 * Test that creating a batch with a taken username creates nothing, and that
+	 * withdrawals never overdraw.
+	 */
+	@Test
+	void testRejectedChanges() throws Exception {
+		engine.users().create(newUser("ray"));
+		assertFalse(engine.users().create(newUser("ray")));
+		assertThrows(SQLException.class,
+				() -> engine.users().createAll(Arrays.asList(newUser("new"), newUser("ray"))));
+		assertFalse(engine.users().exists("new"));
+
+		int accountId = engine.users().findCredentials("ray").toSession().getAccountId();
+		assertNull(engine.accounts().withdraw(accountId, Money.ofCents(1)));
+		assertNull(engine.accounts().deposit(accountId + 100, Money.ofCents(1)));
+	}
+
+	/**
+	 * Test that concurrent deposits under every policy are neither lost in memory
+	 * nor in the journal.
+	 */
+	@Test
+	void testConcurrentDeposits() throws Exception {
+		for (FsyncPolicy policy : FsyncPolicy.values()) {
+			engine.close();
+			engine = open(policy, SMALL_JOURNAL);
+			engine.users().create(newUser(policy.getKey()));
+			int accountId = engine.users().findCredentials(policy.getKey()).toSession().getAccountId();
+			ExecutorService executor = Executors.newFixedThreadPool(8);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(() -> {
+					for (int j = 0; j < 200; j++) {
+						engine.accounts().deposit(accountId, Money.ofCents(1));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			executor.shutdown();
+			assertEquals(Money.ofCents(1600), engine.accounts().findBalance(accountId));
+			reopen();
+			assertEquals(Money.ofCents(1600), engine.accounts().findBalance(accountId));
+		}
+	}
+
+	/**
+	 * Test that concurrent transfers in both directions neither create nor lose
+	 * money, and that the balances of both accounts are recovered together.
+	 */
+	@Test
+	void testTransfers() throws Exception {
+		engine.users().create(newUser("ray"));
+		engine.users().create(newUser("jay"));
+		int ray = engine.users().findCredentials("ray").toSession().getAccountId();
+		int jay = engine.users().findCredentials("jay").toSession().getAccountId();
+		engine.accounts().deposit(ray, Money.ofCents(1000));
+		engine.accounts().deposit(jay, Money.ofCents(1000));
+		assertThrows(IllegalArgumentException.class, () -> engine.accounts().transfer(ray, ray, Money.ofCents(1)));
+		assertNull(engine.accounts().transfer(ray, jay, Money.ofCents(1001)));
+		assertNull(engine.accounts().transfer(ray, jay + 100, Money.ofCents(1)));
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			int from = i % 2 == 0 ? ray : jay;
+			int to = i % 2 == 0 ? jay : ray;
+			futures.add(executor.submit(() -> {
+				for (int j = 0; j < 200; j++) {
+					engine.accounts().transfer(from, to, Money.ofCents(3));
+				}
+				return null;
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		Money rayBalance = engine.accounts().findBalance(ray);
+		Money jayBalance = engine.accounts().findBalance(jay);
+		assertEquals(2000, rayBalance.toCents() + jayBalance.toCents());
+
+		reopen();
+		assertEquals(rayBalance, engine.accounts().findBalance(ray));
+		assertEquals(jayBalance, engine.accounts().findBalance(jay));
+	}
+
+	/**
+	 * Test that an accrued interest range is recovered together with its
+	 * balances and ledger entries, from the journal and from a snapshot, and is
+	 * never accrued twice.
+	 */
+	@Test
+	void testInterestCheckpoints() throws Exception {
+		engine.users().create(newUser("ray"));
+		int accountId = engine.users().findCredentials("ray").toSession().getAccountId();
+		engine.accounts().deposit(accountId, Money.ofCents(1000));
+		assertEquals(1, engine.accounts().accrueInterest("day1", 1, 10, balance -> Money.ofCents(7)).size());
+		assertNull(engine.accounts().accrueInterest("day1", 1, 10, balance -> Money.ofCents(7)));
+
+		reopen();
+		assertEquals(Money.ofCents(1007), engine.accounts().findBalance(accountId));
+		LedgerEntry credit = engine.ledger().findPage(accountId, Long.MAX_VALUE, 1).get(0);
+		assertEquals(LedgerEntry.Type.INTEREST, credit.getType());
+		assertEquals(Money.ofCents(7), credit.getAmount());
+		assertEquals(Money.ofCents(1007), credit.getBalanceAfter());
+		assertEquals(Integer.valueOf(10), engine.accounts().findAccruedRanges("day1").get(1));
+		assertNull(engine.accounts().accrueInterest("day1", 1, 10, balance -> Money.ofCents(7)));
+		assertTrue(engine.accounts().findAccruedRanges("day2").isEmpty());
+
+		for (int i = 0; i < 5000; i++) {
+			engine.accounts().deposit(accountId, Money.ofCents(1));
+		}
+		assertTrue(Files.exists(directory.resolve("snapshot.dat")));
+		reopen();
+		assertEquals(Integer.valueOf(10), engine.accounts().findAccruedRanges("day1").get(1));
+		assertEquals(Money.ofCents(6007), engine.accounts().findBalance(accountId));
+	}
+
+	/**
+	 * Test that a directory can only be used by one engine at a time, and that a
+	 * closed engine refuses changes.
+	 */
+	@Test
+	void testExclusiveAndClosed() throws Exception {
+		assertThrows(IOException.class, () -> open(FsyncPolicy.BATCHED, SMALL_JOURNAL));
+		engine.close();
+		assertThrows(IOException.class, () -> engine.users().create(newUser("ray")));
+	}
+}
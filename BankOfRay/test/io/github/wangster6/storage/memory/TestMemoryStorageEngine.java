@@ -0,0 +1,240 @@
+/**
+ *
+ */
+package io.github.wangster6.storage.memory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.wangster6.bank.AccountSession;
+import io.github.wangster6.bank.LedgerEntry;
+import io.github.wangster6.bank.Money;
+import io.github.wangster6.bank.NewUser;
+import io.github.wangster6.bank.UserCredentials;
+import io.github.wangster6.storage.AccountStore;
+import io.github.wangster6.storage.LedgerStore;
+import io.github.wangster6.storage.UserStore;
+
+/**
+ * Test cases to test the functionality of the MemoryStorageEngine Class and its
+ * stores.
+ *
+ * @author wangster6
+ */
+class TestMemoryStorageEngine {
+	private final MemoryStorageEngine engine = new MemoryStorageEngine();
+	private final UserStore users = engine.users();
+	private final AccountStore accounts = engine.accounts();
+
+	private static NewUser newUser(String username) {
+		return new NewUser("First", "Last", username, "hash-" + username);
+	}
+
+	/**
+	 * Test creating, finding and deleting a user together with their account.
+	 */
+	@Test
+	void testUserLifecycle() throws Exception {
+		assertTrue(users.create(newUser("ray")));
+		assertFalse(users.create(newUser("ray")));
+		assertTrue(users.exists("ray"));
+		assertEquals(1, users.count());
+
+		UserCredentials credentials = users.findCredentials("ray");
+		AccountSession session = credentials.toSession();
+		assertEquals("First", session.getFirstName());
+		assertEquals("hash-ray", credentials.getHashedPassword());
+		assertEquals(Money.ZERO, session.getBalance());
+		assertEquals(Integer.valueOf(session.getAccountId()), users.findAccountId("ray"));
+		assertNull(users.findAccountId("jay"));
+
+		assertTrue(users.updateHashedPassword(credentials.getUserId(), "hash-ray", "rehashed"));
+		assertFalse(users.updateHashedPassword(credentials.getUserId(), "hash-ray", "again"));
+		assertEquals("rehashed", users.findCredentials("ray").getHashedPassword());
+
+		users.deleteByUsername("ray");
+		assertFalse(users.exists("ray"));
+		assertNull(users.findCredentials("ray"));
+		assertNull(users.findAccountId("ray"));
+		assertNull(accounts.findBalance(session.getAccountId()));
+	}
+
+	/**
+	 * Test that a batch with a taken or repeated username creates nobody.
+	 */
+	@Test
+	void testCreateAllIsAllOrNothing() throws Exception {
+		users.create(newUser("taken"));
+		assertThrows(SQLException.class,
+				() -> users.createAll(Arrays.asList(newUser("a"), newUser("b"), newUser("taken"))));
+		assertThrows(SQLException.class, () -> users.createAll(Arrays.asList(newUser("c"), newUser("c"))));
+		assertEquals(1, users.count());
+
+		users.createAll(Arrays.asList(newUser("a"), newUser("b")));
+		assertEquals(3, users.count());
+		assertEquals(2, users.findExisting(Arrays.asList("a", "b", "z")).size());
+		List<String> usernames = new ArrayList<>();
+		users.forEachUsername(usernames::add);
+		assertEquals(3, usernames.size());
+	}
+
+	/**
+	 * Test deposits and withdrawals, including a withdrawal the balance does not
+	 * cover and an account that does not exist.
+	 */
+	@Test
+	void testBalances() throws Exception {
+		users.create(newUser("ray"));
+		int accountId = users.findCredentials("ray").toSession().getAccountId();
+
+		assertEquals(Money.parse("10.50"), accounts.deposit(accountId, Money.parse("10.50")));
+		assertEquals(Money.parse("0.50"), accounts.withdraw(accountId, Money.parse("10")));
+		assertNull(accounts.withdraw(accountId, Money.parse("1")));
+		assertEquals(Money.parse("0.50"), accounts.findBalance(accountId));
+		assertNull(accounts.deposit(accountId + 1, Money.parse("1")));
+		assertThrows(SQLException.class, () -> accounts.deposit(accountId, Money.ofCents(Long.MAX_VALUE)));
+	}
+
+	/**
+	 * Test that concurrent deposits and withdrawals on one account lose nothing.
+	 */
+	@Test
+	void testConcurrentBalanceChanges() throws Exception {
+		users.create(newUser("ray"));
+		int accountId = users.findCredentials("ray").toSession().getAccountId();
+		accounts.deposit(accountId, Money.ofCents(1000));
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 10000; i++) {
+						accounts.deposit(accountId, Money.ofCents(3));
+						accounts.withdraw(accountId, Money.ofCents(2));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(Money.ofCents(1000 + 8 * 10000), accounts.findBalance(accountId));
+	}
+
+	/**
+	 * Test that concurrent transfers in both directions between two accounts
+	 * neither create nor lose money, and that rejected transfers change nothing.
+	 */
+	@Test
+	void testConcurrentTransfers() throws Exception {
+		users.create(newUser("ray"));
+		users.create(newUser("jay"));
+		int ray = users.findCredentials("ray").toSession().getAccountId();
+		int jay = users.findCredentials("jay").toSession().getAccountId();
+		accounts.deposit(ray, Money.ofCents(1000));
+		accounts.deposit(jay, Money.ofCents(1000));
+		assertThrows(IllegalArgumentException.class, () -> accounts.transfer(ray, ray, Money.ofCents(1)));
+		assertNull(accounts.transfer(ray, jay, Money.ofCents(1001)));
+		assertNull(accounts.transfer(ray, jay + 100, Money.ofCents(1)));
+		assertEquals(Money.ofCents(1000), accounts.findBalance(ray));
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				int from = t % 2 == 0 ? ray : jay;
+				int to = t % 2 == 0 ? jay : ray;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 10000; i++) {
+						accounts.transfer(from, to, Money.ofCents(7));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(2000, accounts.findBalance(ray).toCents() + accounts.findBalance(jay).toCents());
+	}
+
+	/**
+	 * Test that balance changes are recorded in the ledger, and that history is
+	 * read back newest first in keyset pages.
+	 */
+	@Test
+	void testLedgerPages() throws Exception {
+		users.createAll(Arrays.asList(newUser("ray"), newUser("jay")));
+		LedgerStore ledger = engine.ledger();
+		for (int i = 1; i <= 25; i++) {
+			accounts.deposit(i % 2 == 0 ? 2 : 1, Money.ofCents(i));
+		}
+
+		List<LedgerEntry> page = ledger.findPage(1, Long.MAX_VALUE, 5);
+		assertEquals(5, page.size());
+		assertEquals(25, page.get(0).getSequence());
+		assertEquals(LedgerEntry.Type.DEPOSIT, page.get(0).getType());
+		assertEquals(Money.ofCents(169), page.get(0).getBalanceAfter());
+		assertEquals(17, page.get(4).getSequence());
+		assertEquals(15, ledger.findPage(1, 17, 5).get(0).getSequence());
+
+		Iterator<LedgerEntry> history = ledger.iterateHistory(2, 5);
+		int count = 0;
+		while (history.hasNext()) {
+			assertEquals(0, history.next().getSequence() % 2);
+			count++;
+		}
+		assertEquals(12, count);
+		assertTrue(ledger.findPage(3, Long.MAX_VALUE, 5).isEmpty());
+
+		accounts.transfer(1, 2, Money.ofCents(100));
+		accounts.withdraw(2, Money.ofCents(50));
+		assertEquals(LedgerEntry.Type.TRANSFER_OUT, ledger.findPage(1, Long.MAX_VALUE, 1).get(0).getType());
+		page = ledger.findPage(2, Long.MAX_VALUE, 2);
+		assertEquals(LedgerEntry.Type.WITHDRAWAL, page.get(0).getType());
+		assertEquals(Money.ofCents(206), page.get(0).getBalanceAfter());
+		assertEquals(LedgerEntry.Type.TRANSFER_IN, page.get(1).getType());
+	}
+
+	/**
+	 * Test that only the newest entries of each account are kept, and that
+	 * deleting a user drops their history.
+	 */
+	@Test
+	void testHistoryLimit() throws Exception {
+		MemoryStorageEngine bounded = new MemoryStorageEngine(10);
+		bounded.users().createAll(Arrays.asList(newUser("ray"), newUser("jay")));
+		for (int i = 0; i < 50; i++) {
+			bounded.accounts().deposit(1, Money.ofCents(1));
+		}
+		bounded.accounts().deposit(2, Money.ofCents(1));
+		List<LedgerEntry> page = bounded.ledger().findPage(1, Long.MAX_VALUE, 100);
+		assertEquals(10, page.size());
+		assertEquals(Money.ofCents(50), page.get(0).getBalanceAfter());
+		assertEquals(Money.ofCents(41), page.get(9).getBalanceAfter());
+
+		bounded.users().deleteByUsername("jay");
+		assertTrue(bounded.ledger().findPage(2, Long.MAX_VALUE, 10).isEmpty());
+
+		MemoryStorageEngine none = new MemoryStorageEngine(0);
+		none.users().create(newUser("ray"));
+		assertEquals(Money.ofCents(1), none.accounts().deposit(1, Money.ofCents(1)));
+		assertTrue(none.ledger().findPage(1, Long.MAX_VALUE, 10).isEmpty());
+	}
+}
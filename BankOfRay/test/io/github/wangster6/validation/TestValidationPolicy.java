@@ -0,0 +1,66 @@
+/**
+ *
+ */
+package io.github.wangster6.validation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.EnumSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases to test the functionality of the ValidationPolicy Class and its
+ * methods.
+ *
+ * @author wangster6
+ */
+class TestValidationPolicy {
+
+	/**
+	 * Test that the password policy reports every failed rule at once.
+	 */
+	@Test
+	void testPasswordViolations() {
+		assertEquals(0, ValidationPolicy.PASSWORD.validate("test123"));
+		assertEquals(0, ValidationPolicy.PASSWORD.validate("testING123456!"));
+		assertEquals(EnumSet.of(Violation.TOO_SHORT), Violation.decode(ValidationPolicy.PASSWORD.validate("t1")));
+		assertEquals(EnumSet.of(Violation.TOO_LONG, Violation.MISSING_DIGIT),
+				Violation.decode(ValidationPolicy.PASSWORD.validate("testingapasswordthatistoolong")));
+		assertEquals(EnumSet.of(Violation.TOO_SHORT, Violation.MISSING_LETTER),
+				Violation.decode(ValidationPolicy.PASSWORD.validate("123")));
+		assertTrue(Violation.TOO_SHORT.isIn(ValidationPolicy.PASSWORD.validate(null)));
+	}
+
+	/**
+	 * Test that the name policy only allows ASCII letters.
+	 */
+	@Test
+	void testNameViolations() {
+		assertTrue(ValidationPolicy.NAME.isValid("Raymond"));
+		assertEquals(EnumSet.of(Violation.INVALID_CHARACTER),
+				Violation.decode(ValidationPolicy.NAME.validate("Ray mond")));
+		assertEquals(EnumSet.of(Violation.INVALID_CHARACTER),
+				Violation.decode(ValidationPolicy.NAME.validate("Ren\u00e9")));
+		assertEquals(EnumSet.of(Violation.TOO_SHORT), Violation.decode(ValidationPolicy.NAME.validate("")));
+	}
+
+	/**
+	 * Test a custom policy with required character classes and a restricted
+	 * alphabet.
+	 */
+	@Test
+	void testCustomPolicy() {
+		ValidationPolicy policy = new ValidationPolicy(8, 64, ValidationPolicy.LETTER | ValidationPolicy.DIGIT
+				| ValidationPolicy.SYMBOL, ValidationPolicy.UPPERCASE, ValidationPolicy.LOWERCASE,
+				ValidationPolicy.SYMBOL);
+		assertTrue(policy.isValid("Password!"));
+		assertEquals(EnumSet.of(Violation.MISSING_UPPERCASE, Violation.MISSING_SYMBOL),
+				Violation.decode(policy.validate("password")));
+		assertEquals(EnumSet.of(Violation.INVALID_CHARACTER), Violation.decode(policy.validate("Pass word!")));
+
+		assertThrows(IllegalArgumentException.class,
+				() -> new ValidationPolicy(1, 5, ValidationPolicy.ANY, ValidationPolicy.SPACE));
+		assertThrows(IllegalArgumentException.class, () -> new ValidationPolicy(5, 1, ValidationPolicy.ANY));
+	}
+}